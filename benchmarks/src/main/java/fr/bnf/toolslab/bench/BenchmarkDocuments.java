@@ -0,0 +1,123 @@
+package fr.bnf.toolslab.bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Generator of the documents used by the benchmarks. The documents are built from a fixed seed,
+ * so that two runs measure the same bytes.
+ */
+public final class BenchmarkDocuments {
+  private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+  private static final int DPI = 150;
+  private static final String TEXT_LINE =
+      "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt";
+
+  /**
+   * Writer of the content of a page or a form.
+   */
+  private interface ContentWriter {
+    void write(PDPageContentStream cs) throws IOException;
+  }
+
+  private BenchmarkDocuments() {
+    // Only static methods
+  }
+
+  /**
+   * Write a document.
+   *
+   * @param dest file to write
+   * @param nbPages number of pages
+   * @param imagesPerPage number of images covering each page, 0 for a native page
+   * @param formDepth number of nested forms around the content of each page
+   * @param textLines number of lines of text on each page
+   * @throws IOException exception if error while writing the document
+   */
+  public static void create(File dest, int nbPages, int imagesPerPage, int formDepth,
+      int textLines) throws IOException {
+    final float stripHeight = imagesPerPage == 0 ? 0 : PAGE_SIZE.getHeight() / imagesPerPage;
+    // Encode the image only once, each placement gets its own copy of the stream
+    final byte[] jpeg = imagesPerPage == 0 ? null
+        : encodeJpeg(Math.round(PAGE_SIZE.getWidth() * DPI / 72),
+            Math.round(stripHeight * DPI / 72));
+    try (PDDocument document = new PDDocument()) {
+      for (int p = 0; p < nbPages; p++) {
+        PDPage page = new PDPage(PAGE_SIZE);
+        document.addPage(page);
+        ContentWriter content = cs -> {
+          for (int i = 0; i < imagesPerPage; i++) {
+            PDImageXObject image = JPEGFactory.createFromByteArray(document, jpeg);
+            cs.drawImage(image, 0, i * stripHeight, PAGE_SIZE.getWidth(), stripHeight);
+          }
+          writeText(cs, textLines);
+        };
+        for (int d = 0; d < formDepth; d++) {
+          final PDFormXObject form = createForm(document, content);
+          content = cs -> cs.drawForm(form);
+        }
+        try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+          content.write(cs);
+        }
+      }
+      document.save(dest);
+    }
+  }
+
+  private static PDFormXObject createForm(PDDocument document, ContentWriter content)
+      throws IOException {
+    PDFormXObject form = new PDFormXObject(document);
+    form.setBBox(PAGE_SIZE);
+    form.setResources(new PDResources());
+    try (PDPageContentStream cs = new PDPageContentStream(document, form,
+        form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+      content.write(cs);
+    }
+    return form;
+  }
+
+  private static void writeText(PDPageContentStream cs, int textLines) throws IOException {
+    if (textLines == 0) {
+      return;
+    }
+    cs.beginText();
+    cs.setFont(PDType1Font.HELVETICA, 10);
+    cs.setLeading(12);
+    cs.newLineAtOffset(40, PAGE_SIZE.getHeight() - 40);
+    for (int i = 0; i < textLines; i++) {
+      cs.showText(TEXT_LINE);
+      cs.newLine();
+    }
+    cs.endText();
+  }
+
+  private static byte[] encodeJpeg(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    WritableRaster raster = image.getRaster();
+    Random random = new Random(42);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        // Light paper with some noise, like a scanned page
+        raster.setSample(x, y, 0, 200 + random.nextInt(56));
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", out);
+    return out.toByteArray();
+  }
+}
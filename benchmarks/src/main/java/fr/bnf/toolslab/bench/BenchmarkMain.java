@@ -0,0 +1,31 @@
+package fr.bnf.toolslab.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar: the JMH command line, with the GC profiler always enabled to
+ * report the allocation rate.
+ */
+public class BenchmarkMain {
+
+  /**
+   * Main method.
+   *
+   * @param args JMH arguments, see <code>-h</code>
+   * @throws CommandLineOptionException exception if the arguments are invalid
+   * @throws RunnerException exception if a benchmark fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,114 @@
+package fr.bnf.toolslab.bench;
+
+import fr.bnf.toolslab.AbstractScanDetector;
+import fr.bnf.toolslab.AlternatePdfBoxScanDetector;
+import fr.bnf.toolslab.CascadeScanDetector;
+import fr.bnf.toolslab.FileDescriptor;
+import fr.bnf.toolslab.PdfBoxScanDetector;
+import fr.bnf.toolslab.StreamPdfBoxScanDetector;
+import fr.bnf.toolslab.StrictPdfBoxScanDetector;
+import fr.bnf.toolslab.XrefScanDetector;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the detectors over generated documents. Restrict the matrix with <code>-p</code>,
+ * for example <code>-p detector=Strict -p pages=100</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBenchmark {
+
+  @Param({"PdfBox", "Alternate", "Stream", "StreamLight", "Strict", "StrictLight", "Xref",
+      "Cascade"})
+  String detector;
+
+  @Param({"10", "100"})
+  int pages;
+
+  @Param({"0", "1", "4"})
+  int imagesPerPage;
+
+  @Param({"0", "3"})
+  int formDepth;
+
+  @Param({"0", "200"})
+  int textLines;
+
+  File document;
+  AbstractScanDetector scanDetector;
+
+  /**
+   * Write the document and build the detector.
+   *
+   * @throws IOException exception if error while writing the document
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    document = File.createTempFile("bench-", ".pdf");
+    BenchmarkDocuments.create(document, pages, imagesPerPage, formDepth, textLines);
+    scanDetector = createDetector(detector);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (!document.delete()) {
+      document.deleteOnExit();
+    }
+  }
+
+  static AbstractScanDetector createDetector(String name) {
+    switch (name) {
+      case "PdfBox":
+        return new PdfBoxScanDetector();
+      case "Alternate":
+        return new AlternatePdfBoxScanDetector();
+      case "Stream":
+        return new StreamPdfBoxScanDetector();
+      case "StreamLight":
+        return new StreamPdfBoxScanDetector(true);
+      case "Strict":
+        return new StrictPdfBoxScanDetector();
+      case "StrictLight":
+        return new StrictPdfBoxScanDetector(true);
+      case "Xref":
+        return new XrefScanDetector();
+      case "Cascade":
+        return CascadeScanDetector.createDefault(false);
+      default:
+        throw new IllegalArgumentException("Unknown detector " + name);
+    }
+  }
+
+  /**
+   * Detect the document, like ScannedPdfApp does for each file.
+   *
+   * @return the result, returned so that it is not optimized away
+   * @throws IOException exception if error while reading the document
+   */
+  @Benchmark
+  public FileDescriptor parse() throws IOException {
+    FileDescriptor fd = new FileDescriptor(document);
+    scanDetector.init(fd);
+    scanDetector.parse();
+    return fd;
+  }
+}
@@ -0,0 +1,98 @@
+package fr.bnf.toolslab.bench;
+
+import fr.bnf.toolslab.AbstractScanDetector;
+import fr.bnf.toolslab.FileDescriptor;
+import fr.bnf.toolslab.LoadPolicy;
+import fr.bnf.toolslab.LoadedDocument;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the buffered and memory mapped inputs over large scanned books, one image per page.
+ * The file stays in the page cache between the iterations, so the difference is the cost of the
+ * reads and seeks themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBenchmark {
+
+  @Param({"buffered", "mapped"})
+  String input;
+
+  @Param({"500", "2000"})
+  int pages;
+
+  @Param({"PdfBox", "Xref"})
+  String detector;
+
+  File document;
+  LoadPolicy loadPolicy;
+  AbstractScanDetector scanDetector;
+
+  /**
+   * Write the book and build the policy and the detector.
+   *
+   * @throws IOException exception if error while writing the document
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    document = File.createTempFile("bench-book-", ".pdf");
+    BenchmarkDocuments.create(document, pages, 1, 0, 0);
+    loadPolicy = new LoadPolicy(LoadPolicy.Mode.MAIN_MEMORY, -1, null, null,
+        LoadPolicy.parseInput(input));
+    scanDetector = DetectorBenchmark.createDetector(detector);
+    scanDetector.setLoadPolicy(loadPolicy);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (!document.delete()) {
+      document.deleteOnExit();
+    }
+  }
+
+  /**
+   * Only parse the document: header, xref and trailer.
+   *
+   * @return the number of pages, returned so that it is not optimized away
+   * @throws IOException exception if error while reading the document
+   */
+  @Benchmark
+  public int load() throws IOException {
+    try (LoadedDocument loaded = loadPolicy.load(document)) {
+      return loaded.getDocument().getNumberOfPages();
+    }
+  }
+
+  /**
+   * Parse and detect the document.
+   *
+   * @return the result, returned so that it is not optimized away
+   * @throws IOException exception if error while reading the document
+   */
+  @Benchmark
+  public FileDescriptor detect() throws IOException {
+    FileDescriptor fd = new FileDescriptor(document);
+    scanDetector.init(fd);
+    scanDetector.parse();
+    return fd;
+  }
+}
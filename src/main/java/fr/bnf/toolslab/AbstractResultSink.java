@@ -0,0 +1,146 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Common part of the sinks: applies the flush policy. The subclasses buffer their output and push
+ * it in {@link #flushBuffer()}.
+ */
+public abstract class AbstractResultSink implements ResultSink {
+  protected static final int BUFFER_SIZE = 1 << 16;
+  /** Units of the confidence written with 4 decimals. */
+  private static final int CONFIDENCE_UNIT = 10000;
+
+  protected final FlushPolicy flushPolicy;
+  private int pendingRows;
+  private long lastFlush = System.currentTimeMillis();
+
+  protected AbstractResultSink(FlushPolicy flushPolicy) {
+    this.flushPolicy = flushPolicy;
+  }
+
+  @Override
+  public void write(FileDescriptor fd) throws IOException {
+    writeRow(fd);
+    pendingRows++;
+    long now = flushPolicy.getMaxDelayMs() > 0 ? System.currentTimeMillis() : 0;
+    if (flushPolicy.shouldFlush(pendingRows, lastFlush, now)) {
+      flush();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    pendingRows = 0;
+    lastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * Write one row in the buffer.
+   *
+   * @param fd result to write
+   * @throws IOException exception if error while writing
+   */
+  protected abstract void writeRow(FileDescriptor fd) throws IOException;
+
+  /**
+   * Push the buffer to the destination.
+   *
+   * @throws IOException exception if error while writing
+   */
+  protected abstract void flushBuffer() throws IOException;
+
+  /**
+   * Append a confidence with 4 decimals, like 0.9375, without the garbage of a formatter.
+   *
+   * @param sb builder to fill
+   * @param confidence confidence in [0, 1]
+   * @return the builder
+   */
+  static StringBuilder appendConfidence(StringBuilder sb, double confidence) {
+    int units = ResultCache.confidenceUnits(confidence);
+    int decimals = units % CONFIDENCE_UNIT;
+    sb.append(units / CONFIDENCE_UNIT).append('.');
+    for (int unit = CONFIDENCE_UNIT / 10; unit > 1 && unit > decimals; unit /= 10) {
+      sb.append('0');
+    }
+    return sb.append(decimals);
+  }
+
+  /**
+   * Build a sink.
+   *
+   * @param format one of <code>csv</code>, <code>jsonl</code> or <code>bin</code>
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @return the sink
+   * @throws IOException exception if error while writing the header
+   */
+  public static ResultSink create(String format, OutputStream out, FlushPolicy flushPolicy)
+      throws IOException {
+    return create(format, out, flushPolicy, false);
+  }
+
+  /**
+   * Build a sink.
+   *
+   * @param format one of <code>csv</code>, <code>jsonl</code> or <code>bin</code>
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to write the metrics of each file
+   * @return the sink
+   * @throws IOException exception if error while writing the header
+   */
+  public static ResultSink create(String format, OutputStream out, FlushPolicy flushPolicy,
+      boolean withMetrics) throws IOException {
+    return create(format, out, flushPolicy, withMetrics, true);
+  }
+
+  /**
+   * Build a sink.
+   *
+   * @param format one of <code>csv</code>, <code>jsonl</code> or <code>bin</code>
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to write the metrics of each file
+   * @param withHeader <code>false</code> when appending to a destination already holding the
+   *        header
+   * @return the sink
+   * @throws IOException exception if error while writing the header
+   */
+  public static ResultSink create(String format, OutputStream out, FlushPolicy flushPolicy,
+      boolean withMetrics, boolean withHeader) throws IOException {
+    return create(format, out, flushPolicy, withMetrics, false, withHeader);
+  }
+
+  /**
+   * Build a sink.
+   *
+   * @param format one of <code>csv</code>, <code>jsonl</code> or <code>bin</code>
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to write the metrics of each file
+   * @param withSampling <code>true</code> to add the sampling columns to the <code>csv</code>
+   *        rows, the other formats always holding the sampling of the sampled documents
+   * @param withHeader <code>false</code> when appending to a destination already holding the
+   *        header
+   * @return the sink
+   * @throws IOException exception if error while writing the header
+   */
+  public static ResultSink create(String format, OutputStream out, FlushPolicy flushPolicy,
+      boolean withMetrics, boolean withSampling, boolean withHeader) throws IOException {
+    switch (format.toLowerCase(Locale.ROOT)) {
+      case "csv":
+        return new CsvResultSink(out, flushPolicy, withMetrics, withSampling, withHeader);
+      case "jsonl":
+        return new JsonlResultSink(out, flushPolicy, withMetrics);
+      case "bin":
+        return new BinaryResultSink(out, flushPolicy, withMetrics, withHeader);
+      default:
+        throw new IllegalArgumentException("Unknown output format " + format);
+    }
+  }
+}
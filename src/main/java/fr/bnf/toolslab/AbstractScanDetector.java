@@ -1,76 +1,222 @@
 package fr.bnf.toolslab;
 
+import fr.bnf.toolslab.ScanMetrics.Phase;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.function.Predicate;
 import java.util.logging.Logger;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 
 /**
- * Abstract class for the different implementation of image detection.
+ * Abstract class for the different implementation of image detection. All the state of a file is
+ * kept in a {@link ScanContext}, so that {@link #detect(Path)} can be called concurrently on the
+ * same instance.
  */
 public abstract class AbstractScanDetector {
   protected static final Logger LOGGER = Logger.getLogger(AbstractScanDetector.class.getName());
 
   protected static final int THRESHOLD = 2;
   protected static final int MAX_SAMPLES = 10;
+  /** Minimal fraction of the page box covered by the image of a scanned page. */
+  protected static final double MIN_COVERAGE = 0.9;
+  /** Minimal density of the image of a scanned page, in pixels per inch. */
+  protected static final double MIN_DENSITY = 72.0;
 
-  protected List<PDXObject> seenObjects = new ArrayList<>();
+  // Only used by the init()/parse() sequence, which is not thread-safe
+  private FileDescriptor fd;
+
+  protected LoadPolicy loadPolicy = LoadPolicy.DEFAULT;
+  protected SamplingPolicy samplingPolicy = SamplingPolicy.DEFAULT;
+
+  /**
+   * Define how the documents are loaded. Should be called before any detection.
+   *
+   * @param loadPolicy policy to load the documents
+   */
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    this.loadPolicy = loadPolicy;
+  }
+
+  /**
+   * Define how the pages are sampled. Should be called before any detection.
+   *
+   * @param samplingPolicy policy to sample the pages
+   */
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    this.samplingPolicy = samplingPolicy;
+  }
+
+  /**
+   * Name of the detector, used to tell apart the stored results.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Key of the results of the detector in a {@link ResultCache}: its name and the settings which
+   * may change its verdicts, the engine and the sampling of the pages. A result stored with other
+   * settings is not reused.
+   *
+   * @return the key
+   */
+  public String getCacheKey() {
+    return getName() + "[" + (isLight() ? "light," : "") + samplingPolicy + "]";
+  }
+
+  /**
+   * Tell whether the pages are interpreted with a {@link LightImageEngine}.
+   *
+   * @return <code>true</code> for the light engine
+   */
+  protected boolean isLight() {
+    return false;
+  }
 
   /**
    * Method to provide the file descriptor of the file to scan.
    *
    * @param fd file descriptor of the file
    */
-  abstract void init(FileDescriptor fd);
+  public void init(FileDescriptor fd) {
+    this.fd = fd;
+  }
 
   /**
-   * Method to parse the given file.
+   * Method to parse the file given to {@link #init(FileDescriptor)}.
    *
    * @throws IOException exception if error while reading the file
    */
-  abstract void parse() throws IOException;
+  public void parse() throws IOException {
+    process(fd);
+  }
+
+  /**
+   * Detect whether the given file is a scanned PDF. This method is thread-safe.
+   *
+   * @param path path of the file
+   * @return the immutable result, not valid if the file can't be read
+   */
+  public ScanResult detect(Path path) {
+    FileDescriptor fileDescriptor = new FileDescriptor(path.toFile());
+    try {
+      process(fileDescriptor);
+    } catch (IOException e) {
+      LOGGER.warning("Error process file " + path + ": " + e.getMessage());
+    }
+    return ScanResult.of(fileDescriptor);
+  }
 
   /**
-   * Recursively inspect the resources looking for images.
+   * Load the document and fill the file descriptor.
    *
-   * @param resources resources to inspect
-   * @param predicate a predicate to call for each image. Return <code>true</code> if recursion
-   *        continues.
+   * @param fd file descriptor of the file
+   * @throws IOException exception if error while reading the file
+   */
+  void process(FileDescriptor fd) throws IOException {
+    LOGGER.fine("Processing " + fd.getFile().getName());
+    ScanContext ctx = new ScanContext(fd);
+    ctx.metrics.enter(Phase.LOAD);
+    try (LoadedDocument loaded = loadPolicy.load(fd)) {
+      ctx.metrics.enter(Phase.TRAVERSAL);
+      fd.setValid(true);
+      parse(ctx, loaded.getDocument());
+      // Don't count the closing of the document
+      ctx.metrics.enter(null);
+    } catch (IOException e) {
+      fd.setValid(false);
+      throw e;
+    } finally {
+      ctx.metrics.enter(null);
+      fd.setTimeToProcess(ctx.elapsed());
+    }
+  }
+
+  /**
+   * Method to parse the given document.
+   *
+   * @param ctx state of the detection for this document
+   * @param document the loaded document
+   * @throws IOException exception if error while reading the file
+   */
+  protected abstract void parse(ScanContext ctx, PDDocument document) throws IOException;
+
+  /**
+   * Recursively inspect the resources looking for images. The summary of each resources
+   * dictionary is kept in the context, so that a dictionary shared by several pages or forms is
+   * only walked once per document.
+   *
+   * @param ctx state of the detection, holding the summaries and the dictionaries being walked
+   * @param resources resources to inspect, may be <code>null</code>
+   * @return the images found in the resources and in their forms
    * @throws IOException in case of IO problems
    */
-  void recurseForImages(PDResources resources, Predicate<DimensionInfo> predicate)
-      throws IOException {
+  ImageSummary summarizeImages(ScanContext ctx, PDResources resources) throws IOException {
+    if (resources == null) {
+      return ImageSummary.EMPTY;
+    }
+    COSDictionary key = resources.getCOSObject();
+    ImageSummary summary = ctx.imageSummaries.get(key);
+    if (summary != null) {
+      return summary;
+    }
+    if (!ctx.seenObjects.add(key)) {
+      // Don't recurse in a dictionary being walked to avoid infinite loop
+      return ImageSummary.EMPTY;
+    }
+    summary = ImageSummary.EMPTY;
     for (COSName name : resources.getXObjectNames()) {
+      ctx.metrics.xobjectsVisited++;
       if (resources.isImageXObject(name)) {
-        DimensionInfo dimImage = lookupImage(resources, name);
-        if (!predicate.test(dimImage)) {
-          break;
-        }
+        summary = summary.plus(lookupImage(resources, name));
         continue;
       }
       PDXObject xobject = resources.getXObject(name);
-      if (seenObjects.contains(xobject)) {
-        // Don't recurse in already seen objects to avoid infinite loop
-        continue;
-      } else {
-        seenObjects.add(xobject);
-      }
       if (xobject instanceof PDFormXObject) {
         PDFormXObject form = (PDFormXObject) xobject;
-        PDResources formResources = form.getResources();
-        recurseForImages(formResources, predicate);
+        ctx.metrics.formsRecursed++;
+        summary = summary.plus(summarizeImages(ctx, form.getResources()));
       }
     }
+    ctx.seenObjects.remove(key);
+    ctx.imageSummaries.put(key, summary);
+    return summary;
+  }
+
+  /**
+   * Interpret a page looking for the images drawn on it.
+   *
+   * @param ctx state of the detection, holding the images already found in the document
+   * @param page page to interpret
+   * @param light <code>true</code> to use a {@link LightImageEngine}, <code>false</code> for an
+   *        {@link ImageGraphicsEngine}
+   * @return the placements of the images found for the first time in the document
+   * @throws IOException exception if error while reading the file
+   */
+  List<ImagePlacement> interpretPage(ScanContext ctx, PDPage page, boolean light)
+      throws IOException {
+    if (light) {
+      LightImageEngine engine = new LightImageEngine(page, ctx.processedInlineImages,
+          ctx.imageCounter, ctx.metrics);
+      engine.run();
+      return engine.getImagePlacements();
+    }
+    ImageGraphicsEngine engine =
+        new ImageGraphicsEngine(page, ctx.processedInlineImages, ctx.imageCounter, ctx.metrics);
+    engine.run();
+    return engine.getImagePlacements();
   }
 
   /**
@@ -127,22 +273,28 @@ public abstract class AbstractScanDetector {
   }
 
   /**
-   * Select nbSamples pages in a random fashion.
+   * Select nbSamples pages with the strategy of the sampling policy, seeded by
+   * {@link #documentSeed(FileDescriptor)}.
    *
+   * @param ctx state of the detection
    * @param nbSamples number of samples to collect
    * @param nbPages total number of pages
-   * @return a list of selected pages
-   */
-  List<Integer> pickSamples(int nbSamples, int nbPages) {
-    final Random random = new Random();
-    List<Integer> pagesToTest = new ArrayList<>();
-    while (pagesToTest.size() < nbSamples) {
-      int page = random.nextInt(nbPages);
-      if (!pagesToTest.contains(page)) {
-        pagesToTest.add(page);
-      }
-    }
-    return pagesToTest;
+   * @return the selected pages, in the order to examine them
+   */
+  int[] pickSamples(ScanContext ctx, int nbSamples, int nbPages) {
+    return samplingPolicy.getStrategy().pick(nbSamples, nbPages, documentSeed(ctx.fd));
+  }
+
+  /**
+   * Seed of a document for the sampling. It only depends on the full path and the size, so that
+   * each run examines the same pages, while copies of a file in several directories are not all
+   * sampled on the same pages.
+   *
+   * @param fd descriptor of the document
+   * @return the seed of the document
+   */
+  static long documentSeed(FileDescriptor fd) {
+    return fd.getFile().getAbsolutePath().hashCode() * 31L + fd.getLength();
   }
 
   /**
@@ -165,4 +317,24 @@ public abstract class AbstractScanDetector {
     return (int) dpiX;
   }
 
+  /**
+   * Calculate the density of an image from its placement on the page, so that scaled, rotated or
+   * cropped images are measured as they are displayed.
+   *
+   * @param placement placement of the image, may be <code>null</code>
+   * @return the density along the width of the image, 0 if the image doesn't cover the page or is
+   *         only a background stretched below 72 dpi
+   */
+  int findDensity(ImagePlacement placement) {
+    if (placement == null || placement.getCoverage() < MIN_COVERAGE) {
+      return 0;
+    }
+    if (Math.min(placement.getDpiX(), placement.getDpiY()) < MIN_DENSITY) {
+      LOGGER.fine("Too low density of " + placement.getDpiX() + "x" + placement.getDpiY());
+      return 0;
+    }
+    LOGGER.fine("Found density of " + placement.getDpiX() + "x" + placement.getDpiY());
+    return (int) Math.round(placement.getDpiX());
+  }
+
 }
@@ -0,0 +1,103 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * PDF entry of an archive, read by the {@link ArchiveReader} and staged until it is processed:
+ * either in memory, holding its share of the buffers, or in a temporary file. Its file is only a
+ * name, <code>archive!/path</code>, and must not be read.
+ */
+public final class ArchiveEntry implements Closeable {
+
+  private final File file;
+  private final long size;
+  private final long lastModified;
+  private byte[] content;
+  private File spillFile;
+  private final MemoryBudget buffers;
+  private long reserved;
+
+  /**
+   * Constructor.
+   *
+   * @param file name of the entry
+   * @param lastModified modification time of the entry in milliseconds
+   * @param content content kept in memory, <code>null</code> when spilled
+   * @param spillFile temporary file holding the content when not in memory
+   * @param buffers buffers holding the content in memory, <code>null</code> when spilled
+   * @param reserved number of bytes reserved in the buffers
+   */
+  ArchiveEntry(File file, long lastModified, byte[] content, File spillFile,
+      MemoryBudget buffers, long reserved) {
+    this.file = file;
+    this.lastModified = lastModified;
+    this.content = content;
+    this.spillFile = spillFile;
+    this.size = content != null ? content.length : spillFile.length();
+    this.buffers = buffers;
+    this.reserved = reserved;
+  }
+
+  /**
+   * Getter for the name of the entry.
+   *
+   * @return the name, <code>archive!/path</code>
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Getter for the size of the entry.
+   *
+   * @return number of bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Getter for the modification time of the entry.
+   *
+   * @return time in milliseconds
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Getter for the content kept in memory.
+   *
+   * @return the content, <code>null</code> if spilled to {@link #getSpillFile()}
+   */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /**
+   * Getter for the temporary file holding the content.
+   *
+   * @return the file, <code>null</code> if kept in memory
+   */
+  public File getSpillFile() {
+    return spillFile;
+  }
+
+  /**
+   * Free the content: delete the temporary file or give back the buffers. Can be called several
+   * times.
+   */
+  @Override
+  public synchronized void close() {
+    if (spillFile != null && !spillFile.delete()) {
+      spillFile.deleteOnExit();
+    }
+    spillFile = null;
+    content = null;
+    if (buffers != null) {
+      buffers.release(reserved);
+    }
+    reserved = 0;
+  }
+}
@@ -0,0 +1,505 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reader of the PDF entries of ZIP and TAR archives, optionally gzipped, without unpacking them.
+ * The archive is read as a stream, once. Each entry is staged so that it can be processed later by
+ * another thread: in memory if it is small enough and the buffers have room, otherwise in a
+ * temporary file. The buffers are never waited for, so that the reading never blocks the
+ * processing of the staged entries.
+ */
+public class ArchiveReader {
+  protected static final Logger LOGGER = Logger.getLogger(ArchiveReader.class.getName());
+
+  /** Default memory for the entries waiting to be processed. */
+  public static final long DEFAULT_BUFFERS = 64L * 1024 * 1024;
+  /** Share of the buffers an entry can use at most. */
+  private static final int ENTRY_SHARE = 4;
+  private static final int INITIAL_BUFFER = 64 * 1024;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int TAR_BLOCK = 512;
+  /** Magic and version of the POSIX ustar format, the only one with a prefix field. */
+  private static final byte[] POSIX_MAGIC =
+      ("ustar\u0000" + "00").getBytes(StandardCharsets.US_ASCII);
+  private static final String PDF_SUFFIX = ".pdf";
+  /** Separator between the archive and the path of an entry in its name. */
+  static final String ENTRY_SEPARATOR = "!" + File.separator;
+
+  /**
+   * Destination of the entries.
+   */
+  public interface EntryHandler {
+    /**
+     * Handle an entry. The handler owns the entry and must close it once processed.
+     *
+     * @param entry staged entry
+     * @throws InterruptedException if interrupted while waiting to hand the entry
+     */
+    void handle(ArchiveEntry entry) throws InterruptedException;
+  }
+
+  private final MemoryBudget buffers;
+  private final File scratchDir;
+
+  /**
+   * Constructor.
+   *
+   * @param buffers memory for the entries waiting to be processed, <code>null</code> to spill them
+   *        all
+   * @param scratchDir directory of the spilled entries, <code>null</code> for the default
+   *        temporary directory
+   */
+  public ArchiveReader(MemoryBudget buffers, File scratchDir) {
+    this.buffers = buffers;
+    this.scratchDir = scratchDir;
+  }
+
+  /**
+   * Tell whether a file is an archive, from its extension.
+   *
+   * @param file file to check
+   * @return <code>true</code> for the .zip, .tar, .tar.gz and .tgz files
+   */
+  public static boolean isArchive(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz")
+        || name.endsWith(".tgz");
+  }
+
+  /**
+   * Name an entry of an archive.
+   *
+   * @param archive the archive
+   * @param path path of the entry in the archive
+   * @return the name, <code>archive!/path</code>
+   */
+  static File entryFile(File archive, String path) {
+    String relative = path;
+    while (relative.startsWith("./") || relative.startsWith("/")) {
+      relative = relative.substring(relative.indexOf('/') + 1);
+    }
+    return new File(archive.getPath() + ENTRY_SEPARATOR + relative);
+  }
+
+  /**
+   * Tell whether a file is the name of an archive entry, the entry being staged or not.
+   *
+   * @param file file to check
+   * @return <code>true</code> for the names built by {@link #entryFile(File, String)}
+   */
+  static boolean isEntryFile(File file) {
+    return file.getPath().contains(ENTRY_SEPARATOR);
+  }
+
+  /**
+   * Read the PDF entries of an archive, in their order in the archive.
+   *
+   * @param archive archive to read
+   * @param filter filter of the entry names, the rejected entries are skipped without staging
+   * @param handler destination of the staged entries
+   * @throws IOException exception if error while reading the archive, the entries already handled
+   *         are kept
+   * @throws InterruptedException if interrupted while handing an entry
+   */
+  public void read(File archive, Predicate<File> filter, EntryHandler handler)
+      throws IOException, InterruptedException {
+    String name = archive.getName().toLowerCase(Locale.ROOT);
+    try (InputStream in = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE)) {
+      if (name.endsWith(".zip")) {
+        readZip(archive, new ZipInputStream(in), filter, handler);
+      } else if (name.endsWith(".tar")) {
+        readTar(archive, in, filter, handler);
+      } else {
+        readTar(archive, new GZIPInputStream(in, BUFFER_SIZE), filter, handler);
+      }
+    }
+  }
+
+  private void readZip(File archive, ZipInputStream zip, Predicate<File> filter,
+      EntryHandler handler) throws IOException, InterruptedException {
+    ZipEntry zipEntry;
+    while ((zipEntry = zip.getNextEntry()) != null) {
+      if (zipEntry.isDirectory() || !zipEntry.getName().endsWith(PDF_SUFFIX)) {
+        continue;
+      }
+      File file = entryFile(archive, zipEntry.getName());
+      if (!filter.test(file)) {
+        continue;
+      }
+      long mtime = zipEntry.getTime() < 0 ? archive.lastModified() : zipEntry.getTime();
+      // The size is unknown when given after the data
+      hand(stage(zip, file, zipEntry.getSize(), mtime), handler);
+    }
+  }
+
+  private void readTar(File archive, InputStream in, Predicate<File> filter,
+      EntryHandler handler) throws IOException, InterruptedException {
+    byte[] header = new byte[TAR_BLOCK];
+    String longName = null;
+    String paxPath = null;
+    long paxSize = -1;
+    while (readBlock(in, header)) {
+      if (isZeroBlock(header)) {
+        break;
+      }
+      long size = parseNumber(header, 124, 12);
+      byte type = header[156];
+      if (type == 'L' || type == 'x' || type == 'g') {
+        // Extended header of the next entry
+        byte[] data = readData(in, size);
+        if (type == 'L') {
+          longName = cString(data, 0, data.length);
+        } else if (type == 'x') {
+          String[] pax = parsePax(data);
+          paxPath = pax[0] != null ? pax[0] : paxPath;
+          paxSize = pax[1] != null ? Long.parseLong(pax[1]) : paxSize;
+        }
+        continue;
+      }
+      String path = paxPath != null ? paxPath : longName != null ? longName : tarName(header);
+      if (paxSize >= 0) {
+        size = paxSize;
+      }
+      longName = null;
+      paxPath = null;
+      paxSize = -1;
+      boolean regular = type == '0' || type == 0 || type == '7';
+      File file = entryFile(archive, path);
+      if (regular && path.endsWith(PDF_SUFFIX) && filter.test(file)) {
+        long mtime = parseNumber(header, 136, 12) * 1000;
+        ArchiveEntry entry = stage(new BoundedInputStream(in, size), file, size, mtime);
+        skipFully(in, padding(size));
+        hand(entry, handler);
+      } else {
+        skipFully(in, size + padding(size));
+      }
+    }
+  }
+
+  private static void hand(ArchiveEntry entry, EntryHandler handler)
+      throws InterruptedException {
+    try {
+      handler.handle(entry);
+    } catch (InterruptedException e) {
+      entry.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Stage the content of an entry, in memory if possible.
+   *
+   * @param in content of the entry, read until its end
+   * @param file name of the entry
+   * @param size size of the entry, -1 if unknown
+   * @param mtime modification time of the entry
+   * @return the staged entry
+   */
+  ArchiveEntry stage(InputStream in, File file, long size, long mtime) throws IOException {
+    long maxInMemory = buffers == null ? -1 : buffers.getCapacity() / ENTRY_SHARE;
+    long reserved = -1;
+    if (buffers != null && size <= maxInMemory) {
+      long wanted = size >= 0 ? size : maxInMemory;
+      if (buffers.tryAcquire(wanted)) {
+        reserved = wanted;
+      }
+    }
+    if (reserved < 0) {
+      return new ArchiveEntry(file, mtime, null, spill(in, null, 0), null, 0);
+    }
+    byte[] data = new byte[(int) (size >= 0 ? size : Math.min(reserved, INITIAL_BUFFER))];
+    int length = 0;
+    int extra = -1;
+    try {
+      while (true) {
+        if (length == data.length) {
+          if (length == reserved) {
+            // Larger than announced or than its share if there is more
+            extra = in.read();
+            break;
+          }
+          data = Arrays.copyOf(data, (int) Math.min(reserved, 2L * length));
+        }
+        int n = in.read(data, length, data.length - length);
+        if (n < 0) {
+          break;
+        }
+        length += n;
+      }
+    } catch (IOException | RuntimeException e) {
+      buffers.release(reserved);
+      throw e;
+    }
+    if (extra >= 0) {
+      buffers.release(reserved);
+      byte[] head = Arrays.copyOf(data, length + 1);
+      head[length] = (byte) extra;
+      return new ArchiveEntry(file, mtime, null, spill(in, head, head.length), null, 0);
+    }
+    buffers.release(reserved - length);
+    byte[] content = length == data.length ? data : Arrays.copyOf(data, length);
+    return new ArchiveEntry(file, mtime, content, null, buffers, length);
+  }
+
+  /**
+   * Write the content of an entry in a temporary file.
+   *
+   * @param in rest of the content
+   * @param head first bytes of the content already read, may be <code>null</code>
+   * @param headLength number of bytes of the head
+   * @return the temporary file
+   */
+  private File spill(InputStream in, byte[] head, int headLength) throws IOException {
+    File spillFile = File.createTempFile("entry", PDF_SUFFIX, scratchDir);
+    try (OutputStream out =
+        new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE)) {
+      if (head != null) {
+        out.write(head, 0, headLength);
+      }
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+    } catch (IOException | RuntimeException e) {
+      spillFile.delete();
+      throw e;
+    }
+    return spillFile;
+  }
+
+  /**
+   * Read a block of a TAR archive.
+   *
+   * @return <code>false</code> at the end of the archive
+   */
+  private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+    int length = 0;
+    while (length < block.length) {
+      int n = in.read(block, length, block.length - length);
+      if (n < 0) {
+        if (length == 0) {
+          // Some writers omit the final zero blocks
+          return false;
+        }
+        throw new EOFException("Truncated TAR header");
+      }
+      length += n;
+    }
+    return true;
+  }
+
+  private static boolean isZeroBlock(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] readData(InputStream in, long size) throws IOException {
+    if (size > Integer.MAX_VALUE - TAR_BLOCK) {
+      throw new IOException("Extended TAR header too large: " + size);
+    }
+    byte[] data = new byte[(int) (size + padding(size))];
+    if (!readBlock(in, data) && data.length > 0) {
+      throw new EOFException("Truncated TAR header");
+    }
+    return Arrays.copyOf(data, (int) size);
+  }
+
+  private static long padding(long size) {
+    return (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+  }
+
+  private static void skipFully(InputStream in, long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long n = in.skip(remaining);
+      if (n <= 0) {
+        // Some streams only skip what is buffered
+        if (in.read() < 0) {
+          throw new EOFException("Truncated TAR entry");
+        }
+        n = 1;
+      }
+      remaining -= n;
+    }
+  }
+
+  /**
+   * Path of a TAR entry, with the prefix of the ustar format. The old GNU format, with the magic
+   * <code>"ustar  "</code>, keeps other fields where the prefix would be.
+   */
+  static String tarName(byte[] header) {
+    String name = cString(header, 0, 100);
+    if (startsWith(header, 257, POSIX_MAGIC)) {
+      String prefix = cString(header, 345, 155);
+      if (!prefix.isEmpty()) {
+        return prefix + "/" + name;
+      }
+    }
+    return name;
+  }
+
+  private static boolean startsWith(byte[] data, int offset, byte[] expected) {
+    for (int i = 0; i < expected.length; i++) {
+      if (data[offset + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String cString(byte[] data, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && data[end] != 0) {
+      end++;
+    }
+    return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parse a number of a TAR header, in octal or in the base-256 extension of GNU.
+   */
+  static long parseNumber(byte[] header, int offset, int length) throws IOException {
+    long value = 0;
+    if ((header[offset] & 0x80) != 0) {
+      for (int i = offset + 1; i < offset + length; i++) {
+        value = (value << 8) | (header[i] & 0xff);
+      }
+      return value;
+    }
+    for (int i = offset; i < offset + length; i++) {
+      byte b = header[i];
+      if (b == 0 || b == ' ') {
+        if (value != 0 || i > offset && header[i - 1] >= '0') {
+          break;
+        }
+        continue;
+      }
+      if (b < '0' || b > '7') {
+        throw new IOException("Not a TAR archive");
+      }
+      value = (value << 3) + (b - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Parse the records <code>length key=value\n</code> of a pax extended header.
+   *
+   * @return the path and the size, <code>null</code> when not given
+   */
+  static String[] parsePax(byte[] data) throws IOException {
+    String[] values = new String[2];
+    int pos = 0;
+    while (pos < data.length) {
+      int space = pos;
+      while (space < data.length && data[space] != ' ') {
+        space++;
+      }
+      int length;
+      try {
+        length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid pax header");
+      }
+      if (length <= space - pos || pos + length > data.length) {
+        throw new IOException("Invalid pax header");
+      }
+      String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+      int equal = record.indexOf('=');
+      if (equal > 0) {
+        String key = record.substring(0, equal);
+        if ("path".equals(key)) {
+          values[0] = record.substring(equal + 1);
+        } else if ("size".equals(key)) {
+          values[1] = record.substring(equal + 1);
+        }
+      }
+      pos += length;
+    }
+    return values;
+  }
+
+  /**
+   * Stream of the content of a TAR entry, leaving the archive open after it.
+   */
+  private static final class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long size) {
+      super(in);
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Truncated TAR entry");
+      }
+      remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int n = in.read(b, off, (int) Math.min(len, remaining));
+      if (n < 0) {
+        throw new EOFException("Truncated TAR entry");
+      }
+      remaining -= n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() {
+      // The archive goes on
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package fr.bnf.toolslab;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of a batch run, shared by all the threads. Exposed as an MBean and optionally
+ * written as a Prometheus text file by {@link PrometheusTextFile}.
+ */
+public class BatchMetrics implements BatchMetricsMBean {
+  protected static final Logger LOGGER = Logger.getLogger(BatchMetrics.class.getName());
+
+  private final long beginTime = System.nanoTime();
+  private final LongAdder files = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder pages = new LongAdder();
+  private final LongAdder scans = new LongAdder();
+  private final LongAdder natives = new LongAdder();
+  private final LongAdder invalids = new LongAdder();
+  private final LongAdder images = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private volatile IntSupplier queueDepth = () -> 0;
+
+  /**
+   * Register the metrics in the platform MBean server. A failure is only logged, the run goes on
+   * without JMX.
+   *
+   * @param appName name of the application, part of the object name
+   */
+  public void register(String appName) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("fr.bnf.toolslab:type=BatchMetrics,name=" + appName);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      LOGGER.warning("Unable to register the metrics in JMX: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Define how to read the number of files waiting for a worker.
+   *
+   * @param queueDepth supplier of the queue depth
+   */
+  public void setQueueDepth(IntSupplier queueDepth) {
+    this.queueDepth = queueDepth;
+  }
+
+  /**
+   * A file starts being processed.
+   */
+  public void fileStarted() {
+    inFlight.incrementAndGet();
+  }
+
+  /**
+   * A file has been detected.
+   *
+   * @param fd result of the detection
+   * @param size size of the file in bytes
+   */
+  public void fileFinished(FileDescriptor fd, long size) {
+    countResult(fd);
+    fileFinished(size, fd.getNbPages(), fd.isValid(), fd.getTimeToProcess());
+  }
+
+  /**
+   * A file has been answered from the cache of the results. It is counted with the processed
+   * files, but its lookup time is kept out of the processing times.
+   *
+   * @param fd result read from the cache
+   * @param size size of the file in bytes
+   */
+  public void fileCached(FileDescriptor fd, long size) {
+    cacheHits.increment();
+    countResult(fd);
+    count(size, fd.getNbPages(), fd.isValid());
+  }
+
+  private void countResult(FileDescriptor fd) {
+    if (fd.isValid()) {
+      if (fd.isScan()) {
+        scans.increment();
+      } else {
+        natives.increment();
+      }
+    }
+  }
+
+  /**
+   * A file has been processed.
+   *
+   * @param size size of the file in bytes
+   * @param nbPages number of pages
+   * @param valid <code>false</code> if the file couldn't be read
+   * @param millis processing time in milliseconds
+   */
+  public void fileFinished(long size, int nbPages, boolean valid, long millis) {
+    inFlight.decrementAndGet();
+    count(size, nbPages, valid);
+    latency.record(millis);
+  }
+
+  private void count(long size, int nbPages, boolean valid) {
+    files.increment();
+    bytes.add(size);
+    pages.add(nbPages);
+    if (!valid) {
+      invalids.increment();
+    }
+  }
+
+  /**
+   * Count extracted images.
+   *
+   * @param nbImages number of new images
+   */
+  public void addImages(int nbImages) {
+    images.add(nbImages);
+  }
+
+  /**
+   * Getter for the histogram of the processing times.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public long getFilesProcessed() {
+    return files.sum();
+  }
+
+  @Override
+  public long getBytesProcessed() {
+    return bytes.sum();
+  }
+
+  @Override
+  public long getPagesProcessed() {
+    return pages.sum();
+  }
+
+  @Override
+  public long getScanCount() {
+    return scans.sum();
+  }
+
+  @Override
+  public long getNativeCount() {
+    return natives.sum();
+  }
+
+  @Override
+  public long getInvalidCount() {
+    return invalids.sum();
+  }
+
+  @Override
+  public long getImagesExtracted() {
+    return images.sum();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  @Override
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return queueDepth.getAsInt();
+  }
+
+  @Override
+  public double getElapsedSeconds() {
+    return (System.nanoTime() - beginTime) / 1e9;
+  }
+
+  private double rate(long value) {
+    double elapsed = getElapsedSeconds();
+    return elapsed <= 0 ? 0 : value / elapsed;
+  }
+
+  @Override
+  public double getFilesPerSecond() {
+    return rate(getFilesProcessed());
+  }
+
+  @Override
+  public double getBytesPerSecond() {
+    return rate(getBytesProcessed());
+  }
+
+  @Override
+  public double getPagesPerSecond() {
+    return rate(getPagesProcessed());
+  }
+
+  @Override
+  public long getLatencyP50Millis() {
+    return latency.percentile(0.5);
+  }
+
+  @Override
+  public long getLatencyP90Millis() {
+    return latency.percentile(0.9);
+  }
+
+  @Override
+  public long getLatencyP99Millis() {
+    return latency.percentile(0.99);
+  }
+
+  @Override
+  public long getLatencyMaxMillis() {
+    return latency.getMax();
+  }
+}
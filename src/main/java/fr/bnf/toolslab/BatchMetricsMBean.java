@@ -0,0 +1,43 @@
+package fr.bnf.toolslab;
+
+/**
+ * Management interface of {@link BatchMetrics}, visible in JConsole or any JMX client.
+ */
+public interface BatchMetricsMBean {
+
+  long getFilesProcessed();
+
+  long getBytesProcessed();
+
+  long getPagesProcessed();
+
+  long getScanCount();
+
+  long getNativeCount();
+
+  long getInvalidCount();
+
+  long getImagesExtracted();
+
+  long getCacheHits();
+
+  int getInFlight();
+
+  int getQueueDepth();
+
+  double getElapsedSeconds();
+
+  double getFilesPerSecond();
+
+  double getBytesPerSecond();
+
+  double getPagesPerSecond();
+
+  long getLatencyP50Millis();
+
+  long getLatencyP90Millis();
+
+  long getLatencyP99Millis();
+
+  long getLatencyMaxMillis();
+}
@@ -0,0 +1,181 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sink writing a compact binary format: a header, then each result prefixed by its length as a
+ * varint, so that a reader can skip the records it doesn't understand.
+ *
+ * <p>
+ * A record holds the path (modified UTF-8), the processing time, a byte of flags (1 for valid, 2
+ * for scan, 4 for sampled), the numbers of pages and images and the resolution, all numbers as
+ * varints. A sampled result goes on with the number of samples and the confidence in units of
+ * 1/10000. With the metrics, the values of {@link ScanMetrics} follow as varints; the reader
+ * detects them from the length of the record.
+ * </p>
+ */
+public class BinaryResultSink extends AbstractResultSink {
+  static final int MAGIC = 0x53505253; // "SPRS"
+  static final int VERSION = 2;
+  private static final int FLAG_VALID = 1;
+  private static final int FLAG_SCAN = 2;
+  // Since version 2
+  private static final int FLAG_SAMPLED = 4;
+
+  /**
+   * Buffer for one record, reused for every row.
+   */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+    RecordBuffer() {
+      super(256);
+    }
+
+    void writeTo(DataOutputStream dest) throws IOException {
+      ResultCache.writeVarInt(dest, count);
+      dest.write(buf, 0, count);
+    }
+  }
+
+  private final DataOutputStream out;
+  private final RecordBuffer record = new RecordBuffer();
+  private final DataOutputStream recordOut = new DataOutputStream(record);
+  private final boolean withMetrics;
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @throws IOException exception if error while writing the header
+   */
+  public BinaryResultSink(OutputStream out, FlushPolicy flushPolicy) throws IOException {
+    this(out, flushPolicy, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to append the metrics to each record
+   * @throws IOException exception if error while writing the header
+   */
+  public BinaryResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics)
+      throws IOException {
+    this(out, flushPolicy, withMetrics, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to append the metrics to each record
+   * @param withHeader <code>false</code> when appending to a stream already holding the header
+   * @throws IOException exception if error while writing the header
+   */
+  public BinaryResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics,
+      boolean withHeader) throws IOException {
+    super(flushPolicy);
+    this.withMetrics = withMetrics;
+    this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    if (withHeader) {
+      this.out.writeInt(MAGIC);
+      this.out.writeByte(VERSION);
+    }
+  }
+
+  @Override
+  protected void writeRow(FileDescriptor fd) throws IOException {
+    record.reset();
+    recordOut.writeUTF(fd.getFile().getPath());
+    ResultCache.writeVarLong(recordOut, fd.getTimeToProcess());
+    boolean sampled = fd.getNbSamples() > 0;
+    recordOut.writeByte((fd.isValid() ? FLAG_VALID : 0) | (fd.isScan() ? FLAG_SCAN : 0)
+        | (sampled ? FLAG_SAMPLED : 0));
+    ResultCache.writeVarInt(recordOut, fd.getNbPages());
+    ResultCache.writeVarInt(recordOut, fd.getNbImages());
+    ResultCache.writeVarInt(recordOut, fd.getResolution());
+    if (sampled) {
+      ResultCache.writeVarInt(recordOut, fd.getNbSamples());
+      ResultCache.writeVarInt(recordOut, ResultCache.confidenceUnits(fd.getConfidence()));
+    }
+    if (withMetrics) {
+      for (long value : fd.getMetrics().values()) {
+        ResultCache.writeVarLong(recordOut, value);
+      }
+    }
+    record.writeTo(out);
+  }
+
+  @Override
+  protected void flushBuffer() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Check the header of a binary result stream.
+   *
+   * @param in stream positioned at its beginning
+   * @throws IOException exception if the stream is not in the binary format
+   */
+  public static void readHeader(DataInputStream in) throws IOException {
+    int magic = in.readInt();
+    int version = in.readUnsignedByte();
+    if (magic != MAGIC || version < 1 || version > VERSION) {
+      throw new IOException("Not a binary result stream");
+    }
+  }
+
+  /**
+   * Read the next result of a binary result stream.
+   *
+   * @param in stream positioned after the header or a previous record
+   * @return the result or <code>null</code> at the end of the stream
+   * @throws IOException exception if error while reading or if the last record is truncated
+   */
+  public static FileDescriptor read(DataInputStream in) throws IOException {
+    int length;
+    try {
+      length = ResultCache.readVarInt(in);
+    } catch (EOFException e) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(bytes));
+    FileDescriptor fd = new FileDescriptor(new File(recordIn.readUTF()));
+    fd.setTimeToProcess(ResultCache.readVarLong(recordIn));
+    int flags = recordIn.readUnsignedByte();
+    fd.setValid((flags & FLAG_VALID) != 0);
+    fd.setScan((flags & FLAG_SCAN) != 0);
+    fd.setNbPages(ResultCache.readVarInt(recordIn));
+    fd.setNbImages(ResultCache.readVarInt(recordIn));
+    fd.setResolution(ResultCache.readVarInt(recordIn));
+    if ((flags & FLAG_SAMPLED) != 0) {
+      fd.setNbSamples(ResultCache.readVarInt(recordIn));
+      fd.setConfidence(ResultCache.confidence(ResultCache.readVarInt(recordIn)));
+    }
+    if (recordIn.available() > 0) {
+      long[] values = new long[ScanMetrics.HEADERS.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = ResultCache.readVarLong(recordIn);
+      }
+      fd.getMetrics().setValues(values);
+    }
+    return fd;
+  }
+}
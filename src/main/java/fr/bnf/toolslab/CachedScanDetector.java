@@ -0,0 +1,123 @@
+package fr.bnf.toolslab;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.FileSystemException;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Detector answering from a {@link ResultCache} when the file is unchanged, and delegating to
+ * another detector otherwise.
+ */
+public class CachedScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(CachedScanDetector.class.getName());
+
+  private final AbstractScanDetector delegate;
+  private final ResultCache cache;
+  private final BatchMetrics metrics;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate detector used when the result is not in the cache
+   * @param cache store of the results
+   */
+  public CachedScanDetector(AbstractScanDetector delegate, ResultCache cache) {
+    this(delegate, cache, null);
+  }
+
+  /**
+   * Constructor counting the hits in the metrics of the run. The delegate should be a
+   * {@link MeteredScanDetector}, so that only the detected files feed the processing times.
+   *
+   * @param delegate detector used when the result is not in the cache
+   * @param cache store of the results
+   * @param metrics metrics of the run, may be <code>null</code>
+   */
+  public CachedScanDetector(AbstractScanDetector delegate, ResultCache cache,
+      BatchMetrics metrics) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return delegate.isLight();
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    delegate.setLoadPolicy(loadPolicy);
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    delegate.setSamplingPolicy(samplingPolicy);
+  }
+
+  @Override
+  void process(FileDescriptor fd) throws IOException {
+    File file = fd.getFile();
+    String path = file.getAbsolutePath();
+    // Read before parsing, so that a file modified meanwhile is detected again next time
+    long size = fd.getLength();
+    long mtime = fd.getLastModified();
+    long beginTime = System.currentTimeMillis();
+    String key = getCacheKey();
+    if (cache.lookup(path, size, mtime, key, fd)) {
+      LOGGER.fine("Found " + file.getName() + " in cache");
+      // Report the time of this run, not the one of the cached detection
+      fd.setTimeToProcess(System.currentTimeMillis() - beginTime);
+      if (metrics != null) {
+        metrics.fileCached(fd, size);
+      }
+      return;
+    }
+    try {
+      delegate.process(fd);
+    } catch (IOException e) {
+      if (isParseError(e)) {
+        cache.record(path, size, mtime, key, fd);
+      }
+      throw e;
+    }
+    cache.record(path, size, mtime, key, fd);
+  }
+
+  /**
+   * Tell whether a failure comes from the document itself, which fails the same way as long as
+   * the file is unchanged, rather than from the reading of the file, which may succeed next time.
+   * The failures of the reading are told by their type, whoever wraps them: a missing or locked
+   * file, an interrupted or closed read, or a file truncated while mapped.
+   *
+   * @param e failure of the detection
+   * @return <code>true</code> if the failure can be kept in the cache
+   */
+  static boolean isParseError(IOException e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof FileNotFoundException || cause instanceof FileSystemException
+          || cause instanceof InterruptedIOException || cause instanceof ClosedChannelException
+          || cause instanceof MappedRandomAccessRead.TruncatedException) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    delegate.parse(ctx, document);
+  }
+}
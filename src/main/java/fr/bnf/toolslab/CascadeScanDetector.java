@@ -0,0 +1,103 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Detector running a cascade of detectors on the same loaded document, from the cheapest to the
+ * most expensive. Each stage either decides or leaves the result ambiguous, see
+ * {@link ScanContext#isAmbiguous()}, and the first stage which decides ends the detection; the
+ * last stage always ends it. The name of the deciding stage is kept in the file descriptor. The
+ * stages share the context, so that they must not leave in it anything else than the memoized
+ * image summaries.
+ */
+public class CascadeScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(CascadeScanDetector.class.getName());
+
+  private final List<AbstractScanDetector> stages;
+
+  /**
+   * Constructor.
+   *
+   * @param stages detectors to run in order, the last one deciding the remaining documents
+   */
+  public CascadeScanDetector(List<AbstractScanDetector> stages) {
+    if (stages.isEmpty()) {
+      throw new IllegalArgumentException("A cascade needs at least one stage");
+    }
+    this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+  }
+
+  /**
+   * Build the default cascade: size per page, producer, object table, resources of the sampled
+   * pages, then the interpretation of all the pages.
+   *
+   * @param light <code>true</code> to interpret the pages with a {@link LightImageEngine}
+   * @return the detector
+   */
+  public static CascadeScanDetector createDefault(boolean light) {
+    return new CascadeScanDetector(Arrays.asList(new SizeRatioScanDetector(),
+        new MetadataScanDetector(), new XrefScanDetector(), new ResourceScanDetector(),
+        new StreamPdfBoxScanDetector(light)));
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    for (AbstractScanDetector stage : stages) {
+      stage.setLoadPolicy(loadPolicy);
+    }
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    for (AbstractScanDetector stage : stages) {
+      stage.setSamplingPolicy(samplingPolicy);
+    }
+  }
+
+  @Override
+  protected boolean isLight() {
+    for (AbstractScanDetector stage : stages) {
+      if (stage.isLight()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Getter for the stages.
+   *
+   * @return the detectors run in order
+   */
+  public List<AbstractScanDetector> getStages() {
+    return stages;
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    for (int i = 0; i < stages.size(); i++) {
+      AbstractScanDetector stage = stages.get(i);
+      ctx.ambiguous = false;
+      // Nothing of a previous ambiguous stage is reported
+      fd.resetResult();
+      ctx.metrics.enter(Phase.TRAVERSAL);
+      stage.parse(ctx, document);
+      if (!ctx.ambiguous || i == stages.size() - 1) {
+        fd.setDecidedBy(stage.getName());
+        LOGGER.fine(fd.getFile().getName() + " decided by " + stage.getName() + " in "
+            + ctx.elapsed() + " ms");
+        return;
+      }
+    }
+  }
+}
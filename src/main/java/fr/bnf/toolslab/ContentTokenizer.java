@@ -0,0 +1,306 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal tokenizer of content streams. Unlike the PDFBox parser it builds no object for the
+ * tokens: strings, arrays and dictionaries are skipped, the last number and the last name are kept
+ * in reusable fields and the operators are only compared. It is not thread-safe.
+ */
+public class ContentTokenizer {
+
+  /** End of the stream. */
+  public static final int EOF = -1;
+  /** A number, see {@link #getNumber()}. */
+  public static final int NUMBER = 0;
+  /** A name, see {@link #getName()}. */
+  public static final int NAME = 1;
+  /** An operator, see {@link #isOperator(String)}. */
+  public static final int OPERATOR = 2;
+  /** Any other operand: string, boolean, null, or a delimiter of an array or a dictionary. */
+  public static final int OTHER = 3;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int pos = 0;
+  private int limit = 0;
+
+  private double number;
+  // Last regular token read, the operator after a call to next()
+  private byte[] token = new byte[64];
+  private int tokenLength;
+  // Last name read, kept until the next name
+  private byte[] name = new byte[64];
+  private int nameLength;
+
+  /**
+   * Constructor.
+   *
+   * @param in decoded content stream, not closed by the tokenizer
+   */
+  public ContentTokenizer(InputStream in) {
+    this.in = in;
+  }
+
+  private int peek() throws IOException {
+    if (pos == limit) {
+      limit = in.read(buffer, 0, BUFFER_SIZE);
+      pos = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[pos] & 0xff;
+  }
+
+  private int read() throws IOException {
+    int c = peek();
+    if (c != -1) {
+      pos++;
+    }
+    return c;
+  }
+
+  static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+  }
+
+  static boolean isDelimiter(int c) {
+    return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']' || c == '{'
+        || c == '}' || c == '/' || c == '%';
+  }
+
+  /**
+   * Read the next token.
+   *
+   * @return the kind of the token, {@link #EOF} at the end of the stream
+   * @throws IOException exception if error while reading the stream
+   */
+  public int next() throws IOException {
+    int c = read();
+    while (true) {
+      while (isWhitespace(c)) {
+        c = read();
+      }
+      if (c != '%') {
+        break;
+      }
+      // Comment up to the end of line
+      while (c != -1 && c != '\n' && c != '\r') {
+        c = read();
+      }
+    }
+    switch (c) {
+      case -1:
+        return EOF;
+      case '/':
+        readRegular(-1);
+        byte[] swap = name;
+        name = token;
+        nameLength = tokenLength;
+        token = swap;
+        tokenLength = 0;
+        return NAME;
+      case '(':
+        skipString();
+        return OTHER;
+      case '<':
+        if (peek() == '<') {
+          read();
+        } else {
+          // Hexadecimal string
+          while (c != -1 && c != '>') {
+            c = read();
+          }
+        }
+        return OTHER;
+      case '>':
+        if (peek() == '>') {
+          read();
+        }
+        return OTHER;
+      case '[':
+      case ']':
+      case '{':
+      case '}':
+      case ')':
+        return OTHER;
+      default:
+        break;
+    }
+    if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+      readNumber(c);
+      return NUMBER;
+    }
+    readRegular(c);
+    if (isOperator("true") || isOperator("false") || isOperator("null")) {
+      return OTHER;
+    }
+    return OPERATOR;
+  }
+
+  private void readRegular(int first) throws IOException {
+    tokenLength = 0;
+    if (first != -1) {
+      append(first);
+    }
+    int c = peek();
+    while (c != -1 && !isWhitespace(c) && !isDelimiter(c)) {
+      append(c);
+      pos++;
+      c = peek();
+    }
+  }
+
+  private void append(int c) {
+    if (tokenLength == token.length) {
+      byte[] larger = new byte[token.length * 2];
+      System.arraycopy(token, 0, larger, 0, tokenLength);
+      token = larger;
+    }
+    token[tokenLength++] = (byte) c;
+  }
+
+  private void readNumber(int first) throws IOException {
+    boolean negative = false;
+    int c = first;
+    // Be lenient with the doubled signs written by some producers
+    while (c == '+' || c == '-') {
+      negative ^= c == '-';
+      c = nextNumberChar(true);
+    }
+    double value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      c = nextNumberChar(false);
+    }
+    if (c == '.') {
+      double scale = 0.1;
+      c = nextNumberChar(false);
+      while (c >= '0' && c <= '9') {
+        value += (c - '0') * scale;
+        scale /= 10;
+        c = nextNumberChar(false);
+      }
+    }
+    number = negative ? -value : value;
+  }
+
+  private int nextNumberChar(boolean withSign) throws IOException {
+    int c = peek();
+    if ((c >= '0' && c <= '9') || c == '.' || (withSign && (c == '+' || c == '-'))) {
+      pos++;
+      return c;
+    }
+    return -1;
+  }
+
+  private void skipString() throws IOException {
+    int depth = 1;
+    while (depth > 0) {
+      int c = read();
+      if (c == -1) {
+        return;
+      } else if (c == '\\') {
+        read();
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Skip the data of an inline image, just after its <code>ID</code> operator, up to and including
+   * the <code>EI</code> operator.
+   *
+   * @throws IOException exception if error while reading the stream
+   */
+  public void skipInlineImageData() throws IOException {
+    // A single white space separates ID from the data
+    if (isWhitespace(peek())) {
+      read();
+    }
+    // Look for EI surrounded by white spaces, like PDFBox does
+    int previous = ' ';
+    int c = read();
+    while (c != -1) {
+      if (c == 'E' && isWhitespace(previous) && peek() == 'I') {
+        read();
+        int after = peek();
+        if (after == -1 || isWhitespace(after) || isDelimiter(after)) {
+          return;
+        }
+        previous = 'I';
+      } else {
+        previous = c;
+      }
+      c = read();
+    }
+  }
+
+  /**
+   * Getter for the value of the last {@link #NUMBER} token.
+   *
+   * @return the value
+   */
+  public double getNumber() {
+    return number;
+  }
+
+  /**
+   * Getter for the last {@link #NAME} token, without the leading slash and with the
+   * <code>#xx</code> escapes decoded.
+   *
+   * @return the name
+   */
+  public String getName() {
+    byte[] bytes = new byte[nameLength];
+    int length = 0;
+    for (int i = 0; i < nameLength; i++) {
+      int c = name[i] & 0xff;
+      if (c == '#' && i + 2 < nameLength) {
+        int hi = Character.digit(name[i + 1], 16);
+        int lo = Character.digit(name[i + 2], 16);
+        if (hi >= 0 && lo >= 0) {
+          c = (hi << 4) | lo;
+          i += 2;
+        }
+      }
+      bytes[length++] = (byte) c;
+    }
+    // Names are UTF-8 since PDF 1.2, fall back to Latin-1 for the older ones
+    try {
+      return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes, 0, length))
+          .toString();
+    } catch (CharacterCodingException e) {
+      return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  /**
+   * Compare the last {@link #OPERATOR} token without building a string.
+   *
+   * @param operator operator to compare with, in ASCII
+   * @return <code>true</code> if the token is this operator
+   */
+  public boolean isOperator(String operator) {
+    if (operator.length() != tokenLength) {
+      return false;
+    }
+    for (int i = 0; i < tokenLength; i++) {
+      if (token[i] != operator.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
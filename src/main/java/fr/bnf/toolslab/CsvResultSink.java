@@ -0,0 +1,133 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sink writing the historical <code>;</code> separated format, header included. Optionally, the
+ * number of pages examined by the sampling and the confidence reached follow, empty when the pages
+ * are not sampled, then the metrics. With any of them, the rows are padded to the full header so
+ * that these columns are aligned.
+ */
+public class CsvResultSink extends AbstractResultSink {
+  protected static final List<String> SAMPLING_HEADERS =
+      Collections.unmodifiableList(Arrays.asList("NB SAMPLES", "CONFIDENCE"));
+
+  private final Writer writer;
+  private final StringBuilder line = new StringBuilder(128);
+  private final boolean withMetrics;
+  private final boolean withSampling;
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @throws IOException exception if error while writing the header
+   */
+  public CsvResultSink(OutputStream out, FlushPolicy flushPolicy) throws IOException {
+    this(out, flushPolicy, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to add the columns of the metrics
+   * @throws IOException exception if error while writing the header
+   */
+  public CsvResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics)
+      throws IOException {
+    this(out, flushPolicy, withMetrics, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to add the columns of the metrics
+   * @param withHeader <code>false</code> when appending to a file already holding the header
+   * @throws IOException exception if error while writing the header
+   */
+  public CsvResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics,
+      boolean withHeader) throws IOException {
+    this(out, flushPolicy, withMetrics, false, withHeader);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to add the columns of the metrics
+   * @param withSampling <code>true</code> to add the columns of the sampling
+   * @param withHeader <code>false</code> when appending to a file already holding the header
+   * @throws IOException exception if error while writing the header
+   */
+  public CsvResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics,
+      boolean withSampling, boolean withHeader) throws IOException {
+    super(flushPolicy);
+    this.withMetrics = withMetrics;
+    this.withSampling = withSampling;
+    this.writer =
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    if (withHeader) {
+      writer.write(FileDescriptor.headString());
+      if (withSampling) {
+        writer.write(FileDescriptor.SEP);
+        writer.write(String.join(FileDescriptor.SEP, SAMPLING_HEADERS));
+      }
+      if (withMetrics) {
+        writer.write(FileDescriptor.SEP);
+        writer.write(ScanMetrics.headString());
+      }
+      writer.write(System.lineSeparator());
+    }
+  }
+
+  @Override
+  protected void writeRow(FileDescriptor fd) throws IOException {
+    line.setLength(0);
+    fd.appendTo(line);
+    if (withSampling || withMetrics) {
+      // The name of the file may hold the separator
+      for (int nbColumns = fd.nbColumns(); nbColumns < FileDescriptor.HEADERS.size();
+          nbColumns++) {
+        line.append(FileDescriptor.SEP);
+      }
+    }
+    if (withSampling) {
+      line.append(FileDescriptor.SEP);
+      if (fd.getNbSamples() > 0) {
+        line.append(fd.getNbSamples()).append(FileDescriptor.SEP);
+        appendConfidence(line, fd.getConfidence());
+      } else {
+        line.append(FileDescriptor.SEP);
+      }
+    }
+    if (withMetrics) {
+      fd.getMetrics().appendTo(line.append(FileDescriptor.SEP));
+    }
+    line.append(System.lineSeparator());
+    writer.append(line);
+  }
+
+  @Override
+  protected void flushBuffer() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
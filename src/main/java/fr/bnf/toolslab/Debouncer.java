@@ -0,0 +1,124 @@
+package fr.bnf.toolslab;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Debouncing of the changes of files being written. A file is stable once it received no event
+ * during a quiet period and its size and modification time didn't change meanwhile. It is not
+ * thread-safe.
+ */
+final class Debouncer {
+
+  /**
+   * Reader of the current state of a file.
+   */
+  interface StateReader {
+    /**
+     * Read the state of a file.
+     *
+     * @param file file to read
+     * @return the size and the modification time, <code>null</code> if the file is gone
+     */
+    long[] read(Path file);
+  }
+
+  /**
+   * Last known state of a changed file.
+   */
+  private static final class Pending {
+    long size;
+    long mtime;
+    long lastEvent;
+  }
+
+  private final long quietMs;
+  // In the order of the first event, so that the files are processed in drop order
+  private final Map<Path, Pending> pending = new LinkedHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param quietMs delay without change before a file is stable
+   */
+  Debouncer(long quietMs) {
+    if (quietMs < 0) {
+      throw new IllegalArgumentException("Quiet period must not be negative: " + quietMs);
+    }
+    this.quietMs = quietMs;
+  }
+
+  /**
+   * Record a change of a file.
+   *
+   * @param file changed file
+   * @param size size of the file after the change
+   * @param mtime modification time of the file after the change
+   * @param now time of the change in milliseconds
+   */
+  void changed(Path file, long size, long mtime, long now) {
+    Pending state = pending.computeIfAbsent(file, k -> new Pending());
+    state.size = size;
+    state.mtime = mtime;
+    state.lastEvent = now;
+  }
+
+  /**
+   * Time at which the next file may become stable.
+   *
+   * @return the time in milliseconds, {@link Long#MAX_VALUE} if no file is pending
+   */
+  long nextDeadline() {
+    long deadline = Long.MAX_VALUE;
+    for (Pending state : pending.values()) {
+      deadline = Math.min(deadline, state.lastEvent + quietMs);
+    }
+    return deadline;
+  }
+
+  /**
+   * Remove the files which became stable. The files still changing wait for another quiet period,
+   * the files gone are forgotten.
+   *
+   * @param now current time in milliseconds
+   * @param reader reader of the current state of the files
+   * @return the stable files, in the order of their first event
+   */
+  List<Path> takeStable(long now, StateReader reader) {
+    List<Path> stable = new ArrayList<>();
+    Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Path, Pending> entry = it.next();
+      Pending state = entry.getValue();
+      if (now - state.lastEvent < quietMs) {
+        continue;
+      }
+      long[] current = reader.read(entry.getKey());
+      if (current == null) {
+        it.remove();
+      } else if (current[0] == state.size && current[1] == state.mtime) {
+        it.remove();
+        stable.add(entry.getKey());
+      } else {
+        // Written without event, like over some network file systems
+        state.size = current[0];
+        state.mtime = current[1];
+        state.lastEvent = now;
+      }
+    }
+    return stable;
+  }
+
+  /**
+   * Getter for the number of files waiting to be stable.
+   *
+   * @return number of files
+   */
+  int size() {
+    return pending.size();
+  }
+}
@@ -22,7 +22,7 @@ public class DpiCounter {
    * @param value value to round
    * @return rounded value
    */
-  private int getRoundedValue(int value) {
+  static int getRoundedValue(int value) {
     return ((value + 5) / 10) * 10;
   }
 
@@ -42,9 +42,41 @@ public class ExtractImageApp {
   private File outputDir;
   private boolean keepName = false;
   private String defaultProducer;
+  private LoadPolicy loadPolicy = LoadPolicy.DEFAULT;
+  private final BatchMetrics batchMetrics;
+  private File promFile;
+  private long promPeriod = 15;
+  private File journalFile;
+  private boolean resume = false;
+  private long archiveBuffers = ArchiveReader.DEFAULT_BUFFERS;
+  private ArchiveReader archiveReader;
+  private boolean journalError = false;
+
+  /**
+   * Constructor.
+   */
+  public ExtractImageApp() {
+    this(LoadPolicy.DEFAULT, new BatchMetrics());
+  }
+
+  /**
+   * Constructor for an application embedding the extraction, like the {@link ScanServer}.
+   *
+   * @param loadPolicy how to load the documents
+   * @param batchMetrics metrics to feed
+   */
+  ExtractImageApp(LoadPolicy loadPolicy, BatchMetrics batchMetrics) {
+    this.loadPolicy = loadPolicy;
+    this.batchMetrics = batchMetrics;
+  }
 
   protected void parseArgs(String[] args) throws IllegalArgumentException {
     String dest = ".";
+    LoadPolicy.Mode memoryMode = LoadPolicy.Mode.MAIN_MEMORY;
+    LoadPolicy.Input input = LoadPolicy.Input.BUFFERED;
+    long maxMainMemory = -1;
+    File scratchDir = null;
+    MemoryBudget budget = null;
     int index = 0;
     int previousIndex = -1;
     while (index < args.length - 1) {
@@ -72,9 +104,45 @@ public class ExtractImageApp {
         defaultProducer = args[index + 1];
         index += 2;
         LOGGER.fine(String.format("DEfault producer %s at %d", defaultProducer, index));
+      } else if ("-memory".equals(args[index])) {
+        memoryMode = LoadPolicy.parseMode(args[index + 1]);
+        index += 2;
+      } else if ("-input".equals(args[index])) {
+        input = LoadPolicy.parseInput(args[index + 1]);
+        index += 2;
+      } else if ("-maxmem".equals(args[index])) {
+        maxMainMemory = LoadPolicy.parseSize(args[index + 1]);
+        index += 2;
+      } else if ("-scratch".equals(args[index])) {
+        scratchDir = new File(args[index + 1]);
+        index += 2;
+      } else if ("-budget".equals(args[index])) {
+        budget = new MemoryBudget(LoadPolicy.parseSize(args[index + 1]));
+        index += 2;
+      } else if ("-archivemem".equals(args[index])) {
+        archiveBuffers = LoadPolicy.parseSize(args[index + 1]);
+        index += 2;
+      } else if ("-prom".equals(args[index])) {
+        promFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-promperiod".equals(args[index])) {
+        promPeriod = PrometheusTextFile.parsePeriod(args[index + 1]);
+        index += 2;
+      } else if ("-journal".equals(args[index])) {
+        journalFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-resume".equals(args[index])) {
+        resume = true;
+        index++;
       }
       LOGGER.fine(String.format("Parsing %d to %d", index, args.length));
     }
+    if (resume && journalFile == null) {
+      throw new IllegalArgumentException("-resume needs -journal");
+    }
+    loadPolicy = new LoadPolicy(memoryMode, maxMainMemory, scratchDir, budget, input);
+    archiveReader = new ArchiveReader(
+        archiveBuffers > 0 ? new MemoryBudget(archiveBuffers) : null, scratchDir);
     outputDir = new File(dest);
     try {
       Files.createDirectories(outputDir.toPath());
@@ -92,29 +160,104 @@ public class ExtractImageApp {
 
 
   protected void process() throws IOException {
-    if (inputFile.isFile()) {
+    batchMetrics.register(ExtractImageApp.class.getSimpleName());
+    try (PrometheusTextFile prometheus = promFile == null ? null
+        : new PrometheusTextFile(promFile, batchMetrics, "extractimage", promPeriod);
+        RunJournal journal = journalFile == null ? null : RunJournal.open(journalFile, resume)) {
+      if (journal != null && !keepName && journal.getNextNumber() >= 0) {
+        // Number the images as the interrupted run would have done
+        NUM.set(journal.getNextNumber());
+      }
+      processInput(journal);
+      if (journal != null) {
+        LOGGER.info(String.format("Journal skipped %d completed files", journal.getSkipped()));
+      }
+    }
+  }
+
+  /**
+   * Extract the images of the input file or of the PDF files of the input directory or archive.
+   *
+   * @param journal journal of the completed files, may be <code>null</code>
+   * @throws IOException exception if error while walking the directory or writing the journal
+   */
+  private void processInput(RunJournal journal) throws IOException {
+    if (inputFile.isFile() && !ArchiveReader.isArchive(inputFile.toPath())) {
       int i = processFile(inputFile, outputDir);
       System.out.println(inputFile.getName() + " process " + i + " images");
-    } else if (inputFile.isDirectory()) {
+    } else {
+      // A directory or an archive, walked alike
       // Retrieve only the .pdf files
       final PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:*.pdf");
       Files.walkFileTree(inputFile.toPath(), new SimpleFileVisitor<Path>() {
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-          if (pdfMatcher.matches(file.getFileName())) {
-            int i = processFile(file.toFile(), outputDir);
-            LOGGER.info("DIR " + file.getFileName() + " process " + i + " images");
-            if (!keepName) {
-              int newNum = NUM.get() + i;
-              NUM.set(newNum);
-            }
+          if (pdfMatcher.matches(file.getFileName())
+              && (journal == null || !journal.isDone(file.toFile()))) {
+            extract(new FileDescriptor(file.toFile()), journal);
+          } else if (ArchiveReader.isArchive(file)) {
+            readArchive(file, journal);
           }
-          return FileVisitResult.CONTINUE;
+          return journalError || Thread.currentThread().isInterrupted() ? FileVisitResult.TERMINATE
+              : FileVisitResult.CONTINUE;
         }
       });
     }
   }
 
+  /**
+   * Extract the images of the PDF entries of an archive. A damaged archive is logged, the images
+   * of its entries already read are kept.
+   *
+   * @param archive archive to read
+   * @param journal journal of the completed files, may be <code>null</code>
+   */
+  private void readArchive(Path archive, RunJournal journal) {
+    try {
+      archiveReader.read(archive.toFile(), entry -> journal == null || !journal.isDone(entry),
+          entry -> {
+            FileDescriptor fd = new FileDescriptor(entry.getFile());
+            fd.setEntry(entry);
+            try {
+              if (!journalError) {
+                extract(fd, journal);
+              }
+            } finally {
+              entry.close();
+            }
+          });
+    } catch (IOException e) {
+      LOGGER.warning("Unable to read the archive " + archive + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Extract the images of a document met by the walk and journal it.
+   *
+   * @param fd file descriptor of the document
+   * @param journal journal of the completed files, may be <code>null</code>
+   */
+  private void extract(FileDescriptor fd, RunJournal journal) {
+    int first = NUM.get();
+    int i = processDocument(fd, outputDir);
+    LOGGER.info("DIR " + fd.getFile().getName() + " process " + i + " images");
+    if (journal != null) {
+      try {
+        journal.recordExtraction(fd.getFile(), first, i);
+      } catch (IOException e) {
+        LOGGER.severe("Unable to write the journal: " + e.getMessage());
+        journalError = true;
+        return;
+      }
+    }
+    if (!keepName) {
+      int newNum = NUM.get() + i;
+      NUM.set(newNum);
+    }
+  }
+
   protected Extractor findExtractor(PDImageXObject image, int dpiX, int dpiY) {
     List<COSName> filters = image.getStream().getFilters();
 
@@ -164,6 +307,30 @@ public class ExtractImageApp {
 
   }
 
+  /**
+   * Prefix of the images named after their document: the name of the file without its extension.
+   * For an archive entry, the name of the archive and the path of the entry are kept, so that the
+   * entries of the same name don't overwrite the images of each other.
+   *
+   * @param inputFile file of the document, <code>archive!/path</code> for an archive entry
+   * @return the prefix
+   */
+  static String outputPrefix(File inputFile) {
+    String inputName = inputFile.getName();
+    if (ArchiveReader.isEntryFile(inputFile)) {
+      String path = inputFile.getPath();
+      int idxEntry = path.indexOf(ArchiveReader.ENTRY_SEPARATOR);
+      String archiveName = new File(path.substring(0, idxEntry)).getName();
+      inputName = archiveName + "_"
+          + path.substring(idxEntry + ArchiveReader.ENTRY_SEPARATOR.length()).replace(File.separatorChar, '_');
+    }
+    int idxLastPoint = inputName.lastIndexOf('.');
+    if (idxLastPoint == -1) {
+      return inputName;
+    }
+    return inputName.substring(0, idxLastPoint);
+  }
+
   /**
    * Extract the images of a given PDF file.
    *
@@ -173,10 +340,30 @@ public class ExtractImageApp {
    * @return number of extracted images
    */
   protected int processFile(File inputFile, File outputDir) {
+    return processDocument(new FileDescriptor(inputFile), outputDir);
+  }
+
+  /**
+   * Extract the images of a PDF document, read from its file or from the archive entry being
+   * processed.
+   *
+   * @param fd file descriptor of the document
+   * @param outputDir directory to save the images
+   * @return number of extracted images
+   */
+  int processDocument(FileDescriptor fd, File outputDir) {
+    File inputFile = fd.getFile();
     LOGGER.info(String.format("ProcessFile %s to %s with %d", inputFile.getName(),
         outputDir.getName(), NUM.get()));
     int nbImages = 0;
-    try (PDDocument document = PDDocument.load(inputFile)) {
+    int nbPages = 0;
+    boolean valid = false;
+    long begin = System.currentTimeMillis();
+    batchMetrics.fileStarted();
+    try (LoadedDocument loaded = loadPolicy.load(fd)) {
+      PDDocument document = loaded.getDocument();
+      nbPages = document.getNumberOfPages();
+      valid = true;
       PDDocumentInformation info = document.getDocumentInformation();
       // String header = document.getVersion();
       LOGGER.info("Find document version " + document.getVersion());
@@ -208,16 +395,7 @@ public class ExtractImageApp {
             if (extension.equals("png")) {
               extension = "tiff"; // extract uncompressed TIFF instead of png
             }
-            String outPrefix = "image";
-            if (keepName) {
-              String inputName = inputFile.getName();
-              int idxLastPoint = inputName.lastIndexOf('.');
-              if (idxLastPoint == -1) {
-                outPrefix = inputName;
-              } else {
-                outPrefix = inputName.substring(0, idxLastPoint);
-              }
-            }
+            String outPrefix = keepName ? outputPrefix(inputFile) : "image";
             String outName =
                 String.format("%s_%03d.%s", outPrefix, NUM.get() + nbImages, extension);
 
@@ -242,6 +420,10 @@ public class ExtractImageApp {
     } catch (IOException e) {
       System.err.println("Error process file [" + inputFile.getName() + "] : " + e.getMessage());
       return 0;
+    } finally {
+      batchMetrics.fileFinished(fd.getLength(), nbPages, valid,
+          System.currentTimeMillis() - begin);
+      batchMetrics.addImages(nbImages);
     }
     return nbImages;
   }
@@ -252,7 +434,11 @@ public class ExtractImageApp {
    */
   public static void usage() {
     System.err.println("Usage : " + ExtractImageApp.class.getName()
-        + " [-init 1] [-keep false] [-dest <outputPath>] <fileToExtractFrom>");
+        + " [-init 1] [-keep false] [-dest <outputPath>] [-input buffered|mapped]"
+        + " [-memory main|temp|mixed] [-maxmem 64m] [-scratch <dir>] [-budget 2g]"
+        + " [-archivemem 64m] [-prom <file.prom> [-promperiod <seconds>]]"
+        + " [-journal <file> [-resume]]"
+        + " <fileDirectoryOrArchiveToExtractFrom>");
     System.exit(1);
   }
 
@@ -1,7 +1,6 @@
 package fr.bnf.toolslab;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -13,15 +12,22 @@ public class FileDescriptor {
   protected static final String SEP = ";";
 
   File file;
+  // Entry of an archive the document is read from, null for a plain file
+  ArchiveEntry entry;
   boolean isValid;
   int nbPages;
   int nbImages;
 
   boolean isScan;
   int resolution;
+  int nbSamples;
+  double confidence;
+  String decidedBy;
 
   long timeToProcess;
 
+  ScanMetrics metrics = new ScanMetrics();
+
   public FileDescriptor(File f) {
     this.file = f;
   }
@@ -44,6 +50,42 @@ public class FileDescriptor {
     this.file = file;
   }
 
+  /**
+   * Getter for the archive entry being processed.
+   *
+   * @return the entry, <code>null</code> if the document is read from its file
+   */
+  public ArchiveEntry getEntry() {
+    return entry;
+  }
+
+  /**
+   * Setter for the archive entry being processed, the file being then only its name.
+   *
+   * @param entry the entry to read the document from
+   */
+  public void setEntry(ArchiveEntry entry) {
+    this.entry = entry;
+  }
+
+  /**
+   * Getter for the size of the document.
+   *
+   * @return number of bytes of the file or of the archive entry
+   */
+  public long getLength() {
+    return entry == null ? file.length() : entry.getSize();
+  }
+
+  /**
+   * Getter for the modification time of the document.
+   *
+   * @return time in milliseconds of the file or of the archive entry
+   */
+  public long getLastModified() {
+    return entry == null ? file.lastModified() : entry.getLastModified();
+  }
+
   /**
    * Boolean to know if the file is valid.
    *
@@ -134,6 +176,74 @@ public class FileDescriptor {
     this.resolution = resolution;
   }
 
+  /**
+   * Getter for the number of pages examined by the sampling.
+   *
+   * @return number of pages, 0 if the detector didn't sample the pages
+   */
+  public int getNbSamples() {
+    return nbSamples;
+  }
+
+  /**
+   * Setter for the number of pages examined by the sampling.
+   *
+   * @param nbSamples number of pages
+   */
+  public void setNbSamples(int nbSamples) {
+    this.nbSamples = nbSamples;
+  }
+
+  /**
+   * Getter for the confidence of the decision taken on the sampled pages.
+   *
+   * @return the confidence, between 0.5 and 1, 0 if the detector didn't sample the pages
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Setter for the confidence of the decision taken on the sampled pages.
+   *
+   * @param confidence the confidence
+   */
+  public void setConfidence(double confidence) {
+    this.confidence = confidence;
+  }
+
+  /**
+   * Getter for the detector which decided, when several detectors are run in cascade.
+   *
+   * @return the name of the detector, <code>null</code> without cascade
+   */
+  public String getDecidedBy() {
+    return decidedBy;
+  }
+
+  /**
+   * Setter for the detector which decided.
+   *
+   * @param decidedBy the name of the detector
+   */
+  public void setDecidedBy(String decidedBy) {
+    this.decidedBy = decidedBy;
+  }
+
+  /**
+   * Forget the result of a detection: pages, images, type, resolution, sampling and deciding
+   * detector. The validity, the time and the metrics are kept.
+   */
+  public void resetResult() {
+    nbPages = 0;
+    nbImages = 0;
+    isScan = false;
+    resolution = 0;
+    nbSamples = 0;
+    confidence = 0;
+    decidedBy = null;
+  }
+
   /**
    * Getter for the time of processing.
    *
@@ -152,6 +262,24 @@ public class FileDescriptor {
     this.timeToProcess = timeToProcess;
   }
 
+  /**
+   * Getter for the instrumentation of the detection.
+   *
+   * @return the metrics
+   */
+  public ScanMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Setter for the instrumentation of the detection.
+   *
+   * @param metrics the metrics to set
+   */
+  public void setMetrics(ScanMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   protected static final List<String> HEADERS =
       Collections.unmodifiableList(Arrays.asList("FILENAME", "PROCESSING TIME", "VALID", "NB PAGES",
           "NB IMAGES", "TYPE", "RESOLUTION"));
@@ -165,25 +293,52 @@ public class FileDescriptor {
     return String.join(SEP, HEADERS);
   }
 
-  @Override
-  public String toString() {
-    List<String> values = new ArrayList<>(10);
-    values.add(file.getName());
-    values.add(Long.toString(timeToProcess));
+  /**
+   * Append the description of the file to a builder, in the format of {@link #headString()}.
+   *
+   * @param sb builder to fill
+   * @return the builder
+   */
+  public StringBuilder appendTo(StringBuilder sb) {
+    sb.append(getDisplayName()).append(SEP).append(timeToProcess).append(SEP);
     if (isValid) {
-      values.add("valid");
-      values.add(Integer.toString(nbPages));
-      values.add(Integer.toString(nbImages));
+      sb.append("valid").append(SEP).append(nbPages).append(SEP).append(nbImages).append(SEP);
       if (isScan) {
-        values.add("scanned pdf");
-        values.add(Integer.toString(resolution));
+        sb.append("scanned pdf").append(SEP).append(resolution);
       } else {
-        values.add("native pdf");
+        sb.append("native pdf");
       }
     } else {
-      values.add("not valid");
+      sb.append("not valid");
+    }
+    return sb;
+  }
 
+  /**
+   * Name of the document in the results: the name of the file, or <code>archive!/path</code> for
+   * an archive entry, so that the entries of the same name in different archives are told apart.
+   * The entry may have been released already, as when a journal is replayed.
+   *
+   * @return the name to display
+   */
+  String getDisplayName() {
+    return entry != null || ArchiveReader.isEntryFile(file) ? file.getPath() : file.getName();
+  }
+
+  /**
+   * Number of columns written by {@link #appendTo(StringBuilder)}, which depends on the result.
+   *
+   * @return the number of columns
+   */
+  int nbColumns() {
+    if (!isValid) {
+      return 3;
     }
-    return String.join(SEP, values);
+    return isScan ? 7 : 6;
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder(64)).toString();
   }
 }
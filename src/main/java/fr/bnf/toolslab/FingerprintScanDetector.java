@@ -0,0 +1,121 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Detector predicting the verdict from the history of the producer of the document, see
+ * {@link ProducerFingerprints}. A prediction is only checked on one sampled page, walking its
+ * resources: a scan must have a single image at the predicted density, a native document no
+ * covering image. Without prediction, or when the check fails, the fallback detector decides and
+ * its verdict enriches the history. The provisional verdicts are never recorded.
+ */
+public class FingerprintScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(FingerprintScanDetector.class.getName());
+
+  private final ProducerFingerprints fingerprints;
+  private final AbstractScanDetector fallback;
+
+  /**
+   * Constructor.
+   *
+   * @param fingerprints history of the producers, shared by all the threads
+   * @param fallback detector used without prediction
+   */
+  public FingerprintScanDetector(ProducerFingerprints fingerprints,
+      AbstractScanDetector fallback) {
+    this.fingerprints = fingerprints;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public String getName() {
+    return super.getName() + "+" + fallback.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return fallback.isLight();
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    fallback.setLoadPolicy(loadPolicy);
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    fallback.setSamplingPolicy(samplingPolicy);
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    PDDocumentInformation info = document.getDocumentInformation();
+    String key = info == null ? null
+        : ProducerFingerprints.key(info.getProducer(), info.getCreator(), document.getVersion());
+    ProducerFingerprints.Prediction prediction = fingerprints.predict(key);
+    if (prediction != null && check(ctx, document, prediction)) {
+      fingerprints.confirmed();
+      confirm(fd, prediction);
+      return;
+    }
+    fallback.parse(ctx, document);
+    if (!ctx.ambiguous) {
+      fingerprints.record(key, fd.isScan(), fd.getResolution());
+    }
+  }
+
+  /**
+   * Report a prediction confirmed by the check. A scanned document holds one image per page, a
+   * native document is reported without images, as by the other quick detectors.
+   *
+   * @param fd file descriptor holding the number of pages, receiving the verdict
+   * @param prediction confirmed prediction
+   */
+  void confirm(FileDescriptor fd, ProducerFingerprints.Prediction prediction) {
+    fd.setScan(prediction.isScan());
+    fd.setResolution(prediction.getResolution());
+    fd.setNbImages(prediction.isScan() ? fd.getNbPages() : 0);
+    fd.setDecidedBy(getName());
+  }
+
+  /**
+   * Check a prediction on one sampled page.
+   *
+   * @param ctx context of the detection
+   * @param document document to check
+   * @param prediction verdict predicted for the document
+   * @return <code>true</code> if the page agrees with the prediction
+   * @throws IOException exception if error while reading the page
+   */
+  private boolean check(ScanContext ctx, PDDocument document,
+      ProducerFingerprints.Prediction prediction) throws IOException {
+    int nbPages = document.getNumberOfPages();
+    ctx.fd.setNbPages(nbPages);
+    if (nbPages == 0) {
+      return !prediction.isScan();
+    }
+    Phase previous = ctx.metrics.enter(Phase.SAMPLING);
+    PDPage page = document.getPage(pickSamples(ctx, 1, nbPages)[0]);
+    ImageSummary summary = summarizeImages(ctx, page.getResources());
+    int dpiFound = 0;
+    if (summary.getCount() == 1) {
+      PDRectangle rect = page.getMediaBox();
+      DimensionInfo dimPage = new DimensionInfo((long) rect.getWidth(), (long) rect.getHeight());
+      dpiFound = DpiCounter.getRoundedValue(
+          findDensity(summary.getFirst(), dimPage, page.getUserUnit()));
+    }
+    ctx.metrics.enter(previous);
+    LOGGER.fine("Spot-check of " + ctx.fd.getFile().getName() + ": density " + dpiFound
+        + ", predicted " + prediction.getResolution());
+    return dpiFound == prediction.getResolution();
+  }
+}
@@ -0,0 +1,65 @@
+package fr.bnf.toolslab;
+
+/**
+ * Rule to decide when a {@link ResultSink} pushes its buffer to the destination: after a number of
+ * rows, after a delay since the last flush, whichever comes first. The delay is only checked when
+ * a row is written, the remaining rows are always flushed on close.
+ */
+public class FlushPolicy {
+  /** Flush after every row, for interactive use. */
+  public static final FlushPolicy EACH_ROW = new FlushPolicy(1, 0);
+  /** Flush every 1000 rows or every second. */
+  public static final FlushPolicy DEFAULT = new FlushPolicy(1000, 1000);
+  /** Only flush when the buffer is full and on close. */
+  public static final FlushPolicy ON_CLOSE = new FlushPolicy(0, 0);
+
+  private final int maxRows;
+  private final long maxDelayMs;
+
+  /**
+   * Constructor.
+   *
+   * @param maxRows number of rows between two flushes, 0 to ignore
+   * @param maxDelayMs maximum delay in milliseconds between two flushes, 0 to ignore
+   */
+  public FlushPolicy(int maxRows, long maxDelayMs) {
+    if (maxRows < 0 || maxDelayMs < 0) {
+      throw new IllegalArgumentException("Flush policy must not be negative");
+    }
+    this.maxRows = maxRows;
+    this.maxDelayMs = maxDelayMs;
+  }
+
+  /**
+   * Check if a flush is due.
+   *
+   * @param pendingRows number of rows written since the last flush
+   * @param lastFlushMs time of the last flush in milliseconds
+   * @param nowMs current time in milliseconds
+   * @return <code>true</code> if the sink should flush
+   */
+  public boolean shouldFlush(int pendingRows, long lastFlushMs, long nowMs) {
+    if (maxRows > 0 && pendingRows >= maxRows) {
+      return true;
+    }
+    return maxDelayMs > 0 && pendingRows > 0 && nowMs - lastFlushMs >= maxDelayMs;
+  }
+
+  /**
+   * Getter for the number of rows between two flushes.
+   *
+   * @return the number of rows, 0 if ignored
+   */
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * Getter for the maximum delay between two flushes.
+   *
+   * @return the delay in milliseconds, 0 if ignored
+   */
+  public long getMaxDelayMs() {
+    return maxDelayMs;
+  }
+}
@@ -0,0 +1,226 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Watcher of a directory tree, giving the PDF files created or modified in it once they are
+ * stable, see {@link Debouncer}. The subdirectories are watched too, those created later included.
+ * When the events overflow, the tree is walked again for the files modified since the watch
+ * started. The files present before the watch, like those dropped while the application was
+ * stopped, are given too when accepted by a catch-up filter.
+ */
+public class FolderWatcher implements Closeable {
+  protected static final Logger LOGGER = Logger.getLogger(FolderWatcher.class.getName());
+
+  /**
+   * Destination of the stable files.
+   */
+  public interface FileHandler {
+    /**
+     * Handle a stable file.
+     *
+     * @param file the file
+     * @throws InterruptedException if interrupted while waiting to hand the file
+     */
+    void handle(File file) throws InterruptedException;
+  }
+
+  private final Path root;
+  private final FileHandler handler;
+  private final Debouncer debouncer;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:*.pdf");
+  private final long startTime = System.currentTimeMillis();
+  private long nbFiles;
+
+  /**
+   * Constructor, registering the directory tree.
+   *
+   * @param root root of the tree to watch
+   * @param quietMs delay without change before a file is stable
+   * @param catchUp filter of the PDF files present before the watch to give,
+   *        <code>null</code> to give none
+   * @param handler destination of the stable files, called from the watching thread
+   * @throws IOException exception if error while registering the directories
+   */
+  public FolderWatcher(Path root, long quietMs, Predicate<Path> catchUp, FileHandler handler)
+      throws IOException {
+    this.root = root;
+    this.handler = handler;
+    this.debouncer = new Debouncer(quietMs);
+    this.watchService = root.getFileSystem().newWatchService();
+    registerTree(root, Long.MIN_VALUE, catchUp == null ? file -> false : catchUp);
+    LOGGER.info(String.format("Watching %d directories under %s, %d files to catch up",
+        directories.size(), root, debouncer.size()));
+  }
+
+  /**
+   * Watch the tree until {@link #close()} is called or the thread is interrupted. The files still
+   * changing at that time are not given.
+   */
+  public void run() {
+    try {
+      while (true) {
+        long deadline = debouncer.nextDeadline();
+        WatchKey key;
+        if (deadline == Long.MAX_VALUE) {
+          key = watchService.take();
+        } else {
+          long timeout = Math.max(0, deadline - System.currentTimeMillis());
+          key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        if (key != null) {
+          processEvents(key);
+        }
+        for (Path file : debouncer.takeStable(System.currentTimeMillis(), FolderWatcher::read)) {
+          nbFiles++;
+          handler.handle(file.toFile());
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      LOGGER.fine("Watch service closed");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    LOGGER.info(String.format("Stopped watching %s after %d files, %d left to the next start",
+        root, nbFiles, debouncer.size()));
+  }
+
+  private void processEvents(WatchKey key) {
+    Path dir = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        LOGGER.warning("Events lost under " + root + ", walking the tree again");
+        registerModified(root);
+        continue;
+      }
+      if (dir == null) {
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+        // A directory moved in may already hold files
+        registerModified(path);
+      } else if (pdfMatcher.matches(path.getFileName())) {
+        observe(path);
+      }
+    }
+    if (!key.reset()) {
+      // Directory deleted
+      directories.remove(key);
+    }
+  }
+
+  /**
+   * Register a directory met while watching, with its subdirectories, and observe the PDF files
+   * modified in it since the start of the watch. A directory already gone, like a temporary one,
+   * is only logged.
+   *
+   * @param start root of the directories to register
+   */
+  private void registerModified(Path start) {
+    try {
+      registerTree(start, startTime, file -> true);
+    } catch (IOException e) {
+      LOGGER.warning("Unable to watch " + start + ": " + e);
+    }
+  }
+
+  /**
+   * Register a directory and its subdirectories.
+   *
+   * @param start root of the directories to register
+   * @param modifiedSince time from which the modified PDF files are observed
+   * @param filter filter of the PDF files to observe
+   */
+  private void registerTree(Path start, long modifiedSince, Predicate<Path> filter)
+      throws IOException {
+    Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        try {
+          WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY);
+          directories.put(key, dir);
+        } catch (NoSuchFileException e) {
+          // Removed meanwhile, like a temporary directory
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (pdfMatcher.matches(file.getFileName())
+            && attrs.lastModifiedTime().toMillis() >= modifiedSince && filter.test(file)) {
+          observe(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        // Removed meanwhile
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+        // Entries removed while listing them
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void observe(Path file) {
+    long[] state = read(file);
+    if (state != null) {
+      debouncer.changed(file, state[0], state[1], System.currentTimeMillis());
+    }
+  }
+
+  private static long[] read(Path file) {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      return attrs.isRegularFile() ? new long[] {attrs.size(), attrs.lastModifiedTime().toMillis()}
+          : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stop watching. Can be called from another thread, the watching thread then leaves
+   * {@link #run()}.
+   *
+   * @throws IOException exception if error while closing the watch service
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
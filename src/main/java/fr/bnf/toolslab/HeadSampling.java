@@ -0,0 +1,22 @@
+package fr.bnf.toolslab;
+
+/**
+ * Selection of the first pages of a document, which are the cheapest to reach in the page tree and
+ * in the file.
+ */
+public class HeadSampling implements SamplingStrategy {
+
+  @Override
+  public int[] pick(int nbSamples, int nbPages, long seed) {
+    int[] pages = new int[Math.min(nbSamples, nbPages)];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = i;
+    }
+    return pages;
+  }
+
+  @Override
+  public String toString() {
+    return "head";
+  }
+}
@@ -3,6 +3,7 @@ package fr.bnf.toolslab;
 import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -13,7 +14,10 @@ import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDTransparencyGroup;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.util.Matrix;
@@ -30,9 +34,17 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
   private final Map<COSStream, Integer> processedInlineImages;
   private final AtomicInteger imageCounter;
   private final List<DimensionInfo> imageDimensions;
+  private final List<ImagePlacement> imagePlacements = new ArrayList<>();
+  private final ScanMetrics metrics;
+  private final double[] pageBox;
 
   protected ImageGraphicsEngine(PDPage page, Map<COSStream, Integer> processedInlineImages,
       AtomicInteger imageCounter) {
+    this(page, processedInlineImages, imageCounter, new ScanMetrics());
+  }
+
+  protected ImageGraphicsEngine(PDPage page, Map<COSStream, Integer> processedInlineImages,
+      AtomicInteger imageCounter, ScanMetrics metrics) {
     super(page);
     // Replace the normal draw object to avoid building the images...
     addOperator(new DrawObjectOperator());
@@ -46,11 +58,18 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
     this.processedInlineImages = processedInlineImages;
     this.imageCounter = imageCounter;
     this.imageDimensions = new ArrayList<>();
-
+    this.metrics = metrics;
+    this.pageBox = ImagePlacement.toBox(page.getCropBox());
   }
 
   void run() throws IOException {
     PDPage page = getPage();
+    metrics.pagesInterpreted++;
+    Iterator<PDStream> contents = page.getContentStreams();
+    while (contents.hasNext()) {
+      // Encoded length, the decoded one is only known by the parser
+      metrics.contentBytes += contents.next().getLength();
+    }
     try {
     processPage(page);
     } catch (NullPointerException e) {
@@ -68,6 +87,7 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
     int imageNumber = 0;
     if (pdImage instanceof PDImageXObject) {
       PDImageXObject xobject = (PDImageXObject) pdImage;
+      metrics.xobjectsVisited++;
       Integer cachedNumber = processedInlineImages.get(xobject.getCOSObject());
       if (cachedNumber != null) {
         // skip duplicate image
@@ -77,6 +97,7 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
       processedInlineImages.put(xobject.getCOSObject(), imageNumber);
     } else if (pdImage instanceof PDImageWrap) {
       PDImageWrap xobject = (PDImageWrap) pdImage;
+      metrics.xobjectsVisited++;
       Integer cachedNumber = processedInlineImages.get(xobject.getCOSObject());
       if (cachedNumber != null) {
         // skip duplicate image
@@ -93,6 +114,24 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
     processImage(pdImage, imageNumber);
   }
 
+  @Override
+  public void showForm(PDFormXObject form) throws IOException {
+    countForm(form);
+    super.showForm(form);
+  }
+
+  @Override
+  public void showTransparencyGroup(PDTransparencyGroup form) throws IOException {
+    countForm(form);
+    super.showTransparencyGroup(form);
+  }
+
+  private void countForm(PDFormXObject form) {
+    metrics.xobjectsVisited++;
+    metrics.formsRecursed++;
+    metrics.contentBytes += form.getCOSObject().getLength();
+  }
+
   @Override
   public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
     /* DO NOTHING */
@@ -176,6 +215,13 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
     DimensionInfo dim = new DimensionInfo(pdImage.getWidth(), pdImage.getHeight());
     imageDimensions.add(dim);
     LOGGER.fine("Found dimensions " + dim);
+    Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+    ImagePlacement placement = new ImagePlacement(dim.width, dim.height,
+        new double[] {ctm.getScaleX(), ctm.getShearY(), ctm.getShearX(), ctm.getScaleY(),
+            ctm.getTranslateX(), ctm.getTranslateY()},
+        pageBox, getPage().getUserUnit());
+    imagePlacements.add(placement);
+    LOGGER.fine("Found placement " + placement);
   }
 
   /**
@@ -196,4 +242,13 @@ public class ImageGraphicsEngine extends PDFGraphicsStreamEngine { // TODO try P
     return imageDimensions;
   }
 
+  /**
+   * Getter for the placements of the images, in the same order as the dimensions.
+   *
+   * @return the imagePlacements
+   */
+  public List<ImagePlacement> getImagePlacements() {
+    return imagePlacements;
+  }
+
 }
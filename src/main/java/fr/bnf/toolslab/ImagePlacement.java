@@ -0,0 +1,116 @@
+package fr.bnf.toolslab;
+
+import java.util.Locale;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Placement of an image on a page, computed from the current transformation matrix when the image
+ * is drawn. The image space is the unit square, so the matrix gives the bounding box of the image
+ * in user space, the part of the page it covers and its effective density along each of its axes,
+ * whether it is scaled, rotated or only partly visible.
+ */
+public final class ImagePlacement {
+
+  private final DimensionInfo dimension;
+  private final double minX;
+  private final double minY;
+  private final double maxX;
+  private final double maxY;
+  private final double coverage;
+  private final double dpiX;
+  private final double dpiY;
+
+  /**
+   * Constructor.
+   *
+   * @param width width of the image in pixels
+   * @param height height of the image in pixels
+   * @param ctm current transformation matrix [a b c d e f]
+   * @param box visible box of the page [llx lly urx ury], usually the CropBox
+   * @param userUnit size of the user space unit in multiples of 1/72 inch
+   */
+  public ImagePlacement(long width, long height, double[] ctm, double[] box, float userUnit) {
+    this.dimension = new DimensionInfo(width, height);
+    // Corners of the unit square
+    double x0 = ctm[4];
+    double y0 = ctm[5];
+    double x1 = ctm[0] + ctm[4];
+    double y1 = ctm[1] + ctm[5];
+    double x2 = ctm[2] + ctm[4];
+    double y2 = ctm[3] + ctm[5];
+    double x3 = ctm[0] + ctm[2] + ctm[4];
+    double y3 = ctm[1] + ctm[3] + ctm[5];
+    this.minX = Math.min(Math.min(x0, x1), Math.min(x2, x3));
+    this.minY = Math.min(Math.min(y0, y1), Math.min(y2, y3));
+    this.maxX = Math.max(Math.max(x0, x1), Math.max(x2, x3));
+    this.maxY = Math.max(Math.max(y0, y1), Math.max(y2, y3));
+
+    double boxWidth = Math.abs(box[2] - box[0]);
+    double boxHeight = Math.abs(box[3] - box[1]);
+    double overlapX = Math.min(maxX, Math.max(box[0], box[2]))
+        - Math.max(minX, Math.min(box[0], box[2]));
+    double overlapY = Math.min(maxY, Math.max(box[1], box[3]))
+        - Math.max(minY, Math.min(box[1], box[3]));
+    this.coverage = boxWidth <= 0 || boxHeight <= 0 || overlapX <= 0 || overlapY <= 0 ? 0
+        : overlapX * overlapY / (boxWidth * boxHeight);
+
+    // Length in inches of the image axes once placed
+    double lengthX = Math.hypot(ctm[0], ctm[1]) * userUnit / 72.0;
+    double lengthY = Math.hypot(ctm[2], ctm[3]) * userUnit / 72.0;
+    this.dpiX = lengthX == 0 ? 0 : width / lengthX;
+    this.dpiY = lengthY == 0 ? 0 : height / lengthY;
+  }
+
+  /**
+   * Convert a rectangle of the page.
+   *
+   * @param rect rectangle, like the CropBox
+   * @return the box [llx lly urx ury]
+   */
+  public static double[] toBox(PDRectangle rect) {
+    return new double[] {rect.getLowerLeftX(), rect.getLowerLeftY(), rect.getUpperRightX(),
+        rect.getUpperRightY()};
+  }
+
+  /**
+   * Getter for the size of the image in pixels.
+   *
+   * @return the dimension
+   */
+  public DimensionInfo getDimension() {
+    return dimension;
+  }
+
+  /**
+   * Getter for the fraction of the page box covered by the bounding box of the image.
+   *
+   * @return the coverage, between 0 and 1
+   */
+  public double getCoverage() {
+    return coverage;
+  }
+
+  /**
+   * Getter for the density along the width of the image.
+   *
+   * @return the density in pixels per inch
+   */
+  public double getDpiX() {
+    return dpiX;
+  }
+
+  /**
+   * Getter for the density along the height of the image.
+   *
+   * @return the density in pixels per inch
+   */
+  public double getDpiY() {
+    return dpiY;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%s at [%.1f %.1f %.1f %.1f] covering %.3f, %.1fx%.1f dpi",
+        dimension, minX, minY, maxX, maxY, coverage, dpiX, dpiY);
+  }
+}
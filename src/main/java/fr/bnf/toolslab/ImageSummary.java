@@ -0,0 +1,70 @@
+package fr.bnf.toolslab;
+
+/**
+ * Immutable summary of the images reachable from a resources dictionary, directly or through its
+ * forms: the number of images and the dimension of the first one.
+ */
+public final class ImageSummary {
+
+  public static final ImageSummary EMPTY = new ImageSummary(0, DimensionInfo.EMPTY);
+
+  final int count;
+  final DimensionInfo first;
+
+  private ImageSummary(int count, DimensionInfo first) {
+    this.count = count;
+    this.first = first;
+  }
+
+  /**
+   * Add an image to the summary.
+   *
+   * @param dimImage dimension of the image
+   * @return a new summary, or this one if the image is empty
+   */
+  public ImageSummary plus(DimensionInfo dimImage) {
+    if (DimensionInfo.EMPTY.equals(dimImage)) {
+      return this;
+    }
+    return new ImageSummary(count + 1, count == 0 ? dimImage : first);
+  }
+
+  /**
+   * Add the images of another summary, found after the ones of this summary.
+   *
+   * @param other summary to add
+   * @return a new summary, or one of the two if the other is empty
+   */
+  public ImageSummary plus(ImageSummary other) {
+    if (other.count == 0) {
+      return this;
+    }
+    if (count == 0) {
+      return other;
+    }
+    return new ImageSummary(count + other.count, first);
+  }
+
+  /**
+   * Getter for the number of images.
+   *
+   * @return the number of images
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Getter for the dimension of the first image.
+   *
+   * @return the dimension, {@link DimensionInfo#EMPTY} if there is no image
+   */
+  public DimensionInfo getFirst() {
+    return first;
+  }
+
+  @Override
+  public String toString() {
+    return count + " images, first " + first;
+  }
+}
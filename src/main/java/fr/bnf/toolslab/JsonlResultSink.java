@@ -0,0 +1,143 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sink writing one JSON object per line.
+ */
+public class JsonlResultSink extends AbstractResultSink {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer writer;
+  private final StringBuilder line = new StringBuilder(256);
+  private final boolean withMetrics;
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   */
+  public JsonlResultSink(OutputStream out, FlushPolicy flushPolicy) {
+    this(out, flushPolicy, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param out destination, closed with the sink
+   * @param flushPolicy when to flush
+   * @param withMetrics <code>true</code> to add a <code>metrics</code> object
+   */
+  public JsonlResultSink(OutputStream out, FlushPolicy flushPolicy, boolean withMetrics) {
+    super(flushPolicy);
+    this.withMetrics = withMetrics;
+    this.writer =
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+
+  @Override
+  protected void writeRow(FileDescriptor fd) throws IOException {
+    line.setLength(0);
+    appendObject(line, fd, withMetrics);
+    line.append('\n');
+    writer.append(line);
+  }
+
+  /**
+   * Append the JSON object of a result.
+   *
+   * @param line builder to fill
+   * @param fd result to write
+   * @param withMetrics <code>true</code> to add a <code>metrics</code> object
+   */
+  static void appendObject(StringBuilder line, FileDescriptor fd, boolean withMetrics) {
+    line.append("{\"file\":");
+    appendString(line, fd.getFile().getName());
+    line.append(",\"path\":");
+    appendString(line, fd.getFile().getPath());
+    line.append(",\"time\":").append(fd.getTimeToProcess());
+    line.append(",\"valid\":").append(fd.isValid());
+    if (fd.isValid()) {
+      line.append(",\"pages\":").append(fd.getNbPages());
+      line.append(",\"images\":").append(fd.getNbImages());
+      line.append(",\"scan\":").append(fd.isScan());
+      if (fd.isScan()) {
+        line.append(",\"resolution\":").append(fd.getResolution());
+      }
+      if (fd.getDecidedBy() != null) {
+        line.append(",\"stage\":");
+        appendString(line, fd.getDecidedBy());
+      }
+      if (fd.getNbSamples() > 0) {
+        line.append(",\"samples\":").append(fd.getNbSamples());
+        appendConfidence(line.append(",\"confidence\":"), fd.getConfidence());
+      }
+    }
+    if (withMetrics) {
+      line.append(",\"metrics\":{");
+      long[] values = fd.getMetrics().values();
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          line.append(',');
+        }
+        appendString(line, ScanMetrics.HEADERS.get(i));
+        line.append(':').append(values[i]);
+      }
+      line.append('}');
+    }
+    line.append('}');
+  }
+
+  /**
+   * Append a JSON string literal.
+   *
+   * @param sb builder to fill
+   * @param value string to quote
+   */
+  static void appendString(StringBuilder sb, String value) {
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  @Override
+  protected void flushBuffer() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,96 @@
+package fr.bnf.toolslab;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in milliseconds, with log-linear buckets: 8 buckets per power
+ * of two, so that a percentile is known within 12.5%. Recording is a single atomic increment and
+ * the memory doesn't depend on the number of values.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  // Up to 2^40 ms, far more than any processing time
+  private static final int MAX_EXPONENT = 40;
+
+  private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  static int bucketOf(long value) {
+    if (value < SUB_COUNT) {
+      return (int) Math.max(0, value);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return (MAX_EXPONENT + 1) * SUB_COUNT - 1;
+    }
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  /**
+   * Highest value of a bucket.
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_COUNT) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+    int sub = bucket % SUB_COUNT;
+    long lower = (1L << exponent) | ((long) sub << (exponent - SUB_BITS));
+    return lower + (1L << (exponent - SUB_BITS)) - 1;
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param millis duration in milliseconds
+   */
+  public void record(long millis) {
+    long value = Math.max(0, millis);
+    counts.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Estimate a percentile.
+   *
+   * @param quantile between 0 and 1
+   * @return the upper bound of the bucket holding the percentile, 0 if no value
+   */
+  public long percentile(double quantile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+}
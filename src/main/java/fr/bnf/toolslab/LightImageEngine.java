@@ -0,0 +1,284 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+/**
+ * Engine to find the images drawn on a page, giving the same results as {@link ImageGraphicsEngine}
+ * for a fraction of the cost. Only <code>q</code>, <code>Q</code>, <code>cm</code>,
+ * <code>Do</code> and the inline images are interpreted, on top of a {@link ContentTokenizer}:
+ * the other operators and their operands are skipped without building any object, and no
+ * graphics state is cloned.
+ */
+public class LightImageEngine {
+  protected static final Logger LOGGER = Logger.getLogger(LightImageEngine.class.getName());
+
+  /** Same limit as {@link DrawObjectOperator}. */
+  private static final int MAX_LEVEL = 50;
+
+  private final PDPage page;
+  private final Map<COSStream, Integer> processedInlineImages;
+  private final AtomicInteger imageCounter;
+  private final List<DimensionInfo> imageDimensions = new ArrayList<>();
+  private final List<ImagePlacement> imagePlacements = new ArrayList<>();
+  private final ScanMetrics metrics;
+  private final double[] pageBox;
+
+  // Current transformation matrix [a b c d e f] and the saved ones
+  private final double[] ctm = {1, 0, 0, 1, 0, 0};
+  private final List<double[]> ctmStack = new ArrayList<>();
+  private int ctmDepth = 0;
+  // The saved states under this depth belong to the callers of the current form
+  private int ctmFloor = 0;
+  // Last numeric operands, the most recent at the end
+  private final double[] operands = new double[6];
+  private int nbOperands = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param page page to interpret
+   * @param processedInlineImages images already found in the document, to skip the duplicates
+   * @param imageCounter counter of the images of the document
+   * @param metrics instrumentation of the detection
+   */
+  protected LightImageEngine(PDPage page, Map<COSStream, Integer> processedInlineImages,
+      AtomicInteger imageCounter, ScanMetrics metrics) {
+    this.page = page;
+    this.processedInlineImages = processedInlineImages;
+    this.imageCounter = imageCounter;
+    this.metrics = metrics;
+    this.pageBox = ImagePlacement.toBox(page.getCropBox());
+  }
+
+  void run() throws IOException {
+    metrics.pagesInterpreted++;
+    Iterator<PDStream> contents = page.getContentStreams();
+    while (contents.hasNext()) {
+      // Encoded length, the decoded one is only known by the parser
+      metrics.contentBytes += contents.next().getLength();
+    }
+    if (!page.hasContents()) {
+      return;
+    }
+    PDResources resources = page.getResources();
+    try (InputStream in = page.getContents()) {
+      processStream(in, resources == null ? null : resources.getCOSObject(), 0);
+    }
+  }
+
+  private void processStream(InputStream in, COSDictionary resources, int level)
+      throws IOException {
+    ContentTokenizer tokenizer = new ContentTokenizer(in);
+    boolean hasName = false;
+    int kind;
+    while ((kind = tokenizer.next()) != ContentTokenizer.EOF) {
+      switch (kind) {
+        case ContentTokenizer.NUMBER:
+          pushOperand(tokenizer.getNumber());
+          continue;
+        case ContentTokenizer.NAME:
+          hasName = true;
+          continue;
+        case ContentTokenizer.OTHER:
+          continue;
+        default:
+          break;
+      }
+      if (tokenizer.isOperator("q")) {
+        saveState();
+      } else if (tokenizer.isOperator("Q")) {
+        restoreState();
+      } else if (tokenizer.isOperator("cm")) {
+        if (nbOperands == operands.length) {
+          concatenate(operands[0], operands[1], operands[2], operands[3], operands[4],
+              operands[5]);
+        }
+      } else if (tokenizer.isOperator("Do")) {
+        if (hasName) {
+          drawObject(COSName.getPDFName(tokenizer.getName()), resources, level);
+        }
+      } else if (tokenizer.isOperator("BI")) {
+        inlineImage(tokenizer);
+      }
+      nbOperands = 0;
+      hasName = false;
+    }
+  }
+
+  private void pushOperand(double value) {
+    if (nbOperands == operands.length) {
+      System.arraycopy(operands, 1, operands, 0, operands.length - 1);
+      nbOperands--;
+    }
+    operands[nbOperands++] = value;
+  }
+
+  private void saveState() {
+    if (ctmDepth == ctmStack.size()) {
+      ctmStack.add(new double[6]);
+    }
+    System.arraycopy(ctm, 0, ctmStack.get(ctmDepth++), 0, 6);
+  }
+
+  private void restoreState() {
+    if (ctmDepth > ctmFloor) {
+      System.arraycopy(ctmStack.get(--ctmDepth), 0, ctm, 0, 6);
+    }
+  }
+
+  private void concatenate(double a, double b, double c, double d, double e, double f) {
+    double[] m = ctm;
+    double m0 = m[0];
+    double m1 = m[1];
+    double m2 = m[2];
+    double m3 = m[3];
+    m[0] = a * m0 + b * m2;
+    m[1] = a * m1 + b * m3;
+    m[2] = c * m0 + d * m2;
+    m[3] = c * m1 + d * m3;
+    m[4] += e * m0 + f * m2;
+    m[5] += e * m1 + f * m3;
+  }
+
+  private void drawObject(COSName name, COSDictionary resources, int level) throws IOException {
+    COSDictionary xobjects =
+        resources == null ? null : resources.getCOSDictionary(COSName.XOBJECT);
+    COSBase base = xobjects == null ? null : xobjects.getDictionaryObject(name);
+    if (!(base instanceof COSStream)) {
+      LOGGER.fine("Missing XObject: " + name.getName());
+      return;
+    }
+    COSStream stream = (COSStream) base;
+    COSName subtype = stream.getCOSName(COSName.SUBTYPE);
+    metrics.xobjectsVisited++;
+    if (COSName.IMAGE.equals(subtype)) {
+      if (processedInlineImages.get(stream) != null) {
+        // skip duplicate image
+        return;
+      }
+      processedInlineImages.put(stream, imageCounter.getAndIncrement());
+      addImage(stream.getInt(COSName.WIDTH), stream.getInt(COSName.HEIGHT));
+    } else if (COSName.FORM.equals(subtype)) {
+      if (level + 1 > MAX_LEVEL) {
+        LOGGER.severe("recursion is too deep, skipping form XObject");
+        return;
+      }
+      showForm(stream, resources, level + 1);
+    }
+  }
+
+  private void showForm(COSStream form, COSDictionary parentResources, int level)
+      throws IOException {
+    metrics.formsRecursed++;
+    metrics.contentBytes += form.getLength();
+    COSDictionary formResources = form.getCOSDictionary(COSName.RESOURCES);
+    // Like showForm, the form can't change the state of the caller
+    int depth = ctmDepth;
+    int floor = ctmFloor;
+    saveState();
+    ctmFloor = ctmDepth;
+    COSArray matrix = form.getCOSArray(COSName.MATRIX);
+    if (matrix != null && matrix.size() == 6) {
+      concatenate(number(matrix, 0), number(matrix, 1), number(matrix, 2), number(matrix, 3),
+          number(matrix, 4), number(matrix, 5));
+    }
+    try (InputStream in = form.createInputStream()) {
+      processStream(in, formResources == null ? parentResources : formResources, level);
+    } finally {
+      ctmFloor = floor;
+      ctmDepth = depth + 1;
+      restoreState();
+    }
+  }
+
+  private static double number(COSArray array, int index) {
+    COSBase base = array.getObject(index);
+    return base instanceof COSNumber ? ((COSNumber) base).floatValue() : 0;
+  }
+
+  private void inlineImage(ContentTokenizer tokenizer) throws IOException {
+    int width = 0;
+    int height = 0;
+    COSName key = null;
+    int kind;
+    while ((kind = tokenizer.next()) != ContentTokenizer.EOF) {
+      if (kind == ContentTokenizer.OPERATOR) {
+        if (tokenizer.isOperator("ID")) {
+          tokenizer.skipInlineImageData();
+        }
+        break;
+      }
+      if (kind == ContentTokenizer.NAME && key == null) {
+        key = COSName.getPDFName(tokenizer.getName());
+        continue;
+      }
+      if (kind == ContentTokenizer.NUMBER) {
+        if (COSName.W.equals(key) || COSName.WIDTH.equals(key)) {
+          width = (int) tokenizer.getNumber();
+        } else if (COSName.H.equals(key) || COSName.HEIGHT.equals(key)) {
+          height = (int) tokenizer.getNumber();
+        }
+      }
+      // Arrays are not used by the keys we look for
+      if (kind != ContentTokenizer.OTHER) {
+        key = null;
+      }
+    }
+    // Inline images can't be shared, always count them
+    imageCounter.getAndIncrement();
+    addImage(width, height);
+  }
+
+  private void addImage(int width, int height) {
+    DimensionInfo dim = new DimensionInfo(width, height);
+    imageDimensions.add(dim);
+    LOGGER.fine("Found dimensions " + dim);
+    ImagePlacement placement =
+        new ImagePlacement(width, height, ctm, pageBox, page.getUserUnit());
+    imagePlacements.add(placement);
+    LOGGER.fine("Found placement " + placement);
+  }
+
+  /**
+   * Getter for the imageCounter.
+   *
+   * @return the imageCounter
+   */
+  public AtomicInteger getImageCounter() {
+    return imageCounter;
+  }
+
+  /**
+   * Getter for all the image dimensions.
+   *
+   * @return the imageDimensions
+   */
+  public List<DimensionInfo> getImageDimensions() {
+    return imageDimensions;
+  }
+
+  /**
+   * Getter for the placements of the images, in the same order as the dimensions.
+   *
+   * @return the imagePlacements
+   */
+  public List<ImagePlacement> getImagePlacements() {
+    return imagePlacements;
+  }
+}
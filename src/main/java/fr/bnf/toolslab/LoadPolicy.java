@@ -0,0 +1,380 @@
+package fr.bnf.toolslab;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.ScratchFile;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Policy to load the PDF documents, built on the PDFBox {@link MemoryUsageSetting}. Instances are
+ * immutable and can be shared by several threads.
+ */
+public class LoadPolicy {
+  protected static final Logger LOGGER = Logger.getLogger(LoadPolicy.class.getName());
+
+  /**
+   * Where PDFBox keeps the stream buffers of a document.
+   */
+  public enum Mode {
+    /** Everything in the heap (PDFBox default). */
+    MAIN_MEMORY,
+    /** Everything in a scratch file. */
+    TEMP_FILE,
+    /** In the heap up to a number of bytes per document, then in a scratch file. */
+    MIXED
+  }
+
+  /**
+   * How PDFBox reads the PDF file.
+   */
+  public enum Input {
+    /** Small buffers filled by seeks and reads on the file (PDFBox default). */
+    BUFFERED,
+    /** The whole file memory mapped, see {@link MappedRandomAccessRead}. */
+    MAPPED
+  }
+
+  /** Same behaviour as {@link PDDocument#load(File)}. */
+  public static final LoadPolicy DEFAULT = new LoadPolicy(Mode.MAIN_MEMORY, -1, null, null);
+
+  private final Mode mode;
+  private final long maxMainMemoryBytes;
+  private final File scratchDir;
+  private final MemoryBudget budget;
+  private final Input input;
+
+  /**
+   * Constructor.
+   *
+   * @param mode where to keep the stream buffers
+   * @param maxMainMemoryBytes heap cap per document in {@link Mode#MIXED} mode, -1 for no cap in
+   *        the other modes
+   * @param scratchDir directory of the scratch files, <code>null</code> for the default temporary
+   *        directory
+   * @param budget global budget shared by the concurrent loads, <code>null</code> for none
+   */
+  public LoadPolicy(Mode mode, long maxMainMemoryBytes, File scratchDir, MemoryBudget budget) {
+    this(mode, maxMainMemoryBytes, scratchDir, budget, Input.BUFFERED);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param mode where to keep the stream buffers
+   * @param maxMainMemoryBytes heap cap per document in {@link Mode#MIXED} mode, -1 for no cap in
+   *        the other modes
+   * @param scratchDir directory of the scratch files, <code>null</code> for the default temporary
+   *        directory
+   * @param budget global budget shared by the concurrent loads, <code>null</code> for none
+   * @param input how to read the PDF files
+   */
+  public LoadPolicy(Mode mode, long maxMainMemoryBytes, File scratchDir, MemoryBudget budget,
+      Input input) {
+    if (mode == Mode.MIXED && maxMainMemoryBytes < 0) {
+      throw new IllegalArgumentException("Mixed mode needs a memory cap per document");
+    }
+    this.mode = mode;
+    this.maxMainMemoryBytes = maxMainMemoryBytes;
+    this.scratchDir = scratchDir;
+    this.budget = budget;
+    this.input = input;
+  }
+
+  /**
+   * Build the PDFBox setting for a new document.
+   *
+   * @return the memory usage setting
+   */
+  public MemoryUsageSetting toMemoryUsageSetting() {
+    MemoryUsageSetting setting;
+    switch (mode) {
+      case TEMP_FILE:
+        setting = MemoryUsageSetting.setupTempFileOnly();
+        break;
+      case MIXED:
+        setting = MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+        break;
+      case MAIN_MEMORY:
+      default:
+        setting = maxMainMemoryBytes < 0 ? MemoryUsageSetting.setupMainMemoryOnly()
+            : MemoryUsageSetting.setupMainMemoryOnly(maxMainMemoryBytes);
+        break;
+    }
+    if (scratchDir != null) {
+      setting.setTempDir(scratchDir);
+    }
+    return setting;
+  }
+
+  /**
+   * Estimate the heap used by the stream buffers of a file.
+   *
+   * @param file the PDF file
+   * @return number of bytes to reserve in the budget
+   */
+  long estimateHeapBytes(File file) {
+    return estimateHeapBytes(file.length());
+  }
+
+  /**
+   * Estimate the heap used by the stream buffers of a document.
+   *
+   * @param length size of the document in bytes
+   * @return number of bytes to reserve in the budget
+   */
+  long estimateHeapBytes(long length) {
+    switch (mode) {
+      case TEMP_FILE:
+        return 0;
+      case MIXED:
+        return Math.min(length, maxMainMemoryBytes);
+      case MAIN_MEMORY:
+      default:
+        return maxMainMemoryBytes < 0 ? length : Math.min(length, maxMainMemoryBytes);
+    }
+  }
+
+  /**
+   * Load a PDF file according to this policy. The budget is held until the returned document is
+   * closed.
+   *
+   * @param file file to load
+   * @return the loaded document
+   * @throws IOException exception if error while reading the file
+   */
+  public LoadedDocument load(File file) throws IOException {
+    long reserved = 0;
+    if (budget != null) {
+      reserved = budget.acquire(estimateHeapBytes(file));
+      LOGGER.fine("Reserved " + reserved + " bytes for " + file.getName());
+    }
+    return open(file, reserved);
+  }
+
+  /**
+   * Load a document according to this policy, from its file or from the archive entry being
+   * processed. The budget is held until the returned document is closed.
+   *
+   * @param fd file descriptor of the document
+   * @return the loaded document
+   * @throws IOException exception if error while reading the document
+   */
+  public LoadedDocument load(FileDescriptor fd) throws IOException {
+    ArchiveEntry entry = fd.getEntry();
+    if (entry == null || entry.getContent() == null) {
+      return load(entry == null ? fd.getFile() : entry.getSpillFile());
+    }
+    long reserved = 0;
+    if (budget != null) {
+      reserved = budget.acquire(estimateHeapBytes(entry.getSize()));
+    }
+    return open(entry.getContent(), reserved);
+  }
+
+  /**
+   * Load a document like {@link #load(FileDescriptor)}, unless its share of the budget is not
+   * available right now, see {@link #tryLoad(File)}.
+   *
+   * @param fd file descriptor of the document
+   * @return the loaded document, <code>null</code> if the budget is exhausted
+   * @throws IOException exception if error while reading the document
+   */
+  public LoadedDocument tryLoad(FileDescriptor fd) throws IOException {
+    ArchiveEntry entry = fd.getEntry();
+    if (entry == null || entry.getContent() == null) {
+      return tryLoad(entry == null ? fd.getFile() : entry.getSpillFile());
+    }
+    long reserved = 0;
+    if (budget != null) {
+      reserved = Math.min(estimateHeapBytes(entry.getSize()), budget.getCapacity());
+      if (!budget.tryAcquire(reserved)) {
+        return null;
+      }
+    }
+    return open(entry.getContent(), reserved);
+  }
+
+  /**
+   * Load a PDF file according to this policy, unless its share of the budget is not available
+   * right now. Used for the extra loads of a document already loaded, which must not wait for the
+   * budget held by the other documents.
+   *
+   * @param file file to load
+   * @return the loaded document, <code>null</code> if the budget is exhausted
+   * @throws IOException exception if error while reading the file
+   */
+  public LoadedDocument tryLoad(File file) throws IOException {
+    long reserved = 0;
+    if (budget != null) {
+      reserved = Math.min(estimateHeapBytes(file), budget.getCapacity());
+      if (!budget.tryAcquire(reserved)) {
+        return null;
+      }
+    }
+    return open(file, reserved);
+  }
+
+  private LoadedDocument open(File file, long reserved) throws IOException {
+    try {
+      PDDocument document = input == Input.MAPPED ? loadMapped(file)
+          : PDDocument.load(file, toMemoryUsageSetting());
+      return new LoadedDocument(document, budget, reserved);
+    } catch (IOException | RuntimeException e) {
+      if (budget != null) {
+        budget.release(reserved);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Load a document kept in memory, already read so never mapped.
+   */
+  private LoadedDocument open(byte[] content, long reserved) throws IOException {
+    try {
+      PDDocument document = PDDocument.load(content, "", null, null, toMemoryUsageSetting());
+      return new LoadedDocument(document, budget, reserved);
+    } catch (IOException | RuntimeException e) {
+      if (budget != null) {
+        budget.release(reserved);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Load a PDF file through a {@link MappedRandomAccessRead}, like {@link PDDocument#load(File)}
+   * does with its buffered input. The input and the scratch file are closed with the document.
+   *
+   * @param file file to load
+   * @return the loaded document
+   * @throws IOException exception if error while reading the file
+   */
+  private PDDocument loadMapped(File file) throws IOException {
+    RandomAccessRead source = new MappedRandomAccessRead(file);
+    ScratchFile scratchFile = null;
+    try {
+      scratchFile = new ScratchFile(toMemoryUsageSetting());
+      PDFParser parser = new PDFParser(source, "", null, null, scratchFile);
+      parser.parse();
+      return parser.getPDDocument();
+    } catch (IOException | RuntimeException e) {
+      IOUtils.closeQuietly(scratchFile);
+      IOUtils.closeQuietly(source);
+      throw e;
+    }
+  }
+
+  /**
+   * Getter for the mode.
+   *
+   * @return the mode
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Getter for the heap cap per document.
+   *
+   * @return number of bytes, -1 if not capped
+   */
+  public long getMaxMainMemoryBytes() {
+    return maxMainMemoryBytes;
+  }
+
+  /**
+   * Getter for the scratch directory.
+   *
+   * @return the directory, <code>null</code> for the default one
+   */
+  public File getScratchDir() {
+    return scratchDir;
+  }
+
+  /**
+   * Getter for the global budget.
+   *
+   * @return the budget, <code>null</code> if none
+   */
+  public MemoryBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Getter for the input.
+   *
+   * @return how the PDF files are read
+   */
+  public Input getInput() {
+    return input;
+  }
+
+  /**
+   * Parse a mode given in the command line (main, temp or mixed).
+   *
+   * @param value value to parse
+   * @return the mode
+   */
+  public static Mode parseMode(String value) {
+    switch (value.toLowerCase(Locale.ROOT)) {
+      case "main":
+        return Mode.MAIN_MEMORY;
+      case "temp":
+        return Mode.TEMP_FILE;
+      case "mixed":
+        return Mode.MIXED;
+      default:
+        throw new IllegalArgumentException("Unknown memory mode " + value);
+    }
+  }
+
+  /**
+   * Parse an input given in the command line (buffered or mapped).
+   *
+   * @param value value to parse
+   * @return the input
+   */
+  public static Input parseInput(String value) {
+    switch (value.toLowerCase(Locale.ROOT)) {
+      case "buffered":
+        return Input.BUFFERED;
+      case "mapped":
+        return Input.MAPPED;
+      default:
+        throw new IllegalArgumentException("Unknown input " + value);
+    }
+  }
+
+  /**
+   * Parse a size given in the command line, with an optional k, m or g suffix.
+   *
+   * @param value value to parse
+   * @return the size in bytes
+   */
+  public static long parseSize(String value) {
+    String size = value.trim().toLowerCase(Locale.ROOT);
+    long factor = 1;
+    if (size.endsWith("k")) {
+      factor = 1024L;
+    } else if (size.endsWith("m")) {
+      factor = 1024L * 1024L;
+    } else if (size.endsWith("g")) {
+      factor = 1024L * 1024L * 1024L;
+    }
+    if (factor != 1) {
+      size = size.substring(0, size.length() - 1);
+    }
+    try {
+      return Long.parseLong(size) * factor;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid size " + value);
+    }
+  }
+}
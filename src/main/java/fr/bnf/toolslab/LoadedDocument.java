@@ -0,0 +1,41 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * A loaded PDF document holding its share of the memory budget until it is closed.
+ */
+public class LoadedDocument implements Closeable {
+
+  private final PDDocument document;
+  private final MemoryBudget budget;
+  private final long reserved;
+
+  LoadedDocument(PDDocument document, MemoryBudget budget, long reserved) {
+    this.document = document;
+    this.budget = budget;
+    this.reserved = reserved;
+  }
+
+  /**
+   * Getter for the document.
+   *
+   * @return the PDF document
+   */
+  public PDDocument getDocument() {
+    return document;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      document.close();
+    } finally {
+      if (budget != null) {
+        budget.release(reserved);
+      }
+    }
+  }
+}
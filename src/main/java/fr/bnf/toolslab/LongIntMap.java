@@ -0,0 +1,131 @@
+package fr.bnf.toolslab;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to non-negative int values. Avoids the boxing
+ * of a HashMap when indexing tens of millions of entries.
+ */
+public class LongIntMap {
+
+  private static final float LOAD_FACTOR = 0.7f;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+  private int threshold;
+  // The key 0 marks the empty slots, so it is stored apart
+  private boolean hasZeroKey;
+  private int zeroValue;
+
+  /**
+   * Constructor.
+   *
+   * @param expectedSize expected number of keys
+   */
+  public LongIntMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int slot(long key, int mask) {
+    // Finalizer of MurmurHash3 to spread the bits
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h & mask;
+  }
+
+  /**
+   * Get the value associated with a key.
+   *
+   * @param key the key
+   * @return the value, -1 if absent
+   */
+  public int get(long key) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : -1;
+    }
+    int idx = slot(key, mask);
+    while (keys[idx] != 0) {
+      if (keys[idx] == key) {
+        return values[idx];
+      }
+      idx = (idx + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Associate a value with a key, replacing the previous one.
+   *
+   * @param key the key
+   * @param value the value, must not be negative
+   */
+  public void put(long key, int value) {
+    if (key == 0) {
+      if (!hasZeroKey) {
+        size++;
+      }
+      hasZeroKey = true;
+      zeroValue = value;
+      return;
+    }
+    int idx = slot(key, mask);
+    while (keys[idx] != 0) {
+      if (keys[idx] == key) {
+        values[idx] = value;
+        return;
+      }
+      idx = (idx + 1) & mask;
+    }
+    keys[idx] = key;
+    values[idx] = value;
+    if (++size > threshold) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int idx = slot(oldKeys[i], mask);
+        while (keys[idx] != 0) {
+          idx = (idx + 1) & mask;
+        }
+        keys[idx] = oldKeys[i];
+        values[idx] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Getter for the number of keys.
+   *
+   * @return number of keys
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all the keys.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0L);
+    hasZeroKey = false;
+    size = 0;
+  }
+}
@@ -0,0 +1,234 @@
+package fr.bnf.toolslab;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import org.apache.pdfbox.io.RandomAccessRead;
+
+/**
+ * Read-only PDFBox input over a memory mapped file. The file is mapped in chunks, so that files
+ * over 2 GB can be read, and the reads are served from the page cache without any system call.
+ * Like the other PDFBox inputs, an instance is not thread-safe. The mapping is released by the
+ * garbage collector after {@link #close()}.
+ *
+ * <p>
+ * A file truncated while mapped makes the access to the lost pages fail with a bus error. The size
+ * of the file is checked when seeking to another position, as PDFBox does before reading each
+ * object, but not when peeking or rewinding, which stay free of system calls. The fault raised by
+ * the JVM on a read in between is reported as a {@link TruncatedException}. The files still being
+ * written should not be read through a mapping.
+ * </p>
+ */
+public class MappedRandomAccessRead implements RandomAccessRead {
+
+  /**
+   * Failure of a read on a file truncated while mapped: the file changed, not the document.
+   */
+  public static final class TruncatedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    TruncatedException(String name, Throwable cause) {
+      super(name + " truncated while mapped", cause);
+    }
+  }
+
+  /** Log2 of the default size of a chunk, 1 GB. */
+  static final int DEFAULT_CHUNK_SHIFT = 30;
+
+  private final String name;
+  private final FileChannel channel;
+  private final long length;
+  private final int chunkShift;
+  private final long chunkMask;
+  private ByteBuffer[] chunks;
+  private long position = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param file file to map
+   * @throws IOException exception if error while mapping the file
+   */
+  public MappedRandomAccessRead(File file) throws IOException {
+    this(file, DEFAULT_CHUNK_SHIFT);
+  }
+
+  /**
+   * Constructor with a given chunk size.
+   *
+   * @param file file to map
+   * @param chunkShift log2 of the size of a chunk
+   * @throws IOException exception if error while mapping the file
+   */
+  MappedRandomAccessRead(File file, int chunkShift) throws IOException {
+    if (chunkShift < 1 || chunkShift > 30) {
+      throw new IllegalArgumentException("Invalid chunk shift " + chunkShift);
+    }
+    this.name = file.getName();
+    this.chunkShift = chunkShift;
+    this.chunkMask = (1L << chunkShift) - 1;
+    // Kept open to check the size of the file
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      length = channel.size();
+      int nbChunks = (int) ((length + chunkMask) >>> chunkShift);
+      chunks = new ByteBuffer[nbChunks];
+      for (int i = 0; i < nbChunks; i++) {
+        long start = (long) i << chunkShift;
+        chunks[i] = channel.map(MapMode.READ_ONLY, start, Math.min(length - start, chunkMask + 1));
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private void checkClosed() throws IOException {
+    if (chunks == null) {
+      throw new IOException("MappedRandomAccessRead already closed");
+    }
+  }
+
+  private void checkLength() throws IOException {
+    if (channel.size() < length) {
+      throw new TruncatedException(name, null);
+    }
+  }
+
+  private IOException truncated(InternalError e) {
+    return new TruncatedException(name, e);
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    if (position >= length) {
+      return -1;
+    }
+    int b;
+    try {
+      b = chunks[(int) (position >>> chunkShift)].get((int) (position & chunkMask)) & 0xff;
+    } catch (InternalError e) {
+      throw truncated(e);
+    }
+    position++;
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int offset, int len) throws IOException {
+    checkClosed();
+    if (len == 0) {
+      return 0;
+    }
+    if (position >= length) {
+      return -1;
+    }
+    int remaining = (int) Math.min(len, length - position);
+    int done = 0;
+    while (done < remaining) {
+      ByteBuffer chunk = chunks[(int) (position >>> chunkShift)];
+      int chunkOffset = (int) (position & chunkMask);
+      int count = Math.min(remaining - done, chunk.limit() - chunkOffset);
+      chunk.position(chunkOffset);
+      try {
+        chunk.get(b, offset + done, count);
+      } catch (InternalError e) {
+        throw truncated(e);
+      }
+      position += count;
+      done += count;
+    }
+    return done;
+  }
+
+  @Override
+  public long getPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  @Override
+  public void seek(long newPosition) throws IOException {
+    checkClosed();
+    if (newPosition < 0) {
+      throw new IOException("Invalid position " + newPosition);
+    }
+    if (newPosition != position) {
+      checkLength();
+    }
+    // Like the other PDFBox inputs, seeking past the end gives EOF
+    position = Math.min(newPosition, length);
+  }
+
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return length;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return chunks == null;
+  }
+
+  @Override
+  public int peek() throws IOException {
+    int result = read();
+    if (result != -1) {
+      position--;
+    }
+    return result;
+  }
+
+  @Override
+  public void rewind(int bytes) throws IOException {
+    checkClosed();
+    if (bytes < 0 || bytes > position) {
+      throw new IOException("Invalid rewind of " + bytes + " bytes at " + position);
+    }
+    position -= bytes;
+  }
+
+  @Override
+  @Deprecated
+  public byte[] readFully(int len) throws IOException {
+    byte[] b = new byte[len];
+    int done = 0;
+    while (done < len) {
+      int count = read(b, done, len - done);
+      if (count < 0) {
+        throw new EOFException();
+      }
+      done += count;
+    }
+    return b;
+  }
+
+  @Override
+  public boolean isEOF() throws IOException {
+    checkClosed();
+    return position >= length;
+  }
+
+  @Override
+  public int available() throws IOException {
+    checkClosed();
+    return (int) Math.min(length - position, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunks = null;
+    channel.close();
+  }
+}
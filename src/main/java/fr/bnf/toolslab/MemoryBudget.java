@@ -0,0 +1,89 @@
+package fr.bnf.toolslab;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Global heap budget shared by concurrent document loads. Each load reserves an estimate of the
+ * memory it needs and waits while the ceiling would be exceeded.
+ */
+public class MemoryBudget {
+
+  private final long capacity;
+  private long used;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity ceiling in bytes
+   */
+  public MemoryBudget(long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Budget must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Reserve some bytes, waiting for other loads to release theirs if needed. A request larger
+   * than the whole capacity is reduced to the capacity, so that it can run alone.
+   *
+   * @param bytes number of bytes to reserve
+   * @return the number of bytes actually reserved, to give back to {@link #release(long)}
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public synchronized long acquire(long bytes) throws InterruptedIOException {
+    long reserved = Math.min(Math.max(bytes, 0), capacity);
+    while (used + reserved > capacity) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + reserved + " bytes");
+      }
+    }
+    used += reserved;
+    return reserved;
+  }
+
+  /**
+   * Try to reserve some bytes without waiting.
+   *
+   * @param bytes number of bytes to reserve
+   * @return <code>true</code> if the bytes have been reserved
+   */
+  public synchronized boolean tryAcquire(long bytes) {
+    if (bytes < 0 || used + bytes > capacity) {
+      return false;
+    }
+    used += bytes;
+    return true;
+  }
+
+  /**
+   * Give back some reserved bytes.
+   *
+   * @param bytes number of bytes returned by {@link #acquire(long)}
+   */
+  public synchronized void release(long bytes) {
+    used = Math.max(0, used - bytes);
+    notifyAll();
+  }
+
+  /**
+   * Getter for the ceiling.
+   *
+   * @return capacity in bytes
+   */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Getter for the currently reserved bytes.
+   *
+   * @return reserved bytes
+   */
+  public synchronized long getUsed() {
+    return used;
+  }
+}
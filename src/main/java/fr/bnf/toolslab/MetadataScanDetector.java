@@ -0,0 +1,57 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+
+/**
+ * Quick detector reading the Producer and the Creator of the Info dictionary. The documents made
+ * by a typesetting engine or an HTML renderer are native. Any other producer is ambiguous, the
+ * office suites included, since they often wrap pasted scans.
+ */
+public class MetadataScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(MetadataScanDetector.class.getName());
+
+  /** Parts of the names of the tools producing native documents, in lower case. */
+  protected static final List<String> NATIVE_PRODUCERS = Collections.unmodifiableList(
+      Arrays.asList("pdftex", "luatex", "xetex", "dvipdfm", "apache fop", "wkhtmltopdf",
+          "skia/pdf", "prince", "antenna house", "weasyprint"));
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    fd.setNbPages(document.getNumberOfPages());
+    fd.setScan(false);
+    PDDocumentInformation info = document.getDocumentInformation();
+    String producer = info == null ? null : info.getProducer();
+    String creator = info == null ? null : info.getCreator();
+    LOGGER.fine("Producer " + producer + ", creator " + creator);
+    if (!isNativeProducer(producer) && !isNativeProducer(creator)) {
+      ctx.ambiguous = true;
+    }
+  }
+
+  /**
+   * Tell whether a producer only makes native documents.
+   *
+   * @param producer Producer or Creator of the Info dictionary, may be <code>null</code>
+   * @return <code>true</code> if the documents of this producer are native
+   */
+  static boolean isNativeProducer(String producer) {
+    if (producer == null) {
+      return false;
+    }
+    String name = producer.toLowerCase(Locale.ROOT);
+    for (String nativeProducer : NATIVE_PRODUCERS) {
+      if (name.contains(nativeProducer)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
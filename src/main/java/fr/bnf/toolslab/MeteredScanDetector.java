@@ -0,0 +1,62 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Detector feeding the {@link BatchMetrics} of the run, and delegating the detection to another
+ * detector.
+ */
+public class MeteredScanDetector extends AbstractScanDetector {
+
+  private final AbstractScanDetector delegate;
+  private final BatchMetrics metrics;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate detector doing the detection
+   * @param metrics metrics of the run
+   */
+  public MeteredScanDetector(AbstractScanDetector delegate, BatchMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return delegate.isLight();
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    delegate.setLoadPolicy(loadPolicy);
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    delegate.setSamplingPolicy(samplingPolicy);
+  }
+
+  @Override
+  void process(FileDescriptor fd) throws IOException {
+    metrics.fileStarted();
+    try {
+      delegate.process(fd);
+    } finally {
+      metrics.fileFinished(fd, fd.getLength());
+    }
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    delegate.parse(ctx, document);
+  }
+}
@@ -0,0 +1,152 @@
+package fr.bnf.toolslab;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of the interpretation of a range of pages, analyzed apart from the rest of the document.
+ * The images are numbered from 0 in the order they are first drawn in the range, and each one is
+ * identified in the document by its object key, so that the ranges can be merged as if all the
+ * pages had been interpreted in sequence: an image already drawn by a previous range is a
+ * duplicate.
+ */
+final class PageRange {
+
+  /** Key of the images which can't be shared, like the inline images. */
+  static final long NO_KEY = -1;
+
+  final int from;
+  final int to;
+  private final List<DimensionInfo> pageDimensions = new ArrayList<>();
+  private final List<List<ImagePlacement>> pagePlacements = new ArrayList<>();
+  private final int[] pageImages;
+  private long[] imageKeys = new long[0];
+  private ScanMetrics metrics = new ScanMetrics();
+
+  /**
+   * Constructor.
+   *
+   * @param from index of the first page, from 0
+   * @param to index after the last page
+   */
+  PageRange(int from, int to) {
+    this.from = from;
+    this.to = to;
+    this.pageImages = new int[Math.max(to - from, 0)];
+  }
+
+  /**
+   * Split the pages of a document in ranges of about the same size.
+   *
+   * @param nbPages number of pages of the document
+   * @param nbRanges number of ranges
+   * @return the ranges, in the order of the pages
+   */
+  static List<PageRange> split(int nbPages, int nbRanges) {
+    List<PageRange> ranges = new ArrayList<>(nbRanges);
+    for (int i = 0; i < nbRanges; i++) {
+      ranges.add(new PageRange((int) ((long) nbPages * i / nbRanges),
+          (int) ((long) nbPages * (i + 1) / nbRanges)));
+    }
+    return ranges;
+  }
+
+  /**
+   * Key of an object, unique in the document.
+   *
+   * @param number object number
+   * @param generation generation number
+   * @return the key
+   */
+  static long objectKey(long number, int generation) {
+    return (number << 16) | (generation & 0xffff);
+  }
+
+  /**
+   * Record the next page of the range.
+   *
+   * @param dimPage dimension of the page
+   * @param nbImages number of images first drawn in the range by this page
+   * @param placements placements of these images, in the order of their numbers, or
+   *        <code>null</code> if the page could not be interpreted
+   */
+  void addPage(DimensionInfo dimPage, int nbImages, List<ImagePlacement> placements) {
+    pageImages[pageDimensions.size()] = nbImages;
+    pageDimensions.add(dimPage);
+    pagePlacements.add(placements);
+  }
+
+  /**
+   * Setter for the key of each image of the range.
+   *
+   * @param imageKeys keys indexed by the number of the images, {@link #NO_KEY} if not shared
+   */
+  void setImageKeys(long[] imageKeys) {
+    this.imageKeys = imageKeys;
+  }
+
+  /**
+   * Setter for the instrumentation of the range.
+   *
+   * @param metrics the metrics
+   */
+  void setMetrics(ScanMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Getter for the number of pages recorded.
+   *
+   * @return number of pages
+   */
+  int getNbPages() {
+    return pageDimensions.size();
+  }
+
+  /**
+   * Fill the context of the document with the ranges, like a sequential interpretation would: the
+   * images drawn by a previous range are not counted again, and the first image of a page is its
+   * first image not seen before. Every page gets an entry in the image dimensions and placements,
+   * even the pages in error.
+   *
+   * @param ctx context of the document
+   * @param ranges ranges of the document, in the order of the pages
+   */
+  static void merge(ScanContext ctx, List<PageRange> ranges) {
+    LongIntMap seen = new LongIntMap(1024);
+    for (PageRange range : ranges) {
+      int number = 0;
+      for (int i = 0; i < range.pageDimensions.size(); i++) {
+        ctx.nbPages++;
+        ctx.pageDimensions.add(range.pageDimensions.get(i));
+        List<ImagePlacement> placements = range.pagePlacements.get(i);
+        ImagePlacement first = null;
+        int nbImagesInPage = 0;
+        for (int j = 0; j < range.pageImages[i]; j++, number++) {
+          long key = number < range.imageKeys.length ? range.imageKeys[number] : NO_KEY;
+          if (key != NO_KEY) {
+            if (seen.get(key) >= 0) {
+              // skip duplicate image
+              continue;
+            }
+            seen.put(key, 1);
+          }
+          nbImagesInPage++;
+          if (first == null && placements != null && j < placements.size()) {
+            first = placements.get(j);
+          }
+        }
+        ctx.imageCounter.addAndGet(nbImagesInPage);
+        // Like parsePage, a page in error has an empty image dimension and no placement
+        ctx.imageDimensions.add(first == null ? DimensionInfo.EMPTY : first.getDimension());
+        ctx.imagePlacements.add(first);
+      }
+      ctx.metrics.addCounters(range.metrics);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "pages [" + from + "," + to + ")";
+  }
+}
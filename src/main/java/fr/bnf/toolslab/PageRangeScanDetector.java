@@ -0,0 +1,178 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Class to detect images by streaming the PDF file, like {@link StreamPdfBoxScanDetector}, with the
+ * pages of the large documents split in ranges interpreted concurrently. A PDFBox document is not
+ * thread-safe: the first range is interpreted on the loaded document by the calling thread, and
+ * each other range on its own copy of the document loaded by a thread of the pool. When the memory
+ * budget can't hold a copy right now, the range is interpreted on the loaded document after the
+ * first one. The ranges are merged in the order of the pages, so that the result is the same as a
+ * sequential interpretation.
+ */
+public class PageRangeScanDetector extends StreamPdfBoxScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(PageRangeScanDetector.class.getName());
+
+  /** Minimal number of pages of a range, smaller documents are interpreted in sequence. */
+  protected static final int MIN_RANGE_PAGES = 64;
+
+  private final ExecutorService pool;
+  private final int nbRanges;
+
+  /**
+   * Constructor.
+   *
+   * @param light <code>true</code> to interpret the pages with a {@link LightImageEngine}
+   * @param pool threads interpreting the ranges other than the first one, shared by the detectors
+   * @param nbRanges maximal number of ranges of a document
+   */
+  public PageRangeScanDetector(boolean light, ExecutorService pool, int nbRanges) {
+    super(light);
+    if (nbRanges < 1) {
+      throw new IllegalArgumentException("Number of ranges must be positive: " + nbRanges);
+    }
+    this.pool = pool;
+    this.nbRanges = nbRanges;
+  }
+
+  @Override
+  protected void collectPages(ScanContext ctx, PDDocument document) throws IOException {
+    int nbPages = document.getNumberOfPages();
+    int count = Math.min(nbRanges, nbPages / MIN_RANGE_PAGES);
+    if (count < 2) {
+      super.collectPages(ctx, document);
+      return;
+    }
+    List<PageRange> ranges = PageRange.split(nbPages, count);
+    LOGGER.fine("Split " + nbPages + " pages in " + count + " ranges");
+    List<Future<Boolean>> copies = new ArrayList<>();
+    for (PageRange range : ranges.subList(1, count)) {
+      copies.add(pool.submit(() -> interpretCopy(ctx, range)));
+    }
+    Phase previous = ctx.metrics.enter(Phase.IMAGES);
+    try {
+      interpretRange(ctx, document, ranges.get(0));
+      for (int i = 1; i < count; i++) {
+        if (!copies.get(i - 1).get()) {
+          LOGGER.fine("No budget to copy the document for " + ranges.get(i));
+          interpretRange(ctx, document, ranges.get(i));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while interpreting the pages");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      for (Future<Boolean> copy : copies) {
+        copy.cancel(true);
+      }
+      ctx.metrics.enter(previous);
+    }
+    PageRange.merge(ctx, ranges);
+  }
+
+  /**
+   * Interpret a range on a copy of the document.
+   *
+   * @param ctx state of the detection of the document
+   * @param range range to interpret
+   * @return <code>false</code> if the budget can't hold the copy
+   * @throws IOException exception if error while reading the file
+   */
+  private boolean interpretCopy(ScanContext ctx, PageRange range) throws IOException {
+    try (LoadedDocument copy = loadPolicy.tryLoad(ctx.fd)) {
+      if (copy == null) {
+        return false;
+      }
+      interpretRange(ctx, copy.getDocument(), range);
+      return true;
+    }
+  }
+
+  /**
+   * Interpret the pages of a range with a context of its own.
+   *
+   * @param ctx state of the detection of the document, only read
+   * @param document document used by this thread only
+   * @param range range to fill
+   * @throws IOException exception if error while reading the file
+   */
+  void interpretRange(ScanContext ctx, PDDocument document, PageRange range) throws IOException {
+    ScanContext rangeCtx = new ScanContext(ctx);
+    int index = 0;
+    for (PDPage page : document.getPages()) {
+      if (index >= range.to) {
+        break;
+      }
+      if (index++ < range.from) {
+        continue;
+      }
+      PDRectangle rect = page.getMediaBox();
+      DimensionInfo dimPage =
+          new DimensionInfo((long) (rect.getWidth()), (long) (rect.getHeight()));
+      int initialNumber = rangeCtx.imageCounter.get();
+      List<ImagePlacement> placements;
+      try {
+        placements = interpretPage(rangeCtx, page, isLight());
+      } catch (IOException e) {
+        LOGGER.warning("Error on page " + index + " of " + ctx.fd.getFile().getName() + ": "
+            + e.getMessage());
+        placements = null;
+      }
+      range.addPage(dimPage, rangeCtx.imageCounter.get() - initialNumber, placements);
+    }
+    range.setImageKeys(imageKeys(rangeCtx, document.getDocument()));
+    range.setMetrics(rangeCtx.metrics);
+  }
+
+  /**
+   * Find the object key of each image numbered in a range.
+   *
+   * @param rangeCtx context of the range
+   * @param cosDocument low level document
+   * @return the keys indexed by the number of the images
+   * @throws IOException exception if error while reading the file
+   */
+  private static long[] imageKeys(ScanContext rangeCtx, COSDocument cosDocument)
+      throws IOException {
+    long[] keys = new long[rangeCtx.imageCounter.get()];
+    Arrays.fill(keys, PageRange.NO_KEY);
+    if (rangeCtx.processedInlineImages.isEmpty()) {
+      return keys;
+    }
+    for (COSObjectKey key : cosDocument.getXrefTable().keySet()) {
+      COSObject object = cosDocument.getObjectFromPool(key);
+      COSBase base = object == null ? null : object.getObject();
+      Integer number = base == null ? null : rangeCtx.processedInlineImages.get(base);
+      if (number != null) {
+        keys[number] = PageRange.objectKey(key.getNumber(), key.getGeneration());
+      }
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,177 @@
+package fr.bnf.toolslab;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Pipeline to scan files with several threads. The walker feeds a bounded queue, each worker owns
+ * its own detector and a single sink thread receives the file descriptors, either in completion
+ * order or in submission order.
+ */
+public class ParallelScanner {
+  protected static final Logger LOGGER = Logger.getLogger(ParallelScanner.class.getName());
+
+  /** Number of queued files per worker before the walker blocks. */
+  protected static final int QUEUE_FACTOR = 4;
+
+  private static final Task POISON = new Task(-1, null, null);
+
+  private final int nbThreads;
+  private final Supplier<AbstractScanDetector> detectorFactory;
+  private final Consumer<FileDescriptor> sink;
+  private final boolean ordered;
+  private final BlockingQueue<Task> tasks;
+  private final BlockingQueue<Task> results;
+  private final List<Thread> workers = new ArrayList<>();
+  private Thread sinkThread;
+  private long nextSeq = 0;
+
+  /**
+   * Unit of work exchanged between the threads.
+   */
+  private static final class Task {
+    final long seq;
+    final File file;
+    final ArchiveEntry entry;
+    FileDescriptor fd;
+
+    Task(long seq, File file, ArchiveEntry entry) {
+      this.seq = seq;
+      this.file = file;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param nbThreads number of workers
+   * @param detectorFactory factory to build one detector per worker
+   * @param sink consumer of the results, always called from the same thread
+   * @param ordered <code>true</code> to emit the results in submission order
+   */
+  public ParallelScanner(int nbThreads, Supplier<AbstractScanDetector> detectorFactory,
+      Consumer<FileDescriptor> sink, boolean ordered) {
+    if (nbThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + nbThreads);
+    }
+    this.nbThreads = nbThreads;
+    this.detectorFactory = detectorFactory;
+    this.sink = sink;
+    this.ordered = ordered;
+    this.tasks = new ArrayBlockingQueue<>(nbThreads * QUEUE_FACTOR);
+    this.results = new ArrayBlockingQueue<>(nbThreads * QUEUE_FACTOR);
+  }
+
+  /**
+   * Start the workers and the sink thread.
+   */
+  public void start() {
+    for (int i = 0; i < nbThreads; i++) {
+      Thread worker = new Thread(this::work, "scan-worker-" + i);
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+    sinkThread = new Thread(this::drain, "scan-sink");
+    sinkThread.setDaemon(true);
+    sinkThread.start();
+  }
+
+  /**
+   * Queue a file to scan. Block while the queue is full.
+   *
+   * @param file file to scan
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void submit(File file) throws InterruptedException {
+    tasks.put(new Task(nextSeq++, file, null));
+  }
+
+  /**
+   * Queue an archive entry to scan, closed once scanned. Block while the queue is full.
+   *
+   * @param entry staged entry to scan
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void submit(ArchiveEntry entry) throws InterruptedException {
+    tasks.put(new Task(nextSeq++, entry.getFile(), entry));
+  }
+
+  /**
+   * Wait for all the submitted files to be processed and emitted, then stop the threads.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void finish() throws InterruptedException {
+    for (int i = 0; i < nbThreads; i++) {
+      tasks.put(POISON);
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    results.put(POISON);
+    sinkThread.join();
+  }
+
+  /**
+   * Getter for the number of files waiting for a worker.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return tasks.size();
+  }
+
+  private void work() {
+    AbstractScanDetector detector = detectorFactory.get();
+    try {
+      while (true) {
+        Task task = tasks.take();
+        if (task == POISON) {
+          break;
+        }
+        try {
+          task.fd = task.entry == null ? ScannedPdfApp.processFile(task.file, detector)
+              : ScannedPdfApp.processEntry(task.entry, detector);
+        } catch (RuntimeException e) {
+          // Don't let a broken file stall the ordered output
+          LOGGER.warning("Unexpected error on " + task.file.getName() + ": " + e);
+          task.fd = new FileDescriptor(task.file);
+          task.fd.setValid(false);
+        }
+        results.put(task);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    ReorderBuffer<FileDescriptor> buffer = new ReorderBuffer<>();
+    try {
+      while (true) {
+        Task task = results.take();
+        if (task == POISON) {
+          break;
+        }
+        if (ordered) {
+          buffer.put(task.seq, task.fd, sink);
+        } else {
+          sink.accept(task.fd);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (buffer.size() != 0) {
+      LOGGER.warning(buffer.size() + " results still waiting for a missing predecessor");
+    }
+  }
+}
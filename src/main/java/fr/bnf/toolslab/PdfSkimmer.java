@@ -0,0 +1,896 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Minimal reader of the structure of a PDF file, without PDFBox. Only the cross-reference
+ * sections, tables or streams, the trailer, the catalog and the root of the page tree are read,
+ * and optionally the dictionary at the head of each uncompressed object to sum the lengths of the
+ * image streams. Anything unexpected, like a damaged cross-reference or an unsupported filter,
+ * throws an {@link IOException}: the caller then falls back to a full load. It is not thread-safe.
+ */
+final class PdfSkimmer implements Closeable {
+
+  /** Number of bytes at the end of the file searched for <code>startxref</code>. */
+  static final int TAIL_SIZE = 1024;
+  /** Maximal number of objects whose head is read when summing the image streams. */
+  static final int MAX_OBJECTS = 8192;
+  /** Maximal size of a decoded cross-reference or object stream. */
+  static final int MAX_STREAM_SIZE = 16 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 1024;
+  private static final int MAX_DEPTH = 32;
+  private static final int MAX_SECTIONS = 64;
+  private static final Object STRING = new Object();
+
+  /** Reference to an indirect object. */
+  private static final class Ref {
+    final long number;
+
+    Ref(long number) {
+      this.number = number;
+    }
+  }
+
+  /** Bare word, like <code>obj</code> or <code>R</code>. */
+  private static final class Keyword {
+    final String text;
+
+    Keyword(String text) {
+      this.text = text;
+    }
+
+    boolean is(String other) {
+      return text.equals(other);
+    }
+  }
+
+  /** Entry of the cross-reference, in use. */
+  private static final class XrefEntry {
+    // Offset in the file, or -1 if the object is in an object stream
+    final long offset;
+    final long stream;
+    final int index;
+
+    XrefEntry(long offset, long stream, int index) {
+      this.offset = offset;
+      this.stream = stream;
+      this.index = index;
+    }
+  }
+
+  /** Decoded object stream. */
+  private static final class ObjectStream {
+    final byte[] data;
+    final long first;
+
+    ObjectStream(byte[] data, long first) {
+      this.data = data;
+      this.first = first;
+    }
+  }
+
+  // Either the file or the content kept in memory
+  private final RandomAccessFile file;
+  private final byte[] content;
+  private final long length;
+  // Object number to entry, the free entries are null so that they hide the older sections
+  private final Map<Long, XrefEntry> entries = new HashMap<>();
+  private final Map<Long, ObjectStream> objectStreams = new HashMap<>();
+  private Map<String, Object> trailer;
+  private boolean encrypted;
+
+  // Current input, either a window on the file or a decoded stream
+  private final byte[] fileBuffer = new byte[BUFFER_SIZE];
+  private byte[] buffer = fileBuffer;
+  private boolean fromFile;
+  private long bufferStart;
+  private int pos;
+  private int limit;
+
+  int nbPages = -1;
+  int nbImages;
+  long imageBytes;
+  long contentBytes;
+
+  /**
+   * Constructor.
+   *
+   * @param inputFile file to read
+   * @throws IOException exception if error while opening the file
+   */
+  PdfSkimmer(File inputFile) throws IOException {
+    this.file = new RandomAccessFile(inputFile, "r");
+    this.content = null;
+    this.length = file.length();
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param content document kept in memory
+   */
+  PdfSkimmer(byte[] content) {
+    this.file = null;
+    this.content = content;
+    this.length = content.length;
+  }
+
+  /**
+   * Open a skimmer on a document, from its file or from the archive entry being processed.
+   *
+   * @param fd file descriptor of the document
+   * @return the skimmer
+   * @throws IOException exception if error while opening the file
+   */
+  static PdfSkimmer open(FileDescriptor fd) throws IOException {
+    ArchiveEntry entry = fd.getEntry();
+    if (entry == null) {
+      return new PdfSkimmer(fd.getFile());
+    }
+    return entry.getContent() != null ? new PdfSkimmer(entry.getContent())
+        : new PdfSkimmer(entry.getSpillFile());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (file != null) {
+      file.close();
+    }
+  }
+
+  /**
+   * Read bytes at a position of the document.
+   *
+   * @return the number of bytes read, -1 at the end
+   */
+  private int readAt(long position, byte[] data, int offset, int count) throws IOException {
+    if (file != null) {
+      file.seek(position);
+      return file.read(data, offset, count);
+    }
+    if (position >= content.length) {
+      return -1;
+    }
+    int n = (int) Math.min(count, content.length - position);
+    System.arraycopy(content, (int) position, data, offset, n);
+    return n;
+  }
+
+  private void readFullyAt(long position, byte[] data) throws IOException {
+    int done = 0;
+    while (done < data.length) {
+      int n = readAt(position + done, data, done, data.length - done);
+      if (n < 0) {
+        throw new EOFException("Unexpected end of the document");
+      }
+      done += n;
+    }
+  }
+
+  /**
+   * Read the cross-reference and the number of pages given by the root of the page tree.
+   *
+   * @return the number of pages
+   * @throws IOException exception if the structure can't be read
+   */
+  int readPageCount() throws IOException {
+    readXref(findStartXref());
+    encrypted = trailer.containsKey("Encrypt");
+    Map<String, Object> catalog = dictionary(resolve(trailer.get("Root")));
+    Map<String, Object> pages = dictionary(resolve(catalog.get("Pages")));
+    Object count = resolve(pages.get("Count"));
+    if (!(count instanceof Long) || (Long) count < 0 || (Long) count > Integer.MAX_VALUE) {
+      throw new IOException("Invalid page count " + count);
+    }
+    nbPages = ((Long) count).intValue();
+    return nbPages;
+  }
+
+  /**
+   * Read the head of all the uncompressed objects, summing the lengths of the image streams and
+   * of the content streams. The streams can't be compressed in object streams, so none is missed.
+   *
+   * @return <code>false</code> if the document has too many objects to be read cheaply
+   * @throws IOException exception if the structure can't be read
+   */
+  boolean readStreamLengths() throws IOException {
+    if (entries.size() > MAX_OBJECTS) {
+      return false;
+    }
+    for (Map.Entry<Long, XrefEntry> entry : entries.entrySet()) {
+      XrefEntry xref = entry.getValue();
+      if (xref == null || xref.offset < 0) {
+        continue;
+      }
+      seek(xref.offset);
+      readObjectHeader(entry.getKey());
+      Object value = readValue(0);
+      if (!(value instanceof Map) || !isStreamKeyword()) {
+        continue;
+      }
+      @SuppressWarnings("unchecked")
+      Map<String, Object> dict = (Map<String, Object>) value;
+      Object streamLength = resolve(dict.get("Length"));
+      long bytes = streamLength instanceof Long ? (Long) streamLength : 0;
+      if ("Image".equals(dict.get("Subtype"))) {
+        nbImages++;
+        imageBytes += bytes;
+      } else if (isContentLike(dict)) {
+        contentBytes += bytes;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tell whether a stream may be a content stream, which can hold inline images: only the keys
+   * describing the encoding, no type.
+   *
+   * @param dict dictionary of the stream
+   * @return <code>true</code> for a stream looking like a content stream
+   */
+  private static boolean isContentLike(Map<String, Object> dict) {
+    for (String key : dict.keySet()) {
+      if (!"Length".equals(key) && !"Filter".equals(key) && !"DecodeParms".equals(key)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long findStartXref() throws IOException {
+    int size = (int) Math.min(TAIL_SIZE, length);
+    byte[] tail = new byte[size];
+    readFullyAt(length - size, tail);
+    String text = new String(tail, StandardCharsets.ISO_8859_1);
+    int index = text.lastIndexOf("startxref");
+    if (index < 0) {
+      throw new IOException("No startxref");
+    }
+    use(tail, index + "startxref".length());
+    Object offset = readValue(0);
+    if (!(offset instanceof Long) || (Long) offset < 0 || (Long) offset >= length) {
+      throw new IOException("Invalid startxref " + offset);
+    }
+    return (Long) offset;
+  }
+
+  /**
+   * Read the cross-reference sections, from the last one to the first one.
+   */
+  private void readXref(long startOffset) throws IOException {
+    Set<Long> seen = new HashSet<>();
+    long offset = startOffset;
+    while (offset >= 0) {
+      if (!seen.add(offset) || seen.size() > MAX_SECTIONS) {
+        throw new IOException("Loop in the cross-reference sections");
+      }
+      Map<Long, XrefEntry> tableEntries = new LinkedHashMap<>();
+      Map<String, Object> sectionTrailer = readSection(offset, tableEntries);
+      if (trailer == null) {
+        trailer = sectionTrailer;
+      }
+      Object hybrid = sectionTrailer.get("XRefStm");
+      if (hybrid instanceof Long) {
+        // Hybrid file: the objects of the stream are free in the table for the older readers, so
+        // its entries take precedence over the ones of the table
+        readSection((Long) hybrid, null);
+      }
+      for (Map.Entry<Long, XrefEntry> entry : tableEntries.entrySet()) {
+        addEntry(entry.getKey(), entry.getValue());
+      }
+      Object prev = sectionTrailer.get("Prev");
+      offset = prev instanceof Long ? (Long) prev : -1;
+    }
+  }
+
+  /**
+   * Read a cross-reference section. The entries of a stream are added at once, the ones of a table
+   * are only collected, to be added once its hybrid stream, if any, is read.
+   */
+  private Map<String, Object> readSection(long offset, Map<Long, XrefEntry> tableEntries)
+      throws IOException {
+    seek(offset);
+    if (skipSpaces() == 'x') {
+      Object keyword = readValue(0);
+      if (tableEntries == null || !(keyword instanceof Keyword)
+          || !((Keyword) keyword).is("xref")) {
+        throw new IOException("Invalid cross-reference table at " + offset);
+      }
+      return readTable(tableEntries);
+    }
+    readObjectHeader(-1);
+    Map<String, Object> dict = dictionary(readValue(0));
+    if (!"XRef".equals(dict.get("Type"))) {
+      throw new IOException("Invalid cross-reference stream at " + offset);
+    }
+    readXrefStream(dict, readStreamData(dict));
+    return dict;
+  }
+
+  private Map<String, Object> readTable(Map<Long, XrefEntry> tableEntries) throws IOException {
+    while (true) {
+      Object value = readValue(0);
+      if (value instanceof Keyword && ((Keyword) value).is("trailer")) {
+        return dictionary(readValue(0));
+      }
+      Object count = readValue(0);
+      if (!(value instanceof Long) || !(count instanceof Long) || (Long) count > length / 18) {
+        throw new IOException("Invalid cross-reference subsection");
+      }
+      long first = (Long) value;
+      for (long i = 0; i < (Long) count; i++) {
+        Object offset = readValue(0);
+        readValue(0);
+        Object type = readValue(0);
+        if (!(offset instanceof Long) || !(type instanceof Keyword)) {
+          throw new IOException("Invalid cross-reference entry");
+        }
+        boolean inUse = ((Keyword) type).is("n");
+        if (!tableEntries.containsKey(first + i)) {
+          tableEntries.put(first + i, inUse ? new XrefEntry((Long) offset, 0, 0) : null);
+        }
+      }
+    }
+  }
+
+  private void readXrefStream(Map<String, Object> dict, byte[] data) throws IOException {
+    List<Object> widths = array(dict.get("W"));
+    if (widths.size() != 3) {
+      throw new IOException("Invalid /W " + widths);
+    }
+    int[] w = new int[3];
+    for (int i = 0; i < 3; i++) {
+      w[i] = (int) number(widths.get(i));
+      if (w[i] < 0 || w[i] > 8) {
+        throw new IOException("Invalid /W " + widths);
+      }
+    }
+    List<Object> index = new ArrayList<>();
+    if (dict.containsKey("Index")) {
+      index = array(dict.get("Index"));
+    } else {
+      index.add(0L);
+      index.add(dict.get("Size"));
+    }
+    int entrySize = w[0] + w[1] + w[2];
+    int position = 0;
+    for (int i = 0; i + 1 < index.size(); i += 2) {
+      long first = number(index.get(i));
+      long count = number(index.get(i + 1));
+      for (long j = 0; j < count; j++) {
+        if (position + entrySize > data.length) {
+          throw new IOException("Truncated cross-reference stream");
+        }
+        long type = w[0] == 0 ? 1 : readBigEndian(data, position, w[0]);
+        long field2 = readBigEndian(data, position + w[0], w[1]);
+        long field3 = readBigEndian(data, position + w[0] + w[1], w[2]);
+        position += entrySize;
+        if (type == 1) {
+          addEntry(first + j, new XrefEntry(field2, 0, 0));
+        } else if (type == 2) {
+          addEntry(first + j, new XrefEntry(-1, field2, (int) field3));
+        } else if (type == 0) {
+          addEntry(first + j, null);
+        }
+      }
+    }
+  }
+
+  private void addEntry(long number, XrefEntry entry) {
+    // The most recent section is read first
+    if (!entries.containsKey(number)) {
+      entries.put(number, entry);
+    }
+  }
+
+  private static long readBigEndian(byte[] data, int offset, int size) {
+    long value = 0;
+    for (int i = 0; i < size; i++) {
+      value = (value << 8) | (data[offset + i] & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * Read the decoded data of the stream whose dictionary was just read.
+   */
+  private byte[] readStreamData(Map<String, Object> dict) throws IOException {
+    if (!isStreamKeyword()) {
+      throw new IOException("Missing stream data");
+    }
+    // The keyword is followed by CRLF or LF
+    if (peek() == '\r') {
+      pos++;
+    }
+    if (peek() == '\n') {
+      pos++;
+    }
+    long start = bufferStart + pos;
+    Object streamLength = dict.get("Length");
+    if (!(streamLength instanceof Long) || (Long) streamLength > MAX_STREAM_SIZE
+        || start + (Long) streamLength > length) {
+      throw new IOException("Invalid stream length " + streamLength);
+    }
+    byte[] data = new byte[((Long) streamLength).intValue()];
+    readFullyAt(start, data);
+    Object filter = dict.get("Filter");
+    Object parms = dict.get("DecodeParms");
+    if (filter instanceof List) {
+      List<Object> filters = array(filter);
+      filter = filters.isEmpty() ? null : filters.get(0);
+      if (filters.size() > 1) {
+        throw new IOException("Unsupported filters " + filters);
+      }
+      parms = parms instanceof List && !((List<?>) parms).isEmpty() ? ((List<?>) parms).get(0)
+          : parms;
+    }
+    if (filter == null) {
+      return data;
+    }
+    if (!"FlateDecode".equals(filter)) {
+      throw new IOException("Unsupported filter " + filter);
+    }
+    data = inflate(data);
+    if (parms instanceof Map) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> decodeParms = (Map<String, Object>) parms;
+      Object predictor = decodeParms.get("Predictor");
+      if (predictor instanceof Long && (Long) predictor >= 10) {
+        Object columns = decodeParms.get("Columns");
+        data = unpredict(data, columns instanceof Long ? ((Long) columns).intValue() : 1);
+      } else if (predictor instanceof Long && (Long) predictor > 1) {
+        throw new IOException("Unsupported predictor " + predictor);
+      }
+    }
+    return data;
+  }
+
+  private static byte[] inflate(byte[] data) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      byte[] out = new byte[Math.max(64, data.length * 4)];
+      int size = 0;
+      while (!inflater.finished()) {
+        if (size == out.length) {
+          if (out.length >= MAX_STREAM_SIZE) {
+            throw new IOException("Stream too large");
+          }
+          byte[] larger = new byte[Math.min(MAX_STREAM_SIZE, out.length * 2)];
+          System.arraycopy(out, 0, larger, 0, size);
+          out = larger;
+        }
+        int inflated = inflater.inflate(out, size, out.length - size);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          // Truncated data, keep what was decoded like PDFBox does
+          break;
+        }
+        size += inflated;
+      }
+      byte[] result = new byte[size];
+      System.arraycopy(out, 0, result, 0, size);
+      return result;
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid compressed stream", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Undo the PNG predictors, one byte per column.
+   *
+   * @param data predicted rows, each one preceded by its predictor
+   * @param columns number of bytes per row
+   * @return the decoded rows
+   */
+  static byte[] unpredict(byte[] data, int columns) throws IOException {
+    if (columns <= 0) {
+      throw new IOException("Invalid number of columns " + columns);
+    }
+    int nbRows = data.length / (columns + 1);
+    byte[] out = new byte[nbRows * columns];
+    for (int row = 0; row < nbRows; row++) {
+      int predictor = data[row * (columns + 1)] & 0xff;
+      int in = row * (columns + 1) + 1;
+      int current = row * columns;
+      int previous = current - columns;
+      for (int i = 0; i < columns; i++) {
+        int raw = data[in + i] & 0xff;
+        int left = i > 0 ? out[current + i - 1] & 0xff : 0;
+        int up = row > 0 ? out[previous + i] & 0xff : 0;
+        int upLeft = i > 0 && row > 0 ? out[previous + i - 1] & 0xff : 0;
+        int value;
+        switch (predictor) {
+          case 0:
+            value = raw;
+            break;
+          case 1:
+            value = raw + left;
+            break;
+          case 2:
+            value = raw + up;
+            break;
+          case 3:
+            value = raw + ((left + up) >> 1);
+            break;
+          case 4:
+            value = raw + paeth(left, up, upLeft);
+            break;
+          default:
+            throw new IOException("Invalid PNG predictor " + predictor);
+        }
+        out[current + i] = (byte) value;
+      }
+    }
+    return out;
+  }
+
+  private static int paeth(int left, int up, int upLeft) {
+    int p = left + up - upLeft;
+    int pa = Math.abs(p - left);
+    int pb = Math.abs(p - up);
+    int pc = Math.abs(p - upLeft);
+    if (pa <= pb && pa <= pc) {
+      return left;
+    }
+    return pb <= pc ? up : upLeft;
+  }
+
+  /**
+   * Resolve the indirect references, up to a direct value.
+   */
+  private Object resolve(Object value) throws IOException {
+    Object current = value;
+    for (int i = 0; current instanceof Ref; i++) {
+      if (i == MAX_DEPTH) {
+        throw new IOException("Loop in the references");
+      }
+      current = readObject(((Ref) current).number);
+    }
+    return current;
+  }
+
+  private Object readObject(long number) throws IOException {
+    XrefEntry entry = entries.get(number);
+    if (entry == null) {
+      // Missing or free object, the null object
+      return null;
+    }
+    if (entry.offset >= 0) {
+      seek(entry.offset);
+      readObjectHeader(number);
+      return readValue(0);
+    }
+    if (encrypted) {
+      throw new IOException("Encrypted object stream");
+    }
+    ObjectStream objectStream = objectStreams.get(entry.stream);
+    if (objectStream == null) {
+      XrefEntry streamEntry = entries.get(entry.stream);
+      if (streamEntry == null || streamEntry.offset < 0) {
+        throw new IOException("Missing object stream " + entry.stream);
+      }
+      seek(streamEntry.offset);
+      readObjectHeader(entry.stream);
+      Map<String, Object> dict = dictionary(readValue(0));
+      long first = number(dict.get("First"));
+      objectStream = new ObjectStream(readStreamData(dict), first);
+      objectStreams.put(entry.stream, objectStream);
+    }
+    byte[] data = objectStream.data;
+    use(data, 0);
+    long offset = -1;
+    for (int i = 0; i <= entry.index; i++) {
+      Object objectNumber = readValue(0);
+      Object objectOffset = readValue(0);
+      if (!(objectNumber instanceof Long) || !(objectOffset instanceof Long)) {
+        throw new IOException("Invalid object stream " + entry.stream);
+      }
+      offset = (Long) objectOffset;
+    }
+    if (offset < 0 || objectStream.first + offset >= data.length) {
+      throw new IOException("Invalid object stream " + entry.stream);
+    }
+    use(data, (int) (objectStream.first + offset));
+    return readValue(0);
+  }
+
+  private void readObjectHeader(long number) throws IOException {
+    Object objectNumber = readValue(0);
+    Object generation = readValue(0);
+    Object keyword = readValue(0);
+    if (!(objectNumber instanceof Long) || !(generation instanceof Long)
+        || !(keyword instanceof Keyword) || !((Keyword) keyword).is("obj")
+        || (number >= 0 && (Long) objectNumber != number)) {
+      throw new IOException("Invalid object header for " + number);
+    }
+  }
+
+  private boolean isStreamKeyword() throws IOException {
+    int c = skipSpaces();
+    if (c != 's') {
+      return false;
+    }
+    Object keyword = readValue(0);
+    return keyword instanceof Keyword && ((Keyword) keyword).is("stream");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> dictionary(Object value) throws IOException {
+    if (!(value instanceof Map)) {
+      throw new IOException("Dictionary expected instead of " + value);
+    }
+    return (Map<String, Object>) value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> array(Object value) throws IOException {
+    if (!(value instanceof List)) {
+      throw new IOException("Array expected instead of " + value);
+    }
+    return (List<Object>) value;
+  }
+
+  private static long number(Object value) throws IOException {
+    if (!(value instanceof Long)) {
+      throw new IOException("Integer expected instead of " + value);
+    }
+    return (Long) value;
+  }
+
+  // Lexer
+
+  private void seek(long offset) {
+    buffer = fileBuffer;
+    fromFile = true;
+    bufferStart = offset;
+    pos = 0;
+    limit = 0;
+  }
+
+  private void use(byte[] data, int start) {
+    buffer = data;
+    fromFile = false;
+    bufferStart = 0;
+    pos = start;
+    limit = data.length;
+  }
+
+  private int peek() throws IOException {
+    if (pos == limit) {
+      if (!fromFile) {
+        return -1;
+      }
+      bufferStart += limit;
+      pos = 0;
+      limit = 0;
+      if (bufferStart >= length) {
+        return -1;
+      }
+      limit = Math.max(0, readAt(bufferStart, buffer, 0, buffer.length));
+      if (limit == 0) {
+        return -1;
+      }
+    }
+    return buffer[pos] & 0xff;
+  }
+
+  private int skipSpaces() throws IOException {
+    int c = peek();
+    while (true) {
+      while (ContentTokenizer.isWhitespace(c)) {
+        pos++;
+        c = peek();
+      }
+      if (c != '%') {
+        return c;
+      }
+      // Comment up to the end of line
+      while (c != -1 && c != '\n' && c != '\r') {
+        pos++;
+        c = peek();
+      }
+    }
+  }
+
+  /**
+   * Read a direct value. The indirect references are only recognized inside the arrays and the
+   * dictionaries, which is enough for the structure of the document.
+   */
+  private Object readValue(int depth) throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw new IOException("Too deep nesting");
+    }
+    int c = skipSpaces();
+    switch (c) {
+      case -1:
+        throw new IOException("Unexpected end of data");
+      case '/':
+        pos++;
+        return readRegular();
+      case '<':
+        pos++;
+        if (peek() == '<') {
+          pos++;
+          return readDictionary(depth);
+        }
+        // Hexadecimal string
+        c = peek();
+        while (c != -1 && c != '>') {
+          pos++;
+          c = peek();
+        }
+        if (c == '>') {
+          pos++;
+        }
+        return STRING;
+      case '[':
+        pos++;
+        return readArray(depth);
+      case '(':
+        pos++;
+        skipString();
+        return STRING;
+      default:
+        break;
+    }
+    if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+      return readNumber();
+    }
+    String word = readRegular();
+    if (word.isEmpty()) {
+      throw new IOException("Unexpected character " + (char) c);
+    }
+    switch (word) {
+      case "true":
+        return Boolean.TRUE;
+      case "false":
+        return Boolean.FALSE;
+      case "null":
+        return null;
+      default:
+        return new Keyword(word);
+    }
+  }
+
+  private Map<String, Object> readDictionary(int depth) throws IOException {
+    Map<String, Object> dict = new HashMap<>();
+    while (true) {
+      int c = skipSpaces();
+      if (c == '>') {
+        pos++;
+        if (peek() == '>') {
+          pos++;
+        }
+        return dict;
+      }
+      if (c != '/') {
+        throw new IOException("Name expected in dictionary");
+      }
+      pos++;
+      String key = readRegular();
+      Object value = readValue(depth + 1);
+      if (value instanceof Long && isDigit(skipSpaces())) {
+        // Only a reference puts two integers in a row
+        Object generation = readValue(depth + 1);
+        Object keyword = readValue(depth + 1);
+        if (!(generation instanceof Long) || !(keyword instanceof Keyword)
+            || !((Keyword) keyword).is("R")) {
+          throw new IOException("Invalid reference in dictionary");
+        }
+        value = new Ref((Long) value);
+      }
+      dict.put(key, value);
+    }
+  }
+
+  private List<Object> readArray(int depth) throws IOException {
+    List<Object> array = new ArrayList<>();
+    while (true) {
+      int c = skipSpaces();
+      if (c == ']') {
+        pos++;
+        return array;
+      }
+      Object value = readValue(depth + 1);
+      int size = array.size();
+      if (value instanceof Keyword && ((Keyword) value).is("R") && size >= 2
+          && array.get(size - 1) instanceof Long && array.get(size - 2) instanceof Long) {
+        array.remove(size - 1);
+        array.set(size - 2, new Ref((Long) array.get(size - 2)));
+      } else {
+        array.add(value);
+      }
+    }
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private String readRegular() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c = peek();
+    while (c != -1 && !ContentTokenizer.isWhitespace(c) && !ContentTokenizer.isDelimiter(c)) {
+      if (c == '#' && sb.length() < 1024) {
+        // Decode the escape, if well formed
+        pos++;
+        int hi = Character.digit(peek(), 16);
+        if (hi >= 0) {
+          pos++;
+          int lo = Character.digit(peek(), 16);
+          if (lo >= 0) {
+            pos++;
+            sb.append((char) ((hi << 4) | lo));
+          } else {
+            sb.append('#').append(Character.forDigit(hi, 16));
+          }
+        } else {
+          sb.append('#');
+        }
+      } else {
+        sb.append((char) c);
+        pos++;
+      }
+      c = peek();
+    }
+    return sb.toString();
+  }
+
+  private Object readNumber() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c = peek();
+    while (c == '+' || c == '-' || c == '.' || isDigit(c)) {
+      sb.append((char) c);
+      pos++;
+      c = peek();
+    }
+    String text = sb.toString();
+    try {
+      if (text.indexOf('.') < 0) {
+        return Long.valueOf(text);
+      }
+      return Double.valueOf(text);
+    } catch (NumberFormatException e) {
+      // Like the other readers, be lenient with the malformed numbers
+      return Double.valueOf(0);
+    }
+  }
+
+  private void skipString() throws IOException {
+    int depth = 1;
+    while (depth > 0) {
+      int c = peek();
+      if (c == -1) {
+        return;
+      }
+      pos++;
+      if (c == '\\') {
+        if (peek() != -1) {
+          pos++;
+        }
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Detector asking a {@link SizePrefilter} before loading the document, and delegating to another
+ * detector when the prefilter is undecided.
+ */
+public class PrefilterScanDetector extends AbstractScanDetector {
+
+  private final AbstractScanDetector delegate;
+  private final SizePrefilter prefilter;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate detector used when the prefilter is undecided
+   * @param prefilter prefilter shared by all the threads
+   */
+  public PrefilterScanDetector(AbstractScanDetector delegate, SizePrefilter prefilter) {
+    this.delegate = delegate;
+    this.prefilter = prefilter;
+  }
+
+  @Override
+  public String getName() {
+    return super.getName() + "+" + delegate.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return delegate.isLight();
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    delegate.setLoadPolicy(loadPolicy);
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    delegate.setSamplingPolicy(samplingPolicy);
+  }
+
+  @Override
+  void process(FileDescriptor fd) throws IOException {
+    long begin = System.currentTimeMillis();
+    boolean decided = prefilter.decide(fd);
+    long skimTime = System.currentTimeMillis() - begin;
+    if (decided) {
+      fd.setTimeToProcess(skimTime);
+      return;
+    }
+    try {
+      delegate.process(fd);
+    } finally {
+      // The full detection doesn't know about the time spent to skim the file
+      fd.setTimeToProcess(fd.getTimeToProcess() + skimTime);
+    }
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    delegate.parse(ctx, document);
+  }
+}
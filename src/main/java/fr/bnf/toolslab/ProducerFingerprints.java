@@ -0,0 +1,250 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Table learning the verdicts observed for each producer of documents, identified by the Producer
+ * (or the Creator) of the Info dictionary and the PDF version. A producer whose history is almost
+ * always the same gives a prediction, to be confirmed by a light check. The table is updated as the
+ * batch runs and can be saved to be reused by the next runs. It is thread-safe.
+ */
+public class ProducerFingerprints {
+  protected static final Logger LOGGER = Logger.getLogger(ProducerFingerprints.class.getName());
+
+  /** Minimal number of documents seen before predicting. */
+  protected static final int MIN_OBSERVATIONS = 20;
+  /** Minimal fraction of the documents with the predicted verdict. */
+  protected static final double MIN_AGREEMENT = 0.98;
+
+  private static final char SEP = '\t';
+
+  /**
+   * Verdict predicted for a producer.
+   */
+  public static final class Prediction {
+    private final boolean scan;
+    private final int resolution;
+
+    Prediction(boolean scan, int resolution) {
+      this.scan = scan;
+      this.resolution = resolution;
+    }
+
+    /**
+     * Boolean to know if the documents of the producer are scanned.
+     *
+     * @return <code>true</code> for scanned documents
+     */
+    public boolean isScan() {
+      return scan;
+    }
+
+    /**
+     * Getter for the usual resolution of the scanned documents, rounded to the nearest ten.
+     *
+     * @return resolution in DPI, 0 for native documents
+     */
+    public int getResolution() {
+      return resolution;
+    }
+  }
+
+  /**
+   * History of a producer.
+   */
+  private static final class History {
+    int nbScan;
+    int nbNative;
+    final DpiCounter dpis = new DpiCounter();
+
+    synchronized void add(boolean scan, int resolution) {
+      if (scan) {
+        nbScan++;
+        dpis.increment(resolution);
+      } else {
+        nbNative++;
+      }
+    }
+
+    synchronized Prediction predict() {
+      int total = nbScan + nbNative;
+      if (total < MIN_OBSERVATIONS) {
+        return null;
+      }
+      if (nbNative >= MIN_AGREEMENT * total) {
+        return new Prediction(false, 0);
+      }
+      Entry<Integer, Integer> best = dpis.getBest();
+      if (nbScan >= MIN_AGREEMENT * total && best.getValue() >= MIN_AGREEMENT * nbScan) {
+        return new Prediction(true, best.getKey());
+      }
+      return null;
+    }
+
+    synchronized void appendTo(StringBuilder sb) {
+      sb.append(nbScan).append(SEP).append(nbNative).append(SEP);
+      String separator = "";
+      for (Entry<Integer, Integer> entry : new TreeMap<>(dpis.dpis).entrySet()) {
+        sb.append(separator).append(entry.getKey()).append(':').append(entry.getValue());
+        separator = ",";
+      }
+    }
+  }
+
+  private final Map<String, History> histories = new ConcurrentHashMap<>();
+  private final AtomicLong predictions = new AtomicLong();
+  private final AtomicLong confirmations = new AtomicLong();
+
+  /**
+   * Build the key of a producer.
+   *
+   * @param producer Producer of the Info dictionary, may be <code>null</code>
+   * @param creator Creator of the Info dictionary, used without producer, may be
+   *        <code>null</code>
+   * @param version PDF version of the document
+   * @return the key, <code>null</code> if the document has no producer nor creator
+   */
+  public static String key(String producer, String creator, float version) {
+    String name = producer == null || producer.trim().isEmpty() ? creator : producer;
+    if (name == null || name.trim().isEmpty()) {
+      return null;
+    }
+    // Keep the key on one column of the saved table
+    return name.trim().replaceAll("\\s+", " ") + " " + version;
+  }
+
+  /**
+   * Predict the verdict of a document.
+   *
+   * @param key key of the producer, see {@link #key(String, String, float)}
+   * @return the prediction, <code>null</code> if the history of the producer is too short or mixed
+   */
+  public Prediction predict(String key) {
+    History history = key == null ? null : histories.get(key);
+    Prediction prediction = history == null ? null : history.predict();
+    if (prediction != null) {
+      predictions.incrementAndGet();
+    }
+    return prediction;
+  }
+
+  /**
+   * Record the verdict of a detector for a document.
+   *
+   * @param key key of the producer, ignored if <code>null</code>
+   * @param scan <code>true</code> for a scanned document
+   * @param resolution resolution of the scan in DPI
+   */
+  public void record(String key, boolean scan, int resolution) {
+    if (key != null) {
+      histories.computeIfAbsent(key, k -> new History()).add(scan, resolution);
+    }
+  }
+
+  /**
+   * Count a prediction confirmed by the light check.
+   */
+  public void confirmed() {
+    confirmations.incrementAndGet();
+  }
+
+  /**
+   * Getter for the number of predictions given.
+   *
+   * @return number of predictions
+   */
+  public long getPredictions() {
+    return predictions.get();
+  }
+
+  /**
+   * Getter for the number of predictions confirmed by the light check.
+   *
+   * @return number of confirmations
+   */
+  public long getConfirmations() {
+    return confirmations.get();
+  }
+
+  /**
+   * Getter for the number of producers seen.
+   *
+   * @return number of producers
+   */
+  public int size() {
+    return histories.size();
+  }
+
+  /**
+   * Load a table saved by {@link #save(File)}. The malformed lines are skipped.
+   *
+   * @param file file of the table, may not exist
+   * @return the table, empty if the file doesn't exist
+   * @throws IOException exception if error while reading the file
+   */
+  public static ProducerFingerprints load(File file) throws IOException {
+    ProducerFingerprints table = new ProducerFingerprints();
+    if (!file.exists()) {
+      return table;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] columns = line.split(String.valueOf(SEP), -1);
+        if (columns.length != 4) {
+          continue;
+        }
+        try {
+          History history = new History();
+          history.nbScan = Integer.parseInt(columns[1]);
+          history.nbNative = Integer.parseInt(columns[2]);
+          for (String dpi : columns[3].split(",")) {
+            int colon = dpi.indexOf(':');
+            if (colon > 0) {
+              history.dpis.dpis.put(Integer.parseInt(dpi.substring(0, colon)),
+                  Integer.parseInt(dpi.substring(colon + 1)));
+            }
+          }
+          table.histories.put(columns[0], history);
+        } catch (NumberFormatException e) {
+          LOGGER.warning("Skip malformed fingerprint: " + line);
+        }
+      }
+    }
+    LOGGER.info("Loaded " + table.size() + " producers from " + file);
+    return table;
+  }
+
+  /**
+   * Save the table, through a temporary file so that a crash keeps the previous table.
+   *
+   * @param file file of the table
+   * @throws IOException exception if error while writing the file
+   */
+  public void save(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    StringBuilder sb = new StringBuilder(128);
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      for (Entry<String, History> entry : new TreeMap<>(histories).entrySet()) {
+        sb.setLength(0);
+        sb.append(entry.getKey()).append(SEP);
+        entry.getValue().appendTo(sb);
+        writer.write(sb.toString());
+        writer.newLine();
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+}
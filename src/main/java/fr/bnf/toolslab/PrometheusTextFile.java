@@ -0,0 +1,177 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodic writer of the {@link BatchMetrics} in the text format of Prometheus, for the textfile
+ * collector of node-exporter. The file is written aside then moved, so that the collector never
+ * reads a partial file.
+ */
+public class PrometheusTextFile implements Closeable {
+  protected static final Logger LOGGER = Logger.getLogger(PrometheusTextFile.class.getName());
+
+  private static final String PREFIX = "scannedpdf_";
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final File file;
+  private final BatchMetrics metrics;
+  private final String job;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Constructor. Start writing the file immediately.
+   *
+   * @param file file to write, should end with <code>.prom</code>
+   * @param metrics metrics to write
+   * @param job name of the application, written as the <code>job</code> label
+   * @param periodSeconds delay between two writes
+   */
+  public PrometheusTextFile(File file, BatchMetrics metrics, String job, long periodSeconds) {
+    this.file = file;
+    this.metrics = metrics;
+    this.job = job;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "prometheus-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleAtFixedRate(this::writeQuietly, 0, periodSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Parse a delay between two writes given in the command line.
+   *
+   * @param value value to parse, in seconds
+   * @return the delay
+   */
+  public static long parsePeriod(String value) {
+    try {
+      long period = Long.parseLong(value.trim());
+      if (period <= 0) {
+        throw new IllegalArgumentException("Period must be positive: " + value);
+      }
+      return period;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid period " + value);
+    }
+  }
+
+  private void writeQuietly() {
+    try {
+      write();
+    } catch (IOException e) {
+      LOGGER.warning("Unable to write " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Write the current values.
+   *
+   * @throws IOException exception if error while writing the file
+   */
+  public synchronized void write() throws IOException {
+    Path target = file.toPath();
+    Path tmp = target.resolveSibling("." + file.getName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      writer.write(format(metrics, job));
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Stop the periodic writes and write the final values.
+   *
+   * @throws IOException exception if error while writing the file
+   */
+  @Override
+  public void close() throws IOException {
+    scheduler.shutdownNow();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    write();
+  }
+
+  /**
+   * Format the metrics.
+   *
+   * @param metrics metrics to format
+   * @param job value of the <code>job</code> label
+   * @return the text exposition
+   */
+  static String format(BatchMetrics metrics, String job) {
+    StringBuilder sb = new StringBuilder(2048);
+    String labels = "job=\"" + job + "\"";
+    header(sb, "files_total", "counter", "Files processed by result");
+    sample(sb, "files_total", labels + ",result=\"scan\"", metrics.getScanCount());
+    sample(sb, "files_total", labels + ",result=\"native\"", metrics.getNativeCount());
+    sample(sb, "files_total", labels + ",result=\"invalid\"", metrics.getInvalidCount());
+    sample(sb, "files_total", labels + ",result=\"other\"", metrics.getFilesProcessed()
+        - metrics.getScanCount() - metrics.getNativeCount() - metrics.getInvalidCount());
+    metric(sb, "bytes_total", "counter", "Bytes of the processed files", labels,
+        metrics.getBytesProcessed());
+    metric(sb, "pages_total", "counter", "Pages of the processed files", labels,
+        metrics.getPagesProcessed());
+    metric(sb, "images_extracted_total", "counter", "Images extracted", labels,
+        metrics.getImagesExtracted());
+    metric(sb, "cache_hits_total", "counter", "Files answered from the cache of the results",
+        labels, metrics.getCacheHits());
+    metric(sb, "in_flight", "gauge", "Files being processed", labels, metrics.getInFlight());
+    metric(sb, "queue_depth", "gauge", "Files waiting for a worker", labels,
+        metrics.getQueueDepth());
+    metric(sb, "files_per_second", "gauge", "Average files per second since the start", labels,
+        metrics.getFilesPerSecond());
+    metric(sb, "bytes_per_second", "gauge", "Average bytes per second since the start", labels,
+        metrics.getBytesPerSecond());
+    metric(sb, "pages_per_second", "gauge", "Average pages per second since the start", labels,
+        metrics.getPagesPerSecond());
+    metric(sb, "elapsed_seconds", "gauge", "Time since the start of the run", labels,
+        metrics.getElapsedSeconds());
+
+    LatencyHistogram latency = metrics.getLatency();
+    header(sb, "time_to_process_milliseconds", "summary", "Processing time of the files");
+    for (double quantile : QUANTILES) {
+      sample(sb, "time_to_process_milliseconds", labels + ",quantile=\"" + quantile + "\"",
+          latency.percentile(quantile));
+    }
+    sample(sb, "time_to_process_milliseconds_sum", labels, latency.getSum());
+    sample(sb, "time_to_process_milliseconds_count", labels, latency.getCount());
+    return sb.toString();
+  }
+
+  private static void metric(StringBuilder sb, String name, String type, String help,
+      String labels, double value) {
+    header(sb, name, type, help);
+    sample(sb, name, labels, value);
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, double value) {
+    sb.append(PREFIX).append(name).append('{').append(labels).append("} ");
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      sb.append((long) value);
+    } else {
+      sb.append(String.format(Locale.ROOT, "%.3f", value));
+    }
+    sb.append('\n');
+  }
+}
@@ -0,0 +1,73 @@
+package fr.bnf.toolslab;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Buffer to emit items in their sequence order whatever their arrival order. Items arriving ahead
+ * of the expected sequence number are kept until the missing ones show up. This class is meant to
+ * be used by a single thread.
+ *
+ * @param <T> type of the buffered items
+ */
+public class ReorderBuffer<T> {
+
+  private final Map<Long, T> pending = new HashMap<>();
+  private long nextSeq;
+
+  /**
+   * Constructor starting at sequence 0.
+   */
+  public ReorderBuffer() {
+    this(0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param firstSeq sequence number of the first expected item
+   */
+  public ReorderBuffer(long firstSeq) {
+    this.nextSeq = firstSeq;
+  }
+
+  /**
+   * Add an item and emit all the items that are now in sequence.
+   *
+   * @param seq sequence number of the item
+   * @param item item to add
+   * @param out consumer receiving the items in order
+   */
+  public void put(long seq, T item, Consumer<? super T> out) {
+    if (seq != nextSeq) {
+      pending.put(seq, item);
+      return;
+    }
+    out.accept(item);
+    nextSeq++;
+    T next;
+    while ((next = pending.remove(nextSeq)) != null) {
+      out.accept(next);
+      nextSeq++;
+    }
+  }
+
+  /**
+   * Getter for the number of items waiting for a predecessor.
+   *
+   * @return number of pending items
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * Getter for the next expected sequence number.
+   *
+   * @return next sequence number
+   */
+  public long getNextSeq() {
+    return nextSeq;
+  }
+}
@@ -0,0 +1,63 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Quick detector walking the resources of the sampled pages, without interpreting any content
+ * stream. The document is a scan when each examined page has a single image covering it, all at
+ * the same density, and native when none of the examined pages has any image. Anything in
+ * between, like resources shared by all the pages, is ambiguous.
+ */
+public class ResourceScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(ResourceScanDetector.class.getName());
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    int nbPages = document.getNumberOfPages();
+    fd.setNbPages(nbPages);
+    fd.setScan(false);
+
+    ctx.metrics.enter(Phase.SAMPLING);
+    SequentialSampler sampler = samplingPolicy.newSampler(nbPages);
+    int[] pagesToTest = pickSamples(ctx, sampler.getMaxSamples(), nbPages);
+    int nbWithImages = 0;
+    for (int i = 0; !sampler.isSettled(); i++) {
+      PDPage page = document.getPage(pagesToTest[i]);
+      ImageSummary summary = summarizeImages(ctx, page.getResources());
+      int dpiFound = 0;
+      if (summary.getCount() > 0) {
+        nbWithImages++;
+      }
+      if (summary.getCount() == 1) {
+        PDRectangle rect = page.getMediaBox();
+        DimensionInfo dimPage = new DimensionInfo((long) rect.getWidth(), (long) rect.getHeight());
+        dpiFound = findDensity(summary.getFirst(), dimPage, page.getUserUnit());
+      }
+      LOGGER.fine("Page [" + pagesToTest[i] + "] " + summary.getCount() + " images, density "
+          + dpiFound);
+      sampler.add(dpiFound);
+    }
+
+    ctx.metrics.enter(Phase.DECISION);
+    sampler.report(fd);
+    LOGGER.fine("Resources of " + sampler);
+    if (nbWithImages == 0) {
+      // No image at all in the sample
+      return;
+    }
+    Entry<Integer, Integer> bestDpi = sampler.getBest();
+    if (bestDpi.getKey() != 0 && bestDpi.getValue().intValue() == sampler.getNbExamined()) {
+      fd.setScan(true);
+      fd.setResolution(bestDpi.getKey());
+      return;
+    }
+    ctx.ambiguous = true;
+  }
+}
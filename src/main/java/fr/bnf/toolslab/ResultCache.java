@@ -0,0 +1,559 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Persistent store of the detection results, keyed by the path, size and last modification time
+ * of the files and by the key of the detector, its name and settings (see
+ * {@link AbstractScanDetector#getCacheKey()}).
+ *
+ * <p>
+ * The store is an append-only binary log: a header, then records tagged either as a detector
+ * definition or as a result. Paths are prefix-compressed against the previous record and numbers
+ * are written as varints. Only a 64-bit hash of each path is kept in memory, so that loading tens
+ * of millions of entries doesn't build any String. When the stale records outnumber the live ones,
+ * the log is rewritten on close.
+ * </p>
+ */
+public class ResultCache implements Closeable {
+  protected static final Logger LOGGER = Logger.getLogger(ResultCache.class.getName());
+
+  private static final int MAGIC = 0x53505243; // "SPRC"
+  private static final int VERSION = 2;
+  private static final int TAG_DETECTOR = 1;
+  private static final int TAG_RESULT = 2;
+  private static final int FLAG_VALID = 1;
+  private static final int FLAG_SCAN = 2;
+  // Since version 2, the result is followed by the number of samples and the confidence
+  private static final int FLAG_SAMPLED = 4;
+  /** Confidences are written as integers, in units of 1/10000. */
+  private static final double CONFIDENCE_UNIT = 10000.0;
+  // Rough size of a record, to presize the index
+  private static final int AVERAGE_RECORD_SIZE = 40;
+  private static final int MIN_STALE_TO_COMPACT = 1000;
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final File file;
+  private final Map<String, Integer> detectorIds = new HashMap<>();
+  private final List<String> detectorNames = new ArrayList<>();
+  private final LongIntMap index;
+
+  // Dense storage of the entries, indexed by the values of the index
+  private long[] sizes;
+  private long[] mtimes;
+  private byte[] flags;
+  private int[] nbPages;
+  private int[] nbImages;
+  private int[] resolutions;
+  private int[] times;
+  private int[] samples;
+  private int[] confidences;
+  private int[] records;
+  private int nbEntries;
+
+  private int nbRecords;
+  private String previousPath = "";
+  private DataOutputStream out;
+  private long hits;
+  private long misses;
+
+  /**
+   * One record of the log, reused while reading.
+   */
+  private static final class Record {
+    String path;
+    long size;
+    long mtime;
+    int detector;
+    int flags;
+    int nbPages;
+    int nbImages;
+    int resolution;
+    int time;
+    int nbSamples;
+    int confidence;
+  }
+
+  /**
+   * Callback while reading the log.
+   */
+  private interface RecordHandler {
+    void onDetector(int id, String name) throws IOException;
+
+    void onResult(Record record, int recordIndex) throws IOException;
+  }
+
+  /**
+   * Stream counting the bytes read, to find the end of the last complete record.
+   */
+  static final class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  private ResultCache(File file) {
+    this.file = file;
+    int expected = (int) Math.min(Integer.MAX_VALUE / 2, file.length() / AVERAGE_RECORD_SIZE);
+    this.index = new LongIntMap(expected);
+    int capacity = Math.max(1024, expected);
+    sizes = new long[capacity];
+    mtimes = new long[capacity];
+    flags = new byte[capacity];
+    nbPages = new int[capacity];
+    nbImages = new int[capacity];
+    resolutions = new int[capacity];
+    times = new int[capacity];
+    samples = new int[capacity];
+    confidences = new int[capacity];
+    records = new int[capacity];
+  }
+
+  /**
+   * Open a store, creating it if needed.
+   *
+   * @param file file of the store
+   * @return the opened store
+   * @throws IOException exception if error while reading the file
+   */
+  public static ResultCache open(File file) throws IOException {
+    ResultCache cache = new ResultCache(file);
+    long begin = System.currentTimeMillis();
+    cache.load();
+    LOGGER.info(String.format("Loaded %d results from %s in %d ms", cache.nbEntries,
+        file.getName(), System.currentTimeMillis() - begin));
+    cache.out = cache.openWriter(file, true);
+    return cache;
+  }
+
+  private void load() throws IOException {
+    if (!file.exists() || file.length() == 0) {
+      return;
+    }
+    long validLength = readLog(file, new RecordHandler() {
+      @Override
+      public void onDetector(int id, String name) {
+        registerDetector(id, name);
+      }
+
+      @Override
+      public void onResult(Record record, int recordIndex) {
+        put(record, recordIndex);
+        previousPath = record.path;
+        nbRecords = recordIndex + 1;
+      }
+    });
+    if (validLength < file.length()) {
+      LOGGER.warning("Truncating the incomplete last record of " + file.getName());
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(validLength);
+      }
+    }
+  }
+
+  /**
+   * Read all the records of a log.
+   *
+   * @return the length of the complete records
+   */
+  private static long readLog(File logFile, RecordHandler handler) throws IOException {
+    try (CountingInputStream counting =
+        new CountingInputStream(new BufferedInputStream(new FileInputStream(logFile), BUFFER_SIZE));
+        DataInputStream in = new DataInputStream(counting)) {
+      int magic = in.readInt();
+      int version = in.readUnsignedByte();
+      if (magic != MAGIC || version < 1 || version > VERSION) {
+        throw new IOException(logFile.getName() + " is not a result cache");
+      }
+      long validLength = counting.count;
+      Record record = new Record();
+      String previous = "";
+      int recordIndex = 0;
+      try {
+        while (true) {
+          int tag = in.read();
+          if (tag == -1) {
+            break;
+          }
+          if (tag == TAG_DETECTOR) {
+            int id = readVarInt(in);
+            handler.onDetector(id, in.readUTF());
+          } else if (tag == TAG_RESULT) {
+            int shared = readVarInt(in);
+            String suffix = in.readUTF();
+            record.size = readVarLong(in);
+            record.mtime = readVarLong(in);
+            record.detector = readVarInt(in);
+            record.flags = in.readUnsignedByte();
+            record.nbPages = readVarInt(in);
+            record.nbImages = readVarInt(in);
+            record.resolution = readVarInt(in);
+            record.time = readVarInt(in);
+            boolean sampled = (record.flags & FLAG_SAMPLED) != 0;
+            record.nbSamples = sampled ? readVarInt(in) : 0;
+            record.confidence = sampled ? readVarInt(in) : 0;
+            record.path = previous.substring(0, shared) + suffix;
+            previous = record.path;
+            handler.onResult(record, recordIndex++);
+          } else {
+            LOGGER.warning(
+                "Unknown tag " + tag + " in " + logFile.getName() + " at " + validLength);
+            break;
+          }
+          validLength = counting.count;
+        }
+      } catch (EOFException e) {
+        LOGGER.fine("Incomplete record at " + validLength);
+      }
+      return validLength;
+    }
+  }
+
+  private DataOutputStream openWriter(File logFile, boolean append) throws IOException {
+    boolean isNew = !append || !logFile.exists() || logFile.length() == 0;
+    DataOutputStream writer = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(logFile, append), BUFFER_SIZE));
+    if (isNew) {
+      writer.writeInt(MAGIC);
+      writer.writeByte(VERSION);
+      previousPath = "";
+      // The detectors may be known from a previous log
+      for (int id = 0; id < detectorNames.size(); id++) {
+        writeDetector(writer, id, detectorNames.get(id));
+      }
+    }
+    return writer;
+  }
+
+  private void registerDetector(int id, String name) {
+    detectorIds.put(name, id);
+    while (detectorNames.size() <= id) {
+      detectorNames.add(null);
+    }
+    detectorNames.set(id, name);
+  }
+
+  private static void writeDetector(DataOutputStream writer, int id, String name)
+      throws IOException {
+    writer.writeByte(TAG_DETECTOR);
+    writeVarInt(writer, id);
+    writer.writeUTF(name);
+  }
+
+  private void writeResult(DataOutputStream writer, Record record) throws IOException {
+    int shared = 0;
+    int max = Math.min(previousPath.length(), record.path.length());
+    while (shared < max && previousPath.charAt(shared) == record.path.charAt(shared)) {
+      shared++;
+    }
+    writer.writeByte(TAG_RESULT);
+    writeVarInt(writer, shared);
+    writer.writeUTF(record.path.substring(shared));
+    writeVarLong(writer, record.size);
+    writeVarLong(writer, record.mtime);
+    writeVarInt(writer, record.detector);
+    writer.writeByte(record.flags);
+    writeVarInt(writer, record.nbPages);
+    writeVarInt(writer, record.nbImages);
+    writeVarInt(writer, record.resolution);
+    writeVarInt(writer, record.time);
+    if ((record.flags & FLAG_SAMPLED) != 0) {
+      writeVarInt(writer, record.nbSamples);
+      writeVarInt(writer, record.confidence);
+    }
+    previousPath = record.path;
+  }
+
+  private void put(Record record, int recordIndex) {
+    long key = key(record.path, record.detector);
+    int id = index.get(key);
+    if (id < 0) {
+      id = nbEntries++;
+      ensureCapacity(nbEntries);
+      index.put(key, id);
+    }
+    sizes[id] = record.size;
+    mtimes[id] = record.mtime;
+    flags[id] = (byte) record.flags;
+    nbPages[id] = record.nbPages;
+    nbImages[id] = record.nbImages;
+    resolutions[id] = record.resolution;
+    times[id] = record.time;
+    samples[id] = record.nbSamples;
+    confidences[id] = record.confidence;
+    records[id] = recordIndex;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= sizes.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, sizes.length + (sizes.length >> 1));
+    sizes = Arrays.copyOf(sizes, newCapacity);
+    mtimes = Arrays.copyOf(mtimes, newCapacity);
+    flags = Arrays.copyOf(flags, newCapacity);
+    nbPages = Arrays.copyOf(nbPages, newCapacity);
+    nbImages = Arrays.copyOf(nbImages, newCapacity);
+    resolutions = Arrays.copyOf(resolutions, newCapacity);
+    times = Arrays.copyOf(times, newCapacity);
+    samples = Arrays.copyOf(samples, newCapacity);
+    confidences = Arrays.copyOf(confidences, newCapacity);
+    records = Arrays.copyOf(records, newCapacity);
+  }
+
+  /**
+   * Hash of a path for a given detector (FNV-1a 64 bits).
+   */
+  static long key(String path, int detector) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < path.length(); i++) {
+      hash ^= path.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= detector;
+    hash *= 0x100000001b3L;
+    return hash;
+  }
+
+  /**
+   * Look for a result still valid for the file and fill the file descriptor with it.
+   *
+   * @param path absolute path of the file
+   * @param size current size of the file
+   * @param mtime current last modification time of the file
+   * @param detector key of the detector
+   * @param fd file descriptor to fill
+   * @return <code>true</code> if the result was found
+   */
+  public synchronized boolean lookup(String path, long size, long mtime, String detector,
+      FileDescriptor fd) {
+    Integer detectorId = detectorIds.get(detector);
+    int id = detectorId == null ? -1 : index.get(key(path, detectorId));
+    if (id < 0 || sizes[id] != size || mtimes[id] != mtime) {
+      misses++;
+      return false;
+    }
+    hits++;
+    fd.setValid((flags[id] & FLAG_VALID) != 0);
+    fd.setScan((flags[id] & FLAG_SCAN) != 0);
+    fd.setNbPages(nbPages[id]);
+    fd.setNbImages(nbImages[id]);
+    fd.setResolution(resolutions[id]);
+    fd.setTimeToProcess(times[id]);
+    fd.setNbSamples(samples[id]);
+    fd.setConfidence(confidence(confidences[id]));
+    return true;
+  }
+
+  /**
+   * Tell whether a result is still valid for the file, without counting a lookup.
+   *
+   * @param path absolute path of the file
+   * @param size current size of the file
+   * @param mtime current last modification time of the file
+   * @param detector key of the detector
+   * @return <code>true</code> if the result is known
+   */
+  public synchronized boolean contains(String path, long size, long mtime, String detector) {
+    Integer detectorId = detectorIds.get(detector);
+    int id = detectorId == null ? -1 : index.get(key(path, detectorId));
+    return id >= 0 && sizes[id] == size && mtimes[id] == mtime;
+  }
+
+  /**
+   * Record the result of a file.
+   *
+   * @param path absolute path of the file
+   * @param size size of the file when it was read
+   * @param mtime last modification time of the file when it was read
+   * @param detector key of the detector
+   * @param fd result of the detection
+   * @throws IOException exception if error while writing the store
+   */
+  public synchronized void record(String path, long size, long mtime, String detector,
+      FileDescriptor fd) throws IOException {
+    Integer detectorId = detectorIds.get(detector);
+    if (detectorId == null) {
+      detectorId = detectorNames.size();
+      registerDetector(detectorId, detector);
+      writeDetector(out, detectorId, detector);
+    }
+    Record record = new Record();
+    record.path = path;
+    record.size = size;
+    record.mtime = mtime;
+    record.detector = detectorId;
+    record.flags = (fd.isValid() ? FLAG_VALID : 0) | (fd.isScan() ? FLAG_SCAN : 0)
+        | (fd.getNbSamples() > 0 ? FLAG_SAMPLED : 0);
+    record.nbPages = fd.getNbPages();
+    record.nbImages = fd.getNbImages();
+    record.resolution = fd.getResolution();
+    record.time = (int) Math.min(Integer.MAX_VALUE, fd.getTimeToProcess());
+    record.nbSamples = fd.getNbSamples();
+    record.confidence = confidenceUnits(fd.getConfidence());
+    writeResult(out, record);
+    put(record, nbRecords++);
+  }
+
+  /**
+   * Getter for the number of known results.
+   *
+   * @return number of entries
+   */
+  public synchronized int size() {
+    return nbEntries;
+  }
+
+  /**
+   * Getter for the number of lookups answered by the store.
+   *
+   * @return number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Getter for the number of lookups not answered by the store.
+   *
+   * @return number of misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+    if (nbRecords - nbEntries > Math.max(nbEntries, MIN_STALE_TO_COMPACT)) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrite the log with only the live records.
+   */
+  private void compact() throws IOException {
+    LOGGER.info(String.format("Compacting %s: %d records for %d results", file.getName(),
+        nbRecords, nbEntries));
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream writer = openWriter(tmpFile, false)) {
+      readLog(file, new RecordHandler() {
+        @Override
+        public void onDetector(int id, String name) {
+          // Already written by openWriter()
+        }
+
+        @Override
+        public void onResult(Record record, int recordIndex) throws IOException {
+          int id = index.get(key(record.path, record.detector));
+          if (id >= 0 && records[id] == recordIndex) {
+            writeResult(writer, record);
+          }
+        }
+      });
+    }
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Convert a confidence to the integer written in the binary formats.
+   *
+   * @param confidence confidence between 0 and 1
+   * @return the confidence in units of 1/10000
+   */
+  static int confidenceUnits(double confidence) {
+    return (int) Math.round(confidence * CONFIDENCE_UNIT);
+  }
+
+  /**
+   * Convert a confidence read from a binary format.
+   *
+   * @param units confidence in units of 1/10000
+   * @return the confidence between 0 and 1
+   */
+  static double confidence(int units) {
+    return units / CONFIDENCE_UNIT;
+  }
+
+  static void writeVarLong(DataOutputStream writer, long value) throws IOException {
+    long v = value;
+    while ((v & ~0x7FL) != 0) {
+      writer.writeByte((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    writer.writeByte((int) v);
+  }
+
+  static void writeVarInt(DataOutputStream writer, int value) throws IOException {
+    writeVarLong(writer, value & 0xFFFFFFFFL);
+  }
+
+  static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    while (true) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+      if (shift > 63) {
+        throw new IOException("Malformed varint");
+      }
+    }
+  }
+
+  static int readVarInt(DataInputStream in) throws IOException {
+    return (int) readVarLong(in);
+  }
+}
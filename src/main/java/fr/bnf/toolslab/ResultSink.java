@@ -0,0 +1,30 @@
+package fr.bnf.toolslab;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the detection results.
+ *
+ * <p>
+ * A sink is not thread-safe: it is always fed by a single thread, either the walker or the sink
+ * thread of the {@link ParallelScanner}.
+ * </p>
+ */
+public interface ResultSink extends Closeable {
+
+  /**
+   * Write the result of a file.
+   *
+   * @param fd result of the detection
+   * @throws IOException exception if error while writing
+   */
+  void write(FileDescriptor fd) throws IOException;
+
+  /**
+   * Push the buffered results to the destination.
+   *
+   * @throws IOException exception if error while writing
+   */
+  void flush() throws IOException;
+}
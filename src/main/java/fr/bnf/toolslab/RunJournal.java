@@ -0,0 +1,319 @@
+package fr.bnf.toolslab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the files completed by a run, so that an interrupted run can resume where
+ * it stopped. Each record holds the path of a file and either its detection result or the numbers
+ * given to its extracted images.
+ *
+ * <p>
+ * The format follows the {@link ResultCache}: a header, then tagged records with prefix-compressed
+ * paths and varints. When resuming, only a sorted array of the 64-bit hashes of the paths is kept
+ * in memory, 8 bytes per file, searched by dichotomy: no String is built for the completed files.
+ * </p>
+ */
+public class RunJournal implements Closeable {
+  protected static final Logger LOGGER = Logger.getLogger(RunJournal.class.getName());
+
+  private static final int MAGIC = 0x5350524A; // "SPRJ"
+  private static final int VERSION = 2;
+  private static final int TAG_RESULT = 1;
+  private static final int TAG_EXTRACTION = 2;
+  private static final int FLAG_VALID = 1;
+  private static final int FLAG_SCAN = 2;
+  // Since version 2, the result is followed by the number of samples and the confidence
+  private static final int FLAG_SAMPLED = 4;
+  private static final int BUFFER_SIZE = 1 << 16;
+  /** Number of records after which the journal is flushed, bounding the work redone. */
+  private static final int FLUSH_RECORDS = 256;
+
+  private final File file;
+  // Sorted hashes of the completed paths, never modified after opening
+  private long[] done = new long[0];
+  private int nbDone;
+  private int nextNumber = -1;
+  private String previousPath = "";
+  private DataOutputStream out;
+  private int pending;
+  private long skipped;
+
+  /**
+   * Callback while reading the journal.
+   */
+  private interface RecordHandler {
+    void onResult(FileDescriptor fd) throws IOException;
+
+    void onExtraction(String path, int first, int nbImages);
+  }
+
+  private RunJournal(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Open a journal.
+   *
+   * @param file file of the journal
+   * @param resume <code>true</code> to keep the files already completed, <code>false</code> to
+   *        start a new journal
+   * @return the opened journal
+   * @throws IOException exception if error while reading the file
+   */
+  public static RunJournal open(File file, boolean resume) throws IOException {
+    RunJournal journal = new RunJournal(file);
+    boolean isNew = !resume || !file.exists() || file.length() == 0;
+    if (!isNew) {
+      long begin = System.currentTimeMillis();
+      journal.load();
+      LOGGER.info(String.format("Resuming after %d files from %s in %d ms", journal.done.length,
+          file.getName(), System.currentTimeMillis() - begin));
+    }
+    journal.out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file, !isNew), BUFFER_SIZE));
+    if (isNew) {
+      journal.out.writeInt(MAGIC);
+      journal.out.writeByte(VERSION);
+      journal.out.flush();
+    }
+    return journal;
+  }
+
+  private void load() throws IOException {
+    done = new long[1024];
+    long validLength = readJournal(new RecordHandler() {
+      @Override
+      public void onResult(FileDescriptor fd) {
+        addDone(fd.getFile().getPath());
+      }
+
+      @Override
+      public void onExtraction(String path, int first, int nbImages) {
+        addDone(path);
+        nextNumber = Math.max(nextNumber, first + nbImages);
+      }
+    });
+    done = Arrays.copyOf(done, nbDone);
+    Arrays.sort(done);
+    if (validLength < file.length()) {
+      LOGGER.warning("Truncating the incomplete last record of " + file.getName());
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(validLength);
+      }
+    }
+  }
+
+  private void addDone(String path) {
+    if (nbDone == done.length) {
+      done = Arrays.copyOf(done, nbDone + (nbDone >> 1));
+    }
+    done[nbDone++] = hash(path);
+    // The next record is compressed against the last one read
+    previousPath = path;
+  }
+
+  /**
+   * Read all the records of the journal.
+   *
+   * @return the length of the complete records
+   */
+  private long readJournal(RecordHandler handler) throws IOException {
+    try (ResultCache.CountingInputStream counting = new ResultCache.CountingInputStream(
+        new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        DataInputStream in = new DataInputStream(counting)) {
+      int magic = in.readInt();
+      int version = in.readUnsignedByte();
+      if (magic != MAGIC || version < 1 || version > VERSION) {
+        throw new IOException(file.getName() + " is not a run journal");
+      }
+      long validLength = counting.count;
+      String previous = "";
+      try {
+        while (true) {
+          int tag = in.read();
+          if (tag == -1) {
+            break;
+          }
+          if (tag != TAG_RESULT && tag != TAG_EXTRACTION) {
+            LOGGER.warning("Unknown tag " + tag + " in " + file.getName() + " at " + validLength);
+            break;
+          }
+          int shared = ResultCache.readVarInt(in);
+          String path = previous.substring(0, shared) + in.readUTF();
+          previous = path;
+          if (tag == TAG_RESULT) {
+            FileDescriptor fd = new FileDescriptor(new File(path));
+            int flags = in.readUnsignedByte();
+            fd.setValid((flags & FLAG_VALID) != 0);
+            fd.setScan((flags & FLAG_SCAN) != 0);
+            fd.setNbPages(ResultCache.readVarInt(in));
+            fd.setNbImages(ResultCache.readVarInt(in));
+            fd.setResolution(ResultCache.readVarInt(in));
+            fd.setTimeToProcess(ResultCache.readVarLong(in));
+            if ((flags & FLAG_SAMPLED) != 0) {
+              fd.setNbSamples(ResultCache.readVarInt(in));
+              fd.setConfidence(ResultCache.confidence(ResultCache.readVarInt(in)));
+            }
+            handler.onResult(fd);
+          } else {
+            int first = ResultCache.readVarInt(in);
+            handler.onExtraction(path, first, ResultCache.readVarInt(in));
+          }
+          validLength = counting.count;
+        }
+      } catch (EOFException e) {
+        LOGGER.fine("Incomplete record at " + validLength);
+      }
+      return validLength;
+    }
+  }
+
+  /**
+   * Hash of a path, see {@link ResultCache#key(String, int)}.
+   */
+  static long hash(String path) {
+    return ResultCache.key(path, 0);
+  }
+
+  /**
+   * Tell whether a file was completed by the interrupted run. Two paths with the same 64-bit hash
+   * are not told apart, which is unlikely even for tens of millions of files.
+   *
+   * @param file file to check
+   * @return <code>true</code> if the file was completed
+   */
+  public boolean isDone(File file) {
+    if (Arrays.binarySearch(done, hash(file.getAbsolutePath())) < 0) {
+      return false;
+    }
+    synchronized (this) {
+      skipped++;
+    }
+    return true;
+  }
+
+  /**
+   * Give the results of the completed files to a sink, so that the output of the resumed run is
+   * complete. Should be called before recording any new file.
+   *
+   * @param sink destination of the results
+   * @throws IOException exception if error while reading the journal or writing the results
+   */
+  public synchronized void replay(ResultSink sink) throws IOException {
+    out.flush();
+    readJournal(new RecordHandler() {
+      @Override
+      public void onResult(FileDescriptor fd) throws IOException {
+        sink.write(fd);
+      }
+
+      @Override
+      public void onExtraction(String path, int first, int nbImages) {
+        // No result to give
+      }
+    });
+  }
+
+  /**
+   * First number free for the extracted images.
+   *
+   * @return the number following the last image extracted by the interrupted run, -1 if no image
+   *         was numbered
+   */
+  public synchronized int getNextNumber() {
+    return nextNumber;
+  }
+
+  /**
+   * Getter for the number of files completed by the interrupted run.
+   *
+   * @return number of files
+   */
+  public int size() {
+    return done.length;
+  }
+
+  /**
+   * Getter for the number of files skipped since they were completed.
+   *
+   * @return number of files
+   */
+  public synchronized long getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Record the detection result of a file.
+   *
+   * @param fd result of the detection
+   * @throws IOException exception if error while writing the journal
+   */
+  public synchronized void recordResult(FileDescriptor fd) throws IOException {
+    writePath(TAG_RESULT, fd.getFile().getAbsolutePath());
+    boolean sampled = fd.getNbSamples() > 0;
+    out.writeByte((fd.isValid() ? FLAG_VALID : 0) | (fd.isScan() ? FLAG_SCAN : 0)
+        | (sampled ? FLAG_SAMPLED : 0));
+    ResultCache.writeVarInt(out, fd.getNbPages());
+    ResultCache.writeVarInt(out, fd.getNbImages());
+    ResultCache.writeVarInt(out, fd.getResolution());
+    ResultCache.writeVarLong(out, fd.getTimeToProcess());
+    if (sampled) {
+      ResultCache.writeVarInt(out, fd.getNbSamples());
+      ResultCache.writeVarInt(out, ResultCache.confidenceUnits(fd.getConfidence()));
+    }
+    written();
+  }
+
+  /**
+   * Record the images extracted from a file.
+   *
+   * @param file file the images were extracted from
+   * @param first number given to the first image
+   * @param nbImages number of images extracted
+   * @throws IOException exception if error while writing the journal
+   */
+  public synchronized void recordExtraction(File file, int first, int nbImages)
+      throws IOException {
+    writePath(TAG_EXTRACTION, file.getAbsolutePath());
+    ResultCache.writeVarInt(out, first);
+    ResultCache.writeVarInt(out, nbImages);
+    nextNumber = Math.max(nextNumber, first + nbImages);
+    written();
+  }
+
+  private void writePath(int tag, String path) throws IOException {
+    int shared = 0;
+    int max = Math.min(previousPath.length(), path.length());
+    while (shared < max && previousPath.charAt(shared) == path.charAt(shared)) {
+      shared++;
+    }
+    out.writeByte(tag);
+    ResultCache.writeVarInt(out, shared);
+    out.writeUTF(path.substring(shared));
+    previousPath = path;
+  }
+
+  private void written() throws IOException {
+    if (++pending >= FLUSH_RECORDS) {
+      out.flush();
+      pending = 0;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
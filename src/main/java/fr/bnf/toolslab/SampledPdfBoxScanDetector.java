@@ -0,0 +1,164 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * Variant of StreamPdfBoxScanDetector which only interprets the sampled pages. The number of pages
+ * comes from the page tree and the page/image ratio is estimated on the sample, so that the cost
+ * doesn't depend on the number of pages.
+ */
+public class SampledPdfBoxScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER =
+      Logger.getLogger(SampledPdfBoxScanDetector.class.getName());
+
+  private final boolean strict;
+  private final boolean light;
+
+  /**
+   * Constructor with the rules of StreamPdfBoxScanDetector.
+   */
+  public SampledPdfBoxScanDetector() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param strict <code>true</code> to apply the rules of StrictPdfBoxScanDetector
+   */
+  public SampledPdfBoxScanDetector(boolean strict) {
+    this(strict, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param strict <code>true</code> to apply the rules of StrictPdfBoxScanDetector
+   * @param light <code>true</code> to interpret the pages with a {@link LightImageEngine}
+   */
+  public SampledPdfBoxScanDetector(boolean strict, boolean light) {
+    this.strict = strict;
+    this.light = light;
+  }
+
+  @Override
+  public String getName() {
+    return strict ? "Strict" + super.getName() : super.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return light;
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    // Only read the /Count of the page tree
+    ctx.nbPages = document.getNumberOfPages();
+    fd.setNbPages(ctx.nbPages);
+    if (ctx.nbPages == 0) {
+      fd.setScan(false);
+      return;
+    }
+    ctx.metrics.enter(Phase.SAMPLING);
+    SequentialSampler sampler = samplingPolicy.newSampler(ctx.nbPages);
+    int[] pagesToTest = pickSamples(ctx, sampler.getMaxSamples(), ctx.nbPages);
+
+    // Interpret the sampled pages one at a time, and look if the image covers each of them
+    int nbSampledImages = 0;
+    boolean uncovered = false;
+    for (int i = 0; !sampler.isSettled(); i++) {
+      int pageNum = pagesToTest[i];
+      int nbImagesInPage = parsePage(ctx, document.getPage(pageNum), pageNum);
+      nbSampledImages += nbImagesInPage;
+      DimensionInfo dimImage = ctx.imageDimensions.get(i);
+      LOGGER.fine("Page [" + pageNum + "] dimension " + dimImage);
+      if (dimImage == DimensionInfo.EMPTY) {
+        sampler.add(0);
+        uncovered = true;
+        if (strict) {
+          break;
+        }
+        continue;
+      }
+
+      int dpiFound = findDensity(ctx.imagePlacements.get(i));
+      LOGGER.fine("Page [" + pageNum + "] density " + dpiFound);
+      sampler.add(dpiFound);
+      uncovered |= dpiFound == 0;
+      if (uncovered && strict) {
+        break;
+      }
+    }
+    int nbSamples = sampler.getNbExamined();
+    sampler.report(fd);
+    // Extrapolate the number of images to the whole document
+    ctx.nbImages = (int) Math.round((double) nbSampledImages * ctx.nbPages / nbSamples);
+    fd.setNbImages(ctx.nbImages);
+    LOGGER.fine("First pass in " + ctx.elapsed() + " with " + nbSampledImages + " images in "
+        + nbSamples + " pages, " + sampler);
+
+    // First heuristic: compare the number of pages and the number of
+    // images in the sample
+    if (strict ? nbSamples > nbSampledImages : nbSamples != nbSampledImages) {
+      fd.setScan(false);
+      return;
+    }
+    // In strict mode, any page without a covering image is enough
+    if (strict && uncovered) {
+      fd.setScan(false);
+      return;
+    }
+
+    // Find the most usual dpi
+    ctx.metrics.enter(Phase.DECISION);
+    Entry<Integer, Integer> bestDpi = sampler.getBest();
+    LOGGER.fine("Second pass in " + ctx.elapsed());
+    // If more scanned pages than the threshold
+    if (sampler.isScan()) {
+      fd.setScan(true);
+      fd.setResolution(bestDpi.getKey());
+    }
+  }
+
+  /**
+   * Interpret a sampled page. The dimensions are appended in the order of the sample.
+   *
+   * @param ctx state of the detection
+   * @param page page to interpret
+   * @param pageNum index of the page in the document
+   * @return number of new images in the page
+   */
+  protected int parsePage(ScanContext ctx, PDPage page, int pageNum) {
+    int nbImagesInPage = 0;
+    PDRectangle rect = page.getMediaBox(); // Found page dimension
+    DimensionInfo dimPage = new DimensionInfo((long) (rect.getWidth()), (long) (rect.getHeight()));
+    LOGGER.fine("Found page [" + pageNum + "] with dimension " + dimPage.toString());
+    ctx.pageDimensions.add(dimPage);
+
+    ImagePlacement placement = null;
+    Phase previous = ctx.metrics.enter(Phase.IMAGES);
+    try {
+      int initialNumber = ctx.imageCounter.get();
+      List<ImagePlacement> placements = interpretPage(ctx, page, light);
+      nbImagesInPage = ctx.imageCounter.get() - initialNumber;
+      if (nbImagesInPage != 0) {
+        placement = placements.get(0);
+      }
+    } catch (IOException e) {
+      LOGGER.warning("Error processing page [" + pageNum + "]: " + e.getMessage());
+    }
+    ctx.metrics.enter(previous);
+    ctx.imageDimensions.add(placement == null ? DimensionInfo.EMPTY : placement.getDimension());
+    ctx.imagePlacements.add(placement);
+    return nbImagesInPage;
+  }
+}
@@ -0,0 +1,134 @@
+package fr.bnf.toolslab;
+
+/**
+ * Policy to sample the pages examined by the detectors. Instances are immutable and can be shared
+ * by several threads.
+ */
+public class SamplingPolicy {
+
+  /** Maximal number of pages examined by the sequential sampling of a mixed document. */
+  public static final int MAX_SEQUENTIAL_SAMPLES = 50;
+
+  /** Fixed sampling of {@link AbstractScanDetector#MAX_SAMPLES} pages, uniform and seeded. */
+  public static final SamplingPolicy DEFAULT =
+      new SamplingPolicy(0, AbstractScanDetector.MAX_SAMPLES, new UniformSampling(0));
+
+  private final double confidence;
+  private final int maxSamples;
+  private final SamplingStrategy strategy;
+
+  /**
+   * Constructor with the uniform selection.
+   *
+   * @param confidence confidence at which the sampling stops, 0 to always examine all the samples
+   * @param maxSamples maximal number of pages examined
+   */
+  public SamplingPolicy(double confidence, int maxSamples) {
+    this(confidence, maxSamples, new UniformSampling(0));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param confidence confidence at which the sampling stops, 0 to always examine all the samples
+   * @param maxSamples maximal number of pages examined
+   * @param strategy selection of the pages
+   */
+  public SamplingPolicy(double confidence, int maxSamples, SamplingStrategy strategy) {
+    if (confidence < 0 || confidence >= 1) {
+      throw new IllegalArgumentException("Confidence must be in [0, 1): " + confidence);
+    }
+    if (maxSamples < 1) {
+      throw new IllegalArgumentException("Number of samples must be positive: " + maxSamples);
+    }
+    this.confidence = confidence;
+    this.maxSamples = maxSamples;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Build a sequential sampling, stopping at the given confidence.
+   *
+   * @param confidence confidence at which the sampling stops, like 0.9
+   * @return the policy
+   */
+  public static SamplingPolicy sequential(double confidence) {
+    return new SamplingPolicy(confidence, MAX_SEQUENTIAL_SAMPLES);
+  }
+
+  /**
+   * Build the same policy with another selection of the pages.
+   *
+   * @param strategy selection of the pages
+   * @return the policy
+   */
+  public SamplingPolicy withStrategy(SamplingStrategy strategy) {
+    return new SamplingPolicy(confidence, maxSamples, strategy);
+  }
+
+  /**
+   * Create the sampler of a document.
+   *
+   * @param nbPages number of pages of the document
+   * @return a new sampler
+   */
+  public SequentialSampler newSampler(int nbPages) {
+    return new SequentialSampler(confidence, maxSamples, nbPages);
+  }
+
+  /**
+   * Getter for the confidence.
+   *
+   * @return the confidence, 0 for a fixed sampling
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Getter for the maximal number of pages examined.
+   *
+   * @return number of pages
+   */
+  public int getMaxSamples() {
+    return maxSamples;
+  }
+
+  /**
+   * Getter for the selection of the pages.
+   *
+   * @return the strategy
+   */
+  public SamplingStrategy getStrategy() {
+    return strategy;
+  }
+
+  @Override
+  public String toString() {
+    return strategy + "/" + maxSamples + "/" + confidence;
+  }
+
+  /**
+   * Parse a confidence given in the command line, as a fraction or a percentage.
+   *
+   * @param value value to parse, like 0.95 or 95%
+   * @return the confidence
+   */
+  public static double parseConfidence(String value) {
+    String text = value.trim();
+    double factor = 1.0;
+    if (text.endsWith("%")) {
+      text = text.substring(0, text.length() - 1);
+      factor = 0.01;
+    }
+    try {
+      double confidence = Double.parseDouble(text) * factor;
+      if (confidence <= 0 || confidence >= 1) {
+        throw new IllegalArgumentException("Confidence must be in (0, 1): " + value);
+      }
+      return confidence;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid confidence " + value);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package fr.bnf.toolslab;
+
+import java.util.Locale;
+
+/**
+ * Strategy to select the pages sampled by the detectors. The pages are returned in the order they
+ * should be examined, so that a sequential sampling stopping early still gets a representative
+ * prefix. Implementations are immutable and can be shared by several threads.
+ */
+public interface SamplingStrategy {
+
+  /**
+   * Select distinct pages of a document.
+   *
+   * @param nbSamples number of pages to select, at most the number of pages
+   * @param nbPages number of pages of the document
+   * @param seed seed of the document, the same for each run on the same file
+   * @return the indexes of the selected pages, from 0, in the order to examine them
+   */
+  int[] pick(int nbSamples, int nbPages, long seed);
+
+  /**
+   * Parse a strategy given in the command line (uniform, stratified or head).
+   *
+   * @param value value to parse
+   * @param seed seed of the uniform selection, combined with the seed of each document
+   * @return the strategy
+   */
+  static SamplingStrategy parse(String value, long seed) {
+    switch (value.toLowerCase(Locale.ROOT)) {
+      case "uniform":
+        return new UniformSampling(seed);
+      case "stratified":
+        return new StratifiedSampling();
+      case "head":
+        return new HeadSampling();
+      default:
+        throw new IllegalArgumentException("Unknown sampling " + value);
+    }
+  }
+}
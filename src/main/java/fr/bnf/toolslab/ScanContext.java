@@ -0,0 +1,98 @@
+package fr.bnf.toolslab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSStream;
+
+/**
+ * State of the detection of one document. A new context is created for each file, so that a
+ * detector instance itself holds no per-file state.
+ */
+public class ScanContext {
+
+  final FileDescriptor fd;
+  final long beginTime;
+
+  int nbPages;
+  int nbImages;
+  final List<DimensionInfo> pageDimensions = new ArrayList<>();
+  final List<DimensionInfo> imageDimensions = new ArrayList<>();
+  // Placement of the image of each page, null if the page has no image or was not interpreted
+  final List<ImagePlacement> imagePlacements = new ArrayList<>();
+  // Resources dictionaries being walked, compared by identity
+  final Set<COSDictionary> seenObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+  // Images of the resources dictionaries already walked in this document
+  final Map<COSDictionary, ImageSummary> imageSummaries = new IdentityHashMap<>();
+  final Map<COSStream, Integer> processedInlineImages = new HashMap<>();
+  final AtomicInteger imageCounter = new AtomicInteger(0);
+  final ScanMetrics metrics;
+  // Set by a quick detector when a full detector should confirm its result
+  boolean ambiguous;
+
+  /**
+   * Constructor. The metrics of the file descriptor are kept, so that they also account for the
+   * work done before the document is loaded, like the skim of a {@link SizePrefilter}.
+   *
+   * @param fd file descriptor receiving the results
+   */
+  public ScanContext(FileDescriptor fd) {
+    this.fd = fd;
+    this.beginTime = System.currentTimeMillis();
+    this.metrics = fd.getMetrics();
+  }
+
+  /**
+   * Constructor of the context of a range of pages analyzed apart from the rest of the document.
+   * It shares the file descriptor, only read, but keeps its own images and metrics.
+   *
+   * @param parent context of the whole document
+   */
+  ScanContext(ScanContext parent) {
+    this.fd = parent.fd;
+    this.beginTime = parent.beginTime;
+    this.metrics = new ScanMetrics();
+  }
+
+  /**
+   * Getter for the file descriptor.
+   *
+   * @return the file descriptor
+   */
+  public FileDescriptor getFileDescriptor() {
+    return fd;
+  }
+
+  /**
+   * Getter for the instrumentation of the detection.
+   *
+   * @return the metrics
+   */
+  public ScanMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Tell whether the result of a quick detector needs to be confirmed by a full detector.
+   *
+   * @return <code>true</code> if the result is ambiguous
+   */
+  public boolean isAmbiguous() {
+    return ambiguous;
+  }
+
+  /**
+   * Time elapsed since the beginning of the detection.
+   *
+   * @return elapsed time in ms
+   */
+  public long elapsed() {
+    return System.currentTimeMillis() - beginTime;
+  }
+}
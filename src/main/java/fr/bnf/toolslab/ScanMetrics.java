@@ -0,0 +1,173 @@
+package fr.bnf.toolslab;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Instrumentation of the detection of one file: the duration of each phase in nanoseconds and
+ * counters of the work done. The detectors switch from a phase to the next with
+ * {@link #enter(Phase)}, so that an early return still closes the current phase. The detectors
+ * interleave the traversal of the page tree with the enumeration of the images of each page, in
+ * that case the traversal time excludes the enumeration.
+ */
+public class ScanMetrics {
+
+  /**
+   * Phases of the detection.
+   */
+  public enum Phase {
+    LOAD, TRAVERSAL, IMAGES, SAMPLING, DECISION
+  }
+
+  protected static final List<String> HEADERS = Collections.unmodifiableList(Arrays.asList(
+      "LOAD NS", "TRAVERSAL NS", "IMAGES NS", "SAMPLING NS", "DECISION NS", "PAGES INTERPRETED",
+      "XOBJECTS VISITED", "FORMS RECURSED", "CONTENT BYTES"));
+
+  final long[] phaseNanos = new long[Phase.values().length];
+  private Phase current;
+  private long phaseStart;
+
+  int pagesInterpreted;
+  int xobjectsVisited;
+  int formsRecursed;
+  long contentBytes;
+
+  /**
+   * Close the current phase and start a new one.
+   *
+   * @param phase phase to start, <code>null</code> to stop measuring
+   * @return the closed phase, to restore it after a nested phase
+   */
+  public Phase enter(Phase phase) {
+    long now = System.nanoTime();
+    Phase previous = current;
+    if (previous != null) {
+      phaseNanos[previous.ordinal()] += now - phaseStart;
+    }
+    current = phase;
+    phaseStart = now;
+    return previous;
+  }
+
+  /**
+   * Getter for the duration of a phase.
+   *
+   * @param phase the phase
+   * @return the duration in nanoseconds
+   */
+  public long getNanos(Phase phase) {
+    return phaseNanos[phase.ordinal()];
+  }
+
+  /**
+   * Get a header for the metrics columns.
+   *
+   * @return string to display
+   */
+  public static String headString() {
+    return String.join(FileDescriptor.SEP, HEADERS);
+  }
+
+  /**
+   * Get the values of the metrics, in the order of {@link #HEADERS}.
+   *
+   * @return the values
+   */
+  public long[] values() {
+    long[] values = Arrays.copyOf(phaseNanos, HEADERS.size());
+    int index = phaseNanos.length;
+    values[index++] = pagesInterpreted;
+    values[index++] = xobjectsVisited;
+    values[index++] = formsRecursed;
+    values[index] = contentBytes;
+    return values;
+  }
+
+  /**
+   * Set the values of the metrics, in the order of {@link #HEADERS}.
+   *
+   * @param values the values
+   */
+  public void setValues(long[] values) {
+    if (values.length != HEADERS.size()) {
+      throw new IllegalArgumentException("Expecting " + HEADERS.size() + " values");
+    }
+    System.arraycopy(values, 0, phaseNanos, 0, phaseNanos.length);
+    int index = phaseNanos.length;
+    pagesInterpreted = (int) values[index++];
+    xobjectsVisited = (int) values[index++];
+    formsRecursed = (int) values[index++];
+    contentBytes = values[index];
+  }
+
+  /**
+   * Add the counters of another instrumentation, like the one of a range of pages analyzed apart.
+   * The durations are not added, the phases of the ranges overlap.
+   *
+   * @param other metrics to add
+   */
+  public void addCounters(ScanMetrics other) {
+    pagesInterpreted += other.pagesInterpreted;
+    xobjectsVisited += other.xobjectsVisited;
+    formsRecursed += other.formsRecursed;
+    contentBytes += other.contentBytes;
+  }
+
+  /**
+   * Append the metrics to a builder, in the format of {@link #headString()}.
+   *
+   * @param sb builder to fill
+   * @return the builder
+   */
+  public StringBuilder appendTo(StringBuilder sb) {
+    for (long nanos : phaseNanos) {
+      sb.append(nanos).append(FileDescriptor.SEP);
+    }
+    sb.append(pagesInterpreted).append(FileDescriptor.SEP).append(xobjectsVisited)
+        .append(FileDescriptor.SEP).append(formsRecursed).append(FileDescriptor.SEP)
+        .append(contentBytes);
+    return sb;
+  }
+
+  /**
+   * Getter for the number of interpreted pages.
+   *
+   * @return number of pages interpreted
+   */
+  public int getPagesInterpreted() {
+    return pagesInterpreted;
+  }
+
+  /**
+   * Getter for the number of visited XObjects.
+   *
+   * @return number of XObjects visited
+   */
+  public int getXobjectsVisited() {
+    return xobjectsVisited;
+  }
+
+  /**
+   * Getter for the number of recursed forms.
+   *
+   * @return number of forms recursed into
+   */
+  public int getFormsRecursed() {
+    return formsRecursed;
+  }
+
+  /**
+   * Getter for the number of content stream bytes.
+   *
+   * @return number of bytes of content stream read
+   */
+  public long getContentBytes() {
+    return contentBytes;
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder(64)).toString();
+  }
+}
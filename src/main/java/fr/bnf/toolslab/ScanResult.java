@@ -0,0 +1,139 @@
+package fr.bnf.toolslab;
+
+import java.io.File;
+
+/**
+ * Immutable result of the detection on a file.
+ */
+public final class ScanResult {
+
+  private final File file;
+  private final boolean valid;
+  private final int nbPages;
+  private final int nbImages;
+  private final boolean scan;
+  private final int resolution;
+  private final int nbSamples;
+  private final double confidence;
+  private final String decidedBy;
+  private final long timeToProcess;
+
+  private ScanResult(FileDescriptor fd) {
+    this.file = fd.getFile();
+    this.valid = fd.isValid();
+    this.nbPages = fd.getNbPages();
+    this.nbImages = fd.getNbImages();
+    this.scan = fd.isScan();
+    this.resolution = fd.getResolution();
+    this.nbSamples = fd.getNbSamples();
+    this.confidence = fd.getConfidence();
+    this.decidedBy = fd.getDecidedBy();
+    this.timeToProcess = fd.getTimeToProcess();
+  }
+
+  /**
+   * Build a result from a snapshot of the file descriptor.
+   *
+   * @param fd file descriptor filled by a detector
+   * @return the immutable result
+   */
+  public static ScanResult of(FileDescriptor fd) {
+    return new ScanResult(fd);
+  }
+
+  /**
+   * Getter for the file.
+   *
+   * @return the file
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Boolean to know if the file is valid.
+   *
+   * @return validity of the file
+   */
+  public boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * Getter for the number of pages.
+   *
+   * @return page counter
+   */
+  public int getNbPages() {
+    return nbPages;
+  }
+
+  /**
+   * Getter for the number of images.
+   *
+   * @return image counter
+   */
+  public int getNbImages() {
+    return nbImages;
+  }
+
+  /**
+   * Boolean to know if the document is scan-based.
+   *
+   * @return <code>true</code> if it's a scanned PDF
+   */
+  public boolean isScan() {
+    return scan;
+  }
+
+  /**
+   * Getter for the resolution of the scan.
+   *
+   * @return resolution in DPI
+   */
+  public int getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Getter for the number of pages examined by the sampling.
+   *
+   * @return number of pages, 0 if the detector didn't sample the pages
+   */
+  public int getNbSamples() {
+    return nbSamples;
+  }
+
+  /**
+   * Getter for the confidence of the decision taken on the sampled pages.
+   *
+   * @return the confidence, 0 if the detector didn't sample the pages
+   */
+  public double getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Getter for the detector which decided, when several detectors are run in cascade.
+   *
+   * @return the name of the detector, <code>null</code> without cascade
+   */
+  public String getDecidedBy() {
+    return decidedBy;
+  }
+
+  /**
+   * Getter for the time of processing.
+   *
+   * @return time of processing in ms
+   */
+  public long getTimeToProcess() {
+    return timeToProcess;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s [valid=%b, pages=%d, images=%d, scan=%b, dpi=%d, time=%d]",
+        file.getName(), valid, nbPages, nbImages, scan, resolution, timeToProcess);
+  }
+}
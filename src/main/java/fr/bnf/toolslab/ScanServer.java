@@ -0,0 +1,558 @@
+package fr.bnf.toolslab;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Local HTTP service detecting scanned PDFs, so that a caller pays the startup of the JVM and the
+ * loading of PDFBox only once. It listens on the loopback interface only, with the server of the
+ * JDK.
+ *
+ * <ul>
+ * <li><code>/classify?path=&lt;file&gt;</code>: detect a local file under one of the roots, or
+ * the PDF sent as body when no path is given, optionally named with <code>name</code>. The result
+ * is the JSON object of the {@link JsonlResultSink}.</li>
+ * <li><code>/extract?path=&lt;file&gt;</code>: extract the images of a local file, or of the body,
+ * with the {@link ExtractImageApp}, streamed as a ZIP archive.</li>
+ * <li><code>/health</code>: state of the service as JSON.</li>
+ * <li><code>/metrics</code>: the {@link BatchMetrics} in the text format of Prometheus.</li>
+ * </ul>
+ *
+ * <p>
+ * A fixed number of detectors work at the same time, each owned by one request at a time. The
+ * requests waiting for a detector are bounded: beyond, the service answers 503 at once so that the
+ * caller can retry later, and the threads left answer the health and the metrics.
+ * </p>
+ *
+ * <p>
+ * Only the requests addressed to <code>localhost</code>, <code>127.0.0.1</code> or
+ * <code>[::1]</code> with the port of the service are answered, so that a web page can't reach it
+ * through a name rebound to the loopback address. The local files must be under one of the roots,
+ * symbolic links resolved, and the uploaded documents are bounded in size.
+ * </p>
+ */
+public class ScanServer implements Closeable {
+  protected static final Logger LOGGER = Logger.getLogger(ScanServer.class.getName());
+
+  /** Default number of requests waiting for a detector. */
+  public static final int DEFAULT_QUEUE_SIZE = 64;
+  /** Threads kept for the health and the metrics when the service is full. */
+  private static final int SPARE_THREADS = 2;
+  /** Delay given to the current documents when stopping, in milliseconds. */
+  private static final long STOP_DELAY_MS = 30000;
+  private static final String JSON = "application/json; charset=utf-8";
+  private static final String TEXT = "text/plain; charset=utf-8";
+  private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+  private static final String DEFAULT_UPLOAD_NAME = "upload.pdf";
+  /** Default maximal size of an uploaded document. */
+  public static final long DEFAULT_MAX_UPLOAD = 512L * 1024 * 1024;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final BlockingQueue<AbstractScanDetector> detectors;
+  private final Semaphore admissions;
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final AtomicInteger active = new AtomicInteger();
+  private volatile boolean stopping;
+  private final int concurrency;
+  private final ExtractImageApp extractor;
+  private final BatchMetrics metrics;
+  private final File scratchDir;
+  private final boolean withMetrics;
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  // Absolute and real paths of the directories whose files can be given by path
+  private final List<Path> roots = new ArrayList<>();
+  private long maxUploadSize = DEFAULT_MAX_UPLOAD;
+
+  /**
+   * Constructor, binding the port of the loopback interface.
+   *
+   * @param port port to listen to, 0 for any free port
+   * @param concurrency number of documents processed at the same time
+   * @param queueSize number of requests waiting for a detector before refusing the next ones
+   * @param detectorFactory factory to build the detectors
+   * @param extractor extractor of the images, <code>null</code> to disable the extraction
+   * @param metrics metrics fed by the detectors and the extractor
+   * @param scratchDir directory of the uploaded documents, <code>null</code> for the default
+   *        temporary directory
+   * @param withMetrics <code>true</code> to add the metrics of each file to the results
+   * @throws IOException exception if error while binding the port
+   */
+  public ScanServer(int port, int concurrency, int queueSize,
+      Supplier<AbstractScanDetector> detectorFactory, ExtractImageApp extractor,
+      BatchMetrics metrics, File scratchDir, boolean withMetrics) throws IOException {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+    }
+    if (queueSize < 0) {
+      throw new IllegalArgumentException("Queue size must not be negative: " + queueSize);
+    }
+    this.concurrency = concurrency;
+    this.extractor = extractor;
+    this.metrics = metrics;
+    this.scratchDir = scratchDir;
+    this.withMetrics = withMetrics;
+    this.detectors = new ArrayBlockingQueue<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      detectors.add(detectorFactory.get());
+    }
+    this.admissions = new Semaphore(concurrency + queueSize);
+    metrics.setQueueDepth(waiting::get);
+    AtomicInteger threadNumber = new AtomicInteger();
+    // The threads never exceed the admitted requests, the others are refused
+    this.executor = Executors.newFixedThreadPool(concurrency + queueSize + SPARE_THREADS, r -> {
+      Thread thread = new Thread(r, "http-worker-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.setExecutor(executor);
+    server.createContext("/classify", guarded(this::classify));
+    server.createContext("/extract", guarded(this::extract));
+    server.createContext("/health", this::health);
+    server.createContext("/metrics", this::metrics);
+  }
+
+  /**
+   * Allow the files of a directory tree to be given by path. Without any root, only the uploaded
+   * documents are accepted. Should be called before {@link #start()}.
+   *
+   * @param root directory of the files
+   * @throws IOException exception if error while resolving the directory
+   */
+  public void addRoot(File root) throws IOException {
+    roots.add(root.toPath().toAbsolutePath().normalize());
+    roots.add(root.toPath().toRealPath());
+  }
+
+  /**
+   * Define the maximal size of an uploaded document, larger ones being refused with 413. Should be
+   * called before {@link #start()}.
+   *
+   * @param maxUploadSize maximal number of bytes
+   */
+  public void setMaxUploadSize(long maxUploadSize) {
+    this.maxUploadSize = maxUploadSize;
+  }
+
+  /**
+   * Start answering the requests.
+   */
+  public void start() {
+    server.start();
+    LOGGER.info(String.format("Listening on http://%s:%d/ with %d detectors",
+        server.getAddress().getHostString(), getPort(), concurrency));
+  }
+
+  /**
+   * Getter for the port listened to.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Wait until the service is stopped by {@link #close()}.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitStop() throws InterruptedException {
+    stopped.await();
+  }
+
+  /**
+   * Stop the service, letting the current documents finish. The new ones are refused meanwhile.
+   */
+  @Override
+  public void close() {
+    stopping = true;
+    // The server of the JDK may wait for the whole delay even when idle, so wait here
+    long deadline = System.currentTimeMillis() + STOP_DELAY_MS;
+    try {
+      while (active.get() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server.stop(0);
+    executor.shutdownNow();
+    stopped.countDown();
+  }
+
+  /**
+   * Handler of a document, holding one of the detectors.
+   */
+  private interface DocumentHandler {
+    void handle(HttpExchange exchange, File file, boolean uploaded,
+        AbstractScanDetector detector) throws IOException;
+  }
+
+  /**
+   * Wrap a handler with the admission control, the reception of the document and the errors. The
+   * document is received before taking a detector, so that a slow caller doesn't hold it.
+   */
+  private HttpHandler guarded(DocumentHandler handler) {
+    return exchange -> {
+      active.incrementAndGet();
+      try {
+        if (!checkHost(exchange)) {
+          return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())
+            && !"POST".equals(exchange.getRequestMethod())) {
+          send(exchange, 405, TEXT, "Use GET or POST");
+          return;
+        }
+        if (stopping) {
+          send(exchange, 503, TEXT, "Stopping");
+          return;
+        }
+        if (!admissions.tryAcquire()) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          send(exchange, 503, TEXT, "Too many requests waiting");
+          return;
+        }
+        try {
+          handleDocument(exchange, handler);
+        } finally {
+          admissions.release();
+        }
+      } catch (IllegalArgumentException e) {
+        sendError(exchange, 400, e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        sendError(exchange, 503, "Stopping");
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warning("Error on " + exchange.getRequestURI() + ": " + e);
+        sendError(exchange, 500, String.valueOf(e.getMessage()));
+      } finally {
+        exchange.close();
+        active.decrementAndGet();
+      }
+    };
+  }
+
+  private void handleDocument(HttpExchange exchange, DocumentHandler handler)
+      throws IOException, InterruptedException {
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    String path = query.get("path");
+    Path uploadDir = null;
+    File file;
+    if (path != null) {
+      file = resolve(path);
+      if (file == null) {
+        send(exchange, 403, TEXT, path + " is not under the roots of the service");
+        return;
+      }
+      if (!file.isFile()) {
+        send(exchange, 404, TEXT, path + " not found");
+        return;
+      }
+      if (resolve(file.toPath().toRealPath().toString()) == null) {
+        // Symbolic link leading out of the roots
+        send(exchange, 403, TEXT, path + " is not under the roots of the service");
+        return;
+      }
+    } else {
+      uploadDir = receive(exchange, query);
+      if (uploadDir == null) {
+        return;
+      }
+      file = uploadedFile(uploadDir, query);
+    }
+    try {
+      AbstractScanDetector detector;
+      waiting.incrementAndGet();
+      try {
+        detector = detectors.take();
+      } finally {
+        waiting.decrementAndGet();
+      }
+      try {
+        handler.handle(exchange, file, uploadDir != null, detector);
+      } finally {
+        detectors.add(detector);
+      }
+    } finally {
+      if (uploadDir != null) {
+        deleteTree(uploadDir);
+      }
+    }
+  }
+
+  private void classify(HttpExchange exchange, File file, boolean uploaded,
+      AbstractScanDetector detector) throws IOException {
+    FileDescriptor fd = ScannedPdfApp.processFile(file, detector);
+    if (uploaded) {
+      // Report the name given by the caller, not the temporary directory
+      fd.setFile(new File(file.getName()));
+    }
+    StringBuilder sb = new StringBuilder(256);
+    JsonlResultSink.appendObject(sb, fd, withMetrics);
+    send(exchange, 200, JSON, sb.toString());
+  }
+
+  /**
+   * Extract the images of a document. The extractions hold a detector too, so that they count in
+   * the concurrency.
+   */
+  private void extract(HttpExchange exchange, File file, boolean uploaded,
+      AbstractScanDetector detector) throws IOException {
+    if (extractor == null) {
+      send(exchange, 404, TEXT, "Extraction disabled");
+      return;
+    }
+    Path outputDir = Files.createTempDirectory(scratchDir(), "extract");
+    try {
+      int nbImages = extractor.processFile(file, outputDir.toFile());
+      exchange.getResponseHeaders().set("Content-Type", "application/zip");
+      exchange.getResponseHeaders().set("X-Images", Integer.toString(nbImages));
+      // Chunked, the archive is written while read
+      exchange.sendResponseHeaders(200, 0);
+      try (ZipOutputStream zip = new ZipOutputStream(exchange.getResponseBody());
+          Stream<Path> images = Files.list(outputDir)) {
+        for (Path image : (Iterable<Path>) images.sorted()::iterator) {
+          zip.putNextEntry(new ZipEntry(image.getFileName().toString()));
+          Files.copy(image, zip);
+          zip.closeEntry();
+        }
+      }
+    } finally {
+      deleteTree(outputDir);
+    }
+  }
+
+  private void health(HttpExchange exchange) throws IOException {
+    try {
+      if (!checkHost(exchange)) {
+        return;
+      }
+      StringBuilder sb = new StringBuilder(128);
+      sb.append("{\"status\":\"ok\"");
+      sb.append(",\"inFlight\":").append(metrics.getInFlight());
+      sb.append(",\"waiting\":").append(waiting.get());
+      sb.append(",\"idleDetectors\":").append(detectors.size());
+      sb.append(",\"files\":").append(metrics.getFilesProcessed());
+      sb.append('}');
+      send(exchange, 200, JSON, sb.toString());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void metrics(HttpExchange exchange) throws IOException {
+    try {
+      if (!checkHost(exchange)) {
+        return;
+      }
+      send(exchange, 200, PROMETHEUS, PrometheusTextFile.format(metrics, "scannedpdf"));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Send an error, unless the response already started.
+   */
+  private static void sendError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    if (exchange.getResponseCode() == -1) {
+      send(exchange, status, TEXT, message);
+    }
+  }
+
+  /**
+   * Refuse a request unless it is addressed to the loopback interface by its name or address.
+   *
+   * @return <code>true</code> if the request can be answered
+   */
+  private boolean checkHost(HttpExchange exchange) throws IOException {
+    String host = exchange.getRequestHeaders().getFirst("Host");
+    if (isLocalHost(host, getPort())) {
+      return true;
+    }
+    LOGGER.warning("Refused request for host " + host + " on " + exchange.getRequestURI());
+    send(exchange, 403, TEXT, "Only local requests are answered");
+    return false;
+  }
+
+  /**
+   * Tell whether the Host header of a request names the loopback interface.
+   *
+   * @param host value of the header, may be <code>null</code>
+   * @param port port of the service
+   * @return <code>true</code> for <code>localhost</code>, <code>127.0.0.1</code> or
+   *         <code>[::1]</code>, with the port of the service if any
+   */
+  static boolean isLocalHost(String host, int port) {
+    if (host == null) {
+      return false;
+    }
+    String name = host.trim().toLowerCase(Locale.ROOT);
+    String hostPort = null;
+    int colon = name.startsWith("[") ? name.indexOf(':', name.indexOf(']')) : name.indexOf(':');
+    if (colon >= 0) {
+      hostPort = name.substring(colon + 1);
+      name = name.substring(0, colon);
+    }
+    if (hostPort != null && !hostPort.equals(Integer.toString(port))) {
+      return false;
+    }
+    return "localhost".equals(name) || "127.0.0.1".equals(name) || "[::1]".equals(name);
+  }
+
+  /**
+   * Resolve a path given by a caller.
+   *
+   * @param path path of a local file
+   * @return the file, <code>null</code> if it is not under the roots
+   */
+  private File resolve(String path) {
+    try {
+      Path requested = Paths.get(path).toAbsolutePath().normalize();
+      for (Path root : roots) {
+        if (requested.startsWith(root)) {
+          return requested.toFile();
+        }
+      }
+    } catch (InvalidPathException e) {
+      LOGGER.fine("Invalid path " + path);
+    }
+    return null;
+  }
+
+  /**
+   * Save the body of a request in a new temporary directory. A body larger than the maximal upload
+   * size is refused with 413.
+   *
+   * @return the directory, holding the document, <code>null</code> if refused
+   */
+  private Path receive(HttpExchange exchange, Map<String, String> query) throws IOException {
+    String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (declared != null && Long.parseLong(declared.trim()) > maxUploadSize) {
+      send(exchange, 413, TEXT, "Document larger than " + maxUploadSize + " bytes");
+      return null;
+    }
+    Path dir = Files.createTempDirectory(scratchDir(), "upload");
+    long length = 0;
+    try (InputStream in = exchange.getRequestBody();
+        OutputStream out = Files.newOutputStream(uploadedFile(dir, query).toPath())) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = in.read(buffer)) > 0 && length <= maxUploadSize) {
+        length += n;
+        out.write(buffer, 0, n);
+      }
+    } catch (IOException | RuntimeException e) {
+      deleteTree(dir);
+      throw e;
+    }
+    if (length == 0 || length > maxUploadSize) {
+      deleteTree(dir);
+      if (length == 0) {
+        throw new IllegalArgumentException("Missing path or document");
+      }
+      // Sent without length
+      send(exchange, 413, TEXT, "Document larger than " + maxUploadSize + " bytes");
+      return null;
+    }
+    return dir;
+  }
+
+  private static File uploadedFile(Path dir, Map<String, String> query) {
+    String name = query.getOrDefault("name", DEFAULT_UPLOAD_NAME);
+    // Only the name, the caller can't choose the directory
+    name = new File(name.replace('\\', '/')).getName();
+    if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+      name = DEFAULT_UPLOAD_NAME;
+    }
+    return dir.resolve(name).toFile();
+  }
+
+  private Path scratchDir() {
+    return scratchDir == null ? new File(System.getProperty("java.io.tmpdir")).toPath()
+        : scratchDir.toPath();
+  }
+
+  private static void deleteTree(Path dir) {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+    } catch (IOException e) {
+      LOGGER.warning("Unable to delete " + dir + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Decode the parameters of a query.
+   *
+   * @param rawQuery query, still encoded, may be <code>null</code>
+   * @return the parameters by name, the last value kept
+   */
+  static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> params = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return params;
+    }
+    try {
+      for (String pair : rawQuery.split("&")) {
+        if (pair.isEmpty()) {
+          continue;
+        }
+        int equal = pair.indexOf('=');
+        String name = equal < 0 ? pair : pair.substring(0, equal);
+        String value = equal < 0 ? "" : pair.substring(equal + 1);
+        params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    return params;
+  }
+}
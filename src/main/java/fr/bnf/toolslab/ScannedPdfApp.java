@@ -1,7 +1,10 @@
 package fr.bnf.toolslab;
 
 import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -9,17 +12,456 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
 
 /**
  * Application to detect scanned PDFs.
  */
 public class ScannedPdfApp {
+  protected static final Logger LOGGER = Logger.getLogger(ScannedPdfApp.class.getName());
+
+  private File inputFile;
+  private boolean useAlternate = false;
+  private boolean useStream = false;
+  private boolean useStrict = false;
+  private boolean useSampled = false;
+  private boolean useXref = false;
+  private boolean useCascade = false;
+  private boolean useLight = false;
+  private int nbThreads = 1;
+  private int nbPageThreads = 1;
+  private ExecutorService pagePool;
+  private boolean ordered = false;
+  private LoadPolicy loadPolicy = LoadPolicy.DEFAULT;
+  private SamplingPolicy samplingPolicy = SamplingPolicy.DEFAULT;
+  private File cacheFile;
+  private ResultCache cache;
+  private File fingerprintsFile;
+  private ProducerFingerprints fingerprints;
+  private SizePrefilter prefilter;
+  private File journalFile;
+  private boolean resume = false;
+  private RunJournal journal;
+  private boolean watch = false;
+  private long settleMs = DEFAULT_SETTLE_MS;
+  private boolean flushGiven = false;
+  private int servePort = -1;
+  private int queueSize = ScanServer.DEFAULT_QUEUE_SIZE;
+  private final List<File> serveRoots = new ArrayList<>();
+  private long maxUploadSize = ScanServer.DEFAULT_MAX_UPLOAD;
+  private long archiveBuffers = ArchiveReader.DEFAULT_BUFFERS;
+  private ArchiveReader archiveReader;
+  private String format = "csv";
+  private File outputFile;
+  private int flushRows = FlushPolicy.DEFAULT.getMaxRows();
+  private long flushDelayMs = FlushPolicy.DEFAULT.getMaxDelayMs();
+  private boolean withMetrics = false;
+  private boolean withSampling = false;
+  private ResultSink sink;
+
+  /** Default delay without change before a watched file is processed. */
+  protected static final long DEFAULT_SETTLE_MS = 2000;
+  /** Maximal time given to the current files when the watch or serve mode is stopped. */
+  private static final long SHUTDOWN_TIMEOUT_MS = 60000;
+  private final BatchMetrics batchMetrics = new BatchMetrics();
+  private File promFile;
+  private long promPeriod = 15;
+  private IOException sinkError;
 
   public static void usage() {
-    System.err.println("Usage : " + ScannedPdfApp.class.getName() + " <fileOrDirectoryToTest>");
+    System.err.println("Usage : " + ScannedPdfApp.class.getName()
+        + " [-xref] [-cascade|-alt|-stream|-strict|-sampled] [-light] [-threads N [-ordered]]"
+        + " [-pagethreads N] [-confidence 0.9] [-sampling uniform|stratified|head] [-seed N]"
+        + " [-input buffered|mapped] [-memory main|temp|mixed] [-maxmem 64m] [-scratch <dir>]"
+        + " [-budget 2g] [-archivemem 64m] [-cache <file>] [-fingerprints <file>] [-prefilter]"
+        + " [-journal <file> [-resume]] [-watch [-settle <ms>]]"
+        + " [-format csv|jsonl|bin] [-out <file>] [-flush <rows>] [-flushms <ms>] [-timings]"
+        + " [-samples] [-prom <file.prom> [-promperiod <seconds>]]"
+        + " <fileOrDirectoryToTest> | [-root <dir>]... [-maxupload 512m] -serve <port> [-queue N]");
     System.exit(1);
   }
 
+  protected void parseArgs(String[] args) throws IllegalArgumentException {
+    LoadPolicy.Mode memoryMode = LoadPolicy.Mode.MAIN_MEMORY;
+    LoadPolicy.Input input = LoadPolicy.Input.BUFFERED;
+    long maxMainMemory = -1;
+    File scratchDir = null;
+    MemoryBudget budget = null;
+    String sampling = "uniform";
+    long seed = 0;
+    int index = 0;
+    while (index < args.length - 1 && args[index].startsWith("-")) {
+      if ("-alt".equals(args[index])) {
+        useAlternate = true;
+        index++;
+      } else if ("-stream".equals(args[index])) {
+        useStream = true;
+        index++;
+      } else if ("-strict".equals(args[index])) {
+        useStrict = true;
+        index++;
+      } else if ("-sampled".equals(args[index])) {
+        useSampled = true;
+        index++;
+      } else if ("-cascade".equals(args[index])) {
+        useCascade = true;
+        index++;
+      } else if ("-xref".equals(args[index])) {
+        useXref = true;
+        index++;
+      } else if ("-light".equals(args[index])) {
+        useLight = true;
+        index++;
+      } else if ("-threads".equals(args[index])) {
+        try {
+          nbThreads = Integer.parseInt(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid number of threads " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-pagethreads".equals(args[index])) {
+        try {
+          nbPageThreads = Integer.parseInt(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid number of threads " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-confidence".equals(args[index])) {
+        samplingPolicy =
+            SamplingPolicy.sequential(SamplingPolicy.parseConfidence(args[index + 1]));
+        index += 2;
+      } else if ("-sampling".equals(args[index])) {
+        sampling = args[index + 1];
+        index += 2;
+      } else if ("-seed".equals(args[index])) {
+        try {
+          seed = Long.parseLong(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid seed " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-ordered".equals(args[index])) {
+        ordered = true;
+        index++;
+      } else if ("-memory".equals(args[index])) {
+        memoryMode = LoadPolicy.parseMode(args[index + 1]);
+        index += 2;
+      } else if ("-input".equals(args[index])) {
+        input = LoadPolicy.parseInput(args[index + 1]);
+        index += 2;
+      } else if ("-maxmem".equals(args[index])) {
+        maxMainMemory = LoadPolicy.parseSize(args[index + 1]);
+        index += 2;
+      } else if ("-scratch".equals(args[index])) {
+        scratchDir = new File(args[index + 1]);
+        index += 2;
+      } else if ("-budget".equals(args[index])) {
+        budget = new MemoryBudget(LoadPolicy.parseSize(args[index + 1]));
+        index += 2;
+      } else if ("-archivemem".equals(args[index])) {
+        archiveBuffers = LoadPolicy.parseSize(args[index + 1]);
+        index += 2;
+      } else if ("-cache".equals(args[index])) {
+        cacheFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-watch".equals(args[index])) {
+        watch = true;
+        index++;
+      } else if ("-settle".equals(args[index])) {
+        try {
+          settleMs = Long.parseLong(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid delay " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-serve".equals(args[index])) {
+        try {
+          servePort = Integer.parseInt(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid port " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-queue".equals(args[index])) {
+        try {
+          queueSize = Integer.parseInt(args[index + 1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid queue size " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-root".equals(args[index])) {
+        File root = new File(args[index + 1]);
+        if (!root.isDirectory()) {
+          throw new IllegalArgumentException(root.getAbsolutePath() + " is not a directory");
+        }
+        serveRoots.add(root);
+        index += 2;
+      } else if ("-maxupload".equals(args[index])) {
+        maxUploadSize = LoadPolicy.parseSize(args[index + 1]);
+        index += 2;
+      } else if ("-journal".equals(args[index])) {
+        journalFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-resume".equals(args[index])) {
+        resume = true;
+        index++;
+      } else if ("-prefilter".equals(args[index])) {
+        prefilter = new SizePrefilter();
+        index++;
+      } else if ("-fingerprints".equals(args[index])) {
+        fingerprintsFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-prom".equals(args[index])) {
+        promFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-promperiod".equals(args[index])) {
+        promPeriod = PrometheusTextFile.parsePeriod(args[index + 1]);
+        index += 2;
+      } else if ("-timings".equals(args[index])) {
+        withMetrics = true;
+        index++;
+      } else if ("-samples".equals(args[index])) {
+        withSampling = true;
+        index++;
+      } else if ("-format".equals(args[index])) {
+        format = args[index + 1];
+        index += 2;
+      } else if ("-out".equals(args[index])) {
+        outputFile = new File(args[index + 1]);
+        index += 2;
+      } else if ("-flush".equals(args[index])) {
+        try {
+          flushRows = Integer.parseInt(args[index + 1]);
+          flushGiven = true;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid number of rows " + args[index + 1]);
+        }
+        index += 2;
+      } else if ("-flushms".equals(args[index])) {
+        try {
+          flushDelayMs = Long.parseLong(args[index + 1]);
+          flushGiven = true;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid delay " + args[index + 1]);
+        }
+        index += 2;
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[index]);
+      }
+    }
+    if (servePort >= 0) {
+      if (index < args.length) {
+        // The options must come before -serve
+        throw new IllegalArgumentException("Unexpected argument " + args[index] + " with -serve");
+      }
+      if (journalFile != null || watch) {
+        throw new IllegalArgumentException("-serve can't be used with -journal or -watch");
+      }
+    } else if (index >= args.length) {
+      throw new IllegalArgumentException("Missing file or directory to test");
+    }
+    // Shared by all the detectors, so that the budget is global
+    loadPolicy = new LoadPolicy(memoryMode, maxMainMemory, scratchDir, budget, input);
+    archiveReader = new ArchiveReader(
+        archiveBuffers > 0 ? new MemoryBudget(archiveBuffers) : null, scratchDir);
+    samplingPolicy = samplingPolicy.withStrategy(SamplingStrategy.parse(sampling, seed));
+    if (nbPageThreads > 1 && (!useStream || useSampled || useAlternate)) {
+      throw new IllegalArgumentException("-pagethreads needs -stream");
+    }
+    if (!"csv".equals(format) && !"jsonl".equals(format) && !"bin".equals(format)) {
+      throw new IllegalArgumentException("Unknown output format " + format);
+    }
+    if (resume && journalFile == null) {
+      throw new IllegalArgumentException("-resume needs -journal");
+    }
+    if ("bin".equals(format) && outputFile == null) {
+      throw new IllegalArgumentException("Binary format needs -out");
+    }
+    if (servePort >= 0) {
+      return;
+    }
+
+    inputFile = new File(args[index]);
+    if (!inputFile.exists()) {
+      throw new IllegalArgumentException(inputFile.getAbsolutePath() + " doesn't exist");
+    }
+    if (watch && !inputFile.isDirectory()) {
+      throw new IllegalArgumentException("-watch needs a directory");
+    }
+    if (watch && !flushGiven) {
+      // Each result is visible as soon as the file is classified
+      flushRows = FlushPolicy.EACH_ROW.getMaxRows();
+      flushDelayMs = FlushPolicy.EACH_ROW.getMaxDelayMs();
+    }
+  }
+
+  /**
+   * Build a new detector according to the arguments.
+   *
+   * @return a detector
+   */
+  protected AbstractScanDetector createDetector() {
+    AbstractScanDetector detector;
+    if (useCascade) {
+      // Stops at the first stage able to decide
+      detector = CascadeScanDetector.createDefault(useLight);
+    } else if (useSampled) {
+      detector = new SampledPdfBoxScanDetector(useStrict, useLight);
+    } else if (useAlternate) {
+      detector = new AlternatePdfBoxScanDetector();
+    } else if (useStream) {
+      detector = pagePool == null ? new StreamPdfBoxScanDetector(useLight)
+          : new PageRangeScanDetector(useLight, pagePool, nbPageThreads);
+    } else if (useStrict) {
+      detector = new StrictPdfBoxScanDetector(useLight);
+    } else {
+      detector = new PdfBoxScanDetector();
+    }
+    if (useXref) {
+      // The selected detector only runs on the ambiguous documents
+      detector = new XrefScanDetector(detector);
+    }
+    if (fingerprints != null) {
+      // Known producers are only spot-checked
+      detector = new FingerprintScanDetector(fingerprints, detector);
+    }
+    if (prefilter != null) {
+      // The obvious native documents are not even loaded
+      detector = new PrefilterScanDetector(detector, prefilter);
+    }
+    detector = new MeteredScanDetector(detector, batchMetrics);
+    if (cache != null) {
+      // The hits are counted apart, so that they don't weigh on the processing times
+      detector = new CachedScanDetector(detector, cache, batchMetrics);
+    }
+    detector.setLoadPolicy(loadPolicy);
+    detector.setSamplingPolicy(samplingPolicy);
+    return detector;
+  }
+
+  /**
+   * Write a result to the sink. Keep the first error to report it at the end of the run, so that
+   * the sink thread of the parallel mode never dies.
+   *
+   * @param fd result to write
+   */
+  protected void emit(FileDescriptor fd) {
+    if (sinkError != null) {
+      return;
+    }
+    try {
+      sink.write(fd);
+      if (journal != null) {
+        journal.recordResult(fd);
+      }
+    } catch (IOException e) {
+      LOGGER.severe("Unable to write the results: " + e.getMessage());
+      sinkError = e;
+    }
+  }
+
+  protected void process() throws IOException {
+    if (servePort < 0) {
+      // The watch mode goes on with the results of its previous runs
+      boolean append = watch && outputFile != null && outputFile.length() > 0;
+      OutputStream out = outputFile == null ? standardOutput()
+          : new FileOutputStream(outputFile, append);
+      sink = AbstractResultSink.create(format, out, new FlushPolicy(flushRows, flushDelayMs),
+          withMetrics, withSampling, !append);
+    }
+    if (cacheFile != null) {
+      cache = ResultCache.open(cacheFile);
+    }
+    if (fingerprintsFile != null) {
+      fingerprints = ProducerFingerprints.load(fingerprintsFile);
+    }
+    if (journalFile != null) {
+      journal = RunJournal.open(journalFile, resume);
+      if (!watch) {
+        // The output of the interrupted run may have lost its last buffered results, the watch
+        // mode appends to it instead
+        journal.replay(sink);
+      }
+    }
+    if (nbPageThreads > 1) {
+      // The calling thread interprets the first range of each document
+      pagePool = Executors.newFixedThreadPool(nbPageThreads - 1, runnable -> {
+        Thread thread = new Thread(runnable, "page-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    batchMetrics.register(ScannedPdfApp.class.getSimpleName());
+    PrometheusTextFile prometheus = promFile == null ? null
+        : new PrometheusTextFile(promFile, batchMetrics, "scannedpdf", promPeriod);
+    try {
+      if (servePort >= 0) {
+        serve();
+      } else if (watch) {
+        watchDirectory(inputFile);
+      } else if (inputFile.isFile() && !ArchiveReader.isArchive(inputFile.toPath())) {
+        emit(processFile(inputFile, createDetector()));
+
+      } else {
+        // A directory or an archive, walked alike
+        if (nbThreads > 1) {
+          processDirectory(inputFile);
+          return;
+        }
+        // Retrieve only the .pdf files
+        final AbstractScanDetector detector = createDetector();
+        final PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:*.pdf");
+        Files.walkFileTree(inputFile.toPath(), new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (pdfMatcher.matches(file.getFileName()) && !isDone(file)) {
+              emit(processFile(file.toFile(), detector));
+            } else if (ArchiveReader.isArchive(file)
+                && !readArchive(file, entry -> emit(processEntry(entry, detector)))) {
+              return FileVisitResult.TERMINATE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+    } finally {
+      if (pagePool != null) {
+        pagePool.shutdownNow();
+      }
+      if (sink != null) {
+        sink.close();
+      }
+      if (journal != null) {
+        LOGGER.info(String.format("Journal skipped %d completed files", journal.getSkipped()));
+        journal.close();
+      }
+      if (prometheus != null) {
+        prometheus.close();
+      }
+      if (cache != null) {
+        LOGGER.info(String.format("Cache answered %d files, %d detected", cache.getHits(),
+            cache.getMisses()));
+        cache.close();
+      }
+      if (prefilter != null) {
+        LOGGER.info(String.format("Prefilter decided %d of %d files (%.1f%%), %d unreadable",
+            prefilter.getDecided(), prefilter.getFiles(), 100 * prefilter.getHitRate(),
+            prefilter.getUnreadable()));
+      }
+      if (fingerprints != null) {
+        LOGGER.info(String.format("Fingerprints predicted %d files, %d confirmed, %d producers",
+            fingerprints.getPredictions(), fingerprints.getConfirmations(), fingerprints.size()));
+        fingerprints.save(fingerprintsFile);
+      }
+      if (sinkError != null) {
+        throw sinkError;
+      }
+    }
+  }
+
   /**
    * Main method.
    *
@@ -27,57 +469,172 @@ public class ScannedPdfApp {
    * @throws IOException exception if error while accessing the files
    */
   public static void main(String[] args) throws IOException {
-    boolean useAlternate = false;
-    boolean useStream = false;
-    boolean useStrict = false;
     if (args.length < 1) {
       usage();
       return;
     }
-    int index = 0;
-    if ("-alt".equals(args[0])) {
-      useAlternate = true;
-      index++;
-    } else if ("-stream".equals(args[0])) {
-      useStream = true;
-      index++;
+
+    ScannedPdfApp app = new ScannedPdfApp();
+    try {
+      app.parseArgs(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      usage();
+      return;
+    }
+    app.process();
+  }
+
+  /**
+   * Tell whether a file was completed by the interrupted run being resumed.
+   *
+   * @param file file to check
+   * @return <code>true</code> if the file must be skipped
+   */
+  private boolean isDone(Path file) {
+    return journal != null && journal.isDone(file.toFile());
+  }
+
+  /**
+   * Read the PDF entries of an archive met by a walk. The entries completed by the interrupted run
+   * being resumed are skipped. A damaged archive is logged, its entries already read are kept.
+   *
+   * @param archive archive to read
+   * @param handler destination of the entries
+   * @return <code>false</code> if interrupted
+   */
+  private boolean readArchive(Path archive, ArchiveReader.EntryHandler handler) {
+    try {
+      archiveReader.read(archive.toFile(), entry -> journal == null || !journal.isDone(entry),
+          handler);
+    } catch (IOException e) {
+      LOGGER.warning("Unable to read the archive " + archive + ": " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     }
-    else if ("-strict".equals(args[0])) {
-      useStrict = true;
-      index++;
+    return true;
+  }
+
+  /**
+   * Answer the requests of the local HTTP service until the application is stopped. The workers of
+   * the service share the cache, the fingerprints and the prefilter of the run.
+   *
+   * @throws IOException exception if error while binding the port
+   */
+  private void serve() throws IOException {
+    final ScanServer server = new ScanServer(servePort, nbThreads, queueSize,
+        this::createDetector, new ExtractImageApp(loadPolicy, batchMetrics), batchMetrics,
+        loadPolicy.getScratchDir(), withMetrics);
+    for (File root : serveRoots) {
+      server.addRoot(root);
     }
+    server.setMaxUploadSize(maxUploadSize);
+    final Thread serving = Thread.currentThread();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.close();
+      try {
+        // Let the cache and the fingerprints be saved
+        serving.join(SHUTDOWN_TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "serve-shutdown"));
+    server.start();
+    try {
+      server.awaitStop();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
-    File inputFile = new File(args[index]);
-    if (!inputFile.exists()) {
-      System.err.println(inputFile.getAbsolutePath() + " doesn't exist");
-      System.exit(1);
-      return;
+  /**
+   * Tell whether the cache holds a result for the current state of a file.
+   *
+   * @param file file to check
+   * @param detector cache key of the detector
+   * @return <code>true</code> if the file needs no detection
+   */
+  private boolean isCached(Path file, String detector) {
+    File f = file.toFile();
+    return cache != null && cache.contains(f.getAbsolutePath(), f.length(), f.lastModified(),
+        detector);
+  }
+
+  /**
+   * Process the files created or modified in a directory until the application is stopped. The
+   * files already present are processed first, except those completed by the journal being
+   * resumed or known by the cache, so that a restart doesn't lose the files dropped meanwhile.
+   * The detectors of the workers are kept between the files.
+   *
+   * @param inputDir directory to watch
+   * @throws IOException exception if error while watching the directory
+   */
+  private void watchDirectory(File inputDir) throws IOException {
+    final String detectorKey = createDetector().getCacheKey();
+    final ParallelScanner scanner =
+        new ParallelScanner(nbThreads, this::createDetector, this::emit, false);
+    batchMetrics.setQueueDepth(scanner::getQueueDepth);
+    scanner.start();
+    try {
+      final FolderWatcher watcher = new FolderWatcher(inputDir.toPath(), settleMs,
+          file -> !isDone(file) && !isCached(file, detectorKey), scanner::submit);
+      final Thread watching = Thread.currentThread();
+      Thread shutdownHook = new Thread(() -> {
+        try {
+          watcher.close();
+          // Let the current files be emitted and the sink be closed
+          watching.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (IOException e) {
+          LOGGER.warning("Unable to stop watching: " + e.getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, "watch-shutdown");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+      watcher.run();
+    } finally {
+      try {
+        scanner.finish();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
+  }
 
-    final AbstractScanDetector detector =
-        useAlternate ? new AlternatePdfBoxScanDetector()
-            : (useStream ? new StreamPdfBoxScanDetector()
-                : (useStrict ? new StrictPdfBoxScanDetector() : new PdfBoxScanDetector()));
-
-    if (inputFile.isFile()) {
-      FileDescriptor fd = processFile(inputFile, detector);
-      System.out.println(FileDescriptor.headString());
-      System.out.println(fd.toString());
-
-    } else if (inputFile.isDirectory()) {
-      // Retrieve only the .pdf files
-      final PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:*.pdf");
-      System.out.println(FileDescriptor.headString());
-      Files.walkFileTree(inputFile.toPath(), new SimpleFileVisitor<Path>() {
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-          if (pdfMatcher.matches(file.getFileName())) {
-            FileDescriptor fd = processFile(file.toFile(), detector);
-            System.out.println(fd.toString());
+  /**
+   * Process a directory or an archive with several workers.
+   *
+   * @param inputDir directory or archive to walk
+   * @throws IOException exception if error while walking the directory
+   */
+  private void processDirectory(File inputDir) throws IOException {
+    final ParallelScanner scanner =
+        new ParallelScanner(nbThreads, this::createDetector, this::emit, ordered);
+    batchMetrics.setQueueDepth(scanner::getQueueDepth);
+    scanner.start();
+    // Retrieve only the .pdf files
+    final PathMatcher pdfMatcher = FileSystems.getDefault().getPathMatcher("glob:*.pdf");
+    Files.walkFileTree(inputDir.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (pdfMatcher.matches(file.getFileName()) && !isDone(file)) {
+          try {
+            scanner.submit(file.toFile());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FileVisitResult.TERMINATE;
           }
-          return FileVisitResult.CONTINUE;
+        } else if (ArchiveReader.isArchive(file) && !readArchive(file, scanner::submit)) {
+          return FileVisitResult.TERMINATE;
         }
-      });
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    try {
+      scanner.finish();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
@@ -88,8 +645,30 @@ public class ScannedPdfApp {
    * @param detector detector to use
    * @return the description of the file
    */
-  private static FileDescriptor processFile(File inputFile, final AbstractScanDetector detector) {
-    FileDescriptor fd = new FileDescriptor(inputFile);
+  static FileDescriptor processFile(File inputFile, final AbstractScanDetector detector) {
+    return process(new FileDescriptor(inputFile), detector);
+  }
+
+  /**
+   * Process an entry of an archive, then close it.
+   *
+   * @param entry staged entry to process
+   * @param detector detector to use
+   * @return the description of the entry, named <code>archive!/path</code>
+   */
+  static FileDescriptor processEntry(ArchiveEntry entry, final AbstractScanDetector detector) {
+    FileDescriptor fd = new FileDescriptor(entry.getFile());
+    fd.setEntry(entry);
+    try {
+      return process(fd, detector);
+    } finally {
+      // The content is not needed by the sink
+      fd.setEntry(null);
+      entry.close();
+    }
+  }
+
+  private static FileDescriptor process(FileDescriptor fd, final AbstractScanDetector detector) {
     detector.init(fd);
     try {
       detector.parse();
@@ -99,4 +678,24 @@ public class ScannedPdfApp {
     }
     return fd;
   }
+
+  /**
+   * Standard output bypassing the synchronized System.out, the sink does its own buffering. Closing
+   * it only flushes it, so that the standard output of the JVM stays open.
+   *
+   * @return the stream
+   */
+  private static OutputStream standardOutput() {
+    return new FilterOutputStream(new FileOutputStream(java.io.FileDescriptor.out)) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
 }
@@ -0,0 +1,143 @@
+package fr.bnf.toolslab;
+
+import java.util.Map.Entry;
+
+/**
+ * Sequential sampling of the pages of a document. The pages are examined one at a time and the
+ * sampling stops as soon as the decision is settled at the requested confidence: with a uniform
+ * prior on the fraction of the pages sharing the most usual density, the probability that this
+ * fraction is over one half is compared with the confidence. A document whose examined pages all
+ * agree is settled after a few pages, a mixed one goes on up to the maximal number of samples.
+ * With a confidence of 0, all the samples are examined, like the fixed sampling. It is not
+ * thread-safe.
+ */
+public class SequentialSampler {
+
+  private final double confidence;
+  private final int maxSamples;
+  private final int nbPages;
+  private final DpiCounter counter = new DpiCounter();
+  private Entry<Integer, Integer> best = counter.getBest();
+  private int nbExamined;
+
+  /**
+   * Constructor.
+   *
+   * @param confidence confidence to reach before stopping, 0 to examine all the samples
+   * @param maxSamples maximal number of pages to examine
+   * @param nbPages number of pages of the document
+   */
+  public SequentialSampler(double confidence, int maxSamples, int nbPages) {
+    this.confidence = confidence;
+    this.maxSamples = Math.min(maxSamples, nbPages);
+    this.nbPages = nbPages;
+  }
+
+  /**
+   * Record the density of the next examined page.
+   *
+   * @param dpiFound density of the image covering the page, 0 if there is none
+   */
+  public void add(int dpiFound) {
+    nbExamined++;
+    if (dpiFound != 0) {
+      counter.increment(dpiFound);
+      best = counter.getBest();
+    }
+  }
+
+  /**
+   * Tell whether the sampling can stop.
+   *
+   * @return <code>true</code> if the maximal number of samples is reached or the decision has the
+   *         requested confidence
+   */
+  public boolean isSettled() {
+    return nbExamined >= maxSamples || (confidence > 0 && getConfidence() >= confidence);
+  }
+
+  /**
+   * Tell whether the examined pages make a scanned document: more than half of them share the
+   * most usual density.
+   *
+   * @return <code>true</code> for a scanned document
+   */
+  public boolean isScan() {
+    return best.getKey() != 0
+        && best.getValue().intValue() > nbExamined / AbstractScanDetector.THRESHOLD;
+  }
+
+  /**
+   * Probability that the decision taken on the examined pages holds for the document.
+   *
+   * @return the confidence, 1 when all the pages have been examined
+   */
+  public double getConfidence() {
+    if (nbExamined >= nbPages) {
+      return 1.0;
+    }
+    double scan = probabilityOverHalf(best.getValue().intValue(), nbExamined);
+    return Math.max(scan, 1.0 - scan);
+  }
+
+  /**
+   * Probability that a fraction is over one half, knowing <code>k</code> successes out of
+   * <code>n</code> trials and a uniform prior. The posterior is Beta(k+1, n-k+1), whose tail is
+   * the probability of at most <code>k</code> successes out of <code>n+1</code> fair trials.
+   *
+   * @param k number of successes
+   * @param n number of trials, up to about a thousand
+   * @return the probability
+   */
+  static double probabilityOverHalf(int k, int n) {
+    double term = Math.pow(0.5, n + 1);
+    double sum = 0;
+    for (int i = 0; i <= k; i++) {
+      sum += term;
+      term = term * (n + 1 - i) / (i + 1);
+    }
+    return Math.min(sum, 1.0);
+  }
+
+  /**
+   * Getter for the maximal number of pages to examine.
+   *
+   * @return the number of samples, at most the number of pages
+   */
+  public int getMaxSamples() {
+    return maxSamples;
+  }
+
+  /**
+   * Getter for the number of pages examined.
+   *
+   * @return the number of pages
+   */
+  public int getNbExamined() {
+    return nbExamined;
+  }
+
+  /**
+   * Return the most usual dpi among the examined pages.
+   *
+   * @return Entry containing the most usual dpi and the number of occurrences
+   */
+  public Entry<Integer, Integer> getBest() {
+    return best;
+  }
+
+  /**
+   * Copy the size and the confidence of the sample to the file descriptor.
+   *
+   * @param fd file descriptor receiving the results
+   */
+  public void report(FileDescriptor fd) {
+    fd.setNbSamples(nbExamined);
+    fd.setConfidence(getConfidence());
+  }
+
+  @Override
+  public String toString() {
+    return nbExamined + " pages examined (" + counter + ")";
+  }
+}
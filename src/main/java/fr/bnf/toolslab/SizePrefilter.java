@@ -0,0 +1,129 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Prefilter deciding the obvious native documents from the size of the file, the number of pages
+ * and the length of the image streams, read by a {@link PdfSkimmer} without loading the document.
+ * A scan is never decided: the size can't give its resolution. The instances are thread-safe and
+ * count their hits for the summary of the run.
+ */
+public class SizePrefilter {
+  protected static final Logger LOGGER = Logger.getLogger(SizePrefilter.class.getName());
+
+  /** Under this number of bytes of image streams per page, the document is native. */
+  protected static final long NATIVE_MAX_IMAGE_BYTES_PER_PAGE = 1024;
+  /**
+   * Over this number of bytes of content streams per page, the pages may draw inline images and the
+   * image streams don't tell the whole story.
+   */
+  protected static final long MAX_CONTENT_BYTES_PER_PAGE = 16 * 1024;
+
+  private final AtomicLong nbFiles = new AtomicLong();
+  private final AtomicLong nbDecided = new AtomicLong();
+  private final AtomicLong nbUnreadable = new AtomicLong();
+
+  /**
+   * Try to decide a document without loading it. When decided, the file descriptor is filled as
+   * for a valid native document.
+   *
+   * @param fd file descriptor of the document
+   * @return <code>true</code> if the document is decided native
+   */
+  public boolean decide(FileDescriptor fd) {
+    nbFiles.incrementAndGet();
+    ScanMetrics metrics = fd.getMetrics();
+    metrics.enter(Phase.TRAVERSAL);
+    long length = fd.getLength();
+    try (PdfSkimmer skimmer = PdfSkimmer.open(fd)) {
+      int nbPages = skimmer.readPageCount();
+      if (nbPages <= 0) {
+        // A count of no page is more likely damaged than true, left to the full load
+        LOGGER.fine("Skim " + fd.getFile().getName() + ": no page counted");
+        return false;
+      }
+      boolean isNative = SizeRatioScanDetector.isNativeSize(length, nbPages);
+      if (!isNative && skimmer.readStreamLengths()) {
+        isNative = isNativeStreams(skimmer.imageBytes, skimmer.contentBytes, nbPages);
+        if (isNative) {
+          fd.setNbImages(skimmer.nbImages);
+        }
+      }
+      LOGGER.fine("Skim " + fd.getFile().getName() + ": " + nbPages + " pages, " + length
+          + " bytes, " + skimmer.imageBytes + " bytes of images, native " + isNative);
+      if (!isNative) {
+        return false;
+      }
+      fd.setValid(true);
+      fd.setNbPages(nbPages);
+      fd.setScan(false);
+      fd.setResolution(0);
+      fd.setDecidedBy(getClass().getSimpleName());
+      nbDecided.incrementAndGet();
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // Damaged or unusual structure, left to the full load
+      LOGGER.fine("Unable to skim " + fd.getFile().getName() + ": " + e.getMessage());
+      nbUnreadable.incrementAndGet();
+      return false;
+    } finally {
+      metrics.enter(null);
+    }
+  }
+
+  /**
+   * Tell whether the streams of a document are too small for its pages to be scanned.
+   *
+   * @param imageBytes total length of the image streams
+   * @param contentBytes total length of the streams which may be content streams
+   * @param nbPages number of pages
+   * @return <code>true</code> if the document is native, never for a document without page
+   */
+  static boolean isNativeStreams(long imageBytes, long contentBytes, int nbPages) {
+    if (nbPages <= 0) {
+      return false;
+    }
+    return imageBytes / nbPages < NATIVE_MAX_IMAGE_BYTES_PER_PAGE
+        && contentBytes / nbPages < MAX_CONTENT_BYTES_PER_PAGE;
+  }
+
+  /**
+   * Getter for the number of documents submitted.
+   *
+   * @return number of documents
+   */
+  public long getFiles() {
+    return nbFiles.get();
+  }
+
+  /**
+   * Getter for the number of documents decided without loading them.
+   *
+   * @return number of documents
+   */
+  public long getDecided() {
+    return nbDecided.get();
+  }
+
+  /**
+   * Getter for the number of documents whose structure couldn't be read.
+   *
+   * @return number of documents
+   */
+  public long getUnreadable() {
+    return nbUnreadable.get();
+  }
+
+  /**
+   * Fraction of the documents decided without loading them.
+   *
+   * @return the hit rate, 0 if no document was submitted
+   */
+  public double getHitRate() {
+    long files = nbFiles.get();
+    return files == 0 ? 0 : (double) nbDecided.get() / files;
+  }
+}
@@ -0,0 +1,42 @@
+package fr.bnf.toolslab;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Quick detector comparing the size of the file with its number of pages. A scanned page carries
+ * tens to hundreds of kilobytes of image data, so a file with only a few kilobytes per page is
+ * native. Larger files are ambiguous: the size alone can't tell a scan from a native document
+ * with photos. The images are not counted.
+ */
+public class SizeRatioScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(SizeRatioScanDetector.class.getName());
+
+  /** Under this number of bytes per page, the document is native. */
+  protected static final long NATIVE_MAX_BYTES_PER_PAGE = 4 * 1024;
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    int nbPages = document.getNumberOfPages();
+    fd.setNbPages(nbPages);
+    fd.setScan(false);
+    long length = fd.getLength();
+    LOGGER.fine("Find " + nbPages + " pages in " + length + " bytes");
+    if (!isNativeSize(length, nbPages)) {
+      ctx.ambiguous = true;
+    }
+  }
+
+  /**
+   * Tell whether a file is too small for its pages to be scanned.
+   *
+   * @param length size of the file in bytes
+   * @param nbPages number of pages
+   * @return <code>true</code> if the document is native
+   */
+  static boolean isNativeSize(long length, int nbPages) {
+    return nbPages == 0 || length / nbPages < NATIVE_MAX_BYTES_PER_PAGE;
+  }
+}
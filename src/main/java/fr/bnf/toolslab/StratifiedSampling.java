@@ -0,0 +1,62 @@
+package fr.bnf.toolslab;
+
+/**
+ * Deterministic selection of evenly spaced pages, the first and the last ones included. The pages
+ * are returned by successive halvings: first, last, middle, then the quarters and so on, so that a
+ * sequential sampling stopping early still covers the whole document.
+ */
+public class StratifiedSampling implements SamplingStrategy {
+
+  @Override
+  public int[] pick(int nbSamples, int nbPages, long seed) {
+    int count = Math.min(nbSamples, nbPages);
+    int[] pages = new int[count];
+    if (count == 0) {
+      return pages;
+    }
+    pages[0] = 0;
+    if (count == 1) {
+      return pages;
+    }
+    int size = 0;
+    pages[size++] = position(0, count, nbPages);
+    pages[size++] = position(count - 1, count, nbPages);
+    // Queue of the intervals of sample indexes still to split, as pairs of bounds
+    int[] intervals = new int[4 * count];
+    int head = 0;
+    int tail = 0;
+    intervals[tail++] = 0;
+    intervals[tail++] = count - 1;
+    while (head < tail) {
+      int low = intervals[head++];
+      int high = intervals[head++];
+      int middle = (low + high) >>> 1;
+      if (middle == low) {
+        continue;
+      }
+      pages[size++] = position(middle, count, nbPages);
+      intervals[tail++] = low;
+      intervals[tail++] = middle;
+      intervals[tail++] = middle;
+      intervals[tail++] = high;
+    }
+    return pages;
+  }
+
+  /**
+   * Page of a sample, the samples being evenly spaced from the first page to the last one.
+   *
+   * @param index index of the sample
+   * @param count number of samples, at least 2
+   * @param nbPages number of pages
+   * @return the index of the page
+   */
+  private static int position(int index, int count, int nbPages) {
+    return (int) (((long) index * (nbPages - 1) + (count - 1) / 2) / (count - 1));
+  }
+
+  @Override
+  public String toString() {
+    return "stratified";
+  }
+}
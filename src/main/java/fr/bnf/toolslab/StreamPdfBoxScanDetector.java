@@ -1,14 +1,10 @@
 package fr.bnf.toolslab;
 
+import fr.bnf.toolslab.ScanMetrics.Phase;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -19,97 +15,101 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 public class StreamPdfBoxScanDetector extends AbstractScanDetector {
   protected static final Logger LOGGER = Logger.getLogger(StreamPdfBoxScanDetector.class.getName());
 
-  FileDescriptor fd;
-  int nbPages;
-  int nbImages;
-  int nbImagesInPage;
-  List<DimensionInfo> pageDimensions;
-  List<DimensionInfo> imageDimensions;
-  private Map<COSStream, Integer> processedInlineImages = new HashMap<>();
-  private AtomicInteger inlineImageCounter = new AtomicInteger(0);
+  private final boolean light;
 
-  @Override
-  public void init(FileDescriptor fd) {
-    LOGGER.fine("Processing " + fd.getFile().getName());
-    this.fd = fd;
-    this.nbPages = 0;
-    this.nbImages = 0;
-    this.pageDimensions = new ArrayList<>();
-    this.imageDimensions = new ArrayList<>();
-    processedInlineImages = new HashMap<>();
-    inlineImageCounter = new AtomicInteger(0);
+  /**
+   * Constructor interpreting the pages with an {@link ImageGraphicsEngine}.
+   */
+  public StreamPdfBoxScanDetector() {
+    this(false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param light <code>true</code> to interpret the pages with a {@link LightImageEngine}
+   */
+  public StreamPdfBoxScanDetector(boolean light) {
+    this.light = light;
   }
 
+  /**
+   * Tell whether the pages are interpreted with a {@link LightImageEngine}.
+   *
+   * @return <code>true</code> for the light engine
+   */
   @Override
-  public void parse() throws IOException {
-    long beginTime = System.currentTimeMillis();
-    try (PDDocument document = PDDocument.load(fd.getFile())) {
-      this.nbPages = 0;
-      this.nbImages = 0;
-      fd.setValid(true);
-      fd.setNbPages(nbPages);
-      for (PDPage page : document.getPages()) {
-        this.nbPages++;
-        this.nbImages += parsePage(page, this.nbPages);
-      }
-      this.nbImages = inlineImageCounter.get();
-      fd.setNbPages(this.nbPages);
-      fd.setNbImages(this.nbImages);
-      LOGGER.fine("First pass in " + (System.currentTimeMillis() - beginTime));
+  protected boolean isLight() {
+    return light;
+  }
 
-      // First heuristic: compare the number of pages and the number of
-      // images
-      if (this.nbPages != this.nbImages) {
-        fd.setScan(false);
-        return;
-      }
-      assert (pageDimensions.size() == imageDimensions.size());
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    fd.setNbPages(0);
+    collectPages(ctx, document);
+    ctx.nbImages = ctx.imageCounter.get();
+    fd.setNbPages(ctx.nbPages);
+    fd.setNbImages(ctx.nbImages);
+    LOGGER.fine("First pass in " + ctx.elapsed());
 
-      // Second heuristic: pick some pages and look if the image covers
-      // all the page
-      int nbSamples = Math.min(nbPages, MAX_SAMPLES);
-      List<Integer> pagesToTest = pickSamples(nbSamples, nbPages);
+    // First heuristic: compare the number of pages and the number of
+    // images
+    if (ctx.nbPages != ctx.nbImages) {
+      fd.setScan(false);
+      return;
+    }
+    assert (ctx.pageDimensions.size() == ctx.imageDimensions.size());
 
-      // Classify all the dpiFound (could be 0)
-      DpiCounter counter = new DpiCounter();
+    // Second heuristic: pick some pages and look if the image covers
+    // all the page
+    ctx.metrics.enter(Phase.SAMPLING);
+    // Classify all the dpiFound (could be 0)
+    SequentialSampler sampler = samplingPolicy.newSampler(ctx.nbPages);
+    int[] pagesToTest = pickSamples(ctx, sampler.getMaxSamples(), ctx.nbPages);
 
-      for (int pageNum : pagesToTest) {
-        DimensionInfo dimPage = pageDimensions.get(pageNum);
-        DimensionInfo dimImage = imageDimensions.get(pageNum);
-        LOGGER.fine("Page [" + pageNum + "] dimension " + dimImage);
-        if (dimImage == DimensionInfo.EMPTY) {
-          continue;
-        }
+    for (int i = 0; !sampler.isSettled(); i++) {
+      int pageNum = pagesToTest[i];
+      DimensionInfo dimImage = ctx.imageDimensions.get(pageNum);
+      LOGGER.fine("Page [" + pageNum + "] dimension " + dimImage);
+      if (dimImage == DimensionInfo.EMPTY) {
+        sampler.add(0);
+        continue;
+      }
 
-        int dpiFound = findDensity(dimImage, dimPage, 1.0f);
-        LOGGER.fine("Page [" + pageNum + "] density " + dpiFound);
+      int dpiFound = findDensity(ctx.imagePlacements.get(pageNum));
+      LOGGER.fine("Page [" + pageNum + "] density " + dpiFound);
+      sampler.add(dpiFound);
+    }
+    // Find the most usual dpi
+    ctx.metrics.enter(Phase.DECISION);
+    sampler.report(fd);
+    Entry<Integer, Integer> bestDpi = sampler.getBest();
+    LOGGER.fine("Second pass in " + ctx.elapsed() + ", " + sampler);
+    // If more scanned pages than the threshold
+    if (sampler.isScan()) {
+      fd.setScan(true);
+      fd.setResolution(bestDpi.getKey());
+    }
+  }
 
-        if (dpiFound != 0) {
-          counter.increment(dpiFound);
-        }
-      }
-      // Find the most usual dpi
-      Entry<Integer, Integer> bestDpi = counter.getBest();
-      LOGGER.fine("Second pass in " + (System.currentTimeMillis() - beginTime));
-      if (bestDpi.getKey() == 0) {
-        return;
-      }
-      // If more scanned pages than the threshold
-      if (bestDpi.getValue().intValue() > nbSamples / THRESHOLD) {
-        fd.setScan(true);
-        fd.setResolution(bestDpi.getKey());
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-      fd.setValid(false);
-      throw e;
-    } finally {
-      fd.setTimeToProcess(System.currentTimeMillis() - beginTime);
+  /**
+   * First pass: interpret every page, filling the page dimensions and the first image of each page
+   * in the context.
+   *
+   * @param ctx state of the detection
+   * @param document the loaded document
+   * @throws IOException exception if error while reading the file
+   */
+  protected void collectPages(ScanContext ctx, PDDocument document) throws IOException {
+    for (PDPage page : document.getPages()) {
+      ctx.nbPages++;
+      ctx.nbImages += parsePage(ctx, page, ctx.nbPages);
     }
   }
 
-  protected int parsePage(PDPage page, int numPage) throws IOException {
-    nbImagesInPage = 0;
+  protected int parsePage(ScanContext ctx, PDPage page, int numPage) throws IOException {
+    int nbImagesInPage = 0;
     PDRectangle rect = page.getMediaBox(); // Found page dimension
     // MediaBox specified in "default user space units", which is points
     // (i.e. 72 dpi)
@@ -117,23 +117,24 @@ public class StreamPdfBoxScanDetector extends AbstractScanDetector {
 
     DimensionInfo dimPage = new DimensionInfo((long) (rect.getWidth()), (long) (rect.getHeight()));
     LOGGER.fine("Found page [" + numPage + "] with dimension " + dimPage.toString());
-    pageDimensions.add(dimPage);
+    ctx.pageDimensions.add(dimPage);
 
+    ImagePlacement placement = null;
+    Phase previous = ctx.metrics.enter(Phase.IMAGES);
     try {
-      int initialNumber = inlineImageCounter.get();
-      ImageGraphicsEngine engine =
-          new ImageGraphicsEngine(page, processedInlineImages, inlineImageCounter);
-      engine.run();
-      nbImagesInPage = inlineImageCounter.get() - initialNumber;
-      if (nbImagesInPage == 0) {
-        imageDimensions.add(DimensionInfo.EMPTY);
-      } else {
-        imageDimensions.add(engine.getImageDimensions().get(0));
+      int initialNumber = ctx.imageCounter.get();
+      List<ImagePlacement> placements = interpretPage(ctx, page, light);
+      nbImagesInPage = ctx.imageCounter.get() - initialNumber;
+      if (nbImagesInPage != 0) {
+        placement = placements.get(0);
       }
     } catch (IOException e) {
-      e.printStackTrace();
-
+      LOGGER.warning("Error processing page [" + numPage + "]: " + e.getMessage());
     }
+    ctx.metrics.enter(previous);
+    // A page in error still gets its entries to keep the lists aligned on the pages
+    ctx.imageDimensions.add(placement == null ? DimensionInfo.EMPTY : placement.getDimension());
+    ctx.imagePlacements.add(placement);
     return nbImagesInPage;
   }
 }
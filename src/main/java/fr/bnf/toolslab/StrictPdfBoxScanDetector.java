@@ -1,14 +1,10 @@
 package fr.bnf.toolslab;
 
+import fr.bnf.toolslab.ScanMetrics.Phase;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -20,111 +16,104 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
   public class StrictPdfBoxScanDetector extends AbstractScanDetector {
     protected static final Logger LOGGER = Logger.getLogger(fr.bnf.toolslab.StrictPdfBoxScanDetector.class.getName());
 
-    FileDescriptor fd;
-    int nbPages;
-    int nbImages;
-    int nbImagesInPage;
-    List<DimensionInfo> pageDimensions;
-    List<DimensionInfo> imageDimensions;
-    private Map<COSStream, Integer> processedInlineImages = new HashMap<>();
-    private AtomicInteger inlineImageCounter = new AtomicInteger(0);
+    private final boolean light;
+
+    /**
+     * Constructor interpreting the pages with an {@link ImageGraphicsEngine}.
+     */
+    public StrictPdfBoxScanDetector() {
+      this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param light <code>true</code> to interpret the pages with a {@link LightImageEngine}
+     */
+    public StrictPdfBoxScanDetector(boolean light) {
+      this.light = light;
+    }
 
     @Override
-    public void init(FileDescriptor fd) {
-      LOGGER.fine("Processing " + fd.getFile().getName());
-      this.fd = fd;
-      this.nbPages = 0;
-      this.nbImages = 0;
-      this.pageDimensions = new ArrayList<>();
-      this.imageDimensions = new ArrayList<>();
-      processedInlineImages = new HashMap<>();
-      inlineImageCounter = new AtomicInteger(0);
+    protected boolean isLight() {
+      return light;
     }
 
     @Override
-    public void parse() throws IOException {
-      long beginTime = System.currentTimeMillis();
-      try (PDDocument document = PDDocument.load(fd.getFile())) {
-        this.nbPages = 0;
-        this.nbImages = 0;
-        fd.setValid(true);
-        fd.setNbPages(nbPages);
-        for (PDPage page : document.getPages()) {
-          this.nbPages++;
-          this.nbImages += parsePage(page, this.nbPages);
-        }
-        this.nbImages = inlineImageCounter.get();
-        fd.setNbPages(this.nbPages);
-        fd.setNbImages(this.nbImages);
-        LOGGER.fine("First pass in " + (System.currentTimeMillis() - beginTime));
-
-        // First heuristic: compare the number of pages and the number of
-        // images. Scanned documents often have more than one image per page,
-        // but they shouldn't have less.
-        if (this.nbPages > this.nbImages) {
-          LOGGER.fine("Find " + nbPages + " pages and " + nbImages + " images");
+    protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+      FileDescriptor fd = ctx.fd;
+      fd.setNbPages(0);
+      for (PDPage page : document.getPages()) {
+        ctx.nbPages++;
+        ctx.nbImages += parsePage(ctx, page, ctx.nbPages);
+      }
+      ctx.nbImages = ctx.imageCounter.get();
+      fd.setNbPages(ctx.nbPages);
+      fd.setNbImages(ctx.nbImages);
+      LOGGER.fine("First pass in " + ctx.elapsed());
+
+      // First heuristic: compare the number of pages and the number of
+      // images. Scanned documents often have more than one image per page,
+      // but they shouldn't have less.
+      if (ctx.nbPages > ctx.nbImages) {
+        LOGGER.fine("Find " + ctx.nbPages + " pages and " + ctx.nbImages + " images");
+        fd.setScan(false);
+        return;
+      }
+
+      // Second heuristic: pick some pages and look if the image covers
+      // all the page
+      ctx.metrics.enter(Phase.SAMPLING);
+      // Classify all the dpiFound (could be 0)
+      SequentialSampler sampler = samplingPolicy.newSampler(ctx.nbPages);
+      int[] pagesToTest = pickSamples(ctx, sampler.getMaxSamples(), ctx.nbPages);
+
+      for (int i = 0; !sampler.isSettled(); i++) {
+        int pageNum = pagesToTest[i];
+        DimensionInfo dimImage = ctx.imageDimensions.get(pageNum);
+        LOGGER.fine("Page [" + pageNum + "] dimension " + dimImage);
+        // Heuristic three: if any of the sampled pages has no image, it's probably not a scan
+        if (dimImage == DimensionInfo.EMPTY) {
+          LOGGER.fine("Page [" + pageNum + "] has no image");
+          sampler.add(0);
+          sampler.report(fd);
           fd.setScan(false);
           return;
         }
 
-        // Second heuristic: pick some pages and look if the image covers
-        // all the page
-        int nbSamples = Math.min(nbPages, MAX_SAMPLES);
-        List<Integer> pagesToTest = pickSamples(nbSamples, nbPages);
-
-        // Classify all the dpiFound (could be 0)
-        DpiCounter counter = new DpiCounter();
-
-        for (int pageNum : pagesToTest) {
-          DimensionInfo dimPage = pageDimensions.get(pageNum);
-          DimensionInfo dimImage = imageDimensions.get(pageNum);
-          LOGGER.fine("Page [" + pageNum + "] dimension " + dimImage);
-          // Heuristic three: if any of the sampled pages has no image, it's probably not a scan
-          if (dimImage == DimensionInfo.EMPTY) {
-            LOGGER.fine("Page [" + pageNum + "] has no image");
-            fd.setScan(false);
-            return;
-          }
-
-          int dpiFound = findDensity(dimImage, dimPage, 1.0f);
-          LOGGER.fine("Page [" + pageNum + "] density " + dpiFound);
-
-          if (dpiFound != 0) {
-            counter.increment(dpiFound);
-          }
-          else {
-            // Heuristic four: if any of the sampled pages has an image that doesn't cover the page,
-            // it's probably not a scan
-            LOGGER.fine("Page [" + pageNum + "] has an image that doesn't cover the page");
-            fd.setScan(false);
-            return;
-          }
-        }
-        // Find the most usual dpi
-        Entry<Integer, Integer> bestDpi = counter.getBest();
-        LOGGER.fine("Second pass in " + (System.currentTimeMillis() - beginTime));
-        if (bestDpi.getKey() == 0) {
-          LOGGER.info("No dpi found");
+        int dpiFound = findDensity(ctx.imagePlacements.get(pageNum));
+        LOGGER.fine("Page [" + pageNum + "] density " + dpiFound);
+
+        sampler.add(dpiFound);
+        if (dpiFound == 0) {
+          // Heuristic four: if any of the sampled pages has an image that doesn't cover the page,
+          // it's probably not a scan
+          LOGGER.fine("Page [" + pageNum + "] has an image that doesn't cover the page");
+          sampler.report(fd);
+          fd.setScan(false);
           return;
         }
-        // If more scanned pages than the threshold
-        LOGGER.fine("Most usual dpi is " + bestDpi.getKey() + " with "
-            + bestDpi.getValue().intValue() + " occurrences (" + counter.toString() + ")");
-        if (bestDpi.getValue().intValue() > nbSamples / THRESHOLD) {
-          fd.setScan(true);
-          fd.setResolution(bestDpi.getKey());
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
-        fd.setValid(false);
-        throw e;
-      } finally {
-        fd.setTimeToProcess(System.currentTimeMillis() - beginTime);
+      }
+      // Find the most usual dpi
+      ctx.metrics.enter(Phase.DECISION);
+      sampler.report(fd);
+      Entry<Integer, Integer> bestDpi = sampler.getBest();
+      LOGGER.fine("Second pass in " + ctx.elapsed());
+      if (bestDpi.getKey() == 0) {
+        LOGGER.info("No dpi found");
+        return;
+      }
+      // If more scanned pages than the threshold
+      LOGGER.fine("Most usual dpi is " + bestDpi.getKey() + " with "
+          + bestDpi.getValue().intValue() + " occurrences (" + sampler + ")");
+      if (sampler.isScan()) {
+        fd.setScan(true);
+        fd.setResolution(bestDpi.getKey());
       }
     }
 
-    protected int parsePage(PDPage page, int numPage) throws IOException {
-      nbImagesInPage = 0;
+    protected int parsePage(ScanContext ctx, PDPage page, int numPage) throws IOException {
+      int nbImagesInPage = 0;
       PDRectangle rect = page.getMediaBox(); // Found page dimension
       // MediaBox specified in "default user space units", which is points
       // (i.e. 72 dpi)
@@ -132,23 +121,24 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
       DimensionInfo dimPage = new DimensionInfo((long) (rect.getWidth()), (long) (rect.getHeight()));
       LOGGER.fine("Found page [" + numPage + "] with dimension " + dimPage.toString());
-      pageDimensions.add(dimPage);
+      ctx.pageDimensions.add(dimPage);
 
+      ImagePlacement placement = null;
+      Phase previous = ctx.metrics.enter(Phase.IMAGES);
       try {
-        int initialNumber = inlineImageCounter.get();
-        ImageGraphicsEngine engine =
-            new ImageGraphicsEngine(page, processedInlineImages, inlineImageCounter);
-        engine.run();
-        nbImagesInPage = inlineImageCounter.get() - initialNumber;
-        if (nbImagesInPage == 0) {
-          imageDimensions.add(DimensionInfo.EMPTY);
-        } else {
-          imageDimensions.add(engine.getImageDimensions().get(0));
+        int initialNumber = ctx.imageCounter.get();
+        List<ImagePlacement> placements = interpretPage(ctx, page, light);
+        nbImagesInPage = ctx.imageCounter.get() - initialNumber;
+        if (nbImagesInPage != 0) {
+          placement = placements.get(0);
         }
       } catch (IOException e) {
-        e.printStackTrace();
-
+        LOGGER.warning("Error processing page [" + numPage + "]: " + e.getMessage());
       }
+      ctx.metrics.enter(previous);
+      // A page in error still gets its entries to keep the lists aligned on the pages
+      ctx.imageDimensions.add(placement == null ? DimensionInfo.EMPTY : placement.getDimension());
+      ctx.imagePlacements.add(placement);
       return nbImagesInPage;
     }
   }
@@ -0,0 +1,81 @@
+package fr.bnf.toolslab;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Uniform random selection of pages, reproducible: the generator is seeded by a global seed and the
+ * seed of the document, so that each run on the same file examines the same pages. The pages are
+ * drawn with Floyd's algorithm, without any rejection, then shuffled so that any prefix is also a
+ * uniform sample.
+ */
+public class UniformSampling implements SamplingStrategy {
+
+  /** Above this number of samples, the selected pages are tracked in a bit set. */
+  private static final int MAX_LINEAR_SAMPLES = 64;
+
+  private final long seed;
+
+  /**
+   * Constructor.
+   *
+   * @param seed global seed, combined with the seed of each document
+   */
+  public UniformSampling(long seed) {
+    this.seed = seed;
+  }
+
+  @Override
+  public int[] pick(int nbSamples, int nbPages, long documentSeed) {
+    int count = Math.min(nbSamples, nbPages);
+    int[] pages = new int[count];
+    SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + documentSeed);
+    BitSet selected = count > MAX_LINEAR_SAMPLES ? new BitSet(nbPages) : null;
+    int size = 0;
+    for (int j = nbPages - count; j < nbPages; j++) {
+      int page = random.nextInt(j + 1);
+      if (contains(pages, size, selected, page)) {
+        // j can't be selected yet, it is above all the previous draws
+        page = j;
+      }
+      pages[size++] = page;
+      if (selected != null) {
+        selected.set(page);
+      }
+    }
+    // Floyd's algorithm gives a uniform set, not a uniform order
+    for (int i = count - 1; i > 0; i--) {
+      int other = random.nextInt(i + 1);
+      int swap = pages[i];
+      pages[i] = pages[other];
+      pages[other] = swap;
+    }
+    return pages;
+  }
+
+  private static boolean contains(int[] pages, int size, BitSet selected, int page) {
+    if (selected != null) {
+      return selected.get(page);
+    }
+    for (int i = 0; i < size; i++) {
+      if (pages[i] == page) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Getter for the global seed.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public String toString() {
+    return "uniform(" + seed + ")";
+  }
+}
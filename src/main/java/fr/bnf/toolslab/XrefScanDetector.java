@@ -0,0 +1,265 @@
+package fr.bnf.toolslab;
+
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Logger;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Class to detect images by going through the object table of the document, object streams
+ * included, instead of the page tree. Neither the pages nor the resources are built and no content
+ * stream is interpreted: the images are only correlated with the page sizes. When the images and
+ * the pages don't tell a clear story, the result is ambiguous and the fallback detector, if any,
+ * takes over on the same loaded document.
+ */
+public class XrefScanDetector extends AbstractScanDetector {
+  protected static final Logger LOGGER = Logger.getLogger(XrefScanDetector.class.getName());
+
+  /** Maximal difference in percent between the aspect ratio of an image and of a page. */
+  protected static final double RATIO_TOLERANCE = 3.0;
+  /** Maximal depth of the page tree when looking for an inherited MediaBox. */
+  private static final int MAX_DEPTH = 64;
+
+  private final AbstractScanDetector fallback;
+
+  /**
+   * Constructor for a detector without fallback.
+   */
+  public XrefScanDetector() {
+    this(null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param fallback detector used when the result is ambiguous, may be <code>null</code>
+   */
+  public XrefScanDetector(AbstractScanDetector fallback) {
+    this.fallback = fallback;
+  }
+
+  @Override
+  public String getName() {
+    return fallback == null ? super.getName() : super.getName() + "+" + fallback.getName();
+  }
+
+  @Override
+  protected boolean isLight() {
+    return fallback != null && fallback.isLight();
+  }
+
+  @Override
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    super.setLoadPolicy(loadPolicy);
+    if (fallback != null) {
+      fallback.setLoadPolicy(loadPolicy);
+    }
+  }
+
+  @Override
+  public void setSamplingPolicy(SamplingPolicy samplingPolicy) {
+    super.setSamplingPolicy(samplingPolicy);
+    if (fallback != null) {
+      fallback.setSamplingPolicy(samplingPolicy);
+    }
+  }
+
+  @Override
+  protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+    FileDescriptor fd = ctx.fd;
+    int nbPages = document.getNumberOfPages();
+    Map<COSStream, DimensionInfo> images = new IdentityHashMap<>();
+    List<DimensionInfo> pages = new ArrayList<>();
+
+    Phase previous = ctx.metrics.enter(Phase.IMAGES);
+    collectObjects(ctx, document.getDocument(), images, pages);
+    ctx.metrics.enter(previous);
+    int nbImages = images.size();
+    fd.setNbPages(nbPages);
+    fd.setNbImages(nbImages);
+    LOGGER.fine("Find " + nbPages + " pages and " + nbImages + " images in the object table");
+
+    ctx.metrics.enter(Phase.DECISION);
+    ctx.ambiguous = decide(fd, nbPages, images.values(), pages);
+    if (ctx.ambiguous) {
+      LOGGER.fine("Ambiguous result for " + fd.getFile().getName() + ": " + nbImages
+          + " images for " + pages.size() + "/" + nbPages + " pages");
+      if (fallback != null) {
+        ctx.metrics.enter(previous);
+        fallback.parse(ctx, document);
+      }
+    }
+  }
+
+  /**
+   * Correlate the images with the page sizes to decide whether the document is scanned.
+   *
+   * @param fd file descriptor receiving the result
+   * @param nbPages number of pages of the document
+   * @param images dimension of each image of the object table
+   * @param pages dimension of each page dictionary of the object table
+   * @return <code>true</code> if the result is ambiguous and should be confirmed
+   */
+  boolean decide(FileDescriptor fd, int nbPages, Collection<DimensionInfo> images,
+      List<DimensionInfo> pages) {
+    fd.setScan(false);
+    int nbImages = images.size();
+    if (nbImages == 0) {
+      // The inline images of the content streams are not in the object table
+      return nbPages > 0;
+    }
+    List<DimensionInfo> pageSizes = distinct(pages);
+    DpiCounter counter = new DpiCounter();
+    int nbCovering = 0;
+    for (DimensionInfo dimImage : images) {
+      int dpiFound = findPageDensity(dimImage, pageSizes);
+      if (dpiFound != 0) {
+        nbCovering++;
+        counter.increment(dpiFound);
+      }
+    }
+    if (nbCovering == 0) {
+      // Fewer images than pages, like logos: no page is scanned. As many images as pages, but
+      // none matching a MediaBox, may still be scans drawn on a smaller box
+      return nbImages >= nbPages;
+    }
+    Entry<Integer, Integer> bestDpi = counter.getBest();
+    if (nbImages == nbPages && pages.size() == nbPages && nbCovering == nbImages
+        && bestDpi.getValue().intValue() > nbImages / THRESHOLD) {
+      fd.setScan(true);
+      fd.setResolution(bestDpi.getKey());
+      return false;
+    }
+    // Mixed document, images shared between pages, orphan pages...
+    return true;
+  }
+
+  /**
+   * Go through the object table, collecting the image streams and the sizes of the pages. The
+   * images used as masks of other images are not counted.
+   *
+   * @param ctx state of the detection
+   * @param cosDocument low level document
+   * @param images receive the dimension of each image
+   * @param pages receive the dimension of each page, in points multiplied by the user unit
+   * @throws IOException exception if error while reading the file
+   */
+  void collectObjects(ScanContext ctx, COSDocument cosDocument,
+      Map<COSStream, DimensionInfo> images, List<DimensionInfo> pages) throws IOException {
+    List<COSBase> masks = new ArrayList<>();
+    for (COSObjectKey key : cosDocument.getXrefTable().keySet()) {
+      COSObject object = cosDocument.getObjectFromPool(key);
+      COSBase base = object == null ? null : object.getObject();
+      if (base instanceof COSStream) {
+        COSStream stream = (COSStream) base;
+        if (!COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE))) {
+          continue;
+        }
+        ctx.metrics.xobjectsVisited++;
+        if (stream.getBoolean(COSName.IMAGE_MASK, false)) {
+          // Stencil mask, painted with the current color
+          continue;
+        }
+        images.put(stream, new DimensionInfo(stream.getLong(COSName.WIDTH),
+            stream.getLong(COSName.HEIGHT)));
+        LOGGER.finer("Image filter " + decodeFilter(stream));
+        masks.add(stream.getDictionaryObject(COSName.SMASK));
+        masks.add(stream.getDictionaryObject(COSName.MASK));
+      } else if (base instanceof COSDictionary) {
+        COSDictionary dict = (COSDictionary) base;
+        if (COSName.PAGE.equals(dict.getCOSName(COSName.TYPE))) {
+          pages.add(pageDimension(dict));
+        }
+      }
+    }
+    for (COSBase mask : masks) {
+      if (mask instanceof COSStream) {
+        images.remove(mask);
+      }
+    }
+  }
+
+  /**
+   * Dimension of a page, read from the page dictionary or inherited from its ancestors.
+   *
+   * @param page page dictionary
+   * @return the dimension in points multiplied by the user unit, {@link DimensionInfo#EMPTY} if
+   *         there is no MediaBox
+   */
+  static DimensionInfo pageDimension(COSDictionary page) {
+    float userUnit = page.getFloat(COSName.USER_UNIT, 1.0f);
+    COSDictionary node = page;
+    for (int depth = 0; node != null && depth < MAX_DEPTH; depth++) {
+      COSBase box = node.getDictionaryObject(COSName.MEDIA_BOX);
+      if (box instanceof COSArray && ((COSArray) box).size() == 4) {
+        float[] coords = ((COSArray) box).toFloatArray();
+        return new DimensionInfo((long) (Math.abs(coords[2] - coords[0]) * userUnit),
+            (long) (Math.abs(coords[3] - coords[1]) * userUnit));
+      }
+      node = node.getCOSDictionary(COSName.PARENT);
+    }
+    return DimensionInfo.EMPTY;
+  }
+
+  /**
+   * Remove the duplicate dimensions, keeping the first seen order.
+   *
+   * @param dimensions dimensions
+   * @return the distinct dimensions
+   */
+  static List<DimensionInfo> distinct(List<DimensionInfo> dimensions) {
+    List<DimensionInfo> result = new ArrayList<>();
+    for (DimensionInfo dim : dimensions) {
+      boolean found = false;
+      for (DimensionInfo other : result) {
+        if (other.width == dim.width && other.height == dim.height) {
+          found = true;
+          break;
+        }
+      }
+      if (!found && dim.width > 0 && dim.height > 0) {
+        result.add(dim);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Find the density of an image over the first page size with the same aspect ratio.
+   *
+   * @param dimImage dimension of the image
+   * @param pageSizes distinct dimensions of the pages
+   * @return the density, 0 if the image can't cover any page
+   */
+  int findPageDensity(DimensionInfo dimImage, List<DimensionInfo> pageSizes) {
+    if (dimImage.width <= 0 || dimImage.height <= 0) {
+      return 0;
+    }
+    double imageRatio = (double) dimImage.width / dimImage.height;
+    for (DimensionInfo dimPage : pageSizes) {
+      double pageRatio = (double) dimPage.width / dimPage.height;
+      if (100.0 * Math.abs(imageRatio / pageRatio - 1.0) > RATIO_TOLERANCE) {
+        continue;
+      }
+      int dpiFound = findDensity(dimImage, dimPage, 1.0f);
+      if (dpiFound != 0) {
+        return dpiFound;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,331 @@
+package fr.bnf.toolslab.corpus;
+
+import fr.bnf.toolslab.corpus.DocumentSpec.Compression;
+import fr.bnf.toolslab.corpus.DocumentSpec.Kind;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Generator of synthetic PDF documents, with a known answer for the detectors. All the content is
+ * derived from a seed, so that a corpus can be regenerated identically on another machine.
+ */
+public class CorpusGenerator {
+  protected static final Logger LOGGER = Logger.getLogger(CorpusGenerator.class.getName());
+
+  /** Name of the manifest in the destination directory. */
+  public static final String MANIFEST = "manifest.csv";
+
+  private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+  private static final int LINES_PER_PAGE = 50;
+  private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+      "adipiscing", "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore"};
+
+  private final long seed;
+  // Images already encoded, by compression and resolution
+  private final Map<String, EncodedImage> images = new HashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param seed seed of the content of the pages
+   */
+  public CorpusGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Plan a corpus: the kinds, compressions and resolutions are used in turn, the number of pages
+   * is drawn from the seed.
+   *
+   * @param count number of documents
+   * @param maxPages maximum number of pages of a document
+   * @param kinds kinds of documents
+   * @param compressions compressions of the images
+   * @param resolutions resolutions of the images
+   * @param formDepth number of nested forms of the {@link Kind#NESTED} documents
+   * @param seed seed of the number of pages
+   * @return the specifications of the documents
+   */
+  public static List<DocumentSpec> plan(int count, int maxPages, List<Kind> kinds,
+      List<Compression> compressions, List<Integer> resolutions, int formDepth, long seed) {
+    Random random = new Random(seed);
+    List<DocumentSpec> specs = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Kind kind = kinds.get(i % kinds.size());
+      Compression compression = compressions.get((i / kinds.size()) % compressions.size());
+      int resolution = resolutions
+          .get((i / (kinds.size() * compressions.size())) % resolutions.size());
+      String name = String.format("%06d-%s.pdf", i, kind.name().toLowerCase(Locale.ROOT));
+      specs.add(new DocumentSpec(name, kind, 1 + random.nextInt(maxPages), compression,
+          resolution, formDepth));
+    }
+    return specs;
+  }
+
+  /**
+   * Write all the documents and the manifest in a directory.
+   *
+   * @param specs documents to write
+   * @param destDir destination directory, created if needed
+   * @throws IOException exception if error while writing the documents
+   */
+  public void generate(List<DocumentSpec> specs, File destDir) throws IOException {
+    Files.createDirectories(destDir.toPath());
+    try (BufferedWriter manifest = Files.newBufferedWriter(new File(destDir, MANIFEST).toPath(),
+        StandardCharsets.UTF_8)) {
+      manifest.write(DocumentSpec.headString());
+      manifest.newLine();
+      for (DocumentSpec spec : specs) {
+        long begin = System.currentTimeMillis();
+        write(spec, new File(destDir, spec.getName()));
+        LOGGER.fine(String.format("Wrote %s in %d ms", spec.getName(),
+            System.currentTimeMillis() - begin));
+        manifest.write(spec.toString());
+        manifest.newLine();
+      }
+    }
+  }
+
+  /**
+   * Read the manifest of a corpus.
+   *
+   * @param manifest file written by {@link #generate(List, File)}
+   * @return the specifications of the documents
+   * @throws IOException exception if error while reading the manifest
+   */
+  public static List<DocumentSpec> readManifest(File manifest) throws IOException {
+    List<DocumentSpec> specs = new ArrayList<>();
+    try (BufferedReader reader =
+        Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      if (!DocumentSpec.headString().equals(line)) {
+        throw new IOException(manifest.getName() + " is not a corpus manifest");
+      }
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          specs.add(DocumentSpec.parse(line));
+        }
+      }
+    }
+    return specs;
+  }
+
+  /**
+   * Write a document.
+   *
+   * @param spec description of the document
+   * @param dest file to write
+   * @throws IOException exception if error while writing the document
+   */
+  public void write(DocumentSpec spec, File dest) throws IOException {
+    EncodedImage encoded = spec.getNbScannedPages() == 0 ? null
+        : getEncodedImage(spec.getCompression(), spec.getResolution());
+    Random random = new Random(seed ^ spec.getName().hashCode());
+    try (PDDocument document = new PDDocument()) {
+      if (spec.getKind() == Kind.SHARED) {
+        writeShared(document, spec, encoded);
+      } else {
+        for (int p = 0; p < spec.getNbPages(); p++) {
+          PDPage page = new PDPage(PAGE_SIZE);
+          document.addPage(page);
+          try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+            if (!spec.isScannedPage(p)) {
+              writeText(cs, random);
+            } else if (spec.getFormDepth() > 0) {
+              cs.drawForm(createNestedForms(document, encoded.copyTo(document),
+                  spec.getFormDepth()));
+            } else {
+              drawFullPage(cs, encoded.copyTo(document));
+            }
+          }
+        }
+      }
+      document.save(dest);
+    }
+  }
+
+  /**
+   * All the pages share a single resource dictionary holding all the images, each page draws only
+   * its own image.
+   */
+  private static void writeShared(PDDocument document, DocumentSpec spec, EncodedImage encoded)
+      throws IOException {
+    PDResources shared = new PDResources();
+    List<PDImageXObject> pageImages = new ArrayList<>(spec.getNbPages());
+    for (int p = 0; p < spec.getNbPages(); p++) {
+      PDImageXObject image = encoded.copyTo(document);
+      shared.add(image);
+      pageImages.add(image);
+    }
+    for (int p = 0; p < spec.getNbPages(); p++) {
+      PDPage page = new PDPage(PAGE_SIZE);
+      page.setResources(shared);
+      document.addPage(page);
+      try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+        drawFullPage(cs, pageImages.get(p));
+      }
+    }
+  }
+
+  private static PDFormXObject createNestedForms(PDDocument document, PDImageXObject image,
+      int depth) throws IOException {
+    PDFormXObject inner = null;
+    for (int d = 0; d < depth; d++) {
+      PDFormXObject form = new PDFormXObject(document);
+      form.setBBox(PAGE_SIZE);
+      form.setResources(new PDResources());
+      try (PDPageContentStream cs = new PDPageContentStream(document, form,
+          form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+        if (inner == null) {
+          drawFullPage(cs, image);
+        } else {
+          cs.drawForm(inner);
+        }
+      }
+      inner = form;
+    }
+    return inner;
+  }
+
+  private static void drawFullPage(PDPageContentStream cs, PDImageXObject image)
+      throws IOException {
+    cs.drawImage(image, 0, 0, PAGE_SIZE.getWidth(), PAGE_SIZE.getHeight());
+  }
+
+  private static void writeText(PDPageContentStream cs, Random random) throws IOException {
+    cs.beginText();
+    cs.setFont(PDType1Font.HELVETICA, 10);
+    cs.setLeading(14);
+    cs.newLineAtOffset(50, PAGE_SIZE.getHeight() - 50);
+    StringBuilder line = new StringBuilder(100);
+    for (int i = 0; i < LINES_PER_PAGE; i++) {
+      line.setLength(0);
+      while (line.length() < 80) {
+        line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      cs.showText(line.toString());
+      cs.newLine();
+    }
+    cs.endText();
+  }
+
+  private EncodedImage getEncodedImage(Compression compression, int resolution)
+      throws IOException {
+    String key = compression + "-" + resolution;
+    EncodedImage encoded = images.get(key);
+    if (encoded == null) {
+      long begin = System.currentTimeMillis();
+      try (PDDocument scratch = new PDDocument()) {
+        encoded = new EncodedImage(encode(scratch, compression, resolution));
+      }
+      LOGGER.fine(String.format("Encoded %s page in %d bytes in %d ms", key,
+          encoded.getLength(), System.currentTimeMillis() - begin));
+      images.put(key, encoded);
+    }
+    return encoded;
+  }
+
+  private PDImageXObject encode(PDDocument scratch, Compression compression, int resolution)
+      throws IOException {
+    BufferedImage page = paintPage(Math.round(PAGE_SIZE.getWidth() * resolution / 72),
+        Math.round(PAGE_SIZE.getHeight() * resolution / 72));
+    switch (compression) {
+      case CCITT:
+        BufferedImage bilevel =
+            new BufferedImage(page.getWidth(), page.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = bilevel.createGraphics();
+        g.drawImage(page, 0, 0, null);
+        g.dispose();
+        return CCITTFactory.createFromImage(scratch, bilevel);
+      case DCT:
+        return JPEGFactory.createFromImage(scratch, page, 0.75f, resolution);
+      case FLATE:
+        return LosslessFactory.createFromImage(scratch, page);
+      case JPX:
+        return new PDImageXObject(scratch, new ByteArrayInputStream(encodeJpeg2000(page)),
+            COSName.JPX_DECODE, page.getWidth(), page.getHeight(), 8, PDDeviceGray.INSTANCE);
+      default:
+        throw new IllegalArgumentException("Unknown compression " + compression);
+    }
+  }
+
+  private static byte[] encodeJpeg2000(BufferedImage image) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg2000");
+    if (!writers.hasNext()) {
+      throw new IOException("No JPEG2000 writer, jai_imageio is missing from the classpath");
+    }
+    ImageWriter writer = writers.next();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+      writer.setOutput(ios);
+      writer.write(image);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Paint a grey page looking like a scan: noisy paper with dark lines of text.
+   */
+  private BufferedImage paintPage(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    Random random = new Random(seed);
+    WritableRaster raster = image.getRaster();
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        row[x] = 215 + random.nextInt(40);
+      }
+      raster.setSamples(0, y, width, 1, 0, row);
+    }
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.DARK_GRAY);
+    int margin = width / 10;
+    int lineHeight = Math.max(2, height / 70);
+    for (int y = margin; y < height - margin; y += 2 * lineHeight) {
+      int x = margin;
+      while (x < width - margin) {
+        int word = lineHeight * (1 + random.nextInt(6));
+        g.fillRect(x, y, Math.min(word, width - margin - x), lineHeight);
+        x += word + lineHeight;
+      }
+    }
+    g.dispose();
+    return image;
+  }
+}
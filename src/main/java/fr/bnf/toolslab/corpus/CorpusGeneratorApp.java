@@ -0,0 +1,111 @@
+package fr.bnf.toolslab.corpus;
+
+import fr.bnf.toolslab.corpus.DocumentSpec.Compression;
+import fr.bnf.toolslab.corpus.DocumentSpec.Kind;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Application to generate a corpus of synthetic PDFs with its manifest.
+ */
+public class CorpusGeneratorApp {
+  protected static final Logger LOGGER = Logger.getLogger(CorpusGeneratorApp.class.getName());
+
+  private File outputDir;
+  private int count = 100;
+  private int maxPages = 50;
+  private List<Kind> kinds = Arrays.asList(Kind.values());
+  private List<Compression> compressions =
+      Arrays.asList(Compression.CCITT, Compression.DCT, Compression.FLATE);
+  private List<Integer> resolutions = Arrays.asList(300);
+  private int formDepth = 8;
+  private long seed = 42;
+
+  public static void usage() {
+    System.err.println("Usage : " + CorpusGeneratorApp.class.getName()
+        + " [-count 100] [-pages 50] [-kinds scan,native,mixed,shared,nested]"
+        + " [-compressions ccitt,dct,flate,jpx] [-dpi 300] [-depth 8] [-seed 42]"
+        + " <destinationDirectory>");
+    System.exit(1);
+  }
+
+  protected void parseArgs(String[] args) throws IllegalArgumentException {
+    int index = 0;
+    try {
+      while (index < args.length - 1 && args[index].startsWith("-")) {
+        if ("-count".equals(args[index])) {
+          count = Integer.parseInt(args[index + 1]);
+        } else if ("-pages".equals(args[index])) {
+          maxPages = Integer.parseInt(args[index + 1]);
+        } else if ("-kinds".equals(args[index])) {
+          kinds = new ArrayList<>();
+          for (String value : args[index + 1].split(",")) {
+            kinds.add(Kind.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+          }
+        } else if ("-compressions".equals(args[index])) {
+          compressions = new ArrayList<>();
+          for (String value : args[index + 1].split(",")) {
+            compressions.add(Compression.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+          }
+        } else if ("-dpi".equals(args[index])) {
+          resolutions = new ArrayList<>();
+          for (String value : args[index + 1].split(",")) {
+            resolutions.add(Integer.parseInt(value.trim()));
+          }
+        } else if ("-depth".equals(args[index])) {
+          formDepth = Integer.parseInt(args[index + 1]);
+        } else if ("-seed".equals(args[index])) {
+          seed = Long.parseLong(args[index + 1]);
+        } else {
+          throw new IllegalArgumentException("Unknown option " + args[index]);
+        }
+        index += 2;
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for " + args[index]);
+    }
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing destination directory");
+    }
+    if (count < 1 || maxPages < 1) {
+      throw new IllegalArgumentException("Count and pages must be positive");
+    }
+    outputDir = new File(args[index]);
+  }
+
+  protected void process() throws IOException {
+    List<DocumentSpec> specs =
+        CorpusGenerator.plan(count, maxPages, kinds, compressions, resolutions, formDepth, seed);
+    long begin = System.currentTimeMillis();
+    new CorpusGenerator(seed).generate(specs, outputDir);
+    LOGGER.info(String.format("Generated %d documents in %s in %d ms", specs.size(),
+        outputDir.getAbsolutePath(), System.currentTimeMillis() - begin));
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args arguments given in the command line
+   * @throws IOException exception if error while writing the files
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      usage();
+      return;
+    }
+    CorpusGeneratorApp app = new CorpusGeneratorApp();
+    try {
+      app.parseArgs(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      usage();
+      return;
+    }
+    app.process();
+  }
+}
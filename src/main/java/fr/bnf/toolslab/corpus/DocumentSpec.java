@@ -0,0 +1,211 @@
+package fr.bnf.toolslab.corpus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Description of a generated document, as written in the manifest of the corpus.
+ */
+public final class DocumentSpec {
+  protected static final String SEP = ";";
+
+  protected static final List<String> HEADERS =
+      Collections.unmodifiableList(Arrays.asList("FILENAME", "KIND", "TYPE", "NB PAGES",
+          "NB SCANNED PAGES", "COMPRESSION", "RESOLUTION", "FORM DEPTH"));
+
+  /**
+   * Shape of the document.
+   */
+  public enum Kind {
+    /** One full-page image per page. */
+    SCAN,
+    /** Only text. */
+    NATIVE,
+    /** Scanned pages on the even pages, text on the odd pages. */
+    MIXED,
+    /**
+     * One full-page image per page, all the images in a resource dictionary shared by the pages.
+     */
+    SHARED,
+    /** One full-page image per page, drawn inside nested forms. */
+    NESTED
+  }
+
+  /**
+   * Compression of the images.
+   */
+  public enum Compression {
+    CCITT, DCT, FLATE, JPX
+  }
+
+  private final String name;
+  private final Kind kind;
+  private final int nbPages;
+  private final Compression compression;
+  private final int resolution;
+  private final int formDepth;
+
+  /**
+   * Constructor.
+   *
+   * @param name name of the file
+   * @param kind shape of the document
+   * @param nbPages number of pages
+   * @param compression compression of the images
+   * @param resolution resolution of the images in DPI
+   * @param formDepth number of nested forms, only for {@link Kind#NESTED}
+   */
+  public DocumentSpec(String name, Kind kind, int nbPages, Compression compression,
+      int resolution, int formDepth) {
+    if (nbPages < 1 || resolution < 1 || formDepth < 0) {
+      throw new IllegalArgumentException("Invalid specification for " + name);
+    }
+    this.name = name;
+    this.kind = kind;
+    this.nbPages = nbPages;
+    this.compression = compression;
+    this.resolution = resolution;
+    this.formDepth = kind == Kind.NESTED ? formDepth : 0;
+  }
+
+  /**
+   * Getter for the name of the file.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Getter for the shape of the document.
+   *
+   * @return the shape
+   */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Getter for the number of pages.
+   *
+   * @return the number of pages
+   */
+  public int getNbPages() {
+    return nbPages;
+  }
+
+  /**
+   * Getter for the compression of the images.
+   *
+   * @return the compression
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Getter for the resolution of the images.
+   *
+   * @return the resolution in DPI
+   */
+  public int getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Getter for the depth of the nested forms.
+   *
+   * @return the number of nested forms, 0 if the document is not {@link Kind#NESTED}
+   */
+  public int getFormDepth() {
+    return formDepth;
+  }
+
+  /**
+   * Check if a page holds a full-page image.
+   *
+   * @param numPage index of the page, starting at 0
+   * @return <code>true</code> if the page is scanned
+   */
+  public boolean isScannedPage(int numPage) {
+    switch (kind) {
+      case NATIVE:
+        return false;
+      case MIXED:
+        return numPage % 2 == 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Getter for the number of scanned pages.
+   *
+   * @return the number of pages holding a full-page image
+   */
+  public int getNbScannedPages() {
+    switch (kind) {
+      case NATIVE:
+        return 0;
+      case MIXED:
+        return (nbPages + 1) / 2;
+      default:
+        return nbPages;
+    }
+  }
+
+  /**
+   * Getter for the expected type, with the words of the detectors.
+   *
+   * @return "scanned pdf", "native pdf" or "mixed pdf"
+   */
+  public String getType() {
+    switch (kind) {
+      case NATIVE:
+        return "native pdf";
+      case MIXED:
+        return "mixed pdf";
+      default:
+        return "scanned pdf";
+    }
+  }
+
+  /**
+   * Get a header for the manifest.
+   *
+   * @return string to display
+   */
+  public static String headString() {
+    return String.join(SEP, HEADERS);
+  }
+
+  /**
+   * Read a line of the manifest.
+   *
+   * @param line line written by {@link #toString()}
+   * @return the specification
+   */
+  public static DocumentSpec parse(String line) {
+    String[] values = line.split(SEP, -1);
+    if (values.length != HEADERS.size()) {
+      throw new IllegalArgumentException("Invalid manifest line " + line);
+    }
+    try {
+      return new DocumentSpec(values[0], Kind.valueOf(values[1].toUpperCase(Locale.ROOT)),
+          Integer.parseInt(values[3]), Compression.valueOf(values[5].toUpperCase(Locale.ROOT)),
+          Integer.parseInt(values[6]), Integer.parseInt(values[7]));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid manifest line " + line, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + SEP + kind.name().toLowerCase(Locale.ROOT) + SEP + getType() + SEP + nbPages
+        + SEP + getNbScannedPages() + SEP + compression.name().toLowerCase(Locale.ROOT) + SEP
+        + resolution + SEP + formDepth;
+  }
+}
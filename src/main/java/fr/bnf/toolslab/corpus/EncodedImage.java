@@ -0,0 +1,68 @@
+package fr.bnf.toolslab.corpus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Image encoded once, whose raw stream is copied in each page: the documents get distinct image
+ * objects without paying for the compression of every page.
+ */
+final class EncodedImage {
+  private final Map<COSName, COSBase> entries = new HashMap<>();
+  private final byte[] raw;
+
+  /**
+   * Constructor.
+   *
+   * @param image encoded image, in a scratch document
+   * @throws IOException exception if error while reading the stream
+   */
+  EncodedImage(PDImageXObject image) throws IOException {
+    COSStream stream = image.getCOSObject();
+    for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+      if (!COSName.LENGTH.equals(entry.getKey())) {
+        entries.put(entry.getKey(), entry.getValue());
+      }
+    }
+    try (InputStream in = stream.createRawInputStream()) {
+      raw = IOUtils.toByteArray(in);
+    }
+  }
+
+  /**
+   * Build a new image object with the same stream.
+   *
+   * @param document document owning the new image
+   * @return the image
+   * @throws IOException exception if error while writing the stream
+   */
+  PDImageXObject copyTo(PDDocument document) throws IOException {
+    COSStream stream = document.getDocument().createCOSStream();
+    for (Map.Entry<COSName, COSBase> entry : entries.entrySet()) {
+      stream.setItem(entry.getKey(), entry.getValue());
+    }
+    try (OutputStream out = stream.createRawOutputStream()) {
+      out.write(raw);
+    }
+    return new PDImageXObject(new PDStream(stream), null);
+  }
+
+  /**
+   * Getter for the size of the encoded stream.
+   *
+   * @return the number of bytes
+   */
+  int getLength() {
+    return raw.length;
+  }
+}
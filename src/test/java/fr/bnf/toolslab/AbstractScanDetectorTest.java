@@ -0,0 +1,175 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check that {@link AbstractScanDetector#detect(Path)} gives the same results when a detector is
+ * shared by several threads as when it is called alone.
+ */
+public class AbstractScanDetectorTest {
+
+  static final int NB_THREADS = 8;
+  static final int NB_ROUNDS = 10;
+  // 150 pixels on 100 points is 108 dpi
+  static final PDRectangle PAGE = new PDRectangle(100, 100);
+  static final int PIXELS = 150;
+
+  File dir;
+  final List<Path> paths = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("detect").toFile();
+    paths.add(generate("scanned.pdf", 12, 12));
+    paths.add(generate("native.pdf", 7, 0));
+    paths.add(generate("mixed.pdf", 15, 5));
+    paths.add(generate("single.pdf", 1, 1));
+    // Not readable, the result is not valid
+    paths.add(new File(dir, "missing.pdf").toPath());
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Generate a document whose first pages are scanned.
+   */
+  private Path generate(String name, int nbPages, int nbScanned) throws IOException {
+    File file = new File(dir, name);
+    try (PDDocument document = new PDDocument()) {
+      for (int p = 0; p < nbPages; p++) {
+        PDPage page = new PDPage(PAGE);
+        document.addPage(page);
+        if (p >= nbScanned) {
+          continue;
+        }
+        BufferedImage image = new BufferedImage(PIXELS, PIXELS, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setSample(p % PIXELS, 0, 0, 255);
+        try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+          cs.drawImage(LosslessFactory.createFromImage(document, image), 0, 0,
+              PAGE.getWidth(), PAGE.getHeight());
+        }
+      }
+      document.save(file);
+    }
+    return file.toPath();
+  }
+
+  /**
+   * Describe a result without its processing time.
+   */
+  private static String describe(ScanResult result) {
+    return result.getFile().getName() + " valid=" + result.isValid() + " pages="
+        + result.getNbPages() + " images=" + result.getNbImages() + " scan=" + result.isScan()
+        + " dpi=" + result.getResolution() + " samples=" + result.getNbSamples();
+  }
+
+  private void assertConcurrentResults(AbstractScanDetector detector) throws Exception {
+    List<String> expected = new ArrayList<>();
+    for (Path path : paths) {
+      expected.add(describe(detector.detect(path)));
+    }
+    assertTrue(expected.get(0), expected.get(0).contains("scan=true dpi=108"));
+    assertTrue(expected.get(1), expected.get(1).contains("scan=false"));
+    assertTrue(expected.get(4), expected.get(4).contains("valid=false"));
+
+    ExecutorService pool = Executors.newFixedThreadPool(NB_THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<List<String>>> futures = new ArrayList<>();
+      for (int t = 0; t < NB_THREADS; t++) {
+        final long seed = t;
+        Callable<List<String>> task = () -> {
+          // Each thread goes through the files in its own order
+          List<Integer> order = new ArrayList<>();
+          for (int round = 0; round < NB_ROUNDS; round++) {
+            for (int i = 0; i < paths.size(); i++) {
+              order.add(i);
+            }
+          }
+          Collections.shuffle(order, new Random(seed));
+          start.await();
+          List<String> mismatches = new ArrayList<>();
+          for (int i : order) {
+            String actual = describe(detector.detect(paths.get(i)));
+            if (!expected.get(i).equals(actual)) {
+              mismatches.add(actual + " instead of " + expected.get(i));
+            }
+          }
+          return mismatches;
+        };
+        futures.add(pool.submit(task));
+      }
+      start.countDown();
+      for (Future<List<String>> future : futures) {
+        List<String> mismatches = future.get();
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    assertConcurrentResults(new StreamPdfBoxScanDetector(false));
+  }
+
+  @Test
+  public void testStrict() throws Exception {
+    assertConcurrentResults(new StrictPdfBoxScanDetector());
+  }
+
+  @Test
+  public void testSampled() throws Exception {
+    AbstractScanDetector detector = new SampledPdfBoxScanDetector(false, true);
+    detector.setSamplingPolicy(SamplingPolicy.sequential(0.9));
+    assertConcurrentResults(detector);
+  }
+
+  @Test
+  public void testResult() {
+    FileDescriptor fd = new FileDescriptor(new File("a.pdf"));
+    fd.setValid(true);
+    fd.setScan(true);
+    fd.setNbPages(3);
+    fd.setResolution(300);
+    ScanResult result = ScanResult.of(fd);
+    // Later changes of the descriptor don't reach the result
+    fd.setScan(false);
+    fd.setNbPages(4);
+    assertTrue(result.isScan());
+    assertEquals(3, result.getNbPages());
+    assertEquals(300, result.getResolution());
+    assertFalse(ScanResult.of(fd).isScan());
+  }
+}
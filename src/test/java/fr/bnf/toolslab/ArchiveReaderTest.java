@@ -0,0 +1,237 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArchiveReaderTest {
+
+  File dir;
+  MemoryBudget buffers;
+  final List<ArchiveEntry> entries = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("archives").toFile();
+    buffers = new MemoryBudget(4096);
+  }
+
+  @After
+  public void tearDown() {
+    for (ArchiveEntry entry : entries) {
+      entry.close();
+    }
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  private static byte[] content(int length, long seed) {
+    byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] contentOf(ArchiveEntry entry) throws IOException {
+    return entry.getContent() != null ? entry.getContent()
+        : Files.readAllBytes(entry.getSpillFile().toPath());
+  }
+
+  private void read(File archive) throws IOException, InterruptedException {
+    new ArchiveReader(buffers, dir).read(archive, f -> !f.getName().startsWith("skip"),
+        entries::add);
+  }
+
+  @Test
+  public void testZip() throws Exception {
+    File archive = new File(dir, "bundle.zip");
+    byte[] small = content(100, 1);
+    byte[] large = content(3000, 2);
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+      // Deflated and streamed, its size is only given after the data
+      zip.putNextEntry(new ZipEntry("small.pdf"));
+      zip.write(small);
+      zip.putNextEntry(new ZipEntry("notes.txt"));
+      zip.write(small);
+      zip.putNextEntry(new ZipEntry("dir/large.pdf"));
+      zip.write(large);
+      zip.putNextEntry(new ZipEntry("skip.pdf"));
+      zip.write(small);
+      zip.closeEntry();
+    }
+    read(archive);
+    assertEquals(2, entries.size());
+    ArchiveEntry first = entries.get(0);
+    assertEquals(archive.getPath() + "!/small.pdf", first.getFile().getPath());
+    assertEquals("small.pdf", first.getFile().getName());
+    assertArrayEquals(small, first.getContent());
+    assertEquals(100, first.getSize());
+    // Larger than its share of the buffers
+    ArchiveEntry second = entries.get(1);
+    assertEquals(archive.getPath() + "!/dir/large.pdf", second.getFile().getPath());
+    assertNull(second.getContent());
+    assertArrayEquals(large, contentOf(second));
+    assertEquals(3000, second.getSize());
+    assertEquals(100, buffers.getUsed());
+    File spillFile = second.getSpillFile();
+    first.close();
+    second.close();
+    assertEquals(0, buffers.getUsed());
+    assertFalse(spillFile.exists());
+  }
+
+  /**
+   * Write a TAR header in the ustar format.
+   */
+  private static void header(OutputStream out, String name, long size, char type)
+      throws IOException {
+    byte[] header = new byte[512];
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+    put(header, 100, "0000644");
+    put(header, 124, String.format("%011o", size));
+    put(header, 136, String.format("%011o", 1600000000L));
+    header[156] = (byte) type;
+    put(header, 257, "ustar");
+    put(header, 263, "00");
+    out.write(header);
+  }
+
+  private static void put(byte[] header, int offset, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+
+  private static void data(OutputStream out, byte[] data) throws IOException {
+    out.write(data);
+    out.write(new byte[(512 - data.length % 512) % 512]);
+  }
+
+  private static byte[] tar(byte[] small, byte[] large) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    header(out, "./docs/small.pdf", small.length, '0');
+    data(out, small);
+    header(out, "docs/readme.txt", small.length, '0');
+    data(out, small);
+    String longName = "docs/" + new String(new char[120]).replace('\0', 'x') + ".pdf";
+    byte[] longNameBytes = (longName + "\0").getBytes(StandardCharsets.UTF_8);
+    header(out, "././@LongLink", longNameBytes.length, 'L');
+    data(out, longNameBytes);
+    header(out, "truncated", large.length, '0');
+    data(out, large);
+    byte[] pax = "21 path=docs/pax.pdf\n".getBytes(StandardCharsets.UTF_8);
+    header(out, "PaxHeader", pax.length, 'x');
+    data(out, pax);
+    header(out, "old.pdf", small.length, '0');
+    data(out, small);
+    header(out, "docs", 0, '5');
+    out.write(new byte[1024]);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testTar() throws Exception {
+    byte[] small = content(700, 3);
+    byte[] large = content(2000, 4);
+    File archive = new File(dir, "bundle.tar");
+    Files.write(archive.toPath(), tar(small, large));
+    read(archive);
+    assertEquals(3, entries.size());
+    assertEquals(archive.getPath() + "!/docs/small.pdf", entries.get(0).getFile().getPath());
+    assertArrayEquals(small, contentOf(entries.get(0)));
+    assertEquals(1600000000000L, entries.get(0).getLastModified());
+    assertEquals(124, entries.get(1).getFile().getName().length());
+    assertArrayEquals(large, contentOf(entries.get(1)));
+    assertNotNull(entries.get(1).getSpillFile());
+    assertEquals(archive.getPath() + "!/docs/pax.pdf", entries.get(2).getFile().getPath());
+    assertArrayEquals(small, contentOf(entries.get(2)));
+  }
+
+  @Test
+  public void testGzippedTar() throws Exception {
+    byte[] small = content(10, 5);
+    File archive = new File(dir, "bundle.tgz");
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive))) {
+      out.write(tar(small, small));
+    }
+    read(archive);
+    assertEquals(3, entries.size());
+    assertArrayEquals(small, entries.get(2).getContent());
+  }
+
+  @Test
+  public void testDamagedTar() throws Exception {
+    File archive = new File(dir, "bundle.tar");
+    byte[] data = tar(content(700, 3), content(2000, 4));
+    // Cut in the data of the second PDF
+    Files.write(archive.toPath(), Arrays.copyOf(data, 5000));
+    try {
+      read(archive);
+      fail();
+    } catch (IOException e) {
+      // expected, the entries before are kept
+    }
+    assertEquals(1, entries.size());
+    assertEquals(700, buffers.getUsed());
+  }
+
+  @Test
+  public void testNames() throws IOException {
+    assertTrue(ArchiveReader.isArchive(Paths.get("a/b.TAR.GZ")));
+    assertTrue(ArchiveReader.isArchive(Paths.get("b.zip")));
+    assertFalse(ArchiveReader.isArchive(Paths.get("b.pdf")));
+    assertEquals(new File("/data/b.zip!/x/a.pdf").getPath(),
+        ArchiveReader.entryFile(new File("/data/b.zip"), "/x/a.pdf").getPath());
+    assertTrue(ArchiveReader.isEntryFile(new File("/data/b.zip!/x/a.pdf")));
+    assertFalse(ArchiveReader.isEntryFile(new File("/data/x/a.pdf")));
+    // Images named after entries of the same name don't overwrite each other
+    assertEquals("b.zip_x_a", ExtractImageApp.outputPrefix(new File("/data/b.zip!/x/a.pdf")));
+    assertEquals("b.zip_a", ExtractImageApp.outputPrefix(new File("/data/b.zip!/a.pdf")));
+    assertEquals("a", ExtractImageApp.outputPrefix(new File("/data/x/a.pdf")));
+    byte[] header = new byte[12];
+    put(header, 0, "  0001750 ");
+    assertEquals(1000, ArchiveReader.parseNumber(header, 0, 12));
+    String[] pax = ArchiveReader.parsePax(
+        "18 path=a b/c.pdf\n11 size=42\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals("a b/c.pdf", pax[0]);
+    assertEquals("42", pax[1]);
+  }
+
+  @Test
+  public void testPrefix() {
+    byte[] header = new byte[512];
+    put(header, 0, "file.pdf");
+    put(header, 345, "14000000000");
+    // Old GNU format: access time where the prefix would be
+    put(header, 257, "ustar  ");
+    assertEquals("file.pdf", ArchiveReader.tarName(header));
+    put(header, 257, "ustar\u0000" + "00");
+    assertEquals("14000000000/file.pdf", ArchiveReader.tarName(header));
+    // Unknown version
+    put(header, 263, "01");
+    assertEquals("file.pdf", ArchiveReader.tarName(header));
+  }
+}
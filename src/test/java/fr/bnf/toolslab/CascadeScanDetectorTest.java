@@ -0,0 +1,92 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+public class CascadeScanDetectorTest {
+
+  /**
+   * Stage giving a fixed answer.
+   */
+  private static final class FixedStage extends AbstractScanDetector {
+    private final String name;
+    private final boolean ambiguous;
+    private final boolean scan;
+    int calls;
+
+    FixedStage(String name, boolean ambiguous, boolean scan) {
+      this.name = name;
+      this.ambiguous = ambiguous;
+      this.scan = scan;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+      calls++;
+      ctx.fd.setScan(scan);
+      if (ambiguous) {
+        ctx.fd.setNbImages(7);
+        ctx.fd.setNbSamples(3);
+        ctx.fd.setConfidence(0.6);
+        ctx.fd.setResolution(150);
+      }
+      ctx.ambiguous = ambiguous;
+    }
+  }
+
+  @Test
+  public void testStopsAtFirstDecision() throws IOException {
+    FixedStage cheap = new FixedStage("cheap", true, true);
+    FixedStage middle = new FixedStage("middle", false, false);
+    FixedStage full = new FixedStage("full", false, true);
+    CascadeScanDetector cascade = new CascadeScanDetector(Arrays.asList(cheap, middle, full));
+    FileDescriptor fd = new FileDescriptor(new File("test.pdf"));
+    ScanContext ctx = new ScanContext(fd);
+    cascade.parse(ctx, null);
+    assertEquals("middle", fd.getDecidedBy());
+    // The guess of the ambiguous stage is not kept
+    assertFalse(fd.isScan());
+    assertEquals(0, fd.getNbImages());
+    assertEquals(0, fd.getNbSamples());
+    assertEquals(0.0, fd.getConfidence(), 0.0);
+    assertEquals(0, fd.getResolution());
+    assertFalse(ctx.isAmbiguous());
+    assertEquals(1, cheap.calls);
+    assertEquals(1, middle.calls);
+    assertEquals(0, full.calls);
+  }
+
+  @Test
+  public void testLastStageDecides() throws IOException {
+    FixedStage cheap = new FixedStage("cheap", true, false);
+    FixedStage last = new FixedStage("last", true, true);
+    CascadeScanDetector cascade = new CascadeScanDetector(Arrays.asList(cheap, last));
+    FileDescriptor fd = new FileDescriptor(new File("test.pdf"));
+    ScanContext ctx = new ScanContext(fd);
+    cascade.parse(ctx, null);
+    assertEquals("last", fd.getDecidedBy());
+    assertTrue(fd.isScan());
+    assertTrue(ctx.isAmbiguous());
+  }
+
+  @Test
+  public void testQuickRules() {
+    assertTrue(SizeRatioScanDetector.isNativeSize(20 * 1024, 10));
+    assertFalse(SizeRatioScanDetector.isNativeSize(10 * 100 * 1024, 10));
+    assertTrue(SizeRatioScanDetector.isNativeSize(1000, 0));
+    assertTrue(MetadataScanDetector.isNativeProducer("pdfTeX-1.40.25"));
+    assertFalse(MetadataScanDetector.isNativeProducer("ABBYY FineReader 15"));
+    assertFalse(MetadataScanDetector.isNativeProducer(null));
+  }
+}
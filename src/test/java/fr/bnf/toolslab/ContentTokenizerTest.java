@@ -0,0 +1,78 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class ContentTokenizerTest {
+
+  private static ContentTokenizer tokenizer(String content) {
+    return new ContentTokenizer(
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  @Test
+  public void testImagePlacement() throws IOException {
+    ContentTokenizer tokenizer = tokenizer("q 595.5 0 0 -842 .5 -1.25 cm /Im#201 Do Q");
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("q"));
+    double[] expected = {595.5, 0, 0, -842, 0.5, -1.25};
+    for (double value : expected) {
+      assertEquals(ContentTokenizer.NUMBER, tokenizer.next());
+      assertEquals(value, tokenizer.getNumber(), 1e-9);
+    }
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("cm"));
+    assertEquals(ContentTokenizer.NAME, tokenizer.next());
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("Do"));
+    // The name is kept after the operator
+    assertEquals("Im 1", tokenizer.getName());
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("Q"));
+    assertEquals(ContentTokenizer.EOF, tokenizer.next());
+  }
+
+  @Test
+  public void testSkippedOperands() throws IOException {
+    ContentTokenizer tokenizer = tokenizer("BT /F1 12 Tf (a (nested\\) string) Do) Tj"
+        + " [<48656C6C6F> -250 (x)] TJ ET % comment Do\n"
+        + "/OC << /Name (Do) /On true >> BDC EMC");
+    StringBuilder operators = new StringBuilder();
+    int kind;
+    while ((kind = tokenizer.next()) != ContentTokenizer.EOF) {
+      if (kind == ContentTokenizer.OPERATOR) {
+        for (String op : new String[] {"BT", "Tf", "Tj", "TJ", "ET", "BDC", "EMC", "Do"}) {
+          if (tokenizer.isOperator(op)) {
+            operators.append(op).append(' ');
+          }
+        }
+      }
+    }
+    assertEquals("BT Tf Tj TJ ET BDC EMC ", operators.toString());
+  }
+
+  @Test
+  public void testInlineImage() throws IOException {
+    ContentTokenizer tokenizer =
+        tokenizer("BI /W 8 /H 2 /BPC 1 /CS /G ID \u0000EI\u0001EIx EI\nQ");
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("BI"));
+    String[] names = {"W", "H", "BPC", "CS", "G"};
+    int nbNames = 0;
+    int kind;
+    while ((kind = tokenizer.next()) != ContentTokenizer.OPERATOR) {
+      if (kind == ContentTokenizer.NAME) {
+        assertEquals(names[nbNames++], tokenizer.getName());
+      }
+    }
+    assertTrue(tokenizer.isOperator("ID"));
+    assertEquals(5, nbNames);
+    tokenizer.skipInlineImageData();
+    assertEquals(ContentTokenizer.OPERATOR, tokenizer.next());
+    assertTrue(tokenizer.isOperator("Q"));
+  }
+}
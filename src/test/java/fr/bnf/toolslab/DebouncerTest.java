@@ -0,0 +1,50 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class DebouncerTest {
+
+  private final Map<Path, long[]> states = new HashMap<>();
+
+  private void write(Debouncer debouncer, Path file, long size, long now) {
+    states.put(file, new long[] {size, now});
+    debouncer.changed(file, size, now, now);
+  }
+
+  @Test
+  public void testQuietPeriod() {
+    Debouncer debouncer = new Debouncer(1000);
+    Path first = Paths.get("first.pdf");
+    Path second = Paths.get("second.pdf");
+    assertEquals(Long.MAX_VALUE, debouncer.nextDeadline());
+    write(debouncer, first, 100, 0);
+    write(debouncer, second, 100, 200);
+    write(debouncer, first, 200, 500);
+    assertEquals(1200, debouncer.nextDeadline());
+    assertTrue(debouncer.takeStable(1100, states::get).isEmpty());
+    assertEquals(Arrays.asList(second), debouncer.takeStable(1200, states::get));
+    // Still written, without any event
+    states.put(first, new long[] {300, 1400});
+    assertTrue(debouncer.takeStable(1500, states::get).isEmpty());
+    assertEquals(2500, debouncer.nextDeadline());
+    assertEquals(Arrays.asList(first), debouncer.takeStable(2500, states::get));
+    assertEquals(0, debouncer.size());
+  }
+
+  @Test
+  public void testDeletedFile() {
+    Debouncer debouncer = new Debouncer(1000);
+    Path file = Paths.get("gone.pdf");
+    write(debouncer, file, 100, 0);
+    states.remove(file);
+    assertTrue(debouncer.takeStable(1000, states::get).isEmpty());
+    assertEquals(0, debouncer.size());
+  }
+}
@@ -0,0 +1,123 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+public class ImagePlacementTest {
+
+  static final double[] A4 = {0, 0, 595, 842};
+
+  @Test
+  public void testFullPage() {
+    // A4 at 300 dpi drawn with "595 0 0 842 0 0 cm"
+    ImagePlacement placement =
+        new ImagePlacement(2479, 3508, new double[] {595, 0, 0, 842, 0, 0}, A4, 1.0f);
+    assertEquals(1.0, placement.getCoverage(), 1e-9);
+    assertEquals(300.0, placement.getDpiX(), 0.1);
+    assertEquals(300.0, placement.getDpiY(), 0.1);
+  }
+
+  @Test
+  public void testRotated() {
+    // Landscape scan rotated by 90 degrees to fill the portrait page
+    ImagePlacement placement =
+        new ImagePlacement(3508, 2479, new double[] {0, 842, -595, 0, 595, 0}, A4, 1.0f);
+    assertEquals(1.0, placement.getCoverage(), 1e-9);
+    assertEquals(300.0, placement.getDpiX(), 0.1);
+    assertEquals(300.0, placement.getDpiY(), 0.1);
+  }
+
+  @Test
+  public void testScaledAndCropped() {
+    // Same pixels drawn on a quarter of the page: the density doubles
+    ImagePlacement placement =
+        new ImagePlacement(2479, 3508, new double[] {297.5, 0, 0, 421, 0, 0}, A4, 1.0f);
+    assertEquals(0.25, placement.getCoverage(), 1e-9);
+    assertEquals(600.0, placement.getDpiX(), 0.2);
+
+    // Full page image, but only the upper half of the page is visible
+    placement = new ImagePlacement(2479, 3508, new double[] {595, 0, 0, 842, 0, 0},
+        new double[] {0, 421, 595, 842}, 1.0f);
+    assertEquals(1.0, placement.getCoverage(), 1e-9);
+
+    // Outside of the page
+    placement = new ImagePlacement(100, 100, new double[] {10, 0, 0, 10, -50, -50}, A4, 1.0f);
+    assertEquals(0.0, placement.getCoverage(), 1e-9);
+  }
+
+  @Test
+  public void testUserUnitAndAnisotropy() {
+    // Fax at 204x98 dpi on a page in units of 2/72 inch
+    ImagePlacement placement = new ImagePlacement(1728, 1143,
+        new double[] {304.94, 0, 0, 419.94, 0, 0}, new double[] {0, 0, 304.94, 419.94}, 2.0f);
+    assertEquals(1.0, placement.getCoverage(), 1e-9);
+    assertEquals(204.0, placement.getDpiX(), 0.1);
+    assertEquals(98.0, placement.getDpiY(), 0.1);
+  }
+
+  @Test
+  public void testFindDensity() {
+    AbstractScanDetector detector = new StreamPdfBoxScanDetector();
+    assertEquals(300, detector.findDensity(
+        new ImagePlacement(2479, 3508, new double[] {595, 0, 0, 842, 0, 0}, A4, 1.0f)));
+    // Background gradient of 16x16 pixels stretched across the page
+    ImagePlacement gradient =
+        new ImagePlacement(16, 16, new double[] {595, 0, 0, 842, 0, 0}, A4, 1.0f);
+    assertEquals(1.0, gradient.getCoverage(), 1e-9);
+    assertEquals(0, detector.findDensity(gradient));
+    // Wide enough but too low along the height
+    assertEquals(0, detector.findDensity(
+        new ImagePlacement(2479, 500, new double[] {595, 0, 0, 842, 0, 0}, A4, 1.0f)));
+    assertEquals(0, detector.findDensity(null));
+  }
+
+  /**
+   * Detector reading the placements of its pages from an array instead of a document.
+   */
+  private static final class PlacedPages extends StreamPdfBoxScanDetector {
+    private final ImagePlacement[] pages;
+
+    PlacedPages(ImagePlacement... pages) {
+      this.pages = pages;
+    }
+
+    @Override
+    protected void collectPages(ScanContext ctx, PDDocument document) {
+      for (ImagePlacement placement : pages) {
+        ctx.nbPages++;
+        ctx.imageCounter.incrementAndGet();
+        ctx.pageDimensions.add(new DimensionInfo(595, 842));
+        ctx.imageDimensions.add(placement.getDimension());
+        ctx.imagePlacements.add(placement);
+      }
+    }
+  }
+
+  private static FileDescriptor detect(AbstractScanDetector detector) throws IOException {
+    FileDescriptor fd = new FileDescriptor(new File("slides.pdf"));
+    detector.parse(new ScanContext(fd), null);
+    return fd;
+  }
+
+  @Test
+  public void testLowResolutionPages() throws IOException {
+    double[] fullPage = {595, 0, 0, 842, 0, 0};
+    ImagePlacement[] slides = new ImagePlacement[4];
+    ImagePlacement[] scans = new ImagePlacement[4];
+    for (int i = 0; i < slides.length; i++) {
+      slides[i] = new ImagePlacement(16, 16, fullPage, A4, 1.0f);
+      scans[i] = new ImagePlacement(2479, 3508, fullPage, A4, 1.0f);
+    }
+    FileDescriptor fd = detect(new PlacedPages(slides));
+    assertEquals(4, fd.getNbImages());
+    assertFalse(fd.isScan());
+    fd = detect(new PlacedPages(scans));
+    assertTrue(fd.isScan());
+    assertEquals(300, fd.getResolution());
+  }
+}
@@ -0,0 +1,31 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ImageSummaryTest {
+
+  @Test
+  public void testPlus() {
+    DimensionInfo first = new DimensionInfo(2480, 3508);
+    DimensionInfo second = new DimensionInfo(100, 100);
+    ImageSummary summary = ImageSummary.EMPTY.plus(DimensionInfo.EMPTY);
+    assertSame(ImageSummary.EMPTY, summary);
+    summary = summary.plus(first).plus(second);
+    assertEquals(2, summary.getCount());
+    assertSame(first, summary.getFirst());
+  }
+
+  @Test
+  public void testPlusSummary() {
+    DimensionInfo first = new DimensionInfo(2480, 3508);
+    ImageSummary form = ImageSummary.EMPTY.plus(first);
+    // The images of a form come after the ones already found
+    ImageSummary page = ImageSummary.EMPTY.plus(new DimensionInfo(10, 10)).plus(form);
+    assertEquals(2, page.getCount());
+    assertEquals(10, page.getFirst().getWidth());
+    assertSame(form, ImageSummary.EMPTY.plus(form));
+    assertSame(form, form.plus(ImageSummary.EMPTY));
+  }
+}
@@ -0,0 +1,82 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    // Exact values under 16, then 8 buckets per power of two
+    assertEquals(0, LatencyHistogram.bucketOf(0));
+    assertEquals(15, LatencyHistogram.bucketOf(15));
+    assertEquals(16, LatencyHistogram.bucketOf(16));
+    assertEquals(16, LatencyHistogram.bucketOf(17));
+    assertEquals(17, LatencyHistogram.bucketOf(18));
+    assertEquals(17, LatencyHistogram.upperBoundOf(16));
+    for (long value = 1; value < 100000; value = value * 3 / 2 + 1) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+      assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1));
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500, histogram.getSum());
+    assertEquals(1000, histogram.getMax());
+    // Relative error of a bucket is under 1/8
+    assertTrue(Math.abs(histogram.percentile(0.5) - 500) <= 500 / 8);
+    assertTrue(Math.abs(histogram.percentile(0.99) - 990) <= 990 / 8);
+    assertEquals(1000, histogram.percentile(1.0));
+    assertEquals(0, new LatencyHistogram().percentile(0.5));
+  }
+
+  @Test
+  public void testPrometheusFormat() {
+    BatchMetrics metrics = new BatchMetrics();
+    metrics.fileStarted();
+    metrics.fileFinished(2048, 3, true, 12);
+    metrics.fileStarted();
+    metrics.fileFinished(10, 0, false, 1);
+    metrics.addImages(3);
+    FileDescriptor cached = new FileDescriptor(new File("cached.pdf"));
+    cached.setValid(true);
+    cached.setNbPages(4);
+    cached.setTimeToProcess(5000);
+    metrics.fileCached(cached, 100);
+    String text = PrometheusTextFile.format(metrics, "x");
+    assertTrue(text.contains("# TYPE scannedpdf_files_total counter\n"));
+    assertTrue(text.contains("scannedpdf_files_total{job=\"x\",result=\"invalid\"} 1\n"));
+    assertTrue(text.contains("scannedpdf_files_total{job=\"x\",result=\"native\"} 1\n"));
+    assertTrue(text.contains("scannedpdf_cache_hits_total{job=\"x\"} 1\n"));
+    assertTrue(text.contains("scannedpdf_bytes_total{job=\"x\"} 2158\n"));
+    assertTrue(text.contains("scannedpdf_pages_total{job=\"x\"} 7\n"));
+    assertTrue(text.contains("scannedpdf_images_extracted_total{job=\"x\"} 3\n"));
+    assertTrue(text.contains("scannedpdf_in_flight{job=\"x\"} 0\n"));
+    assertTrue(text.contains("scannedpdf_time_to_process_milliseconds_count{job=\"x\"} 2\n"));
+    assertTrue(text.contains(
+        "scannedpdf_time_to_process_milliseconds{job=\"x\",quantile=\"0.99\"} 12\n"));
+  }
+
+  @Test
+  public void testParsePeriod() {
+    assertEquals(15, PrometheusTextFile.parsePeriod(" 15"));
+    for (String value : new String[] {"0", "-5", "15s"}) {
+      try {
+        PrometheusTextFile.parsePeriod(value);
+        fail(value);
+      } catch (IllegalArgumentException e) {
+        // expected, scheduleAtFixedRate would reject it later
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
+import org.apache.pdfbox.util.Matrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the {@link LightImageEngine} with the {@link ImageGraphicsEngine} on generated
+ * documents: both must find the same placements and lead to the same decisions.
+ */
+public class LightImageEngineTest {
+
+  static final PDRectangle PAGE = PDRectangle.A4;
+  // A4 at 75 dpi
+  static final int WIDTH = 620;
+  static final int HEIGHT = 877;
+
+  PDDocument document;
+
+  @Before
+  public void setUp() {
+    document = new PDDocument();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    document.close();
+  }
+
+  private PDImageXObject image(int width, int height) throws IOException {
+    return LosslessFactory.createFromImage(document,
+        new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY));
+  }
+
+  private PDPageContentStream newPage() throws IOException {
+    PDPage page = new PDPage(PAGE);
+    document.addPage(page);
+    return new PDPageContentStream(document, page);
+  }
+
+  /**
+   * Interpret all the pages with one engine.
+   *
+   * @return the placements found, as text
+   */
+  private static List<String> placements(PDDocument loaded, boolean light) throws IOException {
+    AbstractScanDetector detector = new StreamPdfBoxScanDetector(light);
+    ScanContext ctx = new ScanContext(new FileDescriptor(new File("engines.pdf")));
+    List<String> result = new ArrayList<>();
+    for (PDPage page : loaded.getPages()) {
+      for (ImagePlacement placement : detector.interpretPage(ctx, page, light)) {
+        result.add(placement.toString());
+      }
+    }
+    return result;
+  }
+
+  private static FileDescriptor decide(PDDocument loaded, boolean light) throws IOException {
+    FileDescriptor fd = new FileDescriptor(new File("engines.pdf"));
+    new StreamPdfBoxScanDetector(light).parse(new ScanContext(fd), loaded);
+    return fd;
+  }
+
+  /**
+   * Save the document, load it again and compare the engines on it.
+   *
+   * @return the placements found by both engines
+   */
+  private List<String> assertSameResults() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    document.save(out);
+    try (PDDocument loaded = PDDocument.load(out.toByteArray())) {
+      List<String> expected = placements(loaded, false);
+      assertEquals(expected, placements(loaded, true));
+      FileDescriptor heavy = decide(loaded, false);
+      FileDescriptor light = decide(loaded, true);
+      assertEquals(heavy.isScan(), light.isScan());
+      assertEquals(heavy.getResolution(), light.getResolution());
+      assertEquals(heavy.getNbPages(), light.getNbPages());
+      assertEquals(heavy.getNbImages(), light.getNbImages());
+      return expected;
+    }
+  }
+
+  @Test
+  public void testScaled() throws IOException {
+    for (int p = 0; p < 3; p++) {
+      try (PDPageContentStream cs = newPage()) {
+        // Full page, then the same pixels on a quarter of the page
+        cs.drawImage(image(WIDTH, HEIGHT), 0, 0, PAGE.getWidth(), PAGE.getHeight());
+        cs.drawImage(image(WIDTH, HEIGHT), 50, 100, PAGE.getWidth() / 2, PAGE.getHeight() / 2);
+      }
+    }
+    List<String> placements = assertSameResults();
+    assertEquals(6, placements.size());
+    assertTrue(placements.get(0), placements.get(0).contains("covering 1.000, 75.0x75.0 dpi"));
+    assertTrue(placements.get(1), placements.get(1).contains("150.0x150.0 dpi"));
+  }
+
+  @Test
+  public void testRotated() throws IOException {
+    for (int p = 0; p < 3; p++) {
+      try (PDPageContentStream cs = newPage()) {
+        // Landscape scan turned by 90 degrees to fill the portrait page
+        cs.transform(new Matrix(0, 1, -1, 0, PAGE.getWidth(), 0));
+        cs.drawImage(image(HEIGHT, WIDTH), 0, 0, PAGE.getHeight(), PAGE.getWidth());
+      }
+    }
+    List<String> placements = assertSameResults();
+    assertEquals(3, placements.size());
+    assertTrue(placements.get(0), placements.get(0).contains("covering 1.000, 75.0x75.0 dpi"));
+  }
+
+  private PDFormXObject form(PDResources resources) {
+    PDFormXObject form = new PDFormXObject(document);
+    form.setBBox(PAGE);
+    form.setResources(resources);
+    return form;
+  }
+
+  @Test
+  public void testNestedForm() throws IOException {
+    for (int p = 0; p < 3; p++) {
+      PDFormXObject inner = form(new PDResources());
+      try (PDPageContentStream cs = new PDPageContentStream(document, inner,
+          inner.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+        cs.drawImage(image(WIDTH, HEIGHT), 0, 0, PAGE.getWidth(), PAGE.getHeight());
+      }
+      PDFormXObject outer = form(new PDResources());
+      try (PDPageContentStream cs = new PDPageContentStream(document, outer,
+          outer.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+        // Scaled down in the outer form, back to the full page on the page
+        cs.saveGraphicsState();
+        cs.transform(Matrix.getScaleInstance(0.5f, 0.5f));
+        cs.drawForm(inner);
+        cs.restoreGraphicsState();
+      }
+      try (PDPageContentStream cs = newPage()) {
+        cs.transform(Matrix.getScaleInstance(2, 2));
+        cs.drawForm(outer);
+      }
+    }
+    List<String> placements = assertSameResults();
+    assertEquals(3, placements.size());
+    assertTrue(placements.get(0), placements.get(0).contains("covering 1.000, 75.0x75.0 dpi"));
+  }
+
+  @Test
+  public void testInlineImage() throws IOException {
+    for (int p = 0; p < 3; p++) {
+      COSDictionary parameters = new COSDictionary();
+      parameters.setInt(COSName.WIDTH, WIDTH);
+      parameters.setInt(COSName.HEIGHT, HEIGHT);
+      parameters.setInt(COSName.BITS_PER_COMPONENT, 8);
+      parameters.setItem(COSName.COLORSPACE, COSName.DEVICEGRAY);
+      byte[] data = new byte[WIDTH * HEIGHT];
+      // Different content on each page, so that no image is a duplicate
+      data[p] = (byte) 0xFF;
+      try (PDPageContentStream cs = newPage()) {
+        cs.drawImage(new PDInlineImage(parameters, data, new PDResources()), 0, 0,
+            PAGE.getWidth(), PAGE.getHeight());
+      }
+    }
+    List<String> placements = assertSameResults();
+    assertEquals(3, placements.size());
+    assertTrue(placements.get(0), placements.get(0).contains("covering 1.000, 75.0x75.0 dpi"));
+  }
+}
@@ -0,0 +1,102 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedRandomAccessReadTest {
+
+  File file;
+  byte[] content;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("mapped", ".pdf");
+    content = new byte[1000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (i * 7);
+    }
+    Files.write(file.toPath(), content);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testReadAcrossChunks() throws IOException {
+    // Chunks of 64 bytes, the last one is partial
+    try (MappedRandomAccessRead read = new MappedRandomAccessRead(file, 6)) {
+      assertEquals(1000, read.length());
+      byte[] buffer = new byte[300];
+      read.seek(50);
+      assertEquals(300, read.read(buffer));
+      byte[] expected = new byte[300];
+      System.arraycopy(content, 50, expected, 0, 300);
+      assertArrayEquals(expected, buffer);
+      assertEquals(350, read.getPosition());
+
+      read.seek(63);
+      assertEquals(content[63] & 0xff, read.read());
+      assertEquals(content[64] & 0xff, read.peek());
+      assertEquals(64, read.getPosition());
+      read.rewind(2);
+      assertEquals(content[62] & 0xff, read.read());
+
+      // Short read at the end
+      read.seek(900);
+      assertEquals(100, read.read(buffer, 0, 300));
+      assertEquals(buffer[99], content[999]);
+      assertTrue(read.isEOF());
+      assertEquals(-1, read.read());
+      assertEquals(-1, read.read(buffer));
+      assertEquals(0, read.available());
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    MappedRandomAccessRead read = new MappedRandomAccessRead(file);
+    assertFalse(read.isClosed());
+    assertEquals(content[0] & 0xff, read.read());
+    read.close();
+    assertTrue(read.isClosed());
+    try {
+      read.read();
+      fail("Read after close");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    try (MappedRandomAccessRead read = new MappedRandomAccessRead(file, 6)) {
+      read.seek(10);
+      assertEquals(content[10] & 0xff, read.read());
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(500);
+      }
+      // Peeking and rewinding don't look at the file
+      assertEquals(content[11] & 0xff, read.peek());
+      read.rewind(1);
+      assertEquals(10, read.getPosition());
+      try {
+        read.seek(800);
+        fail("Seek in a truncated file");
+      } catch (MappedRandomAccessRead.TruncatedException e) {
+        // Expected, instead of a bus error on the next read
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.InterruptedIOException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+  MemoryBudget budget;
+
+  @Before
+  public void setUp() throws Exception {
+    budget = new MemoryBudget(100);
+  }
+
+  @Test
+  public void testAcquireRelease() throws InterruptedIOException {
+    assertEquals(60, budget.acquire(60));
+    assertEquals(60, budget.getUsed());
+    assertFalse(budget.tryAcquire(50));
+    assertTrue(budget.tryAcquire(40));
+    budget.release(60);
+    budget.release(40);
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testOversizedRequest() throws InterruptedIOException {
+    // A request bigger than the ceiling is reduced so that it can run alone
+    assertEquals(100, budget.acquire(500));
+    budget.release(100);
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testWaitForRelease() throws Exception {
+    budget.acquire(80);
+    Thread other = new Thread(() -> {
+      try {
+        budget.release(budget.acquire(50));
+      } catch (InterruptedIOException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    other.start();
+    Thread.sleep(50);
+    assertTrue(other.isAlive());
+    budget.release(80);
+    other.join(1000);
+    assertFalse(other.isAlive());
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testParseSize() {
+    assertEquals(12, LoadPolicy.parseSize("12"));
+    assertEquals(64 * 1024, LoadPolicy.parseSize("64k"));
+    assertEquals(2L * 1024 * 1024 * 1024, LoadPolicy.parseSize("2G"));
+    assertEquals(LoadPolicy.Mode.MIXED, LoadPolicy.parseMode("mixed"));
+  }
+
+  @Test
+  public void testParseInput() {
+    assertEquals(LoadPolicy.Input.MAPPED, LoadPolicy.parseInput("Mapped"));
+    assertEquals(LoadPolicy.Input.BUFFERED, LoadPolicy.parseInput("buffered"));
+  }
+}
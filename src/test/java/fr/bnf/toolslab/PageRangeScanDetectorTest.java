@@ -0,0 +1,139 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDInlineImage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compare the {@link PageRangeScanDetector} with the sequential {@link StreamPdfBoxScanDetector}
+ * on a generated document large enough to be split in several ranges.
+ */
+public class PageRangeScanDetectorTest {
+
+  static final int NB_RANGES = 3;
+  static final int NB_PAGES = NB_RANGES * PageRangeScanDetector.MIN_RANGE_PAGES;
+  // Small pages keep the document light: 150 pixels on 100 points is 108 dpi
+  static final PDRectangle PAGE = new PDRectangle(100, 100);
+  static final int PIXELS = 150;
+
+  File file;
+  ExecutorService pool;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("ranges", ".pdf");
+    pool = Executors.newFixedThreadPool(NB_RANGES - 1);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+    file.delete();
+  }
+
+  private static PDImageXObject image(PDDocument document, int width, int height, int seed)
+      throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    // Different pixels for each image, so that none is a duplicate
+    image.getRaster().setSample(seed % width, seed / width % height, 0, 255);
+    return LosslessFactory.createFromImage(document, image);
+  }
+
+  /**
+   * Generate a document mixing scanned pages, native pages, a logo shared by pages of every range
+   * and inline images.
+   *
+   * @param nbScanned number of scanned pages among the NB_PAGES
+   */
+  private void generate(int nbScanned) throws IOException {
+    try (PDDocument document = new PDDocument()) {
+      PDImageXObject logo = image(document, 20, 10, 0);
+      for (int p = 0; p < NB_PAGES; p++) {
+        PDPage page = new PDPage(PAGE);
+        document.addPage(page);
+        try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+          if (p % 10 == 0) {
+            // Same object on each of these pages, whatever the range
+            cs.drawImage(logo, 5, 85, 20, 10);
+          }
+          if (p % 50 == 25) {
+            COSDictionary parameters = new COSDictionary();
+            parameters.setInt(COSName.WIDTH, PIXELS);
+            parameters.setInt(COSName.HEIGHT, PIXELS);
+            parameters.setInt(COSName.BITS_PER_COMPONENT, 8);
+            parameters.setItem(COSName.COLORSPACE, COSName.DEVICEGRAY);
+            byte[] data = new byte[PIXELS * PIXELS];
+            data[p] = (byte) 0xFF;
+            cs.drawImage(new PDInlineImage(parameters, data, new PDResources()), 0, 0,
+                PAGE.getWidth(), PAGE.getHeight());
+          } else if (p < nbScanned) {
+            cs.drawImage(image(document, PIXELS, PIXELS, p + 1), 0, 0, PAGE.getWidth(),
+                PAGE.getHeight());
+          }
+        }
+      }
+      document.save(file);
+    }
+  }
+
+  private FileDescriptor process(AbstractScanDetector detector) throws IOException {
+    FileDescriptor fd = new FileDescriptor(file);
+    detector.process(fd);
+    return fd;
+  }
+
+  private static void assertSameResult(FileDescriptor expected, FileDescriptor actual) {
+    assertTrue(actual.isValid());
+    assertEquals(expected.isScan(), actual.isScan());
+    assertEquals(expected.getResolution(), actual.getResolution());
+    assertEquals(expected.getNbPages(), actual.getNbPages());
+    assertEquals(expected.getNbImages(), actual.getNbImages());
+    assertEquals(expected.getNbSamples(), actual.getNbSamples());
+  }
+
+  private void assertSameResults(boolean light) throws IOException {
+    FileDescriptor expected = process(new StreamPdfBoxScanDetector(light));
+    assertEquals(NB_PAGES, expected.getNbPages());
+    assertSameResult(expected, process(new PageRangeScanDetector(light, pool, NB_RANGES)));
+
+    // A budget only holding the loaded document: no copy, the ranges are interpreted in turn
+    MemoryBudget budget = new MemoryBudget(1);
+    AbstractScanDetector detector = new PageRangeScanDetector(light, pool, NB_RANGES);
+    detector.setLoadPolicy(new LoadPolicy(LoadPolicy.Mode.MAIN_MEMORY, -1, null, budget));
+    assertSameResult(expected, process(detector));
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testScanned() throws IOException {
+    generate(NB_PAGES);
+    assertSameResults(false);
+    assertSameResults(true);
+  }
+
+  @Test
+  public void testMixed() throws IOException {
+    // The native pages are all in the last range
+    generate(NB_PAGES / 2);
+    assertSameResults(false);
+    assertSameResults(true);
+  }
+}
@@ -0,0 +1,90 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class PageRangeTest {
+
+  private static final DimensionInfo A4 = new DimensionInfo(595, 842);
+  private static final double[] BOX = {0, 0, 595, 842};
+
+  private static ImagePlacement placement(long width) {
+    return new ImagePlacement(width, width, new double[] {595, 0, 0, 842, 0, 0}, BOX, 1.0f);
+  }
+
+  @Test
+  public void testSplit() {
+    List<PageRange> ranges = PageRange.split(10, 3);
+    assertEquals(3, ranges.size());
+    assertEquals(0, ranges.get(0).from);
+    assertEquals(3, ranges.get(0).to);
+    assertEquals(3, ranges.get(1).from);
+    assertEquals(6, ranges.get(1).to);
+    assertEquals(6, ranges.get(2).from);
+    assertEquals(10, ranges.get(2).to);
+  }
+
+  @Test
+  public void testMergeSharedImages() {
+    ImagePlacement logo = placement(10);
+    ImagePlacement scan1 = placement(2480);
+    ImagePlacement scan2 = placement(2481);
+    ImagePlacement scan3 = placement(2482);
+    // Sequentially: page 1 logo + scan1, page 2 logo (dup) + scan2, page 3 logo (dup) + scan3
+    PageRange first = new PageRange(0, 2);
+    first.addPage(A4, 2, Arrays.asList(logo, scan1));
+    first.addPage(A4, 1, Collections.singletonList(scan2));
+    first.setImageKeys(new long[] {PageRange.objectKey(5, 0), PageRange.objectKey(6, 0),
+        PageRange.objectKey(7, 0)});
+    // The logo is new for the second range
+    PageRange second = new PageRange(2, 3);
+    second.addPage(A4, 2, Arrays.asList(logo, scan3));
+    second.setImageKeys(new long[] {PageRange.objectKey(5, 0), PageRange.objectKey(8, 0)});
+
+    ScanContext ctx = new ScanContext(new FileDescriptor(new File("test.pdf")));
+    PageRange.merge(ctx, Arrays.asList(first, second));
+    assertEquals(3, ctx.nbPages);
+    assertEquals(4, ctx.imageCounter.get());
+    assertEquals(3, ctx.pageDimensions.size());
+    assertSame(logo, ctx.imagePlacements.get(0));
+    assertSame(scan2, ctx.imagePlacements.get(1));
+    // The logo is a duplicate, the first image of the page is the scan
+    assertSame(scan3, ctx.imagePlacements.get(2));
+    assertSame(scan3.getDimension(), ctx.imageDimensions.get(2));
+  }
+
+  @Test
+  public void testMergeInlineAndErrors() {
+    ImagePlacement inline = placement(100);
+    PageRange first = new PageRange(0, 1);
+    first.addPage(A4, 1, Collections.singletonList(inline));
+    first.setImageKeys(new long[] {PageRange.NO_KEY});
+    PageRange second = new PageRange(1, 3);
+    // Inline images are never duplicates
+    second.addPage(A4, 1, Collections.singletonList(inline));
+    // A page in error still counts its images but has no placement
+    second.addPage(A4, 1, null);
+    PageRange third = new PageRange(3, 4);
+    third.addPage(A4, 0, Collections.emptyList());
+    second.setImageKeys(new long[] {PageRange.NO_KEY, PageRange.objectKey(9, 0)});
+
+    ScanContext ctx = new ScanContext(new FileDescriptor(new File("test.pdf")));
+    PageRange.merge(ctx, Arrays.asList(first, second, third));
+    assertEquals(4, ctx.nbPages);
+    assertEquals(3, ctx.imageCounter.get());
+    // The lists stay aligned on the pages
+    assertEquals(4, ctx.imageDimensions.size());
+    assertEquals(4, ctx.imagePlacements.size());
+    assertSame(inline, ctx.imagePlacements.get(1));
+    assertSame(DimensionInfo.EMPTY, ctx.imageDimensions.get(2));
+    assertNull(ctx.imagePlacements.get(2));
+    assertSame(DimensionInfo.EMPTY, ctx.imageDimensions.get(3));
+    assertNull(ctx.imagePlacements.get(3));
+  }
+}
@@ -0,0 +1,226 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PdfSkimmerTest {
+
+  File pdfFile;
+
+  @Before
+  public void setUp() throws IOException {
+    pdfFile = File.createTempFile("skim", ".pdf");
+  }
+
+  @After
+  public void tearDown() {
+    pdfFile.delete();
+  }
+
+  private static void write(ByteArrayOutputStream out, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Write a document with a cross-reference table, one image of the given length per page.
+   */
+  private void writeClassic(int nbPages, int imageLength) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    List<Integer> offsets = new ArrayList<>();
+    write(out, "%PDF-1.4\n");
+    offsets.add(out.size());
+    write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+    offsets.add(out.size());
+    // Indirect count, like some producers write
+    write(out, "2 0 obj\n<< /Type /Pages /Kids [] /Count 3 0 R /Name (a(b)c) /Id <0A1B> >>\n"
+        + "endobj\n");
+    offsets.add(out.size());
+    write(out, "3 0 obj\n" + nbPages + "\nendobj\n");
+    for (int i = 0; i < nbPages; i++) {
+      offsets.add(out.size());
+      write(out, (4 + i) + " 0 obj\n<< /Type /XObject /Subtype /Image /Length " + imageLength
+          + " >>\nstream\n");
+      out.write(new byte[imageLength], 0, imageLength);
+      write(out, "\nendstream\nendobj\n");
+    }
+    int xref = out.size();
+    write(out, "xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+    for (int offset : offsets) {
+      write(out, String.format("%010d 00000 n \n", offset));
+    }
+    write(out, "trailer\n<< /Size " + (offsets.size() + 1) + " /Root 1 0 R >>\nstartxref\n"
+        + xref + "\n%%EOF\n");
+    Files.write(pdfFile.toPath(), out.toByteArray());
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[data.length + 64];
+    int length = deflater.deflate(buffer);
+    deflater.end();
+    byte[] result = new byte[length];
+    System.arraycopy(buffer, 0, result, 0, length);
+    return result;
+  }
+
+  @Test
+  public void testClassicTable() throws IOException {
+    writeClassic(3, 2000);
+    try (PdfSkimmer skimmer = new PdfSkimmer(pdfFile)) {
+      assertEquals(3, skimmer.readPageCount());
+      assertTrue(skimmer.readStreamLengths());
+      assertEquals(3, skimmer.nbImages);
+      assertEquals(6000, skimmer.imageBytes);
+      assertEquals(0, skimmer.contentBytes);
+    }
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    writeClassic(2, 500);
+    try (PdfSkimmer skimmer = new PdfSkimmer(Files.readAllBytes(pdfFile.toPath()))) {
+      assertEquals(2, skimmer.readPageCount());
+      assertTrue(skimmer.readStreamLengths());
+      assertEquals(1000, skimmer.imageBytes);
+    }
+  }
+
+  @Test
+  public void testCompressedStructure() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(out, "%PDF-1.5\n");
+    // Catalog and pages in an object stream
+    String objects = "<< /Type /Catalog /Pages 2 0 R >> << /Type /Pages /Kids [] /Count 7 >>";
+    String header = "1 0 2 34 ";
+    byte[] objStm = deflate((header + objects).getBytes(StandardCharsets.ISO_8859_1));
+    int objStmOffset = out.size();
+    write(out, "3 0 obj\n<< /Type /ObjStm /N 2 /First " + header.length() + " /Length "
+        + objStm.length + " /Filter /FlateDecode >>\nstream\n");
+    out.write(objStm, 0, objStm.length);
+    write(out, "\nendstream\nendobj\n");
+    int xrefOffset = out.size();
+    // Entries of 4 bytes: type, offset on 2 bytes, index, with the PNG up predictor
+    int[][] entries = {{0, 0, 0}, {2, 3, 0}, {2, 3, 1}, {1, objStmOffset, 0},
+        {1, xrefOffset, 0}};
+    byte[] rows = new byte[entries.length * 5];
+    int[] previous = new int[4];
+    for (int i = 0; i < entries.length; i++) {
+      int[] row = {entries[i][0], entries[i][1] >> 8, entries[i][1] & 0xff, entries[i][2]};
+      rows[i * 5] = 2;
+      for (int j = 0; j < 4; j++) {
+        rows[i * 5 + 1 + j] = (byte) (row[j] - previous[j]);
+      }
+      previous = row;
+    }
+    byte[] xref = deflate(rows);
+    write(out, "4 0 obj\n<< /Type /XRef /Size 5 /W [1 2 1] /Root 1 0 R /Length " + xref.length
+        + " /Filter /FlateDecode /DecodeParms << /Predictor 12 /Columns 4 >> >>\nstream\r\n");
+    out.write(xref, 0, xref.length);
+    write(out, "\nendstream\nendobj\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+    Files.write(pdfFile.toPath(), out.toByteArray());
+    try (PdfSkimmer skimmer = new PdfSkimmer(pdfFile)) {
+      assertEquals(7, skimmer.readPageCount());
+      assertTrue(skimmer.readStreamLengths());
+      assertEquals(0, skimmer.nbImages);
+    }
+  }
+
+  @Test
+  public void testHybridFile() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(out, "%PDF-1.5\n");
+    int catalogOffset = out.size();
+    write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+    // Pages in an object stream, only known by the cross-reference stream
+    String header = "2 0 ";
+    byte[] objStm = (header + "<< /Type /Pages /Kids [] /Count 9 >>")
+        .getBytes(StandardCharsets.ISO_8859_1);
+    int objStmOffset = out.size();
+    write(out, "3 0 obj\n<< /Type /ObjStm /N 1 /First " + header.length() + " /Length "
+        + objStm.length + " >>\nstream\n");
+    out.write(objStm, 0, objStm.length);
+    write(out, "\nendstream\nendobj\n");
+    int xrefStmOffset = out.size();
+    byte[] xrefStm = {2, 0, 3, 0};
+    write(out, "4 0 obj\n<< /Type /XRef /Size 5 /Index [2 1] /W [1 2 1] /Length "
+        + xrefStm.length + " >>\nstream\n");
+    out.write(xrefStm, 0, xrefStm.length);
+    write(out, "\nendstream\nendobj\n");
+    // Object 2 is free in the table, for the readers unaware of the streams
+    int xref = out.size();
+    write(out, "xref\n0 5\n0000000000 65535 f \n"
+        + String.format("%010d 00000 n \n", catalogOffset) + "0000000000 00001 f \n"
+        + String.format("%010d 00000 n \n", objStmOffset)
+        + String.format("%010d 00000 n \n", xrefStmOffset));
+    write(out, "trailer\n<< /Size 5 /Root 1 0 R /XRefStm " + xrefStmOffset
+        + " >>\nstartxref\n" + xref + "\n%%EOF\n");
+    Files.write(pdfFile.toPath(), out.toByteArray());
+    try (PdfSkimmer skimmer = new PdfSkimmer(pdfFile)) {
+      assertEquals(9, skimmer.readPageCount());
+      assertTrue(skimmer.readStreamLengths());
+      assertEquals(0, skimmer.nbImages);
+    }
+  }
+
+  @Test
+  public void testDamagedFile() throws IOException {
+    Files.write(pdfFile.toPath(), "%PDF-1.4\nnot a pdf".getBytes(StandardCharsets.ISO_8859_1));
+    try (PdfSkimmer skimmer = new PdfSkimmer(pdfFile)) {
+      skimmer.readPageCount();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnpredict() throws IOException {
+    byte[] rows = {2, 1, 2, 2, 1, 1, 1, 1, 0};
+    assertArrayEquals(new byte[] {1, 2, 2, 3, 1, 1}, PdfSkimmer.unpredict(rows, 2));
+  }
+
+  @Test
+  public void testPrefilter() throws IOException {
+    assertTrue(SizePrefilter.isNativeStreams(500, 1000, 1));
+    assertFalse(SizePrefilter.isNativeStreams(50 * 1024, 1000, 1));
+    // Inline images may hide in large content streams
+    assertFalse(SizePrefilter.isNativeStreams(0, 100 * 1024, 1));
+    SizePrefilter prefilter = new SizePrefilter();
+    writeClassic(3, 100);
+    FileDescriptor fd = new FileDescriptor(pdfFile);
+    assertTrue(prefilter.decide(fd));
+    assertTrue(fd.isValid());
+    assertEquals(3, fd.getNbPages());
+    assertFalse(fd.isScan());
+    writeClassic(3, 60 * 1024);
+    fd = new FileDescriptor(pdfFile);
+    ScanMetrics skim = fd.getMetrics();
+    assertFalse(prefilter.decide(fd));
+    assertEquals(0.5, prefilter.getHitRate(), 1e-9);
+    // The full load goes on with the metrics of the skim
+    assertSame(skim, new ScanContext(fd).getMetrics());
+    // A document without page is left to the full load
+    assertFalse(SizePrefilter.isNativeStreams(0, 0, 0));
+    writeClassic(0, 100);
+    assertFalse(prefilter.decide(new FileDescriptor(pdfFile)));
+    assertEquals(1, prefilter.getDecided());
+  }
+}
@@ -0,0 +1,96 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProducerFingerprintsTest {
+
+  File tableFile;
+
+  @Before
+  public void setUp() throws IOException {
+    tableFile = File.createTempFile("producers", ".tsv");
+    tableFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    tableFile.delete();
+  }
+
+  @Test
+  public void testKey() {
+    assertEquals("ABBYY FineReader 15 1.4",
+        ProducerFingerprints.key(" ABBYY\tFineReader  15", "Word", 1.4f));
+    assertEquals("Kofax 1.7", ProducerFingerprints.key("", "Kofax", 1.7f));
+    assertNull(ProducerFingerprints.key(null, " ", 1.4f));
+  }
+
+  @Test
+  public void testPredictNeedsHistory() {
+    ProducerFingerprints table = new ProducerFingerprints();
+    String key = "Scanner 1.4";
+    for (int i = 1; i < ProducerFingerprints.MIN_OBSERVATIONS; i++) {
+      table.record(key, true, 301);
+    }
+    assertNull(table.predict(key));
+    table.record(key, true, 298);
+    ProducerFingerprints.Prediction prediction = table.predict(key);
+    assertTrue(prediction.isScan());
+    assertEquals(300, prediction.getResolution());
+    assertEquals(1, table.getPredictions());
+    assertNull(table.predict("Unknown 1.4"));
+    assertNull(table.predict(null));
+  }
+
+  @Test
+  public void testMixedProducer() {
+    ProducerFingerprints table = new ProducerFingerprints();
+    for (int i = 0; i < 100; i++) {
+      table.record("Office 1.5", i % 10 == 0, 300);
+      table.record("Copier 1.4", true, i % 10 == 0 ? 200 : 300);
+      table.record("Writer 1.5", false, 0);
+    }
+    assertNull(table.predict("Office 1.5"));
+    assertNull(table.predict("Copier 1.4"));
+    assertFalse(table.predict("Writer 1.5").isScan());
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    assertEquals(0, ProducerFingerprints.load(tableFile).size());
+    ProducerFingerprints table = new ProducerFingerprints();
+    for (int i = 0; i < ProducerFingerprints.MIN_OBSERVATIONS; i++) {
+      table.record("Scanner 1.4", true, 400);
+      table.record("Writer 1.5", false, 0);
+    }
+    table.save(tableFile);
+    ProducerFingerprints loaded = ProducerFingerprints.load(tableFile);
+    assertEquals(2, loaded.size());
+    assertEquals(400, loaded.predict("Scanner 1.4").getResolution());
+    assertFalse(loaded.predict("Writer 1.5").isScan());
+  }
+
+  @Test
+  public void testConfirmedPrediction() {
+    FingerprintScanDetector detector =
+        new FingerprintScanDetector(new ProducerFingerprints(), new StreamPdfBoxScanDetector());
+    FileDescriptor fd = new FileDescriptor(new File("capture.pdf"));
+    fd.setNbPages(12);
+    detector.confirm(fd, new ProducerFingerprints.Prediction(true, 300));
+    assertTrue(fd.isScan());
+    assertEquals(300, fd.getResolution());
+    assertEquals(12, fd.getNbImages());
+    assertEquals(detector.getName(), fd.getDecidedBy());
+    detector.confirm(fd, new ProducerFingerprints.Prediction(false, 0));
+    assertFalse(fd.isScan());
+    assertEquals(0, fd.getNbImages());
+  }
+}
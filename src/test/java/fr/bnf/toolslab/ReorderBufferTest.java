@@ -0,0 +1,45 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReorderBufferTest {
+
+  ReorderBuffer<String> buffer;
+  List<String> out;
+
+  @Before
+  public void setUp() throws Exception {
+    buffer = new ReorderBuffer<>();
+    out = new ArrayList<>();
+  }
+
+  @Test
+  public void testInOrder() {
+    buffer.put(0, "a", out::add);
+    buffer.put(1, "b", out::add);
+    assertEquals(Arrays.asList("a", "b"), out);
+    assertEquals(0, buffer.size());
+    assertEquals(2, buffer.getNextSeq());
+  }
+
+  @Test
+  public void testOutOfOrder() {
+    buffer.put(2, "c", out::add);
+    buffer.put(1, "b", out::add);
+    assertEquals(0, out.size());
+    assertEquals(2, buffer.size());
+
+    buffer.put(0, "a", out::add);
+    assertEquals(Arrays.asList("a", "b", "c"), out);
+    assertEquals(0, buffer.size());
+
+    buffer.put(4, "e", out::add);
+    buffer.put(3, "d", out::add);
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), out);
+  }
+}
@@ -0,0 +1,216 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.NoSuchFileException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+  File cacheFile;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheFile = File.createTempFile("results", ".cache");
+    cacheFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    cacheFile.delete();
+  }
+
+  private static FileDescriptor result(String name, int nbPages) {
+    FileDescriptor fd = new FileDescriptor(new File(name));
+    fd.setValid(true);
+    fd.setScan(true);
+    fd.setNbPages(nbPages);
+    fd.setNbImages(nbPages);
+    fd.setResolution(300);
+    fd.setTimeToProcess(12);
+    return fd;
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      cache.record("/data/a/file1.pdf", 1000, 42, "PdfBoxScanDetector", result("file1.pdf", 3));
+      FileDescriptor sampled = result("file2.pdf", 5);
+      sampled.setNbSamples(2);
+      sampled.setConfidence(0.95);
+      cache.record("/data/a/file2.pdf", 2000, 43, "PdfBoxScanDetector", sampled);
+    }
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      assertEquals(2, cache.size());
+      FileDescriptor fd = new FileDescriptor(new File("file2.pdf"));
+      assertTrue(cache.lookup("/data/a/file2.pdf", 2000, 43, "PdfBoxScanDetector", fd));
+      assertTrue(fd.isValid());
+      assertTrue(fd.isScan());
+      assertEquals(5, fd.getNbPages());
+      assertEquals(300, fd.getResolution());
+      assertEquals(2, fd.getNbSamples());
+      assertEquals(0.95, fd.getConfidence(), 1e-9);
+      assertEquals(1, cache.getHits());
+      fd = new FileDescriptor(new File("file1.pdf"));
+      assertTrue(cache.lookup("/data/a/file1.pdf", 1000, 42, "PdfBoxScanDetector", fd));
+      assertEquals(0, fd.getNbSamples());
+    }
+  }
+
+  @Test
+  public void testStaleEntries() throws IOException {
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      cache.record("/data/file1.pdf", 1000, 42, "PdfBoxScanDetector", result("file1.pdf", 3));
+      FileDescriptor fd = new FileDescriptor(new File("file1.pdf"));
+      // Modified file
+      assertFalse(cache.lookup("/data/file1.pdf", 1001, 42, "PdfBoxScanDetector", fd));
+      assertFalse(cache.lookup("/data/file1.pdf", 1000, 50, "PdfBoxScanDetector", fd));
+      // Another detector
+      assertFalse(cache.lookup("/data/file1.pdf", 1000, 42, "StrictPdfBoxScanDetector", fd));
+      assertEquals(3, cache.getMisses());
+      // A new record replaces the previous one
+      cache.record("/data/file1.pdf", 1001, 50, "PdfBoxScanDetector", result("file1.pdf", 4));
+      assertEquals(1, cache.size());
+      assertTrue(cache.lookup("/data/file1.pdf", 1001, 50, "PdfBoxScanDetector", fd));
+      assertEquals(4, fd.getNbPages());
+    }
+  }
+
+  @Test
+  public void testTruncatedTail() throws IOException {
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      cache.record("/data/file1.pdf", 1000, 42, "PdfBoxScanDetector", result("file1.pdf", 3));
+      cache.record("/data/file2.pdf", 2000, 43, "PdfBoxScanDetector", result("file2.pdf", 5));
+    }
+    // Simulate a crash in the middle of the last record
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      assertEquals(1, cache.size());
+      FileDescriptor fd = new FileDescriptor(new File("file1.pdf"));
+      assertTrue(cache.lookup("/data/file1.pdf", 1000, 42, "PdfBoxScanDetector", fd));
+      cache.record("/data/file2.pdf", 2000, 43, "PdfBoxScanDetector", result("file2.pdf", 5));
+    }
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      assertEquals(2, cache.size());
+    }
+  }
+
+  /**
+   * Detector failing with the given exception, or giving a scanned result when there is none.
+   */
+  static class FailingDetector extends AbstractScanDetector {
+    IOException failure;
+    int nbCalls;
+
+    @Override
+    void process(FileDescriptor fd) throws IOException {
+      nbCalls++;
+      if (failure != null) {
+        fd.setValid(false);
+        throw failure;
+      }
+      fd.setValid(true);
+      fd.setScan(true);
+      fd.setNbPages(2);
+      fd.setTimeToProcess(60000);
+    }
+
+    @Override
+    protected void parse(ScanContext ctx, PDDocument document) {
+    }
+  }
+
+  private static void assertFails(AbstractScanDetector detector, String name) {
+    try {
+      detector.process(new FileDescriptor(new File(name)));
+      fail(name);
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCachedDetector() throws IOException {
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      FailingDetector delegate = new FailingDetector();
+      CachedScanDetector detector = new CachedScanDetector(delegate, cache);
+      // Transient failures of the reading, even when wrapped
+      delegate.failure = new InterruptedIOException("Read interrupted");
+      assertFails(detector, "io.pdf");
+      delegate.failure = new NoSuchFileException("gone.pdf");
+      assertFails(detector, "gone.pdf");
+      delegate.failure = new IOException("Unable to load",
+          new MappedRandomAccessRead.TruncatedException("io.pdf", null));
+      assertFails(detector, "io.pdf");
+      assertEquals(0, cache.size());
+      // Malformed document, whatever the stack trace
+      delegate.failure = new IOException("Missing root object specification in trailer");
+      delegate.failure.setStackTrace(new StackTraceElement[0]);
+      assertFails(detector, "broken.pdf");
+      assertEquals(1, cache.size());
+      FileDescriptor fd = new FileDescriptor(new File("broken.pdf"));
+      detector.process(fd);
+      assertFalse(fd.isValid());
+      assertEquals(4, delegate.nbCalls);
+
+      delegate.failure = null;
+      detector.process(new FileDescriptor(new File("io.pdf")));
+      fd = new FileDescriptor(new File("io.pdf"));
+      detector.process(fd);
+      assertTrue(fd.isScan());
+      assertEquals(5, delegate.nbCalls);
+      // The lookup time, not the time of the cached detection
+      assertTrue(fd.getTimeToProcess() < 60000);
+    }
+  }
+
+  @Test
+  public void testSettingsInKey() throws IOException {
+    try (ResultCache cache = ResultCache.open(cacheFile)) {
+      FailingDetector delegate = new FailingDetector();
+      CachedScanDetector detector = new CachedScanDetector(delegate, cache);
+      detector.process(new FileDescriptor(new File("a.pdf")));
+      detector.process(new FileDescriptor(new File("a.pdf")));
+      assertEquals(1, delegate.nbCalls);
+      // A result sampled with another seed is not reused
+      detector.setSamplingPolicy(SamplingPolicy.DEFAULT.withStrategy(new UniformSampling(42)));
+      detector.process(new FileDescriptor(new File("a.pdf")));
+      assertEquals(2, delegate.nbCalls);
+      detector.setSamplingPolicy(SamplingPolicy.sequential(0.9));
+      detector.process(new FileDescriptor(new File("a.pdf")));
+      assertEquals(3, delegate.nbCalls);
+      detector.setSamplingPolicy(SamplingPolicy.DEFAULT);
+      detector.process(new FileDescriptor(new File("a.pdf")));
+      assertEquals(3, delegate.nbCalls);
+      // Nor a result of the other engine
+      assertFalse(new StreamPdfBoxScanDetector(false).getCacheKey()
+          .equals(new CachedScanDetector(new StreamPdfBoxScanDetector(true), cache).getCacheKey()));
+    }
+  }
+
+  @Test
+  public void testLongIntMap() {
+    LongIntMap map = new LongIntMap(4);
+    assertEquals(-1, map.get(12L));
+    for (int i = 0; i < 1000; i++) {
+      map.put(i * 0x9E3779B97F4A7C15L, i);
+    }
+    assertEquals(1000, map.size());
+    assertEquals(0, map.get(0L));
+    assertEquals(999, map.get(999 * 0x9E3779B97F4A7C15L));
+    map.put(0L, 7);
+    assertEquals(7, map.get(0L));
+    assertEquals(1000, map.size());
+  }
+}
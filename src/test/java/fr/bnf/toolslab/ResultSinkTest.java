@@ -0,0 +1,203 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class ResultSinkTest {
+
+  private static FileDescriptor scanned() {
+    FileDescriptor fd = new FileDescriptor(new File("dir", "scan \"1\".pdf"));
+    fd.setValid(true);
+    fd.setScan(true);
+    fd.setNbPages(3);
+    fd.setNbImages(3);
+    fd.setResolution(300);
+    fd.setTimeToProcess(12);
+    return fd;
+  }
+
+  private static FileDescriptor sampled() {
+    FileDescriptor fd = scanned();
+    fd.setNbPages(400);
+    fd.setNbImages(400);
+    fd.setNbSamples(3);
+    fd.setConfidence(0.9375);
+    return fd;
+  }
+
+  private static FileDescriptor invalid() {
+    FileDescriptor fd = new FileDescriptor(new File("broken.pdf"));
+    fd.setTimeToProcess(1);
+    return fd;
+  }
+
+  @Test
+  public void testCsv() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new CsvResultSink(out, FlushPolicy.ON_CLOSE)) {
+      sink.write(scanned());
+      sink.write(invalid());
+    }
+    String nl = System.lineSeparator();
+    assertEquals(FileDescriptor.headString() + nl + scanned().toString() + nl
+        + invalid().toString() + nl, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals("scan \"1\".pdf;12;valid;3;3;scanned pdf;300", scanned().toString());
+  }
+
+  @Test
+  public void testAppendWithoutHeader() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink =
+        AbstractResultSink.create("csv", out, FlushPolicy.ON_CLOSE, false, false)) {
+      sink.write(scanned());
+    }
+    assertEquals(scanned().toString() + System.lineSeparator(),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testArchiveEntry() throws IOException {
+    FileDescriptor fd = new FileDescriptor(
+        ArchiveReader.entryFile(new File("/data/a.zip"), "dir/x.pdf"));
+    fd.setTimeToProcess(1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new CsvResultSink(out, FlushPolicy.ON_CLOSE, false, false)) {
+      sink.write(fd);
+    }
+    // Named with the archive, not only x.pdf
+    assertEquals(fd.getFile().getPath() + ";1;not valid" + System.lineSeparator(),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSampling() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new CsvResultSink(out, FlushPolicy.ON_CLOSE, false, true, true)) {
+      sink.write(sampled());
+      sink.write(invalid());
+    }
+    String nl = System.lineSeparator();
+    assertEquals(FileDescriptor.headString() + ";NB SAMPLES;CONFIDENCE" + nl
+        + "scan \"1\".pdf;12;valid;400;400;scanned pdf;300;3;0.9375" + nl
+        + "broken.pdf;1;not valid;;;;;;" + nl,
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals("0.0500", AbstractResultSink.appendConfidence(new StringBuilder(), 0.05)
+        .toString());
+    assertEquals("0.0000", AbstractResultSink.appendConfidence(new StringBuilder(), 0)
+        .toString());
+    assertEquals("1.0000", AbstractResultSink.appendConfidence(new StringBuilder(), 1)
+        .toString());
+
+    out = new ByteArrayOutputStream();
+    try (ResultSink sink = new JsonlResultSink(out, FlushPolicy.ON_CLOSE)) {
+      sink.write(sampled());
+    }
+    assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8)
+        .contains("\"samples\":3,\"confidence\":0.9375"));
+
+    out = new ByteArrayOutputStream();
+    try (ResultSink sink = new BinaryResultSink(out, FlushPolicy.ON_CLOSE)) {
+      sink.write(sampled());
+      sink.write(scanned());
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    BinaryResultSink.readHeader(in);
+    FileDescriptor fd = BinaryResultSink.read(in);
+    assertEquals(400, fd.getNbPages());
+    assertEquals(3, fd.getNbSamples());
+    assertEquals(0.9375, fd.getConfidence(), 1e-9);
+    assertEquals(0, BinaryResultSink.read(in).getNbSamples());
+  }
+
+  @Test
+  public void testJsonl() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new JsonlResultSink(out, FlushPolicy.ON_CLOSE)) {
+      sink.write(scanned());
+      sink.write(invalid());
+    }
+    String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].startsWith("{\"file\":\"scan \\\"1\\\".pdf\","));
+    assertTrue(lines[0].endsWith("\"valid\":true,\"pages\":3,\"images\":3,\"scan\":true,"
+        + "\"resolution\":300}"));
+    assertEquals("{\"file\":\"broken.pdf\",\"path\":\"broken.pdf\",\"time\":1,\"valid\":false}",
+        lines[1]);
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new BinaryResultSink(out, FlushPolicy.DEFAULT)) {
+      sink.write(scanned());
+      sink.write(invalid());
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    BinaryResultSink.readHeader(in);
+    FileDescriptor fd = BinaryResultSink.read(in);
+    assertEquals(scanned().getFile().getPath(), fd.getFile().getPath());
+    assertEquals(scanned().toString(), fd.toString());
+    fd = BinaryResultSink.read(in);
+    assertFalse(fd.isValid());
+    assertNull(BinaryResultSink.read(in));
+  }
+
+  @Test
+  public void testFlushPolicy() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResultSink sink = new JsonlResultSink(out, new FlushPolicy(2, 0));
+    sink.write(invalid());
+    assertEquals(0, out.size());
+    sink.write(invalid());
+    assertTrue(out.size() > 0);
+
+    assertTrue(new FlushPolicy(0, 100).shouldFlush(1, 0, 100));
+    assertFalse(new FlushPolicy(0, 100).shouldFlush(0, 0, 100));
+    assertFalse(FlushPolicy.ON_CLOSE.shouldFlush(1000000, 0, Long.MAX_VALUE));
+    assertTrue(FlushPolicy.EACH_ROW.shouldFlush(1, 0, 0));
+  }
+
+  @Test
+  public void testMetricsColumns() throws IOException {
+    FileDescriptor fd = invalid();
+    fd.getMetrics().setValues(new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ResultSink sink = new CsvResultSink(out, FlushPolicy.ON_CLOSE, true)) {
+      sink.write(fd);
+    }
+    String[] lines =
+        new String(out.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+    assertEquals(FileDescriptor.headString() + ";" + ScanMetrics.headString(), lines[0]);
+    // The row is padded so that the metrics are under their header
+    assertEquals("broken.pdf;1;not valid;;;;;1;2;3;4;5;6;7;8;9", lines[1]);
+
+    // The separator in the name of the file doesn't shift the metrics
+    FileDescriptor named = new FileDescriptor(new File("a;b.pdf"));
+    named.setValid(true);
+    named.setNbPages(2);
+    named.getMetrics().setValues(new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    out = new ByteArrayOutputStream();
+    try (ResultSink sink = new CsvResultSink(out, FlushPolicy.ON_CLOSE, true, false)) {
+      sink.write(named);
+    }
+    assertEquals("a;b.pdf;0;valid;2;0;native pdf;;1;2;3;4;5;6;7;8;9" + System.lineSeparator(),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    out = new ByteArrayOutputStream();
+    try (ResultSink sink = new BinaryResultSink(out, FlushPolicy.ON_CLOSE, true)) {
+      sink.write(fd);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    BinaryResultSink.readHeader(in);
+    assertEquals("1;2;3;4;5;6;7;8;9", BinaryResultSink.read(in).getMetrics().toString());
+  }
+}
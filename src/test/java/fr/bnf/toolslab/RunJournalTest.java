@@ -0,0 +1,137 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RunJournalTest {
+
+  File journalFile;
+
+  @Before
+  public void setUp() throws IOException {
+    journalFile = File.createTempFile("run", ".journal");
+    journalFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    journalFile.delete();
+  }
+
+  private static FileDescriptor result(String name, boolean scan) {
+    FileDescriptor fd = new FileDescriptor(new File("/data", name));
+    fd.setValid(true);
+    fd.setScan(scan);
+    fd.setNbPages(12);
+    fd.setNbImages(scan ? 12 : 0);
+    fd.setResolution(scan ? 300 : 0);
+    fd.setTimeToProcess(42);
+    return fd;
+  }
+
+  /**
+   * Sink keeping the results in memory.
+   */
+  private static final class ListSink implements ResultSink {
+    final List<FileDescriptor> results = new ArrayList<>();
+
+    @Override
+    public void write(FileDescriptor fd) {
+      results.add(fd);
+    }
+
+    @Override
+    public void flush() {
+      // Nothing buffered
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close
+    }
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(0, journal.size());
+      assertEquals(-1, journal.getNextNumber());
+      FileDescriptor sampled = result("a.pdf", true);
+      sampled.setNbSamples(3);
+      sampled.setConfidence(0.9);
+      journal.recordResult(sampled);
+      journal.recordResult(result("ab.pdf", false));
+    }
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(2, journal.size());
+      assertTrue(journal.isDone(new File("/data/ab.pdf")));
+      assertFalse(journal.isDone(new File("/data/b.pdf")));
+      assertEquals(1, journal.getSkipped());
+      ListSink sink = new ListSink();
+      journal.replay(sink);
+      assertEquals(2, sink.results.size());
+      FileDescriptor fd = sink.results.get(0);
+      assertEquals(new File("/data/a.pdf").getAbsolutePath(), fd.getFile().getPath());
+      assertTrue(fd.isValid());
+      assertTrue(fd.isScan());
+      assertEquals(300, fd.getResolution());
+      assertEquals(12, fd.getNbImages());
+      assertEquals(3, fd.getNbSamples());
+      assertEquals(0.9, fd.getConfidence(), 1e-9);
+      assertFalse(sink.results.get(1).isScan());
+      assertEquals(0, sink.results.get(1).getNbSamples());
+      journal.recordResult(result("b.pdf", true));
+    }
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(3, journal.size());
+    }
+    // Without resuming, the journal starts again
+    try (RunJournal journal = RunJournal.open(journalFile, false)) {
+      assertEquals(0, journal.size());
+      assertFalse(journal.isDone(new File("/data/a.pdf")));
+    }
+  }
+
+  @Test
+  public void testNumbering() throws IOException {
+    try (RunJournal journal = RunJournal.open(journalFile, false)) {
+      journal.recordExtraction(new File("/data/a.pdf"), 1, 10);
+      journal.recordExtraction(new File("/data/b.pdf"), 11, 0);
+      journal.recordExtraction(new File("/data/c.pdf"), 11, 5);
+    }
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(16, journal.getNextNumber());
+      assertTrue(journal.isDone(new File("/data/b.pdf")));
+    }
+  }
+
+  @Test
+  public void testIncompleteRecord() throws IOException {
+    try (RunJournal journal = RunJournal.open(journalFile, false)) {
+      journal.recordResult(result("a.pdf", true));
+      journal.recordResult(result("b.pdf", true));
+    }
+    // Cut the last record, like a crash while writing
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(1, journal.size());
+      assertFalse(journal.isDone(new File("/data/b.pdf")));
+      journal.recordResult(result("b.pdf", true));
+    }
+    try (RunJournal journal = RunJournal.open(journalFile, true)) {
+      assertEquals(2, journal.size());
+      assertTrue(journal.isDone(new File("/data/b.pdf")));
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check that the {@link SampledPdfBoxScanDetector} only interprets the sampled pages, in the order
+ * of the sample, and still takes the right decision.
+ */
+public class SampledPdfBoxScanDetectorTest {
+
+  static final int NB_PAGES = 40;
+  // 150 pixels on 100 points is 108 dpi
+  static final PDRectangle PAGE = new PDRectangle(100, 100);
+  static final int PIXELS = 150;
+
+  File file;
+
+  /**
+   * Detector recording the index of each interpreted page.
+   */
+  static class RecordingDetector extends SampledPdfBoxScanDetector {
+    final List<Integer> interpreted = new ArrayList<>();
+
+    RecordingDetector(boolean strict) {
+      super(strict);
+    }
+
+    @Override
+    protected int parsePage(ScanContext ctx, PDPage page, int pageNum) {
+      interpreted.add(pageNum);
+      return super.parsePage(ctx, page, pageNum);
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("sampled", ".pdf");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  /**
+   * Generate a document with a full page image on the scanned pages only.
+   *
+   * @param scanned tell whether each page is scanned
+   */
+  private void generate(boolean[] scanned) throws IOException {
+    try (PDDocument document = new PDDocument()) {
+      for (int p = 0; p < scanned.length; p++) {
+        PDPage page = new PDPage(PAGE);
+        document.addPage(page);
+        if (!scanned[p]) {
+          continue;
+        }
+        BufferedImage image = new BufferedImage(PIXELS, PIXELS, BufferedImage.TYPE_BYTE_GRAY);
+        // Different pixels on each page, so that no image is a duplicate
+        image.getRaster().setSample(p % PIXELS, 0, 0, 255);
+        PDImageXObject xobject = LosslessFactory.createFromImage(document, image);
+        try (PDPageContentStream cs = new PDPageContentStream(document, page)) {
+          cs.drawImage(xobject, 0, 0, PAGE.getWidth(), PAGE.getHeight());
+        }
+      }
+      document.save(file);
+    }
+  }
+
+  private static boolean[] pages(boolean scanned) {
+    boolean[] pages = new boolean[NB_PAGES];
+    Arrays.fill(pages, scanned);
+    return pages;
+  }
+
+  /**
+   * Run the detector and check that only a prefix of its sample has been interpreted.
+   *
+   * @return the result
+   */
+  private FileDescriptor detect(RecordingDetector detector) throws IOException {
+    FileDescriptor fd = new FileDescriptor(file);
+    detector.process(fd);
+    assertTrue(fd.isValid());
+    assertEquals(NB_PAGES, fd.getNbPages());
+    int nbSamples = detector.samplingPolicy.newSampler(NB_PAGES).getMaxSamples();
+    int[] samples = detector.pickSamples(new ScanContext(fd), nbSamples, NB_PAGES);
+    assertEquals(fd.getNbSamples(), detector.interpreted.size());
+    for (int i = 0; i < detector.interpreted.size(); i++) {
+      assertEquals(samples[i], detector.interpreted.get(i).intValue());
+    }
+    return fd;
+  }
+
+  @Test
+  public void testScanned() throws IOException {
+    generate(pages(true));
+    RecordingDetector detector = new RecordingDetector(false);
+    FileDescriptor fd = detect(detector);
+    assertEquals(AbstractScanDetector.MAX_SAMPLES, detector.interpreted.size());
+    assertTrue(fd.isScan());
+    assertEquals(108, fd.getResolution());
+    // Extrapolated from the sample
+    assertEquals(NB_PAGES, fd.getNbImages());
+  }
+
+  @Test
+  public void testNative() throws IOException {
+    generate(pages(false));
+    RecordingDetector detector = new RecordingDetector(false);
+    FileDescriptor fd = detect(detector);
+    assertEquals(AbstractScanDetector.MAX_SAMPLES, detector.interpreted.size());
+    assertFalse(fd.isScan());
+    assertEquals(0, fd.getNbImages());
+  }
+
+  @Test
+  public void testSequential() throws IOException {
+    generate(pages(true));
+    RecordingDetector detector = new RecordingDetector(false);
+    detector.setSamplingPolicy(SamplingPolicy.sequential(0.9));
+    FileDescriptor fd = detect(detector);
+    // A uniform document settles long before the maximal number of samples
+    assertTrue(detector.interpreted.size() < AbstractScanDetector.MAX_SAMPLES);
+    assertTrue(fd.isScan());
+    assertEquals(108, fd.getResolution());
+  }
+
+  @Test
+  public void testStrictStopsOnNativePage() throws IOException {
+    // Evenly spaced pages, known before the document is written
+    SamplingStrategy strategy = new StratifiedSampling();
+    int[] samples = strategy.pick(AbstractScanDetector.MAX_SAMPLES, NB_PAGES, 0);
+    boolean[] scanned = pages(true);
+    // The third sampled page is native
+    scanned[samples[2]] = false;
+    generate(scanned);
+    RecordingDetector detector = new RecordingDetector(true);
+    detector.setSamplingPolicy(SamplingPolicy.DEFAULT.withStrategy(strategy));
+    FileDescriptor fd = detect(detector);
+    assertEquals(3, detector.interpreted.size());
+    assertFalse(fd.isScan());
+  }
+}
@@ -0,0 +1,79 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SamplingStrategyTest {
+
+  private static void assertDistinct(int[] pages, int nbPages) {
+    boolean[] seen = new boolean[nbPages];
+    for (int page : pages) {
+      assertTrue(page >= 0 && page < nbPages);
+      assertFalse("Duplicate page " + page, seen[page]);
+      seen[page] = true;
+    }
+  }
+
+  @Test
+  public void testUniformIsReproducible() {
+    SamplingStrategy strategy = new UniformSampling(42);
+    int[] first = strategy.pick(10, 1000, 123);
+    assertEquals(10, first.length);
+    assertDistinct(first, 1000);
+    assertArrayEquals(first, strategy.pick(10, 1000, 123));
+    assertFalse(Arrays.equals(first, strategy.pick(10, 1000, 124)));
+    assertFalse(Arrays.equals(first, new UniformSampling(43).pick(10, 1000, 123)));
+  }
+
+  @Test
+  public void testDocumentSeed() {
+    FileDescriptor fd = new FileDescriptor(new File("/data/a", "file.pdf"));
+    assertEquals(AbstractScanDetector.documentSeed(fd),
+        AbstractScanDetector.documentSeed(new FileDescriptor(new File("/data/a/file.pdf"))));
+    // Same name and size in another directory
+    FileDescriptor other = new FileDescriptor(new File("/data/b", "file.pdf"));
+    assertEquals(fd.getLength(), other.getLength());
+    assertFalse(AbstractScanDetector.documentSeed(fd) == AbstractScanDetector.documentSeed(other));
+  }
+
+  @Test
+  public void testUniformAllPages() {
+    // No rejection loop when all the pages are selected
+    int[] pages = new UniformSampling(0).pick(10, 10, 7);
+    assertDistinct(pages, 10);
+    assertEquals(10, pages.length);
+    pages = new UniformSampling(0).pick(500, 600, 7);
+    assertEquals(500, pages.length);
+    assertDistinct(pages, 600);
+    assertEquals(0, new UniformSampling(0).pick(10, 0, 7).length);
+  }
+
+  @Test
+  public void testStratified() {
+    SamplingStrategy strategy = new StratifiedSampling();
+    assertArrayEquals(new int[] {0, 99, 50}, strategy.pick(3, 100, 0));
+    int[] pages = strategy.pick(5, 101, 0);
+    assertArrayEquals(new int[] {0, 100, 50, 25, 75}, pages);
+    pages = strategy.pick(10, 10, 0);
+    assertDistinct(pages, 10);
+    assertEquals(10, pages.length);
+    assertArrayEquals(new int[] {0}, strategy.pick(1, 10, 0));
+  }
+
+  @Test
+  public void testHead() {
+    assertArrayEquals(new int[] {0, 1, 2}, new HeadSampling().pick(3, 100, 0));
+    assertArrayEquals(new int[] {0, 1}, new HeadSampling().pick(3, 2, 0));
+  }
+
+  @Test
+  public void testParse() {
+    assertTrue(SamplingStrategy.parse("Stratified", 0) instanceof StratifiedSampling);
+    assertEquals(5, ((UniformSampling) SamplingStrategy.parse("uniform", 5)).getSeed());
+  }
+}
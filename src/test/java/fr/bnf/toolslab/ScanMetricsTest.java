@@ -0,0 +1,49 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import fr.bnf.toolslab.ScanMetrics.Phase;
+import org.junit.Test;
+
+public class ScanMetricsTest {
+
+  private static void spin(long nanos) {
+    long end = System.nanoTime() + nanos;
+    while (System.nanoTime() < end) {
+      // Busy wait
+    }
+  }
+
+  @Test
+  public void testNestedPhases() {
+    ScanMetrics metrics = new ScanMetrics();
+    assertNull(metrics.enter(Phase.TRAVERSAL));
+    spin(1_000_000);
+    Phase previous = metrics.enter(Phase.IMAGES);
+    assertEquals(Phase.TRAVERSAL, previous);
+    spin(2_000_000);
+    metrics.enter(previous);
+    long traversal = metrics.getNanos(Phase.TRAVERSAL);
+    assertTrue(traversal >= 1_000_000);
+    assertTrue(metrics.getNanos(Phase.IMAGES) >= 2_000_000);
+    metrics.enter(null);
+    // Closed phases don't grow any more
+    long closed = metrics.getNanos(Phase.TRAVERSAL);
+    assertTrue(closed >= traversal);
+    spin(1_000_000);
+    assertEquals(closed, metrics.getNanos(Phase.TRAVERSAL));
+    assertEquals(0, metrics.getNanos(Phase.DECISION));
+  }
+
+  @Test
+  public void testValues() {
+    ScanMetrics metrics = new ScanMetrics();
+    long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    metrics.setValues(values);
+    assertArrayEquals(values, metrics.values());
+    assertEquals("1;2;3;4;5;6;7;8;9", metrics.toString());
+    assertEquals(ScanMetrics.HEADERS.size(), ScanMetrics.headString().split(";").length);
+  }
+}
@@ -0,0 +1,211 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanServerTest {
+
+  File pdfFile;
+  ScanServer server;
+
+  /**
+   * Detector answering a scan without reading the file, optionally waiting for a latch.
+   */
+  private static final class FakeDetector extends AbstractScanDetector {
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+
+    FakeDetector(CountDownLatch started, CountDownLatch release) {
+      this.started = started;
+      this.release = release;
+    }
+
+    @Override
+    void process(FileDescriptor fd) throws IOException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      fd.setValid(true);
+      fd.setScan(true);
+      fd.setNbPages(3);
+      fd.setResolution(300);
+    }
+
+    @Override
+    protected void parse(ScanContext ctx, PDDocument document) throws IOException {
+      // Not called
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    pdfFile = File.createTempFile("served", ".pdf");
+    Files.write(pdfFile.toPath(), "%PDF-1.4\n".getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.close();
+    }
+    pdfFile.delete();
+  }
+
+  private void startServer(CountDownLatch started, CountDownLatch release, int queueSize)
+      throws IOException {
+    server = new ScanServer(0, 1, queueSize, () -> new FakeDetector(started, release), null,
+        new BatchMetrics(), null, false);
+    server.addRoot(pdfFile.getParentFile());
+    server.setMaxUploadSize(100);
+    server.start();
+  }
+
+  /**
+   * Send a request.
+   *
+   * @return the status, then the body
+   */
+  private String[] request(String method, String pathAndQuery, byte[] body) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + server.getPort() + pathAndQuery);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+    }
+    int status = connection.getResponseCode();
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (InputStream in =
+        status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+      byte[] buffer = new byte[4096];
+      int n;
+      while (in != null && (n = in.read(buffer)) > 0) {
+        content.write(buffer, 0, n);
+      }
+    }
+    return new String[] {Integer.toString(status),
+        new String(content.toByteArray(), StandardCharsets.UTF_8)};
+  }
+
+  @Test
+  public void testParseQuery() {
+    Map<String, String> params = ScanServer.parseQuery("path=%2Fdata%2Fa+b.pdf&name=x&flag&");
+    assertEquals("/data/a b.pdf", params.get("path"));
+    assertEquals("x", params.get("name"));
+    assertEquals("", params.get("flag"));
+    assertTrue(ScanServer.parseQuery(null).isEmpty());
+  }
+
+  @Test
+  public void testEndpoints() throws IOException {
+    // Room to wait, since a response may be read before its request is released
+    startServer(new CountDownLatch(1), new CountDownLatch(0), 1);
+    String[] response = request("GET",
+        "/classify?path=" + URLEncoder.encode(pdfFile.getAbsolutePath(), "UTF-8"), null);
+    assertEquals("200", response[0]);
+    assertTrue(response[1].contains("\"scan\":true"));
+    assertTrue(response[1].contains("\"resolution\":300"));
+    // Uploaded document, reported with the given name only
+    response = request("POST", "/classify?name=..%2Fin.pdf",
+        Files.readAllBytes(pdfFile.toPath()));
+    assertEquals("200", response[0]);
+    assertTrue(response[1].startsWith("{\"file\":\"in.pdf\",\"path\":\"in.pdf\""));
+    assertEquals("404", request("GET", "/classify?path="
+        + URLEncoder.encode(pdfFile.getAbsolutePath() + ".missing", "UTF-8"), null)[0]);
+    // Outside of the roots, whether it exists or not
+    assertEquals("403", request("GET", "/classify?path=%2Fmissing.pdf", null)[0]);
+    assertEquals("403", request("GET", "/classify?path="
+        + URLEncoder.encode(pdfFile.getParent() + "/../../etc/passwd", "UTF-8"), null)[0]);
+    assertEquals("413", request("POST", "/classify", new byte[101])[0]);
+    assertEquals("400", request("GET", "/classify", null)[0]);
+    assertEquals("404", request("GET", "/extract?path="
+        + URLEncoder.encode(pdfFile.getAbsolutePath(), "UTF-8"), null)[0]);
+    response = request("GET", "/health", null);
+    assertEquals("200", response[0]);
+    assertTrue(response[1].contains("\"status\":\"ok\""));
+    response = request("GET", "/metrics", null);
+    assertEquals("200", response[0]);
+    assertTrue(response[1].contains("scannedpdf_files_total"));
+  }
+
+  @Test
+  public void testIsLocalHost() {
+    assertTrue(ScanServer.isLocalHost("localhost:8080", 8080));
+    assertTrue(ScanServer.isLocalHost("127.0.0.1", 8080));
+    assertTrue(ScanServer.isLocalHost("[::1]:8080", 8080));
+    assertFalse(ScanServer.isLocalHost("localhost:8081", 8080));
+    assertFalse(ScanServer.isLocalHost("attacker.example:8080", 8080));
+    assertFalse(ScanServer.isLocalHost("localhost.attacker.example", 8080));
+    assertFalse(ScanServer.isLocalHost(null, 8080));
+  }
+
+  @Test
+  public void testRebindingRefused() throws IOException {
+    startServer(new CountDownLatch(1), new CountDownLatch(0), 0);
+    // A page of a browser resolving its own name to the loopback address
+    try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+      OutputStream out = socket.getOutputStream();
+      out.write(("GET /health HTTP/1.1\r\nHost: attacker.example:" + server.getPort()
+          + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      byte[] status = new byte[12];
+      int read = 0;
+      InputStream in = socket.getInputStream();
+      while (read < status.length) {
+        int n = in.read(status, read, status.length - read);
+        if (n < 0) {
+          break;
+        }
+        read += n;
+      }
+      assertEquals("HTTP/1.1 403", new String(status, 0, read, StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Test
+  public void testRefusedWhenFull() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    startServer(started, release, 0);
+    String query = "/classify?path=" + URLEncoder.encode(pdfFile.getAbsolutePath(), "UTF-8");
+    String[][] first = new String[1][];
+    Thread client = new Thread(() -> {
+      try {
+        first[0] = request("GET", query, null);
+      } catch (IOException e) {
+        first[0] = new String[] {e.toString(), ""};
+      }
+    });
+    client.start();
+    started.await();
+    // No detector left and no room to wait, but the health still answers
+    assertEquals("503", request("GET", query, null)[0]);
+    assertEquals("200", request("GET", "/health", null)[0]);
+    release.countDown();
+    client.join();
+    assertEquals("200", first[0][0]);
+  }
+}
@@ -0,0 +1,85 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class SequentialSamplerTest {
+
+  @Test
+  public void testProbabilityOverHalf() {
+    assertEquals(0.5, SequentialSampler.probabilityOverHalf(0, 0), 1e-9);
+    assertEquals(0.875, SequentialSampler.probabilityOverHalf(2, 2), 1e-9);
+    assertEquals(0.125, SequentialSampler.probabilityOverHalf(0, 2), 1e-9);
+    // Symmetric around one half
+    assertEquals(0.5, SequentialSampler.probabilityOverHalf(5, 10), 1e-9);
+    assertEquals(1.0, SequentialSampler.probabilityOverHalf(40, 40), 1e-9);
+  }
+
+  @Test
+  public void testEasyScanStopsEarly() {
+    SequentialSampler sampler = SamplingPolicy.sequential(0.9).newSampler(500);
+    int nbPages = 0;
+    while (!sampler.isSettled()) {
+      sampler.add(300);
+      nbPages++;
+    }
+    assertEquals(3, nbPages);
+    assertEquals(3, sampler.getNbExamined());
+    assertTrue(sampler.isScan());
+    assertEquals(300, sampler.getBest().getKey().intValue());
+    assertTrue(sampler.getConfidence() >= 0.9);
+  }
+
+  @Test
+  public void testEasyNativeStopsEarly() {
+    SequentialSampler sampler = SamplingPolicy.sequential(0.9).newSampler(500);
+    while (!sampler.isSettled()) {
+      sampler.add(0);
+    }
+    assertEquals(3, sampler.getNbExamined());
+    assertFalse(sampler.isScan());
+  }
+
+  @Test
+  public void testMixedGoesPastFixedSample() {
+    SequentialSampler sampler = SamplingPolicy.sequential(0.95).newSampler(500);
+    int nbPages = 0;
+    while (!sampler.isSettled()) {
+      sampler.add(nbPages % 2 == 0 ? 300 : 0);
+      nbPages++;
+    }
+    assertEquals(SamplingPolicy.MAX_SEQUENTIAL_SAMPLES, sampler.getNbExamined());
+    assertTrue(sampler.getConfidence() < 0.95);
+  }
+
+  @Test
+  public void testFixedSampling() {
+    SequentialSampler sampler = SamplingPolicy.DEFAULT.newSampler(500);
+    while (!sampler.isSettled()) {
+      sampler.add(300);
+    }
+    assertEquals(AbstractScanDetector.MAX_SAMPLES, sampler.getNbExamined());
+    // Small documents are examined completely
+    sampler = SamplingPolicy.sequential(0.99).newSampler(2);
+    sampler.add(300);
+    sampler.add(0);
+    assertTrue(sampler.isSettled());
+    assertEquals(1.0, sampler.getConfidence(), 1e-9);
+    assertFalse(sampler.isScan());
+  }
+
+  @Test
+  public void testParseConfidence() {
+    assertEquals(0.95, SamplingPolicy.parseConfidence("95%"), 1e-9);
+    assertEquals(0.9, SamplingPolicy.parseConfidence("0.9"), 1e-9);
+    try {
+      SamplingPolicy.parseConfidence("1");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package fr.bnf.toolslab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class XrefScanDetectorTest {
+
+  XrefScanDetector detector = new XrefScanDetector();
+
+  @Test
+  public void testDistinct() {
+    List<DimensionInfo> sizes = XrefScanDetector.distinct(Arrays.asList(
+        new DimensionInfo(595, 842), new DimensionInfo(595, 842), DimensionInfo.EMPTY,
+        new DimensionInfo(842, 595)));
+    assertEquals(2, sizes.size());
+    assertEquals(842, sizes.get(1).getWidth());
+  }
+
+  @Test
+  public void testFindPageDensity() {
+    List<DimensionInfo> sizes =
+        Arrays.asList(new DimensionInfo(842, 595), new DimensionInfo(595, 842));
+    // A4 portrait at 300 dpi matches the second size
+    assertEquals(300, detector.findPageDensity(new DimensionInfo(2480, 3508), sizes));
+    // A logo doesn't cover any page
+    assertEquals(0, detector.findPageDensity(new DimensionInfo(200, 100), sizes));
+    // Same aspect ratio but smaller than the page
+    assertEquals(0, detector.findPageDensity(new DimensionInfo(297, 421), sizes));
+    assertEquals(0, detector.findPageDensity(DimensionInfo.EMPTY, sizes));
+  }
+
+  @Test
+  public void testDecide() {
+    FileDescriptor fd = new FileDescriptor(new File("test.pdf"));
+    DimensionInfo a4 = new DimensionInfo(595, 842);
+    DimensionInfo scan = new DimensionInfo(2480, 3508);
+    List<DimensionInfo> pages = Arrays.asList(a4, a4);
+    assertFalse(detector.decide(fd, 2, Arrays.asList(scan, scan), pages));
+    assertTrue(fd.isScan());
+    assertEquals(300, fd.getResolution());
+    // A logo on some pages only
+    assertFalse(detector.decide(fd, 2, Collections.singletonList(new DimensionInfo(200, 100)),
+        pages));
+    assertFalse(fd.isScan());
+    // Inline images are not in the object table
+    assertTrue(detector.decide(fd, 2, Collections.emptyList(), pages));
+    assertFalse(detector.decide(fd, 0, Collections.emptyList(), Collections.emptyList()));
+    // One image per page, matching no MediaBox
+    assertTrue(detector.decide(fd, 2,
+        Arrays.asList(new DimensionInfo(2480, 1000), new DimensionInfo(2480, 1000)), pages));
+    // Mixed document
+    assertTrue(detector.decide(fd, 2, Collections.singletonList(scan), pages));
+  }
+}
@@ -0,0 +1,52 @@
+package fr.bnf.toolslab.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import fr.bnf.toolslab.corpus.DocumentSpec.Compression;
+import fr.bnf.toolslab.corpus.DocumentSpec.Kind;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class DocumentSpecTest {
+
+  @Test
+  public void testManifestLine() {
+    DocumentSpec spec = new DocumentSpec("000001-nested.pdf", Kind.NESTED, 12, Compression.JPX,
+        400, 5);
+    assertEquals("000001-nested.pdf;nested;scanned pdf;12;12;jpx;400;5", spec.toString());
+    DocumentSpec read = DocumentSpec.parse(spec.toString());
+    assertEquals(spec.toString(), read.toString());
+    assertEquals(5, read.getFormDepth());
+  }
+
+  @Test
+  public void testMixedPages() {
+    DocumentSpec spec = new DocumentSpec("mixed.pdf", Kind.MIXED, 5, Compression.DCT, 300, 3);
+    assertEquals(3, spec.getNbScannedPages());
+    assertTrue(spec.isScannedPage(0));
+    assertFalse(spec.isScannedPage(1));
+    // Only the nested documents keep their forms
+    assertEquals(0, spec.getFormDepth());
+    assertEquals("mixed pdf", spec.getType());
+  }
+
+  @Test
+  public void testPlanIsReproducible() {
+    List<Kind> kinds = Arrays.asList(Kind.SCAN, Kind.NATIVE);
+    List<Compression> compressions = Arrays.asList(Compression.CCITT, Compression.FLATE);
+    List<Integer> resolutions = Arrays.asList(200, 300);
+    List<DocumentSpec> first = CorpusGenerator.plan(8, 20, kinds, compressions, resolutions, 4, 7);
+    List<DocumentSpec> second =
+        CorpusGenerator.plan(8, 20, kinds, compressions, resolutions, 4, 7);
+    assertEquals(first.toString(), second.toString());
+    // All the combinations are covered
+    assertEquals(Kind.NATIVE, first.get(1).getKind());
+    assertEquals(Compression.FLATE, first.get(2).getCompression());
+    assertEquals(300, first.get(4).getResolution());
+    for (DocumentSpec spec : first) {
+      assertTrue(spec.getNbPages() >= 1 && spec.getNbPages() <= 20);
+    }
+  }
+}